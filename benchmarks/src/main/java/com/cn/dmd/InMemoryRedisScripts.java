@@ -0,0 +1,166 @@
+package com.cn.dmd;
+
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link CronJobRedisScripts}中各脚本在{@link InMemoryRedisServer}上的等价实现
+ * 与脚本位于同一个包，以便直接引用脚本内容；脚本调整时需同步修改此处
+ * 与真实redis上执行脚本的结果是否一致由{@link RedisScriptCheck}校验
+ */
+public final class InMemoryRedisScripts {
+    private static final long LOST = 0L;
+    private static final long WON = 1L;
+    private static final long COMPLETED = 2L;
+    private static final byte[] COMPLETED_STATUS = "true".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 向redis替身注册所有脚本的实现
+     *
+     * @param server redis替身
+     */
+    public static void install(InMemoryRedisServer server) {
+        server.registerScript(CronJobRedisScripts.ACQUIRE_LOCK.getScriptAsString(), (redis, keys, args) -> {
+            if (redis.set(keys[0], args[0], secondsToMillis(args[1]), true, false)) {
+                return WON;
+            }
+            return Arrays.equals(redis.get(keys[0]), args[0]) ? WON : LOST;
+        });
+
+        server.registerScript(CronJobRedisScripts.ACQUIRE_FENCED_LOCK.getScriptAsString(), (redis, keys, args) -> {
+            boolean locked = redis.set(keys[0], args[0], secondsToMillis(args[1]), true, false);
+            if (!locked && !Arrays.equals(redis.get(keys[0]), args[0])) {
+                return LOST;
+            }
+            return fencingToken(redis, keys[1], keys[2], args[2], locked);
+        });
+
+        server.registerScript(CronJobRedisScripts.RELEASE_LOCK.getScriptAsString(), (redis, keys, args) ->
+                Arrays.equals(redis.get(keys[0]), args[0]) ? redis.del(keys[0]) : LOST);
+
+        server.registerScript(CronJobRedisScripts.RENEW_LOCK.getScriptAsString(), (redis, keys, args) -> {
+            if (!Arrays.equals(redis.get(keys[0]), args[0])) {
+                return LOST;
+            }
+            return redis.expire(keys[0], Long.parseLong(text(args[1]))) ? WON : LOST;
+        });
+
+        server.registerScript(CronJobRedisScripts.ACQUIRE_OR_RENEW_LEASE.getScriptAsString(), (redis, keys, args) -> {
+            if (redis.set(keys[0], args[0], secondsToMillis(args[1]), true, false)) {
+                return WON;
+            }
+            if (Arrays.equals(redis.get(keys[0]), args[0])) {
+                redis.expire(keys[0], Long.parseLong(text(args[1])));
+                return WON;
+            }
+            return LOST;
+        });
+
+        server.registerScript(CronJobRedisScripts.CLAIM_JOB.getScriptAsString(), (redis, keys, args) -> {
+            boolean startTimeIndexEnabled = args[4].length > 0;
+            boolean pendingIndexEnabled = args[5].length > 0;
+            boolean fencingEnabled = args[6].length > 0;
+            boolean windowBitmapEnabled = args[7].length > 0;
+
+            boolean legacyFieldPresent = args.length > 8 && redis.hGet(keys[0], args[8]) != null;
+            if (!legacyFieldPresent && redis.hSetNX(keys[0], args[0], args[1])) {
+                if (startTimeIndexEnabled) {
+                    redis.zAdd(keys[2], Double.parseDouble(text(args[4])), args[0]);
+                }
+                if (pendingIndexEnabled) {
+                    redis.zAdd(keys[3], Double.parseDouble(text(args[5])), args[0]);
+                }
+            }
+            if (windowBitmapEnabled) {
+                redis.setBit(keys[6], Long.parseLong(text(args[7])), true);
+            }
+
+            boolean locked = redis.set(keys[1], args[2], secondsToMillis(args[3]), true, false);
+            if (!locked && !Arrays.equals(redis.get(keys[1]), args[2])) {
+                return Arrays.asList(LOST, 0L);
+            }
+
+            if (Arrays.equals(redis.hGet(keys[0], args[0]), COMPLETED_STATUS)
+                    || (args.length > 8 && Arrays.equals(redis.hGet(keys[0], args[8]), COMPLETED_STATUS))) {
+                if (locked) {
+                    redis.del(keys[1]);
+                }
+                if (pendingIndexEnabled) {
+                    redis.zRem(keys[3], args[0]);
+                }
+                if (windowBitmapEnabled) {
+                    redis.setBit(keys[7], Long.parseLong(text(args[7])), true);
+                }
+                return Arrays.asList(COMPLETED, 0L);
+            }
+
+            return Arrays.asList(WON, fencingEnabled ? fencingToken(redis, keys[4], keys[5], args[0], locked) : 0L);
+        });
+
+        server.registerScript(CronJobRedisScripts.COMPLETE_FENCED_JOB.getScriptAsString(), InMemoryRedisScripts::completeFencedJob);
+    }
+
+    /**
+     * 模拟作业在写入完成状态前被其他应用重新认领：最先的若干次以防护令牌完成作业前，先为作业签发新的令牌，使写入因令牌过期被拒绝
+     *
+     * @param server        已注册所有脚本实现的redis替身
+     * @param reclaimedJobs 被重新认领的作业数
+     */
+    public static void reclaimBeforeFencedCompletion(InMemoryRedisServer server, int reclaimedJobs) {
+        AtomicInteger remaining = new AtomicInteger(reclaimedJobs);
+        server.registerScript(CronJobRedisScripts.COMPLETE_FENCED_JOB.getScriptAsString(), (redis, keys, args) -> {
+            if (remaining.getAndDecrement() > 0) {
+                redis.hSet(keys[1], args[0], String.valueOf(Long.parseLong(text(args[1])) + 1).getBytes(StandardCharsets.UTF_8));
+            }
+            return completeFencedJob(redis, keys, args);
+        });
+    }
+
+    private static Object completeFencedJob(InMemoryRedisServer redis, byte[][] keys, byte[][] args) {
+        if (!Arrays.equals(redis.hGet(keys[1], args[0]), args[1])) {
+            return LOST;
+        }
+
+        redis.hSet(keys[0], args[0], args[2]);
+        if (args[5].length > 0) {
+            redis.hSet(keys[0], args[5], args[2]);
+        }
+        redis.hDel(keys[1], args[0]);
+        if (args[4].length > 0) {
+            redis.setBit(keys[4], Long.parseLong(text(args[4])), true);
+        }
+        for (int i = 6; i < args.length; i++) {
+            redis.zRem(keys[2], args[i]);
+        }
+        if (args[3].length > 0 && Arrays.equals(redis.get(keys[3]), args[3])) {
+            redis.del(keys[3]);
+        }
+        return WON;
+    }
+
+    //新获取锁时签发新的令牌，否则沿用已签发的令牌
+    private static long fencingToken(InMemoryRedisServer redis, byte[] sequenceKey, byte[] tokenKey, byte[] field, boolean locked) {
+        byte[] token = redis.hGet(tokenKey, field);
+        if (locked || token == null) {
+            long newToken = redis.incr(sequenceKey);
+            redis.hSet(tokenKey, field, String.valueOf(newToken).getBytes(StandardCharsets.UTF_8));
+            return newToken;
+        }
+
+        return Long.parseLong(text(token));
+    }
+
+    private static long secondsToMillis(byte[] arg) {
+        return Long.parseLong(text(arg)) * 1000L;
+    }
+
+    private static String text(byte[] arg) {
+        return new String(arg, StandardCharsets.UTF_8);
+    }
+
+    private InMemoryRedisScripts() {
+    }
+}
@@ -0,0 +1,138 @@
+package com.cn.dmd;
+
+import com.cn.dmd.domain.CronJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作业表的分配开销，配合{@code -prof gc}查看每次操作分配的字节数：
+ * 1. 作业池去重：原有的{@code ConcurrentHashMap<CronJob, Boolean>}与按任务存放开始时刻的{@link CronJobInFlightTable}，
+ * 作业池中保持jobCount个作业，每次操作提交一个新作业并移除最早的作业；
+ * 2. 回溯扫描计算缺失作业：原有的装箱集合求差与按窗口下标的位图，回溯范围内有jobCount个窗口，其中1%未记录
+ * 与作业池所在的包相同，以便访问包内可见的{@link CronJobInFlightTable}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JobTableAllocationBenchmark {
+    private static final int TASK_COUNT = 16;
+    private static final long INTERVAL_MILLIS = 60000L;
+
+    //作业池中的作业数，同时也是回溯范围内的窗口数
+    @Param({"1000", "100000"})
+    private int jobCount;
+
+    private CronJob[] jobs;
+    private ConcurrentHashMap<CronJob, Boolean> inFlightMap;
+    private CronJobInFlightTable inFlightTable;
+    private int mapCursor;
+    private int tableCursor;
+
+    private long[] endTimes;
+    //作业记录中的开始时刻，与store读取的结果相同
+    private long[] recordedStartTimes;
+
+    @Setup
+    public void setUp() {
+        long firstStartTime = System.currentTimeMillis() / INTERVAL_MILLIS * INTERVAL_MILLIS - jobCount * 2L * INTERVAL_MILLIS;
+        jobs = new CronJob[jobCount * 2];
+        for (int i = 0; i < jobs.length; i++) {
+            long startTime = firstStartTime + i / TASK_COUNT * INTERVAL_MILLIS;
+            jobs[i] = new CronJob("allocationTask" + i % TASK_COUNT, startTime, startTime + INTERVAL_MILLIS);
+        }
+
+        inFlightMap = new ConcurrentHashMap<>();
+        inFlightTable = new CronJobInFlightTable();
+        for (int i = 0; i < jobCount; i++) {
+            inFlightMap.putIfAbsent(jobs[i], false);
+            inFlightTable.add(jobs[i]);
+        }
+
+        endTimes = new long[jobCount];
+        recordedStartTimes = new long[jobCount - jobCount / 100];
+        int recorded = 0;
+        for (int i = 0; i < jobCount; i++) {
+            endTimes[i] = firstStartTime + (i + 1) * INTERVAL_MILLIS;
+            if (i % 100 != 0) {
+                recordedStartTimes[recorded++] = endTimes[i] - INTERVAL_MILLIS;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean inFlightMap() {
+        int cursor = mapCursor;
+        mapCursor = (cursor + 1) % jobs.length;
+
+        boolean added = inFlightMap.putIfAbsent(jobs[(cursor + jobCount) % jobs.length], false) == null;
+        inFlightMap.remove(jobs[cursor]);
+        return added;
+    }
+
+    @Benchmark
+    public boolean inFlightTable() {
+        int cursor = tableCursor;
+        tableCursor = (cursor + 1) % jobs.length;
+
+        boolean added = inFlightTable.add(jobs[(cursor + jobCount) % jobs.length]);
+        inFlightTable.remove(jobs[cursor]);
+        return added;
+    }
+
+    //原有实现：store返回装箱的开始时刻集合，扫描器构建待检查的开始时刻集合后求差
+    @Benchmark
+    public int missingWindowsBoxed() {
+        Set<Long> recordStartTimeSet = new HashSet<>(recordedStartTimes.length * 4 / 3 + 1);
+        for (long startTime : recordedStartTimes) {
+            recordStartTimeSet.add(startTime);
+        }
+
+        Set<Long> watchedTimes = new LinkedHashSet<>(endTimes.length * 4 / 3 + 1);
+        for (long endTime : endTimes) {
+            watchedTimes.add(endTime - INTERVAL_MILLIS);
+        }
+        watchedTimes.removeAll(recordStartTimeSet);
+
+        return watchedTimes.size();
+    }
+
+    //与CronJobScanner一致：已记录的作业按窗口下标标记，未标记的窗口即缺失的作业
+    @Benchmark
+    public long[] missingWindowsBitSet() {
+        long firstStartTime = endTimes[0] - INTERVAL_MILLIS;
+        BitSet recordedWindows = new BitSet(endTimes.length);
+        for (long startTime : recordedStartTimes) {
+            long offset = startTime - firstStartTime;
+            if (offset % INTERVAL_MILLIS == 0 && offset / INTERVAL_MILLIS < endTimes.length) {
+                recordedWindows.set((int) (offset / INTERVAL_MILLIS));
+            }
+        }
+
+        long[] missingStartTimes = new long[endTimes.length - recordedWindows.cardinality()];
+        int position = 0;
+        for (int i = recordedWindows.nextClearBit(0); i < endTimes.length; i = recordedWindows.nextClearBit(i + 1)) {
+            missingStartTimes[position++] = endTimes[i] - INTERVAL_MILLIS;
+        }
+
+        return missingStartTimes;
+    }
+}
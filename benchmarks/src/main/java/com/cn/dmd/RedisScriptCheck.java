@@ -0,0 +1,279 @@
+package com.cn.dmd;
+
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.script.RedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * 在真实的redis上执行{@link CronJobRedisScripts}中的全部脚本，与{@link InMemoryRedisScripts}中的等价实现逐步对比：
+ * 1. 每一步的返回值一致；
+ * 2. 每一步之后锁、租约、令牌、作业状态列表、开始时刻索引、未完成作业列表及窗口位图的内容一致
+ * 与脚本位于同一个包，以便直接引用脚本；默认启动内置的redis-server，也可指定已有的redis
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.RedisScriptCheck [host:port]，校验失败时以状态码1退出
+ */
+public class RedisScriptCheck {
+    private static final String HOLDER_A = "10.0.0.1:8080";
+    private static final String HOLDER_B = "10.0.0.2:8080";
+    private static final String EXPIRATION = "60";
+    private static final String UN_COMPLETED = "false";
+    private static final String COMPLETED = "true";
+
+    private final String prefix = "RedisScriptCheck_" + System.currentTimeMillis() + "_";
+    private final byte[] lockKey = key("lock");
+    private final byte[] leaseKey = key("lease");
+    private final byte[] sequenceKey = key("sequence");
+    private final byte[] tokenKey = key("token");
+    private final byte[] statusKey = key("status");
+    private final byte[] indexKey = key("index");
+    private final byte[] pendingKey = key("pending");
+    private final byte[] createdKey = key("created");
+    private final byte[] completedKey = key("completed");
+    private final byte[][] claimKeys = {statusKey, lockKey, indexKey, pendingKey, sequenceKey, tokenKey, createdKey, completedKey};
+    private final byte[][] completeKeys = {statusKey, tokenKey, pendingKey, lockKey, completedKey};
+
+    private final List<String> failures = new ArrayList<>();
+    private final RedisConnection connection;
+    private final InMemoryRedisServer server = SchedulerNode.newRedisServer();
+    private int stepCount;
+
+    private RedisScriptCheck(RedisConnection connection) {
+        this.connection = connection;
+    }
+
+    public static void main(String[] args) throws IOException {
+        RedisServer redisServer = null;
+        String host = "127.0.0.1";
+        int port;
+        if (args.length > 0) {
+            host = args[0].substring(0, args[0].lastIndexOf(':'));
+            port = Integer.parseInt(args[0].substring(args[0].lastIndexOf(':') + 1));
+        } else {
+            port = freePort();
+            redisServer = new RedisServer(port);
+            redisServer.start();
+        }
+
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory();
+        connectionFactory.setHostName(host);
+        connectionFactory.setPort(port);
+        connectionFactory.setUsePool(false);
+        connectionFactory.afterPropertiesSet();
+
+        RedisScriptCheck check;
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            System.out.printf("redis %s:%d，版本%s%n", host, port, connection.info("server").getProperty("redis_version"));
+            check = new RedisScriptCheck(connection);
+            try {
+                check.checkLocks();
+                check.checkLease();
+                check.checkFencedLock();
+                check.checkClaimAndComplete();
+            } finally {
+                connection.del(check.claimKeys);
+                connection.del(check.leaseKey);
+            }
+        } finally {
+            connection.close();
+            connectionFactory.destroy();
+            if (redisServer != null) {
+                redisServer.stop();
+            }
+        }
+
+        System.out.printf("共执行%d步，每步对比返回值及%d个key的内容%n", check.stepCount, check.claimKeys.length + 1);
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+        //内置redis-server的输出读取线程不是守护线程，停止后仍不退出
+        System.exit(0);
+    }
+
+    private void checkLocks() {
+        step("A获取锁", CronJobRedisScripts.ACQUIRE_LOCK, keys(lockKey), HOLDER_A, EXPIRATION);
+        step("B获取A持有的锁", CronJobRedisScripts.ACQUIRE_LOCK, keys(lockKey), HOLDER_B, EXPIRATION);
+        step("A重复获取锁", CronJobRedisScripts.ACQUIRE_LOCK, keys(lockKey), HOLDER_A, EXPIRATION);
+        step("B续时A持有的锁", CronJobRedisScripts.RENEW_LOCK, keys(lockKey), HOLDER_B, EXPIRATION);
+        step("A续时", CronJobRedisScripts.RENEW_LOCK, keys(lockKey), HOLDER_A, "120");
+        step("B释放A持有的锁", CronJobRedisScripts.RELEASE_LOCK, keys(lockKey), HOLDER_B);
+        step("A释放锁", CronJobRedisScripts.RELEASE_LOCK, keys(lockKey), HOLDER_A);
+        step("A续时已释放的锁", CronJobRedisScripts.RENEW_LOCK, keys(lockKey), HOLDER_A, EXPIRATION);
+    }
+
+    private void checkLease() {
+        step("A获取租约", CronJobRedisScripts.ACQUIRE_OR_RENEW_LEASE, keys(leaseKey), HOLDER_A, "30");
+        step("A续期租约", CronJobRedisScripts.ACQUIRE_OR_RENEW_LEASE, keys(leaseKey), HOLDER_A, "30");
+        step("B获取A持有的租约", CronJobRedisScripts.ACQUIRE_OR_RENEW_LEASE, keys(leaseKey), HOLDER_B, "30");
+    }
+
+    private void checkFencedLock() {
+        byte[][] keys = keys(lockKey, sequenceKey, tokenKey);
+        step("A获取锁并签发令牌", CronJobRedisScripts.ACQUIRE_FENCED_LOCK, keys, HOLDER_A, EXPIRATION, "f1");
+        step("A重复获取锁，沿用令牌", CronJobRedisScripts.ACQUIRE_FENCED_LOCK, keys, HOLDER_A, EXPIRATION, "f1");
+        step("B获取A持有的锁", CronJobRedisScripts.ACQUIRE_FENCED_LOCK, keys, HOLDER_B, EXPIRATION, "f1");
+        step("A释放锁", CronJobRedisScripts.RELEASE_LOCK, keys(lockKey), HOLDER_A);
+        step("B获取锁并签发新令牌", CronJobRedisScripts.ACQUIRE_FENCED_LOCK, keys, HOLDER_B, EXPIRATION, "f1");
+        step("B释放锁", CronJobRedisScripts.RELEASE_LOCK, keys(lockKey), HOLDER_B);
+    }
+
+    private void checkClaimAndComplete() {
+        step("A认领作业，维护索引、未完成作业列表、位图并签发令牌", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "f2", UN_COMPLETED, HOLDER_A, EXPIRATION, "1000", "2000", "1", "5");
+        step("B认领A持有的作业", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "f2", UN_COMPLETED, HOLDER_B, EXPIRATION, "1000", "2000", "1", "5");
+        step("A重复认领，沿用令牌", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "f2", UN_COMPLETED, HOLDER_A, EXPIRATION, "1000", "2000", "1", "5");
+        step("以过期令牌完成作业", CronJobRedisScripts.COMPLETE_FENCED_JOB, completeKeys,
+                "f2", "2", COMPLETED, HOLDER_A, "5", "", "f2");
+        step("以最新令牌完成作业并释放锁", CronJobRedisScripts.COMPLETE_FENCED_JOB, completeKeys,
+                "f2", "3", COMPLETED, HOLDER_A, "5", "", "f2", "legacy-f2");
+        step("B认领已完成的作业", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "f2", UN_COMPLETED, HOLDER_B, EXPIRATION, "1000", "2000", "1", "5");
+        step("A认领作业，不维护索引、位图，不签发令牌", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "f3", UN_COMPLETED, HOLDER_A, EXPIRATION, "", "", "", "");
+        step("A认领作业，旧格式字段已完成", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "f4", UN_COMPLETED, HOLDER_A, EXPIRATION, "3000", "4000", "1", "13", "f2");
+        step("以令牌完成作业，不释放锁", CronJobRedisScripts.COMPLETE_FENCED_JOB, completeKeys,
+                "f3", "0", COMPLETED, "", "", "");
+        step("未升级的应用以旧格式记录作业", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "legacy-f5", UN_COMPLETED, HOLDER_B, EXPIRATION, "", "", "", "");
+        step("A认领作业，旧格式字段已存在，不创建新格式字段", CronJobRedisScripts.CLAIM_JOB, claimKeys,
+                "f5", UN_COMPLETED, HOLDER_A, EXPIRATION, "5000", "6000", "1", "21", "legacy-f5");
+        step("以令牌完成作业，同时写入旧格式字段", CronJobRedisScripts.COMPLETE_FENCED_JOB, completeKeys,
+                "f5", "4", COMPLETED, HOLDER_A, "21", "legacy-f5", "f5", "legacy-f5");
+    }
+
+    //在redis及替身上执行同一个脚本，对比返回值及执行后的数据
+    private void step(String name, RedisScript<?> script, byte[][] keys, String... args) {
+        stepCount++;
+        byte[][] keysAndArgs = new byte[keys.length + args.length][];
+        System.arraycopy(keys, 0, keysAndArgs, 0, keys.length);
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.length + i] = args[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        Object expected;
+        try {
+            expected = server.eval(script.getScriptAsString().getBytes(StandardCharsets.UTF_8), keys.length, keysAndArgs);
+        } catch (RuntimeException e) {
+            expected = e.getClass().getSimpleName();
+        }
+        Object actual;
+        try {
+            actual = connection.eval(script.getScriptAsString().getBytes(StandardCharsets.UTF_8), ReturnType.fromJavaType(script.getResultType()),
+                    keys.length, keysAndArgs);
+        } catch (RuntimeException e) {
+            actual = e.getClass().getSimpleName() + "：" + e.getMessage();
+        }
+
+        Map<String, String> expectedData = snapshot(this::memoryValue);
+        Map<String, String> actualData = snapshot(this::redisValue);
+        System.out.printf("%-40s redis返回%s，替身返回%s%n", name, actual, expected);
+        expect(Objects.equals(expected, actual), name + "：返回值不一致，redis：" + actual + "，替身：" + expected);
+        expect(expectedData.equals(actualData), name + "：数据不一致，redis：" + actualData + "，替身：" + expectedData);
+    }
+
+    private Map<String, String> snapshot(Function<byte[], String> reader) {
+        Map<String, String> data = new LinkedHashMap<>();
+        for (byte[] key : claimKeys) {
+            data.put(new String(key, StandardCharsets.UTF_8).substring(prefix.length()), reader.apply(key));
+        }
+        data.put(new String(leaseKey, StandardCharsets.UTF_8).substring(prefix.length()), reader.apply(leaseKey));
+
+        return data;
+    }
+
+    private String redisValue(byte[] key) {
+        if (Arrays.equals(key, statusKey) || Arrays.equals(key, tokenKey)) {
+            return hashText(connection.hGetAll(key));
+        }
+        if (Arrays.equals(key, indexKey) || Arrays.equals(key, pendingKey)) {
+            return zSetText(connection.zRangeWithScores(key, 0, -1));
+        }
+
+        return stringText(connection.get(key), connection.pTtl(key));
+    }
+
+    private String memoryValue(byte[] key) {
+        if (Arrays.equals(key, statusKey) || Arrays.equals(key, tokenKey)) {
+            Map<byte[], byte[]> fields = new LinkedHashMap<>();
+            server.hEntries(key).forEach(entry -> fields.put(entry.getKey(), entry.getValue()));
+            return hashText(fields);
+        }
+        if (Arrays.equals(key, indexKey) || Arrays.equals(key, pendingKey)) {
+            return zSetText(server.zRangeByScoreWithScores(key, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, -1));
+        }
+
+        return stringText(server.get(key), server.pTtl(key));
+    }
+
+    private static String hashText(Map<byte[], byte[]> fields) {
+        Map<String, String> sorted = new TreeMap<>();
+        fields.forEach((field, value) -> sorted.put(text(field), text(value)));
+        return sorted.toString();
+    }
+
+    private static String zSetText(Set<RedisZSetCommands.Tuple> tuples) {
+        List<String> members = new ArrayList<>();
+        tuples.forEach(tuple -> members.add(text(tuple.getValue()) + "@" + tuple.getScore()));
+        return members.toString();
+    }
+
+    //位图以十六进制对比，只区分是否设置了超时时间
+    private static String stringText(byte[] value, Long pTtl) {
+        if (value == null) {
+            return "nil";
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : value) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex + (pTtl != null && pTtl > 0 ? "，有超时时间" : "，无超时时间");
+    }
+
+    private static String text(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private byte[] key(String name) {
+        return (prefix + name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] keys(byte[]... keys) {
+        return keys;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.CronJobRedisActions;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetricsSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动回溯扫描耗时：多个任务、模拟网络往返时，对比逐个扫描、并行扫描及后台扫描下应用就绪【发布启动完成事件】所需的时间，
+ * 并校验每个任务回溯范围内缺失的作业都已被认领并执行；另校验批量认领的后续批次失败时，之前批次已获取的锁随即释放
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.BacktraceStartupCheck [任务数] [往返耗时（微秒）]，校验失败时以状态码1退出
+ */
+public class BacktraceStartupCheck {
+    //回溯一小时，每个任务60个作业
+    private static final int JOBS_PER_TASK = 60;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long roundTripMicros = args.length > 1 ? Long.parseLong(args[1]) : 200L;
+
+        BacktraceStartupCheck check = new BacktraceStartupCheck();
+        check.run("逐个扫描", taskCount, roundTripMicros, 1, false);
+        check.run("并行扫描", taskCount, roundTripMicros, 8, false);
+        check.run("后台扫描", taskCount, roundTripMicros, 8, true);
+        check.checkClaimFailure();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void run(String name, int taskCount, long roundTripMicros, int parallelism, boolean background) throws InterruptedException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.metrics-enabled", "true");
+        properties.put("cron.general.backtrace-scan-parallelism", String.valueOf(parallelism));
+        properties.put("cron.general.backtrace-scan-in-background", String.valueOf(background));
+
+        AtomicInteger executedCount = new AtomicInteger();
+        List<BenchmarkTask> tasks = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            tasks.add(new BenchmarkTask(new CronTaskConfig("backtraceTask" + i, true, false, false, CronScheduleTimeUnit.MINUTE,
+                    1, 1, 0, 3600, true, false), cronJob -> executedCount.incrementAndGet()));
+        }
+
+        try (SchedulerNode node = new SchedulerNode("backtrace-node", SchedulerNode.newRedisServer(), properties, tasks, true)) {
+            node.getConnectionFactory().setRoundTripMicros(roundTripMicros);
+
+            long startNanos = System.nanoTime();
+            node.start();
+            long readyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            String remainingKey = CronJobMetricsSnapshot.key(CronJobMetricNames.BACKTRACE_REMAINING, "scanner");
+            while (node.getMetrics().snapshot().getGauges().getOrDefault(remainingKey, 0L) > 0) {
+                Thread.sleep(10);
+            }
+            long scannedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            System.out.printf("%s：%d个任务，并发数%d，往返%dus：就绪耗时%dms，回溯扫描完成耗时%dms%n", name, taskCount, parallelism,
+                    roundTripMicros, readyMillis, scannedMillis);
+
+            //等待回溯出的作业执行完毕后再关闭节点
+            long deadline = System.currentTimeMillis() + 30000L;
+            while (executedCount.get() < taskCount * JOBS_PER_TASK && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            expect(executedCount.get() >= taskCount * JOBS_PER_TASK, name + "：回溯出的作业执行数为" + executedCount.get());
+
+            CronJobRedisActions redisActions = node.getRedisActions();
+            for (BenchmarkTask task : tasks) {
+                String taskName = task.getTaskConfig().getName();
+                int recorded = redisActions.getJobsOfTask(taskName).size();
+                expect(recorded >= JOBS_PER_TASK, name + "：任务[" + taskName + "]回溯后记录的作业数为" + recorded);
+            }
+        }
+    }
+
+    //按每批10个认领30个作业，第三批的pipeline连接失败
+    private void checkClaimFailure() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.claim-batch-size", "10");
+        CronTaskConfig taskConfig = new CronTaskConfig("claimFailureTask", true, false, false, CronScheduleTimeUnit.MINUTE,
+                1, 1, 0, 3600, true, false);
+
+        try (SchedulerNode node = new SchedulerNode("claim-failure-node", SchedulerNode.newRedisServer(), properties,
+                Collections.singletonList(new BenchmarkTask(taskConfig, cronJob -> {
+                })), false)) {
+            long firstStartTime = System.currentTimeMillis() / 60000L * 60000L - 30 * 60000L;
+            List<CronJob> cronJobs = new ArrayList<>(30);
+            for (int i = 0; i < 30; i++) {
+                cronJobs.add(new CronJob(taskConfig.getName(), firstStartTime + i * 60000L, firstStartTime + (i + 1) * 60000L));
+            }
+
+            node.getConnectionFactory().failAfterRoundTrips(2);
+            boolean failed = false;
+            try {
+                node.getStore().claimJobs(cronJobs);
+            } catch (RuntimeException e) {
+                failed = true;
+            }
+
+            CronJobKeyCodec keyCodec = node.getRedisActions().getKeyCodec();
+            int remainingLockCount = 0;
+            for (CronJob cronJob : cronJobs.subList(0, 20)) {
+                if (node.getConnectionFactory().getServer().get(keyCodec.lockKey(cronJob.getTaskName(), cronJob.getStartTime())) != null) {
+                    remainingLockCount++;
+                }
+            }
+
+            System.out.printf("批量认领失败：第三批连接失败，前两批%d个作业残留锁%d个%n", 20, remainingLockCount);
+            expect(failed, "批量认领失败：应抛出异常");
+            expect(remainingLockCount == 0, "批量认领失败：之前批次获取的锁未释放：" + remainingLockCount);
+        }
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
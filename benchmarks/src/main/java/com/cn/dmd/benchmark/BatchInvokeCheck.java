@@ -0,0 +1,199 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetricsSnapshot;
+import com.cn.dmd.utils.CronJobWindowCalculator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 校验批量执行：5分钟一个作业的任务停机一天后启动，回溯出一天内的全部窗口【约288个】作为缺失作业
+ * 1. 逐个执行：每个窗口调用一次invoke，每次调用都付出一次准备工作的耗时；
+ * 2. 批量执行：首尾相接的窗口按批量大小成组调用一次invokeBatch，全部窗口逐个记为完成；
+ * 3. 批量执行失败：整批窗口均不记为完成且锁已释放，其余批次不受影响
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.BatchInvokeCheck [批量大小]，校验失败时以状态码1退出
+ */
+public class BatchInvokeCheck {
+    private static final String TASK_NAME = "batchTask";
+    private static final long INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    //回溯一天
+    private static final int BACKTRACE_HOURS = 24;
+    //每次调用任务逻辑的准备耗时【建立连接、预热缓存等】
+    private static final long SETUP_MILLIS = 10L;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+
+        BatchInvokeCheck check = new BatchInvokeCheck();
+        check.checkSingle();
+        check.checkBatch(batchSize);
+        check.checkBatchFailure(batchSize);
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void checkSingle() throws InterruptedException {
+        Run run = run(0, false);
+
+        System.out.printf("逐个执行：%d个缺失作业，调用invoke %d次，耗时%dms%n", run.windowCount, run.invokedJobs.size(), run.elapsedMillis);
+        expect(run.invokedJobs.size() == run.windowCount, "逐个执行：调用次数有误：" + run.invokedJobs.size());
+        expect(run.batches.isEmpty(), "逐个执行：不应调用invokeBatch");
+        expect(run.completedCount == run.windowCount, "逐个执行：记为完成的作业数有误：" + run.completedCount);
+    }
+
+    private void checkBatch(int batchSize) throws InterruptedException {
+        Run run = run(batchSize, false);
+        int batchedWindows = 0;
+        boolean contiguous = true;
+        for (List<CronJob> batch : run.batches) {
+            batchedWindows += batch.size();
+            contiguous &= isContiguous(batch) && batch.size() <= batchSize;
+        }
+
+        System.out.printf("批量执行【批量大小%d】：%d个缺失作业，调用invokeBatch %d次，覆盖%d个窗口，耗时%dms，批内首尾相接：%s%n", batchSize,
+                run.windowCount, run.batches.size(), batchedWindows, run.elapsedMillis, contiguous);
+        //最近的窗口可能由触发引擎按时提交，与追赶去重后逐个执行
+        expect(run.invokedJobs.size() <= 1, "批量执行：不应逐个调用invoke，实际：" + run.invokedJobs.size());
+        expect(batchedWindows + run.invokedJobs.size() == run.windowCount, "批量执行：覆盖的窗口数有误：" + batchedWindows);
+        expect(contiguous, "批量执行：批内作业应首尾相接且不超过批量大小");
+        expect(run.batches.size() < run.windowCount, "批量执行：未合并调用");
+        expect(run.completedCount == run.windowCount, "批量执行：记为完成的作业数有误：" + run.completedCount);
+    }
+
+    private void checkBatchFailure(int batchSize) throws InterruptedException {
+        Run run = run(batchSize, true);
+        long failed = run.counters.getOrDefault(CronJobMetricsSnapshot.key(CronJobMetricNames.JOB_FAILED, TASK_NAME), 0L);
+
+        System.out.printf("批量执行失败：%d个缺失作业，失败批次%d个窗口，记为完成%d个，残留锁%d个，失败数%d%n", run.windowCount,
+                run.failedBatchSize, run.completedCount, run.remainingLockCount, failed);
+        expect(run.failedBatchSize > 0 && run.completedCount == run.windowCount - run.failedBatchSize,
+                "批量执行失败：失败批次之外的作业应全部记为完成，实际：" + run.completedCount);
+        expect(run.remainingLockCount == 0, "批量执行失败：失败批次的锁未释放：" + run.remainingLockCount);
+        expect(failed == 1, "批量执行失败：失败数有误：" + failed);
+    }
+
+    //启动节点执行回溯扫描，等待全部缺失作业结束；failFirstBatch为true时包含最早窗口的批次抛出异常
+    private Run run(int batchSize, boolean failFirstBatch) throws InterruptedException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.metrics-enabled", "true");
+
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, true, false, false, CronScheduleTimeUnit.MINUTE,
+                5, BACKTRACE_HOURS, 0, 3600, true, false);
+        taskConfig.setBatchSize(batchSize);
+
+        CronJobWindowCalculator calculator = CronJobWindowCalculator.of(taskConfig);
+        long latestEndTime = calculator.floor(System.currentTimeMillis());
+        long[] endTimes = calculator.boundaries(latestEndTime - TimeUnit.HOURS.toMillis(BACKTRACE_HOURS), latestEndTime);
+        long[] startTimes = new long[endTimes.length];
+        for (int i = 0; i < endTimes.length; i++) {
+            startTimes[i] = endTimes[i] - INTERVAL_MILLIS;
+        }
+
+        Run run = new Run();
+        run.windowCount = endTimes.length;
+        BenchmarkTask task = new BenchmarkTask(taskConfig, cronJob -> {
+            sleep(SETUP_MILLIS);
+            synchronized (run) {
+                run.invokedJobs.add(cronJob);
+            }
+        }) {
+            @Override
+            public void invokeBatch(List<CronJob> cronJobs) {
+                sleep(SETUP_MILLIS);
+                synchronized (run) {
+                    if (failFirstBatch && cronJobs.get(0).getStartTime() == startTimes[0]) {
+                        run.failedBatchSize = cronJobs.size();
+                        throw new IllegalStateException("模拟批量执行失败");
+                    }
+                    run.batches.add(new ArrayList<>(cronJobs));
+                }
+            }
+        };
+
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode node = new SchedulerNode("batch-node", server, properties, Collections.singletonList(task), true)) {
+            long startNanos = System.nanoTime();
+            node.start();
+
+            //每个缺失作业结束后计入追赶进度
+            String finishedKey = CronJobMetricsSnapshot.key(CronJobMetricNames.CATCH_UP_FINISHED, TASK_NAME);
+            long deadline = System.currentTimeMillis() + 30000L;
+            while (System.currentTimeMillis() < deadline
+                    && node.getMetrics().snapshot().getCounters().getOrDefault(finishedKey, 0L) < run.windowCount) {
+                Thread.sleep(5);
+            }
+            run.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            run.counters = node.getMetrics().snapshot().getCounters();
+            expect(run.counters.getOrDefault(finishedKey, 0L) >= run.windowCount, "缺失作业未在期限内结束，批量大小：" + batchSize);
+
+            //去重的作业随即计入追赶进度，等待仍在执行的作业记为完成
+            do {
+                run.completedCount = node.getStore().getCompletedJobs(TASK_NAME, startTimes).cardinality();
+            } while (run.completedCount + run.failedBatchSize < run.windowCount && System.currentTimeMillis() < deadline && sleep(5L));
+            CronJobKeyCodec keyCodec = node.getRedisActions().getKeyCodec();
+            for (long startTime : startTimes) {
+                if (server.get(keyCodec.lockKey(TASK_NAME, startTime)) != null) {
+                    run.remainingLockCount++;
+                }
+            }
+        }
+
+        return run;
+    }
+
+    private static boolean isContiguous(List<CronJob> cronJobs) {
+        for (int i = 1; i < cronJobs.size(); i++) {
+            if (cronJobs.get(i).getStartTime() != cronJobs.get(i - 1).getEndTime()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+
+    private static class Run {
+        private final List<CronJob> invokedJobs = new ArrayList<>();
+        private final List<List<CronJob>> batches = new ArrayList<>();
+        private int windowCount;
+        private int failedBatchSize;
+        private long elapsedMillis;
+        private int completedCount;
+        private int remainingLockCount;
+        private Map<String, Long> counters;
+    }
+}
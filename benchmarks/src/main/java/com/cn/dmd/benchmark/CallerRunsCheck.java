@@ -0,0 +1,119 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.constants.CronJobRejectionPolicy;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.metrics.CronJobMetricsSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 校验CALLER_RUNS策略下作业池已满时作业不在触发引擎的线程中执行：
+ * 任务每秒触发一次，独占作业池的并发数及队列长度均为1，每个作业耗时2.5秒，第三次触发起作业池已满；
+ * 校验没有作业在触发线程中执行、作业池已满时有作业交由溢出线程执行，且触发线程未被阻塞【两次触发的间隔不超过1.8秒】
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.CallerRunsCheck，校验失败时以状态码1退出
+ */
+public class CallerRunsCheck {
+    private static final String TASK_NAME = "callerRunsTask";
+    private static final String TRIGGER_THREAD_NAME = "cmaster-cronjob-trigger";
+    private static final long EXECUTION_MILLIS = 2500L;
+    private static final long RUN_MILLIS = TimeUnit.SECONDS.toMillis(6);
+    private static final long SAMPLE_MILLIS = 100L;
+    //每秒触发一次，两次触发间隔超过此值视为触发线程被阻塞
+    private static final long MAX_TRIGGER_GAP_MILLIS = 1800L;
+    private static final String OVERFLOW_THREAD = "溢出线程";
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        CallerRunsCheck check = new CallerRunsCheck();
+        check.check();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void check() {
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, false, true, false, CronScheduleTimeUnit.SECOND,
+                1, 1, 0, 3600, true, false);
+        taskConfig.setCronExpression("* * * * * *");
+        taskConfig.setBulkheadConcurrency(1);
+        taskConfig.setBulkheadQueueCapacity(1);
+        taskConfig.setBulkheadRejectionPolicy(CronJobRejectionPolicy.CALLER_RUNS);
+
+        //按执行线程统计作业数，溢出线程归为一类
+        Map<String, AtomicInteger> executedByThread = new ConcurrentHashMap<>();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.trigger-engine-enabled", "true");
+        properties.put("cron.general.key-codec", CronJobKeyCodecMode.COMPACT.name());
+        properties.put("cron.general.metrics-enabled", "true");
+
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode node = new SchedulerNode("caller-runs-node", server, properties, Collections.singletonList(
+                new BenchmarkTask(taskConfig, cronJob -> {
+                    String threadName = Thread.currentThread().getName();
+                    executedByThread.computeIfAbsent(threadName.contains("-caller-runs-") ? OVERFLOW_THREAD : threadName,
+                            key -> new AtomicInteger()).incrementAndGet();
+                    sleep(EXECUTION_MILLIS);
+                })), false)) {
+            node.start();
+
+            //每100毫秒采样一次提交的作业数，记录两次触发之间的最长间隔
+            String submittedKey = CronJobMetricsSnapshot.key(CronJobMetricNames.JOB_SUBMITTED, TASK_NAME);
+            long startMillis = System.currentTimeMillis();
+            long lastTriggeredMillis = 0L;
+            long maxGapMillis = 0L;
+            long triggeredCount = 0L;
+            while (System.currentTimeMillis() - startMillis < RUN_MILLIS) {
+                sleep(SAMPLE_MILLIS);
+                long count = node.getMetrics().snapshot().getCounters().getOrDefault(submittedKey, 0L);
+                long now = System.currentTimeMillis();
+                if (count > triggeredCount) {
+                    if (lastTriggeredMillis > 0) {
+                        maxGapMillis = Math.max(maxGapMillis, now - lastTriggeredMillis);
+                    }
+                    lastTriggeredMillis = now;
+                    triggeredCount = count;
+                }
+            }
+
+            int onTriggerThread = executedByThread.getOrDefault(TRIGGER_THREAD_NAME, new AtomicInteger()).get();
+            int onOverflowThread = executedByThread.getOrDefault(OVERFLOW_THREAD, new AtomicInteger()).get();
+            System.out.printf("%dms内触发%d次，两次触发最长间隔%dms，各线程执行的作业数：%s%n", RUN_MILLIS, triggeredCount, maxGapMillis,
+                    executedByThread);
+            expect(onTriggerThread == 0, "作业池已满时作业在触发线程中执行：" + onTriggerThread);
+            expect(onOverflowThread > 0, "作业池已满时没有作业交由溢出线程执行");
+            expect(maxGapMillis < MAX_TRIGGER_GAP_MILLIS, "触发线程被阻塞，两次触发最长间隔：" + maxGapMillis + "ms");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
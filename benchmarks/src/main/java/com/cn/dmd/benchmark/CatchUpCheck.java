@@ -0,0 +1,226 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.InMemoryRedisScripts;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobCatchUpPolicy;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetricsSnapshot;
+import com.cn.dmd.utils.CronJobWindowCalculator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 校验缺失作业的追赶策略：5分钟一个作业的任务停机一天后启动，回溯出一天内的全部窗口【约288个】作为缺失作业
+ * 1. ALL不限速：与原有实现一致，全部作业一次性提交，并发数只受作业池限制；
+ * 2. ALL限速：按开始时刻从早到晚执行，同时执行的作业数不超过限制，耗时符合速率；
+ * 3. COALESCE：只执行一次覆盖整段时间范围的作业，全部作业记为完成；
+ * 4. LATEST：只执行最近的作业，其余作业记为完成；开启防护令牌且部分作业在记为完成前被其他应用重新认领时，这些作业不计入跳过的作业；
+ * 每种策略均校验追赶结束后未结束作业数及追赶时长两项指标归零
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.CatchUpCheck [每秒作业数] [并发数]，校验失败时以状态码1退出
+ */
+public class CatchUpCheck {
+    private static final String TASK_NAME = "catchUpTask";
+    private static final long INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    //回溯一天
+    private static final int BACKTRACE_HOURS = 24;
+    //每个作业的执行耗时
+    private static final long EXECUTION_MILLIS = 2L;
+    //LATEST策略下记为完成前被其他应用重新认领的作业数
+    private static final int RECLAIMED_JOBS = 10;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        double ratePerSecond = args.length > 0 ? Double.parseDouble(args[0]) : 500D;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        CatchUpCheck check = new CatchUpCheck();
+        check.checkAll(0D, 0);
+        check.checkAll(ratePerSecond, concurrency);
+        check.checkCoalesce();
+        check.checkLatest();
+        check.checkLatestReclaimed();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void checkAll(double ratePerSecond, int concurrency) throws InterruptedException {
+        CronTaskConfig taskConfig = taskConfig(CronJobCatchUpPolicy.ALL);
+        taskConfig.setCatchUpRatePerSecond(ratePerSecond);
+        taskConfig.setCatchUpConcurrency(concurrency);
+        String name = ratePerSecond > 0 ? "ALL限速" : "ALL不限速";
+
+        Run run = run(taskConfig);
+        boolean ordered = true;
+        for (int i = 1; i < run.invokedJobs.size(); i++) {
+            ordered &= run.invokedJobs.get(i).getStartTime() > run.invokedJobs.get(i - 1).getStartTime();
+        }
+
+        System.out.printf("%s：%d个缺失作业，执行%d次，最大并发%d，耗时%dms，按时间顺序：%s%n", name, run.windowCount, run.invokedJobs.size(),
+                run.maxConcurrency, run.elapsedMillis, ordered);
+        expect(run.invokedJobs.size() == run.windowCount, name + "：执行次数有误：" + run.invokedJobs.size());
+        expect(run.completedCount == run.windowCount, name + "：记为完成的作业数有误：" + run.completedCount);
+        if (concurrency > 0) {
+            expect(run.maxConcurrency <= concurrency, name + "：最大并发超出限制：" + run.maxConcurrency);
+        }
+        if (concurrency == 1) {
+            expect(ordered, name + "：未按开始时刻从早到晚执行");
+        }
+        if (ratePerSecond > 0) {
+            long minMillis = (long) ((run.windowCount - 1) * 1000L / ratePerSecond);
+            expect(run.elapsedMillis >= minMillis * 9 / 10, name + "：耗时" + run.elapsedMillis + "ms，快于限速下的" + minMillis + "ms");
+        }
+    }
+
+    private void checkCoalesce() throws InterruptedException {
+        Run run = run(taskConfig(CronJobCatchUpPolicy.COALESCE));
+        CronJob coalescedJob = run.invokedJobs.isEmpty() ? null : run.invokedJobs.get(0);
+
+        System.out.printf("COALESCE：%d个缺失作业，执行%d次，覆盖%d个窗口，耗时%dms%n", run.windowCount, run.invokedJobs.size(),
+                coalescedJob == null ? 0 : (coalescedJob.getEndTime() - coalescedJob.getStartTime()) / INTERVAL_MILLIS, run.elapsedMillis);
+        expect(run.invokedJobs.size() == 1, "COALESCE：应只执行一次，实际：" + run.invokedJobs.size());
+        expect(coalescedJob != null && coalescedJob.getStartTime() == run.firstStartTime
+                        && coalescedJob.getEndTime() == run.firstStartTime + run.windowCount * INTERVAL_MILLIS,
+                "COALESCE：合并后的作业时间范围有误：" + coalescedJob);
+        expect(run.completedCount == run.windowCount, "COALESCE：记为完成的作业数有误：" + run.completedCount);
+    }
+
+    private void checkLatest() throws InterruptedException {
+        Run run = run(taskConfig(CronJobCatchUpPolicy.LATEST));
+        long skipped = run.counters.getOrDefault(CronJobMetricsSnapshot.key(CronJobMetricNames.CATCH_UP_SKIPPED, TASK_NAME), 0L);
+
+        System.out.printf("LATEST：%d个缺失作业，执行%d次，跳过%d个，耗时%dms%n", run.windowCount, run.invokedJobs.size(), skipped, run.elapsedMillis);
+        expect(run.invokedJobs.size() == 1 && run.invokedJobs.get(0).getStartTime() == run.firstStartTime + (run.windowCount - 1) * INTERVAL_MILLIS,
+                "LATEST：应只执行最近的作业，实际：" + run.invokedJobs);
+        expect(skipped == run.windowCount - 1, "LATEST：跳过的作业数有误：" + skipped);
+        expect(run.completedCount == run.windowCount, "LATEST：记为完成的作业数有误：" + run.completedCount);
+    }
+
+    private void checkLatestReclaimed() throws InterruptedException {
+        Run run = run(taskConfig(CronJobCatchUpPolicy.LATEST), RECLAIMED_JOBS);
+        long skipped = run.counters.getOrDefault(CronJobMetricsSnapshot.key(CronJobMetricNames.CATCH_UP_SKIPPED, TASK_NAME), 0L);
+        long rejected = run.counters.getOrDefault(CronJobMetricsSnapshot.key(CronJobMetricNames.FENCING_REJECTED, TASK_NAME), 0L);
+
+        System.out.printf("LATEST重新认领：%d个缺失作业，执行%d次，跳过%d个，令牌过期%d个%n", run.windowCount, run.invokedJobs.size(), skipped, rejected);
+        expect(run.invokedJobs.size() == 1, "LATEST重新认领：应只执行最近的作业，实际：" + run.invokedJobs.size());
+        expect(skipped == run.windowCount - 1 - RECLAIMED_JOBS, "LATEST重新认领：令牌过期的作业不应计入跳过的作业，跳过：" + skipped);
+        expect(rejected == RECLAIMED_JOBS, "LATEST重新认领：令牌过期的作业数有误：" + rejected);
+        expect(run.completedCount == run.windowCount - RECLAIMED_JOBS, "LATEST重新认领：记为完成的作业数有误：" + run.completedCount);
+    }
+
+    private Run run(CronTaskConfig taskConfig) throws InterruptedException {
+        return run(taskConfig, 0);
+    }
+
+    //启动节点执行回溯扫描，等待追赶结束；reclaimedJobs大于0时开启防护令牌，最先记为完成的若干个作业在写入前被其他应用重新认领
+    private Run run(CronTaskConfig taskConfig, int reclaimedJobs) throws InterruptedException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.metrics-enabled", "true");
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        if (reclaimedJobs > 0) {
+            properties.put("cron.general.fencing-enabled", "true");
+            InMemoryRedisScripts.reclaimBeforeFencedCompletion(server, reclaimedJobs);
+        }
+
+        Run run = new Run();
+        AtomicInteger active = new AtomicInteger();
+        BenchmarkTask task = new BenchmarkTask(taskConfig, cronJob -> {
+            int concurrency = active.incrementAndGet();
+            synchronized (run) {
+                run.invokedJobs.add(cronJob);
+                run.maxConcurrency = Math.max(run.maxConcurrency, concurrency);
+            }
+            try {
+                Thread.sleep(EXECUTION_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+
+        CronJobWindowCalculator calculator = CronJobWindowCalculator.of(taskConfig);
+        long latestEndTime = calculator.floor(System.currentTimeMillis());
+        long[] endTimes = calculator.boundaries(latestEndTime - TimeUnit.HOURS.toMillis(BACKTRACE_HOURS), latestEndTime);
+        run.windowCount = endTimes.length;
+        run.firstStartTime = endTimes[0] - INTERVAL_MILLIS;
+
+        try (SchedulerNode node = new SchedulerNode("catch-up-node", server, properties,
+                Collections.singletonList(task), true)) {
+            long startNanos = System.nanoTime();
+            node.start();
+
+            //每个缺失作业或结束、或被跳过、或因令牌过期放弃记为完成
+            String finishedKey = CronJobMetricsSnapshot.key(CronJobMetricNames.CATCH_UP_FINISHED, TASK_NAME);
+            String skippedKey = CronJobMetricsSnapshot.key(CronJobMetricNames.CATCH_UP_SKIPPED, TASK_NAME);
+            String rejectedKey = CronJobMetricsSnapshot.key(CronJobMetricNames.FENCING_REJECTED, TASK_NAME);
+            String remainingKey = CronJobMetricsSnapshot.key(CronJobMetricNames.CATCH_UP_REMAINING, TASK_NAME);
+            long deadline = System.currentTimeMillis() + 30000L;
+            while (System.currentTimeMillis() < deadline) {
+                Map<String, Long> counters = node.getMetrics().snapshot().getCounters();
+                if (counters.getOrDefault(finishedKey, 0L) + counters.getOrDefault(skippedKey, 0L)
+                        + counters.getOrDefault(rejectedKey, 0L) >= run.windowCount) {
+                    break;
+                }
+                Thread.sleep(5);
+            }
+            run.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            CronJobMetricsSnapshot snapshot = node.getMetrics().snapshot();
+            run.counters = snapshot.getCounters();
+            expect(snapshot.getGauges().getOrDefault(remainingKey, -1L) == 0L, taskConfig.getCatchUpPolicy() + "：追赶未在期限内结束");
+            expect(snapshot.getGauges().getOrDefault(CronJobMetricsSnapshot.key(CronJobMetricNames.CATCH_UP_LAG, TASK_NAME), -1L) == 0L,
+                    taskConfig.getCatchUpPolicy() + "：追赶结束后追赶时长应为0");
+
+            CronJobStore store = node.getStore();
+            long[] startTimes = new long[endTimes.length];
+            for (int i = 0; i < endTimes.length; i++) {
+                startTimes[i] = endTimes[i] - INTERVAL_MILLIS;
+            }
+            run.completedCount = store.getCompletedJobs(TASK_NAME, startTimes).cardinality();
+        }
+
+        return run;
+    }
+
+    private static CronTaskConfig taskConfig(CronJobCatchUpPolicy policy) {
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, true, false, false, CronScheduleTimeUnit.MINUTE,
+                5, BACKTRACE_HOURS, 0, 3600, true, false);
+        taskConfig.setCatchUpPolicy(policy);
+
+        return taskConfig;
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+
+    private static class Run {
+        private final List<CronJob> invokedJobs = new ArrayList<>();
+        private int maxConcurrency;
+        private int windowCount;
+        private long firstStartTime;
+        private long elapsedMillis;
+        private int completedCount;
+        private Map<String, Long> counters;
+    }
+}
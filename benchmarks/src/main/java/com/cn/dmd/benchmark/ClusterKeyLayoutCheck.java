@@ -0,0 +1,229 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.CronJobRedisActions;
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.benchmark.redis.InMemoryRedisConnectionFactory;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.constants.CronJobKeyLayout;
+import com.cn.dmd.domain.CronJob;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 在模拟的多分片redis集群上校验key布局，模拟的集群相当于按槽转发pipeline及脚本的代理：
+ * 1. 原有布局下，作业认领脚本等多key操作因key不在同一个槽上而失败；
+ * 2. 集群布局下，认领、续时、锁关联查询【跨任务时按任务逐个读取】、完成、状态及索引读取均不产生跨槽命令，结果正确；
+ * 3. 原有布局下的作业数据在切换为集群布局后启动时完成迁移，且只迁移一次；
+ * 4. 使用spring-data-redis的集群客户端【不支持pipeline及脚本】时启动失败
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.ClusterKeyLayoutCheck [分片数]，校验失败时以状态码1退出
+ */
+public class ClusterKeyLayoutCheck {
+    private static final String[] TASK_NAMES = {"layoutTaskA", "layoutTaskB", "layoutTaskC"};
+    private static final int JOBS_PER_TASK = 10;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+
+        ClusterKeyLayoutCheck check = new ClusterKeyLayoutCheck();
+        check.checkLegacyLayoutOnCluster(shardCount);
+        check.checkClusterLayoutOnCluster(shardCount);
+        check.checkMigration();
+        check.checkClusterClient(shardCount);
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void checkLegacyLayoutOnCluster(int shardCount) {
+        InMemoryRedisConnectionFactory connectionFactory = new InMemoryRedisConnectionFactory(SchedulerNode.newRedisCluster(shardCount));
+        try (SchedulerNode node = newNode("legacy-node", connectionFactory, CronJobKeyLayout.LEGACY, false)) {
+            int failedOperations = runWorkload(node.getRedisActions(), false);
+
+            System.out.printf("LEGACY  布局，%d个分片：失败操作%d次，跨槽命令%d次%n", shardCount, failedOperations,
+                    connectionFactory.getCrossSlotErrorCount());
+            expect(connectionFactory.getCrossSlotErrorCount() > 0, "原有布局在集群上应出现跨槽命令");
+        }
+    }
+
+    private void checkClusterLayoutOnCluster(int shardCount) {
+        InMemoryRedisConnectionFactory connectionFactory = new InMemoryRedisConnectionFactory(SchedulerNode.newRedisCluster(shardCount));
+        try (SchedulerNode node = newNode("cluster-node", connectionFactory, CronJobKeyLayout.CLUSTER, true)) {
+            node.start();
+            int failedOperations = runWorkload(node.getRedisActions(), true);
+
+            System.out.printf("CLUSTER 布局，%d个分片：失败操作%d次，跨槽命令%d次%n", shardCount, failedOperations,
+                    connectionFactory.getCrossSlotErrorCount());
+            expect(failedOperations == 0, "集群布局下不应有失败的操作");
+            expect(connectionFactory.getCrossSlotErrorCount() == 0, "集群布局下不应出现跨槽命令");
+        }
+    }
+
+    private void checkMigration() {
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        long firstStartTime = firstStartTime();
+
+        try (SchedulerNode node = newNode("before-migration", new InMemoryRedisConnectionFactory(server), CronJobKeyLayout.LEGACY, false)) {
+            CronJobStore store = node.getStore();
+            for (String taskName : TASK_NAMES) {
+                List<CronJob> cronJobs = jobsOf(taskName, firstStartTime);
+                store.claimJobs(cronJobs);
+                for (int i = 0; i < cronJobs.size(); i += 2) {
+                    store.completeJobAndReleaseLock(cronJobs.get(i));
+                }
+
+                byte[] rollupKey = new CronJobKeyCodec(CronJobKeyCodecMode.LEGACY).rollupKey(taskName);
+                server.hIncrBy(rollupKey, "20180101".getBytes(StandardCharsets.UTF_8), 42L);
+            }
+        }
+
+        try (SchedulerNode node = newNode("after-migration", new InMemoryRedisConnectionFactory(server), CronJobKeyLayout.CLUSTER, false)) {
+            node.start();
+            CronJobRedisActions redisActions = node.getRedisActions();
+            CronJobKeyCodec keyCodec = redisActions.getKeyCodec();
+
+            for (String taskName : TASK_NAMES) {
+                List<CronJob> cronJobs = jobsOf(taskName, firstStartTime);
+                Map<CronJob, Boolean> statusMap = redisActions.getStatusOfJobs(cronJobs);
+                for (int i = 0; i < cronJobs.size(); i++) {
+                    expect(Boolean.valueOf(i % 2 == 0).equals(statusMap.get(cronJobs.get(i))), "迁移后作业状态有误：" + cronJobs.get(i));
+                }
+
+                expect(redisActions.getJobStartTimesOfTask(taskName, firstStartTime).length == JOBS_PER_TASK, "迁移后开始时刻索引有误：" + taskName);
+                expect(redisActions.getStalePendingJobStartTimes(taskName, Long.MIN_VALUE).length == JOBS_PER_TASK / 2, "迁移后未完成作业列表有误：" + taskName);
+                expect("42".equals(asString(server.hGet(keyCodec.rollupKey(taskName), "20180101".getBytes(StandardCharsets.UTF_8)))),
+                        "迁移后按天汇总数有误：" + taskName);
+                expect(redisActions.migrateKeyLayout(taskName, 100) == -1, "同一任务不应重复迁移：" + taskName);
+            }
+
+            System.out.printf("迁移：%d个任务、每个任务%d个作业迁移至集群布局%n", TASK_NAMES.length, JOBS_PER_TASK);
+        }
+    }
+
+    private void checkClusterClient(int shardCount) {
+        InMemoryRedisConnectionFactory connectionFactory = new InMemoryRedisConnectionFactory(SchedulerNode.newRedisCluster(shardCount));
+        connectionFactory.useClusterClient();
+        try (SchedulerNode ignored = newNode("cluster-client-node", connectionFactory, CronJobKeyLayout.CLUSTER, false)) {
+            failures.add("使用集群客户端时应启动失败");
+        } catch (RuntimeException e) {
+            Throwable cause = ExceptionUtils.getRootCause(e) == null ? e : ExceptionUtils.getRootCause(e);
+            System.out.printf("集群客户端：启动失败：%s%n", cause.getMessage());
+            expect(cause instanceof IllegalStateException, "使用集群客户端时启动失败的原因有误：" + cause);
+        }
+    }
+
+    //对每个任务依次执行认领、续时、锁关联查询、完成、状态及索引读取，返回失败的操作数
+    private int runWorkload(CronJobRedisActions store, boolean verifyResults) {
+        long firstStartTime = firstStartTime();
+        int failedOperations = 0;
+        List<CronJob> allJobs = new ArrayList<>();
+
+        for (String taskName : TASK_NAMES) {
+            List<CronJob> cronJobs = jobsOf(taskName, firstStartTime);
+            allJobs.addAll(cronJobs);
+
+            List<CronJob> claimedJobs = attempt(() -> store.claimJobs(cronJobs));
+            List<Boolean> renewed = attempt(() -> store.inspireLocks(cronJobs));
+            failedOperations += (claimedJobs == null ? 1 : 0) + (renewed == null ? 1 : 0);
+
+            if (verifyResults) {
+                expect(claimedJobs != null && claimedJobs.size() == JOBS_PER_TASK, "认领作业数有误：" + taskName);
+                expect(renewed != null && !renewed.contains(Boolean.FALSE), "续时失败：" + taskName);
+            }
+        }
+
+        //跨任务查询，涉及多个槽
+        Map<CronJob, Boolean> lockHoldInfo = attempt(() -> store.getStatusOfJobLockHoldInfo(allJobs));
+        failedOperations += lockHoldInfo == null ? 1 : 0;
+        if (verifyResults) {
+            expect(lockHoldInfo != null && lockHoldInfo.size() == allJobs.size() && !lockHoldInfo.containsValue(Boolean.FALSE),
+                    "锁关联信息有误：" + lockHoldInfo);
+        }
+
+        for (String taskName : TASK_NAMES) {
+            List<CronJob> cronJobs = jobsOf(taskName, firstStartTime);
+            for (int i = 0; i < cronJobs.size(); i += 2) {
+                CronJob cronJob = cronJobs.get(i);
+                failedOperations += attempt(() -> {
+                    store.completeJobAndReleaseLock(cronJob);
+                    return Boolean.TRUE;
+                }) == null ? 1 : 0;
+            }
+
+            Map<CronJob, Boolean> statusMap = attempt(() -> store.getStatusOfJobs(cronJobs));
+            Integer indexedCount = attempt(() -> store.getJobStartTimesOfTask(taskName, firstStartTime).length);
+            failedOperations += (statusMap == null ? 1 : 0) + (indexedCount == null ? 1 : 0);
+
+            if (verifyResults) {
+                for (int i = 0; i < cronJobs.size() && statusMap != null; i++) {
+                    expect(Boolean.valueOf(i % 2 == 0).equals(statusMap.get(cronJobs.get(i))), "作业状态有误：" + cronJobs.get(i));
+                }
+                expect(indexedCount != null && indexedCount == JOBS_PER_TASK, "开始时刻索引有误：" + taskName);
+            }
+        }
+
+        return failedOperations;
+    }
+
+    private static SchedulerNode newNode(String nodeId, InMemoryRedisConnectionFactory connectionFactory, CronJobKeyLayout keyLayout,
+                                         boolean scannerEnabled) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.key-layout", keyLayout.name());
+        properties.put("cron.general.scan-mode", "INDEXED");
+        properties.put("cron.general.scanner-leadership", "LEASE");
+
+        List<BenchmarkTask> tasks = new ArrayList<>();
+        for (String taskName : TASK_NAMES) {
+            tasks.add(BenchmarkTask.everyMinute(taskName, cronJob -> {
+            }));
+        }
+
+        return new SchedulerNode(nodeId, connectionFactory, properties, tasks, scannerEnabled);
+    }
+
+    private static List<CronJob> jobsOf(String taskName, long firstStartTime) {
+        List<CronJob> cronJobs = new ArrayList<>(JOBS_PER_TASK);
+        for (int i = 0; i < JOBS_PER_TASK; i++) {
+            cronJobs.add(new CronJob(taskName, firstStartTime + i * 60000L, firstStartTime + (i + 1) * 60000L));
+        }
+
+        return cronJobs;
+    }
+
+    private static long firstStartTime() {
+        return System.currentTimeMillis() / 60000L * 60000L - JOBS_PER_TASK * 60000L;
+    }
+
+    private static <T> T attempt(Supplier<T> operation) {
+        try {
+            return operation.get();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String asString(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.benchmark.redis.InMemoryRedisConnectionFactory;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetricsSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 校验已完成作业的本地缓存：
+ * 1. 本应用完成或读取到的已完成作业，再次读取状态、认领时不访问redis；
+ * 2. 开启广播时，其他应用完成的作业经频道写入本地缓存，之后同样不访问redis；
+ * 3. 缓存超出上限时淘汰最早写入的作业，被淘汰的作业重新从redis读取，结果不变；
+ * 4. LEGACY锁模式下认领包含多个任务的作业时，已完成的作业按各自的任务写入缓存
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.CompletionCacheCheck，校验失败时以状态码1退出
+ */
+public class CompletionCacheCheck {
+    private static final String TASK_NAME = "cacheTask";
+    private static final String OTHER_TASK_NAME = "otherCacheTask";
+    private static final int JOB_COUNT = 100;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        CompletionCacheCheck check = new CompletionCacheCheck();
+        check.checkLocalCompletions();
+        check.checkBroadcastCompletions();
+        check.checkEviction();
+        check.checkMixedTaskClaim();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void checkLocalCompletions() {
+        try (SchedulerNode node = newNode("local-node", SchedulerNode.newRedisServer(), JOB_COUNT, false)) {
+            CronJobStore store = node.getStore();
+            List<CronJob> cronJobs = jobs();
+            store.claimJobs(cronJobs);
+            for (int i = 0; i < JOB_COUNT; i += 2) {
+                store.completeJobAndReleaseLock(cronJobs.get(i));
+            }
+
+            //完成的作业在完成时写入缓存，只需读取另一半未完成的作业
+            long commands = commandsOf(node, () -> expectHalfCompleted(cronJobs, node.getRedisActions().getStatusOfJobs(cronJobs), "本应用完成后"));
+            long cachedCommands = commandsOf(node, () -> {
+                for (int i = 0; i < JOB_COUNT; i += 2) {
+                    expect(Boolean.TRUE.equals(store.getStatusOfJob(cronJobs.get(i))), "缓存的作业状态有误：" + cronJobs.get(i));
+                }
+                expect(store.claimJobs(evenJobs(cronJobs)).isEmpty(), "已完成的作业不应被认领");
+            });
+
+            System.out.printf("本应用完成：读取%d个作业状态%d条命令，读取及认领%d个已完成作业%d条命令%n", JOB_COUNT, commands, JOB_COUNT / 2,
+                    cachedCommands);
+            expect(commands == 1, "读取作业状态应只发出一条命令，实际：" + commands);
+            expect(cachedCommands == 0, "已缓存的完成作业不应访问redis，实际命令数：" + cachedCommands);
+        }
+    }
+
+    private void checkBroadcastCompletions() throws InterruptedException {
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode completingNode = newNode("completing-node", server, JOB_COUNT, true);
+             SchedulerNode readingNode = newNode("reading-node", server, JOB_COUNT, true)) {
+            CronJobStore completingStore = completingNode.getStore();
+            List<CronJob> cronJobs = jobs();
+            completingStore.claimJobs(cronJobs);
+            for (int i = 0; i < JOB_COUNT; i += 2) {
+                completingStore.completeJobAndReleaseLock(cronJobs.get(i));
+            }
+
+            //广播由订阅线程异步处理，等待全部写入本地缓存
+            String cacheSizeKey = CronJobMetricsSnapshot.key(CronJobMetricNames.COMPLETION_CACHE_SIZE, "cache");
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (readingNode.getMetrics().snapshot().getGauges().getOrDefault(cacheSizeKey, 0L) < JOB_COUNT / 2
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            CronJobStore readingStore = readingNode.getStore();
+            long cachedCommands = commandsOf(readingNode, () -> {
+                for (int i = 0; i < JOB_COUNT; i += 2) {
+                    expect(Boolean.TRUE.equals(readingStore.getStatusOfJob(cronJobs.get(i))), "广播后的作业状态有误：" + cronJobs.get(i));
+                }
+            });
+            long commands = commandsOf(readingNode, () -> expectHalfCompleted(cronJobs, readingNode.getRedisActions().getStatusOfJobs(cronJobs), "其他应用完成后"));
+
+            System.out.printf("其他应用完成并广播：读取%d个已完成作业%d条命令，读取全部%d个作业状态%d条命令%n", JOB_COUNT / 2, cachedCommands,
+                    JOB_COUNT, commands);
+            expect(cachedCommands == 0, "经广播缓存的完成作业不应访问redis，实际命令数：" + cachedCommands);
+            expect(commands == 1, "只应读取未完成的作业，实际命令数：" + commands);
+        }
+    }
+
+    private void checkEviction() {
+        int cacheSize = JOB_COUNT / 4;
+        try (SchedulerNode node = newNode("eviction-node", SchedulerNode.newRedisServer(), cacheSize, false)) {
+            CronJobStore store = node.getStore();
+            List<CronJob> cronJobs = jobs();
+            store.claimJobs(cronJobs);
+            cronJobs.forEach(store::completeJobAndReleaseLock);
+
+            //只保留最后完成的cacheSize个作业
+            long oldestCommands = commandsOf(node, () -> expect(Boolean.TRUE.equals(store.getStatusOfJob(cronJobs.get(0))), "被淘汰的作业状态有误"));
+            long latestCommands = commandsOf(node, () -> expect(Boolean.TRUE.equals(store.getStatusOfJob(cronJobs.get(JOB_COUNT - 1))), "缓存的作业状态有误"));
+
+            System.out.printf("缓存上限%d：读取被淘汰的作业%d条命令，读取最近完成的作业%d条命令%n", cacheSize, oldestCommands, latestCommands);
+            expect(oldestCommands == 1, "被淘汰的作业应重新读取redis，实际命令数：" + oldestCommands);
+            expect(latestCommands == 0, "最近完成的作业不应访问redis，实际命令数：" + latestCommands);
+        }
+    }
+
+    private void checkMixedTaskClaim() {
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode completingNode = newNode("mixed-completing-node", server, JOB_COUNT, false, "LEGACY");
+             SchedulerNode claimingNode = newNode("mixed-claiming-node", server, JOB_COUNT, false, "LEGACY")) {
+            //两个任务的作业开始时间相同，只完成其中一个任务的作业
+            List<CronJob> otherJobs = jobs(OTHER_TASK_NAME);
+            completingNode.getStore().claimJobs(otherJobs);
+            otherJobs.forEach(completingNode.getStore()::completeJobAndReleaseLock);
+
+            List<CronJob> cronJobs = jobs(TASK_NAME);
+            List<CronJob> mixedJobs = new ArrayList<>(JOB_COUNT * 2);
+            for (int i = 0; i < JOB_COUNT; i++) {
+                mixedJobs.add(cronJobs.get(i));
+                mixedJobs.add(otherJobs.get(i));
+            }
+
+            CronJobStore store = claimingNode.getStore();
+            List<CronJob> claimedJobs = store.claimJobs(mixedJobs);
+            long cachedCommands = commandsOf(claimingNode, () -> otherJobs.forEach(cronJob ->
+                    expect(Boolean.TRUE.equals(store.getStatusOfJob(cronJob)), "多任务认领：已完成的作业状态有误：" + cronJob)));
+            long uncachedCommands = commandsOf(claimingNode, () -> cronJobs.forEach(cronJob ->
+                    expect(Boolean.FALSE.equals(store.getStatusOfJob(cronJob)), "多任务认领：未完成的作业被记为完成：" + cronJob)));
+
+            System.out.printf("多任务认领【LEGACY】：认领%d个作业，读取已完成任务的作业%d条命令，读取未完成任务的作业%d条命令%n", claimedJobs.size(),
+                    cachedCommands, uncachedCommands);
+            expect(claimedJobs.equals(cronJobs), "多任务认领：应只认领未完成任务的作业，实际：" + claimedJobs.size());
+            expect(cachedCommands == 0, "多任务认领：已完成的作业应按所属任务缓存，实际命令数：" + cachedCommands);
+            expect(uncachedCommands == JOB_COUNT, "多任务认领：未完成的作业应读取redis，实际命令数：" + uncachedCommands);
+        }
+    }
+
+    private static SchedulerNode newNode(String nodeId, InMemoryRedisServer server, int cacheSize, boolean broadcastEnabled) {
+        return newNode(nodeId, server, cacheSize, broadcastEnabled, "SCRIPT");
+    }
+
+    private static SchedulerNode newNode(String nodeId, InMemoryRedisServer server, int cacheSize, boolean broadcastEnabled, String lockMode) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.completed-job-cache-size", String.valueOf(cacheSize));
+        properties.put("cron.general.completed-job-broadcast-enabled", String.valueOf(broadcastEnabled));
+        properties.put("cron.general.lock-mode", lockMode);
+        properties.put("cron.general.metrics-enabled", "true");
+
+        return new SchedulerNode(nodeId, new InMemoryRedisConnectionFactory(server), properties,
+                Arrays.asList(BenchmarkTask.everyMinute(TASK_NAME, cronJob -> {
+                }), BenchmarkTask.everyMinute(OTHER_TASK_NAME, cronJob -> {
+                })), false);
+    }
+
+    private static List<CronJob> jobs() {
+        return jobs(TASK_NAME);
+    }
+
+    private static List<CronJob> jobs(String taskName) {
+        long firstStartTime = System.currentTimeMillis() / 60000L * 60000L - JOB_COUNT * 60000L;
+        List<CronJob> cronJobs = new ArrayList<>(JOB_COUNT);
+        for (int i = 0; i < JOB_COUNT; i++) {
+            cronJobs.add(new CronJob(taskName, firstStartTime + i * 60000L, firstStartTime + (i + 1) * 60000L));
+        }
+
+        return cronJobs;
+    }
+
+    private static List<CronJob> evenJobs(List<CronJob> cronJobs) {
+        List<CronJob> evenJobs = new ArrayList<>(cronJobs.size() / 2);
+        for (int i = 0; i < cronJobs.size(); i += 2) {
+            evenJobs.add(cronJobs.get(i));
+        }
+
+        return evenJobs;
+    }
+
+    private void expectHalfCompleted(List<CronJob> cronJobs, Map<CronJob, Boolean> statusMap, String stage) {
+        expect(statusMap.size() == JOB_COUNT, stage + "：作业状态数有误：" + statusMap.size());
+        for (int i = 0; i < cronJobs.size(); i++) {
+            expect(Boolean.valueOf(i % 2 == 0).equals(statusMap.get(cronJobs.get(i))), stage + "：作业状态有误：" + cronJobs.get(i));
+        }
+    }
+
+    //执行操作期间节点发出的redis命令数
+    private static long commandsOf(SchedulerNode node, Runnable operation) {
+        long before = node.getConnectionFactory().getCommandCount();
+        operation.run();
+        return node.getConnectionFactory().getCommandCount() - before;
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.utils.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作业的哈希/相等判断及字符串形式的开销
+ * 每次执行作业时日志会多次输出同一个作业，toString类基准每次新建作业以计入首次格式化的开销；
+ * 配合{@code -prof gc}查看每个作业的内存分配
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CronJobIdentityBenchmark {
+    //一次作业执行过程中输出作业信息的日志条数
+    private static final int LOG_LINES_PER_EXECUTION = 6;
+
+    private final ConcurrentHashMap<CronJob, Boolean> executeStatusMap = new ConcurrentHashMap<>();
+    private long startTime;
+    private CronJob cronJob;
+    private CronJob sameCronJob;
+
+    @Setup
+    public void setUp() {
+        startTime = System.currentTimeMillis() / 60000L * 60000L;
+        cronJob = new CronJob("benchmarkTask", startTime, startTime + 60000L);
+        sameCronJob = new CronJob("benchmarkTask", startTime, startTime + 60000L);
+    }
+
+    @Benchmark
+    public int hashCodeOfJob() {
+        return cronJob.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsOfJob() {
+        return cronJob.equals(sameCronJob);
+    }
+
+    //调度器中的本地去重：放入后移除
+    @Benchmark
+    public Boolean localDeduplication() {
+        executeStatusMap.putIfAbsent(sameCronJob, false);
+        return executeStatusMap.remove(cronJob);
+    }
+
+    @Benchmark
+    public String toStringPerExecution() {
+        CronJob job = new CronJob("benchmarkTask", startTime, startTime + 60000L);
+
+        String text = null;
+        for (int i = 0; i < LOG_LINES_PER_EXECUTION; i++) {
+            text = job.toString();
+        }
+        return text;
+    }
+
+    //原实现：每次调用新建HashMap、DateTimeFormatter，并输出带缩进的json
+    @Benchmark
+    public String legacyToStringPerExecution() {
+        CronJob job = new CronJob("benchmarkTask", startTime, startTime + 60000L);
+
+        String text = null;
+        for (int i = 0; i < LOG_LINES_PER_EXECUTION; i++) {
+            Map<String, Object> paramsMap = new HashMap<>(4);
+            paramsMap.put("taskName", job.getTaskName());
+            paramsMap.put("startTime", DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(new Timestamp(job.getStartTime()).toLocalDateTime()));
+            paramsMap.put("endTime", DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(new Timestamp(job.getEndTime()).toLocalDateTime()));
+            text = JsonUtil.toJsonString(paramsMap);
+        }
+        return text;
+    }
+
+    @Benchmark
+    public String identity() {
+        return new CronJob("benchmarkTask", startTime, startTime + 60000L).getIdentity();
+    }
+}
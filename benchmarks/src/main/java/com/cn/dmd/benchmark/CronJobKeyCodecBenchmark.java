@@ -0,0 +1,82 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.constants.CronTaskKeyConstants;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作业状态字段及锁名的编解码开销：文本格式【原实现】与紧凑格式对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CronJobKeyCodecBenchmark {
+    private static final String TASK_NAME = "benchmarkTask";
+
+    private final CronJobKeyCodec legacyCodec = new CronJobKeyCodec(CronJobKeyCodecMode.LEGACY);
+    private final CronJobKeyCodec compactCodec = new CronJobKeyCodec(CronJobKeyCodecMode.COMPACT);
+    private long startTime;
+    private byte[] legacyField;
+    private byte[] compactField;
+
+    @Setup
+    public void setUp() {
+        startTime = System.currentTimeMillis() / 60000L * 60000L;
+        legacyField = CronJobKeyCodec.encodeLegacy(startTime);
+        compactField = CronJobKeyCodec.encodeCompact(startTime);
+    }
+
+    @Benchmark
+    public byte[] encodeLegacyField() {
+        return CronJobKeyCodec.encodeLegacy(startTime);
+    }
+
+    @Benchmark
+    public byte[] encodeCompactField() {
+        return CronJobKeyCodec.encodeCompact(startTime);
+    }
+
+    @Benchmark
+    public long decodeLegacyField() {
+        return legacyCodec.decodeField(legacyField);
+    }
+
+    @Benchmark
+    public long decodeCompactField() {
+        return compactCodec.decodeField(compactField);
+    }
+
+    //原实现：每次拼接字符串并格式化日期
+    @Benchmark
+    public byte[] lockKeyStringConcat() {
+        return (CronTaskKeyConstants.JOB_LOCK_PREFIX + CronTaskKeyConstants.SEPERATOR + TASK_NAME + CronTaskKeyConstants.SEPERATOR +
+                DateFormatUtils.format(startTime, "yyyy-MM-dd HH:mm:SS")).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] lockKeyLegacyCodec() {
+        return legacyCodec.lockKey(TASK_NAME, startTime);
+    }
+
+    @Benchmark
+    public byte[] lockKeyCompactCodec() {
+        return compactCodec.lockKey(TASK_NAME, startTime);
+    }
+}
@@ -0,0 +1,92 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobStoreType;
+import com.cn.dmd.domain.CronJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 单个作业完整的协调开销【认领、续时、完成并释放锁】：redis存储与进程内存储对比
+ * redis存储连接至redis替身并模拟网络往返，进程内存储写入临时目录中的追加日志
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CronJobStoreBenchmark {
+    private static final String TASK_NAME = "storeTask";
+
+    @Param({"REDIS", "EMBEDDED"})
+    private CronJobStoreType store;
+    //redis网络往返耗时（微秒），只对redis存储生效
+    @Param({"100"})
+    private long redisRoundTripMicros;
+
+    private Path storeDirectory;
+    private SchedulerNode node;
+    private CronJobStore cronJobStore;
+    private long nextStartTime;
+
+    @Setup
+    public void setUp() throws IOException {
+        storeDirectory = Files.createTempDirectory("cronjob-store");
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.store", store.name());
+        properties.put("cron.general.embedded-store-file", storeDirectory.resolve("cronjob.log").toString());
+
+        node = new SchedulerNode("store-node", SchedulerNode.newRedisServer(), properties,
+                Collections.singletonList(BenchmarkTask.everyMinute(TASK_NAME, cronJob -> {
+                })), false);
+        node.getConnectionFactory().setRoundTripMicros(redisRoundTripMicros);
+        cronJobStore = node.getStore();
+        nextStartTime = System.currentTimeMillis() / 60000L * 60000L;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        node.close();
+
+        try (Stream<Path> paths = Files.walk(storeDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean claimRenewAndComplete() {
+        CronJob cronJob = new CronJob(TASK_NAME, nextStartTime, nextStartTime + 60000L);
+        nextStartTime += 60000L;
+
+        List<CronJob> claimedJobs = cronJobStore.claimJobs(Collections.singletonList(cronJob));
+        boolean renewed = cronJobStore.inspireLock(cronJob);
+        cronJobStore.completeJobAndReleaseLock(cronJob);
+
+        return renewed && !claimedJobs.isEmpty();
+    }
+}
@@ -0,0 +1,102 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.utils.CronJobUtils;
+import com.cn.dmd.utils.CronJobWindowCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作业时间范围计算及启动回溯时的时间范围枚举
+ * 回溯枚举同时保留原{@code CronJobScanner.getAllTimesInMinute/getAllTimesInHour}基于LocalDateTime的实现作为对照
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CronJobWindowBenchmark {
+    @Param({"MINUTE", "HOUR"})
+    private CronScheduleTimeUnit unit;
+    //回溯小时数
+    @Param({"24"})
+    private long backtraceHours;
+
+    private CronTaskConfig taskConfig;
+    private CronJobWindowCalculator calculator;
+
+    @Setup
+    public void setUp() {
+        taskConfig = new CronTaskConfig("benchmarkTask", true, true, false, unit, unit == CronScheduleTimeUnit.MINUTE ? 5 : 1,
+                backtraceHours, 0, 60, true, false);
+        calculator = CronJobWindowCalculator.of(taskConfig);
+    }
+
+    @Benchmark
+    public CronJob currentJob() {
+        return CronJobUtils.getCronJobByNow(taskConfig);
+    }
+
+    @Benchmark
+    public Set<Long> backtraceStartTimes() {
+        long latestEndTime = calculator.floor(System.currentTimeMillis());
+        long[] endTimes = calculator.boundaries(latestEndTime - TimeUnit.HOURS.toMillis(backtraceHours), latestEndTime);
+
+        Set<Long> startTimes = new LinkedHashSet<>(endTimes.length * 4 / 3 + 1);
+        for (long endTime : endTimes) {
+            startTimes.add(endTime - calculator.getIntervalMillis());
+        }
+
+        return startTimes;
+    }
+
+    //原实现：逐个时间范围构造LocalDateTime并转换为Timestamp
+    @Benchmark
+    public Set<Long> legacyBacktraceStartTimes() {
+        ChronoUnit chronoUnit = unit == CronScheduleTimeUnit.MINUTE ? ChronoUnit.MINUTES : ChronoUnit.HOURS;
+        long durationInMillis = unit.toMillis(taskConfig.getTaskControlTimeDuration());
+        Set<Long> watchedTimes = new TreeSet<>();
+
+        LocalDateTime now = LocalDateTime.now().truncatedTo(chronoUnit);
+        if (unit == CronScheduleTimeUnit.MINUTE) {
+            int minuteInHour = now.getMinute();
+            int fromMinute = taskConfig.getTaskStartRule();
+            while (fromMinute <= minuteInHour) {
+                fromMinute += taskConfig.getTaskControlTimeDuration();
+            }
+            now = now.minus(taskConfig.getTaskControlTimeDuration() - fromMinute + minuteInHour, ChronoUnit.MINUTES);
+        } else if (now.getHour() != taskConfig.getTaskStartRule()) {
+            now = now.getHour() > taskConfig.getTaskStartRule() ? now.withHour(taskConfig.getTaskStartRule()) :
+                    now.withHour(taskConfig.getTaskStartRule()).minusDays(1);
+        }
+
+        LocalDateTime fromTime = now.minus(backtraceHours, ChronoUnit.HOURS);
+        while (!now.isEqual(fromTime)) {
+            watchedTimes.add(Timestamp.valueOf(fromTime).getTime() - durationInMillis);
+            fromTime = fromTime.plus(taskConfig.getTaskControlTimeDuration(), chronoUnit);
+        }
+        watchedTimes.add(Timestamp.valueOf(now).getTime() - durationInMillis);
+
+        return watchedTimes;
+    }
+}
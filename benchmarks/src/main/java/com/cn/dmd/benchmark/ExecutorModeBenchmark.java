@@ -0,0 +1,96 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobScheduler;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobExecutorMode;
+import com.cn.dmd.domain.CronJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个节点上一批I/O密集作业全部完成所需的时间：平台线程与虚拟线程对比
+ * 作业逻辑以休眠模拟I/O，redis替身模拟网络往返；虚拟线程模式需在支持虚拟线程的运行时上执行，否则回退为平台线程
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutorModeBenchmark {
+    private static final String TASK_NAME = "ioBoundTask";
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private CronJobExecutorMode executorMode;
+    //同时提交的作业数
+    @Param({"1000"})
+    private int jobCount;
+    //每个作业的I/O耗时（毫秒）
+    @Param({"20"})
+    private long ioMillis;
+    //redis网络往返耗时（微秒）
+    @Param({"100"})
+    private long redisRoundTripMicros;
+
+    private SchedulerNode node;
+    private CronJobScheduler scheduler;
+    private volatile CountDownLatch completedJobs;
+    private long nextStartTime;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.executor-mode", executorMode.name());
+
+        node = new SchedulerNode("io-node", SchedulerNode.newRedisServer(), properties,
+                Collections.singletonList(BenchmarkTask.everyMinute(TASK_NAME, cronJob -> {
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(ioMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    completedJobs.countDown();
+                })), false);
+        node.getConnectionFactory().setRoundTripMicros(redisRoundTripMicros);
+        scheduler = node.getScheduler();
+        nextStartTime = System.currentTimeMillis() / 60000L * 60000L;
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareBatch() {
+        completedJobs = new CountDownLatch(jobCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        node.close();
+    }
+
+    @Benchmark
+    public void runBatch() throws InterruptedException {
+        for (int i = 0; i < jobCount; i++) {
+            scheduler.schedule(new CronJob(TASK_NAME, nextStartTime, nextStartTime + 60000L));
+            nextStartTime += 60000L;
+        }
+
+        completedJobs.await();
+    }
+}
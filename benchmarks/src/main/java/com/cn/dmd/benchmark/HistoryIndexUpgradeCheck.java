@@ -0,0 +1,108 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobCatchUpPolicy;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.utils.CronJobWindowCalculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 校验开启history-index-enabled后的升级：5分钟一个作业的任务，一天内的作业由未维护开始时刻索引的应用写入
+ * 1. 开启索引的应用读取作业列表时包含升级前的全部作业；
+ * 2. LATEST策略下启动回溯不再认领升级前已完成的窗口，不执行任何作业；
+ * 3. 升级前创建、未完成且不再持有锁的作业仍作为失败作业候选
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.HistoryIndexUpgradeCheck，校验失败时以状态码1退出
+ */
+public class HistoryIndexUpgradeCheck {
+    private static final String TASK_NAME = "historyIndexTask";
+    private static final long INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    //回溯一天
+    private static final int BACKTRACE_HOURS = 24;
+    //回溯结束后等待可能的重复执行
+    private static final long SETTLE_MILLIS = 3000L;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        HistoryIndexUpgradeCheck check = new HistoryIndexUpgradeCheck();
+        check.check();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void check() throws InterruptedException {
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, true, false, false, CronScheduleTimeUnit.MINUTE,
+                5, BACKTRACE_HOURS, 0, 3600, true, false);
+        taskConfig.setCatchUpPolicy(CronJobCatchUpPolicy.LATEST);
+        CronJobWindowCalculator calculator = CronJobWindowCalculator.of(taskConfig);
+        long latestEndTime = calculator.floor(System.currentTimeMillis());
+        long[] endTimes = calculator.boundaries(latestEndTime - TimeUnit.HOURS.toMillis(BACKTRACE_HOURS), latestEndTime);
+        long fromTime = endTimes[0] - INTERVAL_MILLIS;
+        //更早的一个作业已创建但未完成，锁已不存在
+        long stuckStartTime = fromTime - INTERVAL_MILLIS;
+
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode oldNode = new SchedulerNode("old-node", server, properties(false), Collections.singletonList(
+                new BenchmarkTask(taskConfig, cronJob -> {
+                })), false)) {
+            oldNode.start();
+            CronJobStore store = oldNode.getStore();
+            for (long endTime : endTimes) {
+                CronJob cronJob = new CronJob(TASK_NAME, endTime - INTERVAL_MILLIS, endTime);
+                store.claimJobs(Collections.singletonList(cronJob));
+                store.completeJobAndReleaseLock(cronJob);
+            }
+            store.createJobIfNotPresent(new CronJob(TASK_NAME, stuckStartTime, stuckStartTime + INTERVAL_MILLIS));
+        }
+
+        Set<Long> executedStartTimes = ConcurrentHashMap.newKeySet();
+        try (SchedulerNode newNode = new SchedulerNode("new-node", server, properties(true), Collections.singletonList(
+                new BenchmarkTask(taskConfig, cronJob -> executedStartTimes.add(cronJob.getStartTime()))), true)) {
+            newNode.start();
+            Thread.sleep(SETTLE_MILLIS);
+
+            int jobCount = newNode.getRedisActions().getJobStartTimesOfTask(TASK_NAME, fromTime).length;
+            long[] candidates = newNode.getStore().getFailedJobCandidates(TASK_NAME, stuckStartTime);
+            long replayedCount = executedStartTimes.stream().filter(startTime -> startTime >= fromTime && startTime < latestEndTime).count();
+
+            System.out.printf("升级前写入%d个作业：开启索引后读取%d个，回溯重复执行%d个，失败作业候选包含未完成作业：%s%n", endTimes.length,
+                    jobCount, replayedCount, Arrays.stream(candidates).anyMatch(startTime -> startTime == stuckStartTime));
+            expect(jobCount == endTimes.length, "开启索引后读取的作业数有误：" + jobCount);
+            expect(replayedCount == 0, "升级前已完成的窗口不应再执行：" + replayedCount);
+            expect(Arrays.stream(candidates).anyMatch(startTime -> startTime == stuckStartTime), "升级前未完成的作业不在失败作业候选中");
+        }
+    }
+
+    private static Map<String, Object> properties(boolean historyIndexEnabled) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.history-index-enabled", String.valueOf(historyIndexEnabled));
+        properties.put("cron.general.lock-time", "1");
+
+        return properties;
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobRedisActions;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.domain.CronJob;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 各编码方式下已完成作业记录在redis中的数据量【key、字段、值的字节数，不含redis自身的结构开销】
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.KeyCodecFootprint [作业数]
+ */
+public class KeyCodecFootprint {
+    private static final String TASK_NAME = "footprintTask";
+
+    public static void main(String[] args) {
+        int jobCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        for (CronJobKeyCodecMode mode : new CronJobKeyCodecMode[]{CronJobKeyCodecMode.LEGACY, CronJobKeyCodecMode.COMPACT}) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("cron.general.key-codec", mode.name());
+
+            InMemoryRedisServer server = SchedulerNode.newRedisServer();
+            try (SchedulerNode node = new SchedulerNode("footprint-node", server, properties,
+                    Collections.singletonList(BenchmarkTask.everyMinute(TASK_NAME, cronJob -> {
+                    })), false)) {
+                CronJobRedisActions redisActions = node.getRedisActions();
+
+                long firstStartTime = System.currentTimeMillis() / 60000L * 60000L - jobCount * 60000L;
+                for (int i = 0; i < jobCount; i++) {
+                    CronJob cronJob = new CronJob(TASK_NAME, firstStartTime + i * 60000L, firstStartTime + (i + 1) * 60000L);
+                    redisActions.createJobIfNotPresent(cronJob);
+                    redisActions.markJobCompleted(cronJob);
+                }
+
+                System.out.printf("%-8s %d个作业：%d字节，平均每个作业%.1f字节%n", mode, jobCount, server.payloadBytes(),
+                        server.payloadBytes() / (double) jobCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.CronJobLease;
+import com.cn.dmd.CronJobLockRenewer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.domain.CronJob;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 校验锁续时服务，每2秒续时一次、刻度100ms：
+ * 1. 锁持有3秒，一次续时请求因连接失败而失败后，在之后的刻度上重试，锁在超时前续上，租约不丢失；
+ * 2. 锁持有4秒，redis暂停期间时间轮照常推进，其他刻度上到期的租约按时发出续时请求，不被阻塞中的请求拖延
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.LockRenewalCheck，校验失败时以状态码1退出
+ */
+public class LockRenewalCheck {
+    private static final String TASK_NAME = "renewalTask";
+    private static final long TICK_MILLIS = 100L;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        LockRenewalCheck check = new LockRenewalCheck();
+        check.checkTransientFailure();
+        check.checkSlowRedis();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    //第一次续时请求连接失败，按完整的续时间隔重试时锁已超时
+    private void checkTransientFailure() throws InterruptedException {
+        try (SchedulerNode node = newNode("transient-failure-node", 3)) {
+            CronJob cronJob = job(0);
+            node.getStore().claimJobs(Collections.singletonList(cronJob));
+            CronJobLockRenewer renewer = node.getBean(CronJobLockRenewer.class);
+            CronJobLease lease = renewer.register(cronJob);
+
+            Thread.sleep(1500L);
+            node.getConnectionFactory().failAfterRoundTrips(0);
+            Thread.sleep(3500L);
+
+            boolean isLockHeld = isLockHeld(node, cronJob);
+            System.out.printf("续时请求失败一次：续时成功%d次，失败%d次，租约丢失：%s，5秒后仍持有锁：%s%n", renewer.getRenewedCount(),
+                    renewer.getFailedRenewalCount(), lease.isLost(), isLockHeld);
+            expect(renewer.getFailedRenewalCount() == 1, "续时失败次数有误：" + renewer.getFailedRenewalCount());
+            expect(!lease.isLost(), "续时请求失败一次后租约不应丢失");
+            expect(isLockHeld, "续时请求失败一次后锁不应超时");
+            renewer.unregister(lease);
+        }
+    }
+
+    //两个租约相隔500ms注册，第一个租约到期前redis暂停1.5秒
+    private void checkSlowRedis() throws InterruptedException {
+        try (SchedulerNode node = newNode("slow-redis-node", 4)) {
+            CronJob firstJob = job(0);
+            CronJob secondJob = job(1);
+            node.getStore().claimJobs(Collections.singletonList(firstJob));
+            node.getStore().claimJobs(Collections.singletonList(secondJob));
+            CronJobLockRenewer renewer = node.getBean(CronJobLockRenewer.class);
+            CronJobLease firstLease = renewer.register(firstJob);
+            Thread.sleep(500L);
+            CronJobLease secondLease = renewer.register(secondJob);
+
+            Thread.sleep(1400L);
+            node.getConnectionFactory().pause(1500L);
+            Thread.sleep(2600L);
+
+            System.out.printf("redis暂停1.5秒：续时最大延迟%dms，续时成功%d次，租约丢失：%s/%s%n", renewer.getMaxRenewalLagInMillis(),
+                    renewer.getRenewedCount(), firstLease.isLost(), secondLease.isLost());
+            expect(renewer.getMaxRenewalLagInMillis() < 3 * TICK_MILLIS, "redis暂停期间续时请求被拖延：" + renewer.getMaxRenewalLagInMillis() + "ms");
+            expect(renewer.getRenewedCount() >= 2, "redis恢复后租约应续时成功：" + renewer.getRenewedCount());
+            expect(!firstLease.isLost() && !secondLease.isLost(), "redis暂停期间租约不应丢失");
+            renewer.unregister(firstLease);
+            renewer.unregister(secondLease);
+        }
+    }
+
+    private static SchedulerNode newNode(String nodeId, int lockTimeInSeconds) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.lock-time", String.valueOf(lockTimeInSeconds));
+        properties.put("cron.general.lock-inspiration-interval", "2");
+        properties.put("cron.general.lock-renewal-tick-millis", String.valueOf(TICK_MILLIS));
+
+        return new SchedulerNode(nodeId, SchedulerNode.newRedisServer(), properties,
+                Collections.singletonList(BenchmarkTask.everyMinute(TASK_NAME, cronJob -> {
+                })), false);
+    }
+
+    private static CronJob job(int index) {
+        long startTime = System.currentTimeMillis() / 60000L * 60000L - (index + 1) * 60000L;
+        return new CronJob(TASK_NAME, startTime, startTime + 60000L);
+    }
+
+    private static boolean isLockHeld(SchedulerNode node, CronJob cronJob) {
+        CronJobKeyCodec keyCodec = node.getRedisActions().getKeyCodec();
+        return node.getConnectionFactory().getServer().get(keyCodec.lockKey(TASK_NAME, cronJob.getStartTime())) != null;
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
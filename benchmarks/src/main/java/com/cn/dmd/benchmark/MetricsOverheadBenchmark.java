@@ -0,0 +1,56 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.metrics.CronJobMetrics;
+import com.cn.dmd.metrics.InMemoryCronJobMetrics;
+import com.cn.dmd.metrics.NoopCronJobMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标埋点的开销：未开启时应接近空操作，开启时多线程记录不应相互阻塞
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+    @Param({"false", "true"})
+    private boolean metricsEnabled;
+
+    private CronJobMetrics metrics;
+
+    @Setup
+    public void setUp() {
+        metrics = metricsEnabled ? new InMemoryCronJobMetrics() : new NoopCronJobMetrics();
+    }
+
+    @Benchmark
+    public void increment() {
+        metrics.increment(CronJobMetricNames.JOB_SUBMITTED, "benchmarkTask");
+    }
+
+    //与埋点处相同的写法：开启时才读取时钟
+    @Benchmark
+    public void timedSection() {
+        long startNanos = metrics.isEnabled() ? System.nanoTime() : 0L;
+        if (metrics.isEnabled()) {
+            metrics.recordNanos(CronJobMetricNames.EXECUTION, "benchmarkTask", System.nanoTime() - startNanos);
+        }
+    }
+}
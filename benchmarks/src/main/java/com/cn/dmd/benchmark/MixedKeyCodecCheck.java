@@ -0,0 +1,162 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.constants.CronJobLockMode;
+import com.cn.dmd.constants.CronJobRetentionPolicy;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 校验key-codec为MIGRATE的应用与未升级的应用【以LEGACY模拟】混合部署时作业不被重复执行：
+ * 1. 未升级的应用已以旧格式记录作业，升级的应用认领时不再创建新格式的字段，完成后未升级的应用读取到作业已完成，无法再认领；
+ * 2. 只有升级的应用记录并完成的作业：未升级的应用回溯时同样读取到作业已完成，无法再认领；
+ * 分别在关闭及开启防护令牌、以及使用原有的锁实现【lock-mode: LEGACY】时校验；
+ * 3. 压缩已完成作业时按作业判断：旧格式为未完成、新格式为已完成的作业视为已完成，两种格式的字段一并移除，按天汇总只计一次
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.MixedKeyCodecCheck，校验失败时以状态码1退出
+ */
+public class MixedKeyCodecCheck {
+    private static final String TASK_NAME = "mixedKeyCodecTask";
+    private static final long INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        MixedKeyCodecCheck check = new MixedKeyCodecCheck();
+        check.check("关闭防护令牌", false, CronJobLockMode.SCRIPT);
+        check.check("开启防护令牌", true, CronJobLockMode.SCRIPT);
+        check.check("原有的锁实现", false, CronJobLockMode.LEGACY);
+        check.checkCompaction();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void check(String name, boolean fencingEnabled, CronJobLockMode lockMode) {
+        long startTime = (System.currentTimeMillis() / INTERVAL_MILLIS - 10) * INTERVAL_MILLIS;
+        CronJob sharedJob = new CronJob(TASK_NAME, startTime, startTime + INTERVAL_MILLIS);
+        CronJob migratedOnlyJob = new CronJob(TASK_NAME, startTime + INTERVAL_MILLIS, startTime + 2 * INTERVAL_MILLIS);
+
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode oldNode = newNode("old-node", server, CronJobKeyCodecMode.LEGACY, fencingEnabled, lockMode);
+             SchedulerNode migrateNode = newNode("migrate-node", server, CronJobKeyCodecMode.MIGRATE, fencingEnabled, lockMode)) {
+            CronJobStore oldStore = oldNode.getStore();
+            CronJobStore migrateStore = migrateNode.getStore();
+
+            //未升级的应用先记录作业，升级的应用认领后完成并释放锁
+            oldStore.createJobIfNotPresent(sharedJob);
+            List<CronJob> claimedJobs = migrateStore.claimJobs(Collections.singletonList(sharedJob));
+            expect(claimedJobs.size() == 1, name + "：升级的应用未能认领作业");
+            int sharedFieldCount = fieldCount(server, sharedJob);
+            claimedJobs.forEach(migrateStore::completeJobAndReleaseLock);
+
+            //只有升级的应用记录的作业，完成后单独释放锁
+            claimedJobs = migrateStore.claimJobs(Collections.singletonList(migratedOnlyJob));
+            expect(claimedJobs.size() == 1, name + "：升级的应用未能认领只由其记录的作业");
+            for (CronJob cronJob : claimedJobs) {
+                migrateStore.markJobCompleted(cronJob);
+                migrateStore.deleteLock(cronJob);
+            }
+
+            boolean sharedCompleted = Boolean.TRUE.equals(oldStore.getStatusOfJob(sharedJob));
+            boolean migratedOnlyCompleted = Boolean.TRUE.equals(oldStore.getStatusOfJob(migratedOnlyJob));
+            int reclaimedCount = oldStore.claimJobs(Arrays.asList(sharedJob, migratedOnlyJob)).size();
+
+            System.out.printf("%s：双方均记录的作业认领后字段数%d，未升级的应用读取为已完成：%s/%s，再次认领%d个%n", name, sharedFieldCount,
+                    sharedCompleted, migratedOnlyCompleted, reclaimedCount);
+            expect(sharedFieldCount == 1, name + "：旧格式字段已存在时不应再创建新格式的字段，字段数：" + sharedFieldCount);
+            expect(sharedCompleted, name + "：未升级的应用读取双方均记录的作业为未完成");
+            expect(migratedOnlyCompleted, name + "：未升级的应用读取只由升级的应用记录的作业为未完成");
+            expect(reclaimedCount == 0, name + "：未升级的应用再次认领到已完成的作业：" + reclaimedCount);
+        }
+    }
+
+    private void checkCompaction() {
+        long startTime = (System.currentTimeMillis() / INTERVAL_MILLIS - 10) * INTERVAL_MILLIS;
+        //升级前失败、升级后由迁移模式的应用重新执行完成的作业，以及两种格式均已完成的作业
+        CronJob rerunJob = new CronJob(TASK_NAME, startTime, startTime + INTERVAL_MILLIS);
+        CronJob completedJob = new CronJob(TASK_NAME, startTime + INTERVAL_MILLIS, startTime + 2 * INTERVAL_MILLIS);
+        CronJobKeyCodec keyCodec = new CronJobKeyCodec(CronJobKeyCodecMode.MIGRATE);
+        byte[] processListKey = keyCodec.processListKey(TASK_NAME);
+        byte[] completed = "true".getBytes(StandardCharsets.UTF_8);
+
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode oldNode = newNode("old-node", server, CronJobKeyCodecMode.LEGACY, false, CronJobLockMode.SCRIPT)) {
+            oldNode.getStore().createJobIfNotPresent(rerunJob);
+            oldNode.getStore().createJobIfNotPresent(completedJob);
+        }
+        server.hSet(processListKey, keyCodec.readFields(rerunJob.getStartTime())[0], completed);
+        for (byte[] field : keyCodec.readFields(completedJob.getStartTime())) {
+            server.hSet(processListKey, field, completed);
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.key-codec", CronJobKeyCodecMode.MIGRATE.name());
+        properties.put("cron.general.retention-horizon-in-hours", "1");
+        try (SchedulerNode migrateNode = new SchedulerNode("migrate-node", server, properties, Collections.emptyList(), false)) {
+            int compactedCount = migrateNode.getRedisActions().compactCompletedJobs(TASK_NAME, System.currentTimeMillis(), 1, 10,
+                    CronJobRetentionPolicy.ROLLUP);
+            int remainingFieldCount = fieldCount(server, rerunJob) + fieldCount(server, completedJob);
+            long indexedCount = server.zCard(keyCodec.startTimeIndexKey(TASK_NAME));
+            long rollupCount = server.hEntries(keyCodec.rollupKey(TASK_NAME)).stream()
+                    .mapToLong(entry -> Long.parseLong(new String(entry.getValue(), StandardCharsets.UTF_8))).sum();
+
+            System.out.printf("压缩：移除%d个作业，残留字段%d个，残留索引%d个，按天汇总%d个%n", compactedCount, remainingFieldCount,
+                    indexedCount, rollupCount);
+            expect(compactedCount == 2, "压缩：移除的作业数有误：" + compactedCount);
+            expect(remainingFieldCount == 0, "压缩：残留未移除的字段，已完成的作业会被再次执行：" + remainingFieldCount);
+            expect(indexedCount == 0, "压缩：残留未移除的索引：" + indexedCount);
+            expect(rollupCount == 2, "压缩：按天汇总的完成数有误：" + rollupCount);
+        }
+    }
+
+    //作业在作业状态列表中的字段数，两种格式各算一个
+    private static int fieldCount(InMemoryRedisServer server, CronJob cronJob) {
+        CronJobKeyCodec keyCodec = new CronJobKeyCodec(CronJobKeyCodecMode.MIGRATE);
+        int count = 0;
+        for (byte[] field : keyCodec.readFields(cronJob.getStartTime())) {
+            if (server.hGet(keyCodec.processListKey(cronJob.getTaskName()), field) != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static SchedulerNode newNode(String nodeId, InMemoryRedisServer server, CronJobKeyCodecMode keyCodecMode, boolean fencingEnabled,
+                                         CronJobLockMode lockMode) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.key-codec", keyCodecMode.name());
+        properties.put("cron.general.fencing-enabled", String.valueOf(fencingEnabled));
+        properties.put("cron.general.lock-mode", lockMode.name());
+
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, false, true, false, CronScheduleTimeUnit.MINUTE,
+                5, 1, 0, 3600, true, false);
+        return new SchedulerNode(nodeId, server, properties, Collections.singletonList(new BenchmarkTask(taskConfig, cronJob -> {
+        })), false);
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
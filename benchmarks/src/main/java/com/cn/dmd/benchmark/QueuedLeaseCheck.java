@@ -0,0 +1,127 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 校验认领后在作业池中排队的作业不会因锁超时被其他应用重复执行：锁持有2秒、每秒续时一次，作业池并发数为1，
+ * 一次认领的作业排队总时长约3秒，期间另一个应用每200毫秒尝试认领同一批作业【模拟其失败作业扫描】
+ * 1. 逐个执行：每个作业只由认领的应用执行一次；
+ * 2. COALESCE合并执行：以不相接的窗口组成若干段，每段只执行一次；
+ * 3. 批量执行：首尾相接的作业按批量大小成组执行；
+ * 每种方式均校验另一个应用未认领到任何作业，且全部作业记为完成
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.QueuedLeaseCheck，校验失败时以状态码1退出
+ */
+public class QueuedLeaseCheck {
+    private static final String TASK_NAME = "queuedLeaseTask";
+    private static final long INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int WINDOW_COUNT = 6;
+    //每个窗口的执行耗时，合并执行时按覆盖的窗口数累计
+    private static final long EXECUTION_MILLIS = 500L;
+    //另一个应用尝试认领的间隔
+    private static final long COMPETE_INTERVAL_MILLIS = 200L;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        QueuedLeaseCheck check = new QueuedLeaseCheck();
+        check.check("逐个执行", 0, false);
+        check.check("合并执行", 0, true);
+        check.check("批量执行", 2, false);
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void check(String name, int batchSize, boolean coalesced) throws InterruptedException {
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, false, true, false, CronScheduleTimeUnit.MINUTE,
+                5, 1, 0, 3600, true, false);
+        taskConfig.setBatchSize(batchSize);
+
+        //合并执行时每两个窗口之间空出一个窗口，切分为若干段
+        long firstStartTime = (System.currentTimeMillis() / INTERVAL_MILLIS - 100) * INTERVAL_MILLIS;
+        List<CronJob> cronJobs = new ArrayList<>(WINDOW_COUNT);
+        for (int i = 0; i < WINDOW_COUNT; i++) {
+            long startTime = firstStartTime + (coalesced ? i + i / 2 : i) * INTERVAL_MILLIS;
+            cronJobs.add(new CronJob(TASK_NAME, startTime, startTime + INTERVAL_MILLIS));
+        }
+
+        AtomicInteger executedCount = new AtomicInteger();
+        AtomicInteger competingClaimedCount = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(WINDOW_COUNT);
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        try (SchedulerNode node = new SchedulerNode("claiming-node", server, properties(), Collections.singletonList(
+                new BenchmarkTask(taskConfig, cronJob -> {
+                    int windows = (int) ((cronJob.getEndTime() - cronJob.getStartTime()) / INTERVAL_MILLIS);
+                    executedCount.addAndGet(windows);
+                    sleep(EXECUTION_MILLIS * windows);
+                })), false);
+             SchedulerNode competingNode = new SchedulerNode("competing-node", server, properties(), Collections.singletonList(
+                     new BenchmarkTask(taskConfig, cronJob -> {
+                     })), false)) {
+            long startNanos = System.nanoTime();
+            if (coalesced) {
+                node.getScheduler().claimAndScheduleCoalesced(cronJobs, cronJob -> finished.countDown());
+            } else {
+                node.getScheduler().claimAndScheduleAll(cronJobs, cronJob -> finished.countDown());
+            }
+
+            CronJobStore competingStore = competingNode.getStore();
+            while (!finished.await(COMPETE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                for (CronJob cronJob : competingStore.claimJobs(cronJobs)) {
+                    competingClaimedCount.incrementAndGet();
+                    competingStore.deleteLock(cronJob);
+                }
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            long completedCount = cronJobs.stream().filter(cronJob -> Boolean.TRUE.equals(competingStore.getStatusOfJob(cronJob))).count();
+            System.out.printf("%s：%d个作业排队%dms，执行%d个窗口，另一个应用认领%d个，记为完成%d个%n", name, WINDOW_COUNT, elapsedMillis,
+                    executedCount.get(), competingClaimedCount.get(), completedCount);
+            expect(executedCount.get() == WINDOW_COUNT, name + "：执行的窗口数有误：" + executedCount.get());
+            expect(competingClaimedCount.get() == 0, name + "：排队期间另一个应用认领到作业：" + competingClaimedCount.get());
+            expect(completedCount == WINDOW_COUNT, name + "：记为完成的作业数有误：" + completedCount);
+        }
+    }
+
+    private static Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.lock-time", "2");
+        properties.put("cron.general.lock-inspiration-interval", "1");
+        properties.put("cron.general.default-bulkhead-concurrency", "1");
+
+        return properties;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
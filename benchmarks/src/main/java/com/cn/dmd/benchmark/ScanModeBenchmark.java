@@ -0,0 +1,130 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobRedisActions;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobScanMode;
+import com.cn.dmd.domain.CronJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 失败作业扫描一次的开销与作业历史规模的关系：FULL模式读取全部历史，INDEXED模式只读取未完成作业列表
+ * 扫描步骤与{@code CronJobScanner}一致：取候选开始时刻 -> 读取作业状态 -> 读取未完成作业的锁
+ * scanOnce为原有的装箱实现【开始时刻集合、作业列表、两次作业映射】，scanOnceUnboxed为现有的开始时刻数组及下标位图实现，
+ * 配合{@code -prof gc}对比两者的分配
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanModeBenchmark {
+    private static final String TASK_NAME = "scanTask";
+    //卡住【未完成且未持有锁】的作业数
+    private static final int STUCK_JOB_COUNT = 10;
+
+    @Param({"FULL", "INDEXED"})
+    private CronJobScanMode scanMode;
+    //作业历史规模
+    @Param({"1000", "10000", "100000"})
+    private int historySize;
+
+    private SchedulerNode node;
+    private CronJobRedisActions redisActions;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.scan-mode", scanMode.name());
+        properties.put("cron.general.lock-time", 1);
+        properties.put("cron.general.lock-inspiration-interval", 1);
+
+        node = new SchedulerNode("scan-node", SchedulerNode.newRedisServer(), properties,
+                Collections.singletonList(BenchmarkTask.everyMinute(TASK_NAME, cronJob -> {
+                })), false);
+        redisActions = node.getRedisActions();
+
+        long firstStartTime = System.currentTimeMillis() / 60000L * 60000L - historySize * 60000L;
+        for (int i = 0; i < historySize; i++) {
+            CronJob cronJob = new CronJob(TASK_NAME, firstStartTime + i * 60000L, firstStartTime + (i + 1) * 60000L);
+            redisActions.createJobIfNotPresent(cronJob);
+            if (i < historySize - STUCK_JOB_COUNT) {
+                redisActions.markJobCompleted(cronJob);
+            }
+        }
+
+        //等待未完成作业超出锁超时时间
+        TimeUnit.MILLISECONDS.sleep(1100L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        node.close();
+    }
+
+    @Benchmark
+    public Map<CronJob, Boolean> scanOnce() {
+        Set<Long> startTimes = scanMode == CronJobScanMode.INDEXED ?
+                Arrays.stream(redisActions.getStalePendingJobStartTimes(TASK_NAME, Long.MIN_VALUE)).boxed().collect(Collectors.toSet()) :
+                redisActions.getJobsOfTask(TASK_NAME);
+
+        List<CronJob> cronJobs = startTimes.stream().map(startTime -> new CronJob(TASK_NAME, startTime, startTime + 60000L))
+                .collect(Collectors.toList());
+        List<CronJob> unCompletedJobs = redisActions.getStatusOfJobs(cronJobs).entrySet().stream()
+                .filter(entry -> !Boolean.TRUE.equals(entry.getValue())).map(Map.Entry::getKey).collect(Collectors.toList());
+
+        return unCompletedJobs.isEmpty() ? Collections.emptyMap() : redisActions.getStatusOfJobLockHoldInfo(unCompletedJobs);
+    }
+
+    @Benchmark
+    public List<CronJob> scanOnceUnboxed() {
+        long[] startTimes = scanMode == CronJobScanMode.INDEXED ? redisActions.getStalePendingJobStartTimes(TASK_NAME, Long.MIN_VALUE) :
+                redisActions.getJobStartTimesOfTask(TASK_NAME, Long.MIN_VALUE);
+
+        long[] unCompletedStartTimes = exclude(startTimes, redisActions.getCompletedJobs(TASK_NAME, startTimes));
+        if (unCompletedStartTimes.length == 0) {
+            return Collections.emptyList();
+        }
+
+        long[] candicateStartTimes = exclude(unCompletedStartTimes, redisActions.getLockHeldJobs(TASK_NAME, unCompletedStartTimes));
+        List<CronJob> candicateCronJobs = new ArrayList<>(candicateStartTimes.length);
+        for (long startTime : candicateStartTimes) {
+            candicateCronJobs.add(new CronJob(TASK_NAME, startTime, startTime + 60000L));
+        }
+
+        return candicateCronJobs;
+    }
+
+    private static long[] exclude(long[] startTimes, BitSet excluded) {
+        long[] remaining = new long[startTimes.length - excluded.cardinality()];
+        int position = 0;
+        for (int i = excluded.nextClearBit(0); i < startTimes.length; i = excluded.nextClearBit(i + 1)) {
+            remaining[position++] = startTimes[i];
+        }
+
+        return remaining;
+    }
+}
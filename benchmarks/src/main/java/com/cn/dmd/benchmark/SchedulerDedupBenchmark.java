@@ -0,0 +1,78 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobScheduler;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.domain.CronJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多个线程反复提交同一批作业时{@code DefaultCronJobScheduler.schedule}的吞吐
+ * 同一作业在作业池中时被本地去重，执行完成后再次提交时由redis中的完成状态去重
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SchedulerDedupBenchmark {
+    private static final String TASK_NAME = "dedupTask";
+    //反复提交的作业数，需为2的幂
+    private static final int HOT_JOB_COUNT = 16;
+
+    private SchedulerNode node;
+    private CronJobScheduler scheduler;
+    private CronJob[] hotJobs;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.metrics-enabled", true);
+
+        node = new SchedulerNode("dedup-node", SchedulerNode.newRedisServer(), properties,
+                Collections.singletonList(BenchmarkTask.everyMinute(TASK_NAME, cronJob -> {
+                })), false);
+        scheduler = node.getScheduler();
+
+        long firstStartTime = System.currentTimeMillis() / 60000L * 60000L;
+        hotJobs = new CronJob[HOT_JOB_COUNT];
+        for (int i = 0; i < HOT_JOB_COUNT; i++) {
+            hotJobs[i] = new CronJob(TASK_NAME, firstStartTime + i * 60000L, firstStartTime + (i + 1) * 60000L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println(node.getMetrics().snapshot());
+        node.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Benchmark
+    public void schedule(Cursor cursor) {
+        scheduler.schedule(hotJobs[cursor.next++ & (HOT_JOB_COUNT - 1)]);
+    }
+}
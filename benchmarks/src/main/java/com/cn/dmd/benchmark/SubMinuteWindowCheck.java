@@ -0,0 +1,163 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 校验按秒粒度调度的任务：10秒一个作业，同一分钟内有6个作业
+ * 1. COMPACT编码下同一分钟内的作业各自认领、各自记为完成，作业状态字段及锁名互不相同；
+ * 2. COMPACT编码下启动回溯出的同一分钟内的作业全部执行；
+ * 3. LEGACY、MIGRATE编码的锁名只精确到分钟，存在这类任务时启动失败
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.SubMinuteWindowCheck，校验失败时以状态码1退出
+ */
+public class SubMinuteWindowCheck {
+    private static final String TASK_NAME = "subMinuteTask";
+    private static final long INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final int WINDOWS_PER_MINUTE = 6;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        SubMinuteWindowCheck check = new SubMinuteWindowCheck();
+        check.checkClaimAndComplete();
+        check.checkBacktrace();
+        check.checkRejected(CronJobKeyCodecMode.LEGACY);
+        check.checkRejected(CronJobKeyCodecMode.MIGRATE);
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    private void checkClaimAndComplete() {
+        try (SchedulerNode node = newNode(CronJobKeyCodecMode.COMPACT, false, cronJob -> {
+        })) {
+            node.start();
+
+            List<CronJob> cronJobs = jobsOfPreviousMinute();
+            CronJobKeyCodec keyCodec = node.getRedisActions().getKeyCodec();
+            CronJobKeyCodec legacyKeyCodec = new CronJobKeyCodec(CronJobKeyCodecMode.LEGACY);
+            Set<String> lockKeys = new HashSet<>();
+            Set<String> legacyLockKeys = new HashSet<>();
+            for (CronJob cronJob : cronJobs) {
+                lockKeys.add(new String(keyCodec.lockKey(TASK_NAME, cronJob.getStartTime()), StandardCharsets.ISO_8859_1));
+                legacyLockKeys.add(new String(legacyKeyCodec.lockKey(TASK_NAME, cronJob.getStartTime()), StandardCharsets.ISO_8859_1));
+            }
+
+            CronJobStore store = node.getStore();
+            List<CronJob> claimedJobs = store.claimJobs(cronJobs);
+            for (int i = 0; i < cronJobs.size(); i += 2) {
+                store.completeJobAndReleaseLock(cronJobs.get(i));
+            }
+            long[] startTimes = new long[cronJobs.size()];
+            for (int i = 0; i < startTimes.length; i++) {
+                startTimes[i] = cronJobs.get(i).getStartTime();
+            }
+            BitSet completedJobs = store.getCompletedJobs(TASK_NAME, startTimes);
+
+            System.out.printf("同一分钟内%d个作业：COMPACT锁名%d个，LEGACY锁名%d个；认领%d个，完成隔一个作业后已完成%s%n", cronJobs.size(),
+                    lockKeys.size(), legacyLockKeys.size(), claimedJobs.size(), completedJobs);
+            expect(lockKeys.size() == WINDOWS_PER_MINUTE, "COMPACT编码下同一分钟内的作业锁名应互不相同：" + lockKeys.size());
+            expect(claimedJobs.size() == WINDOWS_PER_MINUTE, "同一分钟内的作业应各自认领成功：" + claimedJobs.size());
+            BitSet expectedCompletedJobs = new BitSet();
+            for (int i = 0; i < WINDOWS_PER_MINUTE; i += 2) {
+                expectedCompletedJobs.set(i);
+            }
+            expect(expectedCompletedJobs.equals(completedJobs), "只应完成隔一个的作业，实际：" + completedJobs);
+        }
+    }
+
+    private void checkBacktrace() throws InterruptedException {
+        Set<Long> executedStartTimes = ConcurrentHashMap.newKeySet();
+        try (SchedulerNode node = newNode(CronJobKeyCodecMode.COMPACT, true, cronJob -> executedStartTimes.add(cronJob.getStartTime()))) {
+            //回溯一小时，至少包含59分钟内的全部作业
+            long latestStartTime = System.currentTimeMillis() / INTERVAL_MILLIS * INTERVAL_MILLIS - INTERVAL_MILLIS;
+            long firstStartTime = latestStartTime - TimeUnit.MINUTES.toMillis(59);
+            int expectedCount = (int) ((latestStartTime - firstStartTime) / INTERVAL_MILLIS) + 1;
+            node.start();
+
+            long deadline = System.currentTimeMillis() + 30000L;
+            while (countBetween(executedStartTimes, firstStartTime, latestStartTime) < expectedCount && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            int executedCount = countBetween(executedStartTimes, firstStartTime, latestStartTime);
+            System.out.printf("启动回溯：最近59分钟内应执行%d个作业，实际执行%d个%n", expectedCount, executedCount);
+            expect(executedCount == expectedCount, "启动回溯出的作业未全部执行：" + executedCount + "/" + expectedCount);
+        }
+    }
+
+    private void checkRejected(CronJobKeyCodecMode keyCodecMode) {
+        try (SchedulerNode node = newNode(keyCodecMode, false, cronJob -> {
+        })) {
+            try {
+                node.start();
+                failures.add(keyCodecMode + "编码下存在按秒粒度调度的任务时应启动失败");
+            } catch (IllegalStateException e) {
+                System.out.printf("%s编码：启动失败：%s%n", keyCodecMode, e.getMessage());
+            }
+        }
+    }
+
+    private static SchedulerNode newNode(CronJobKeyCodecMode keyCodecMode, boolean scannerEnabled, Consumer<CronJob> logic) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.key-codec", keyCodecMode.name());
+
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, true, false, false, CronScheduleTimeUnit.SECOND,
+                INTERVAL_MILLIS / 1000, 1, 0, 3600, true, false);
+
+        return new SchedulerNode("sub-minute-node", SchedulerNode.newRedisServer(), properties,
+                Collections.singletonList(new BenchmarkTask(taskConfig, logic)), scannerEnabled);
+    }
+
+    //上一个完整分钟内的全部作业
+    private static List<CronJob> jobsOfPreviousMinute() {
+        long minuteStartTime = System.currentTimeMillis() / 60000L * 60000L - 60000L;
+        List<CronJob> cronJobs = new ArrayList<>(WINDOWS_PER_MINUTE);
+        for (int i = 0; i < WINDOWS_PER_MINUTE; i++) {
+            long startTime = minuteStartTime + i * INTERVAL_MILLIS;
+            cronJobs.add(new CronJob(TASK_NAME, startTime, startTime + INTERVAL_MILLIS));
+        }
+
+        return cronJobs;
+    }
+
+    private static int countBetween(Set<Long> startTimes, long fromTime, long toTime) {
+        int count = 0;
+        for (long startTime : startTimes) {
+            if (startTime >= fromTime && startTime <= toTime) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
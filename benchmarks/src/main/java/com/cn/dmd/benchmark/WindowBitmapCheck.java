@@ -0,0 +1,286 @@
+package com.cn.dmd.benchmark;
+
+import com.cn.dmd.CronJobKeyCodec;
+import com.cn.dmd.CronJobRedisActions;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 校验BITMAP扫描模式下的窗口位图：
+ * 1. 以认领脚本、逐条命令认领、防护令牌完成等方式写入作业后，位图中的已创建窗口与作业历史一致，
+ * 已创建未完成的窗口与FULL模式读取作业历史并过滤已完成作业的结果一致；
+ * 2. 长历史下位图与作业状态列表的大小对比，位图从任务最早的作业开始，与全局起始时刻无关；
+ * 3. 新任务的位图从回溯范围内的第一个窗口开始，1秒一个作业的任务位图只有回溯范围大小，不读取回溯范围之前的区间；
+ * 4. FULL模式下写入的作业历史，切换为BITMAP模式后构建位图，结果与作业历史一致，且只构建一次；
+ * 5. 已按全局起始时刻构建过的位图沿用window-bitmap-epoch作为0号窗口
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.WindowBitmapCheck [长历史窗口数]，校验失败时以状态码1退出
+ */
+public class WindowBitmapCheck {
+    private static final String TASK_NAME = "bitmapTask";
+    private static final long INTERVAL_MILLIS = 60000L;
+    private static final int JOB_COUNT = 1000;
+    private static final int CLAIM_BATCH_SIZE = 200;
+    //覆盖校验所写入的窗口的回溯小时数
+    private static final int BACKTRACE_HOURS = 24;
+    //原有全局起始时刻的默认值
+    private static final long DEFAULT_EPOCH = 1514736000000L;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        int longHistoryWindows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        WindowBitmapCheck check = new WindowBitmapCheck();
+        check.checkDetection("SCRIPT", false);
+        check.checkDetection("SCRIPT", true);
+        check.checkDetection("LEGACY", false);
+        check.checkFootprint(longHistoryWindows);
+        check.checkNewTask();
+        check.checkRebuild();
+        check.checkLegacyOrigin();
+
+        if (check.failures.isEmpty()) {
+            System.out.println("校验通过");
+        } else {
+            check.failures.forEach(failure -> System.out.println("校验失败：" + failure));
+            System.exit(1);
+        }
+    }
+
+    //每7个窗口缺失1个，其余作业中每3个完成1个
+    private void checkDetection(String lockMode, boolean fencingEnabled) {
+        long firstStartTime = firstStartTime(JOB_COUNT);
+        try (SchedulerNode node = newNode("detection-node", SchedulerNode.newRedisServer(), "BITMAP", lockMode, fencingEnabled)) {
+            CronJobRedisActions store = node.getRedisActions();
+            List<CronJob> createdJobs = new ArrayList<>();
+            for (int i = 0; i < JOB_COUNT; i++) {
+                if (i % 7 != 0) {
+                    createdJobs.add(job(firstStartTime, i));
+                }
+            }
+            claimInBatches(store, createdJobs);
+            for (int i = 0; i < createdJobs.size(); i += 3) {
+                store.completeJobAndReleaseLock(createdJobs.get(i));
+            }
+
+            BitSet createdWindows = store.getCreatedWindows(TASK_NAME, firstStartTime, INTERVAL_MILLIS, JOB_COUNT);
+            BitSet expectedCreatedWindows = new BitSet(JOB_COUNT);
+            for (int i = 0; i < JOB_COUNT; i++) {
+                expectedCreatedWindows.set(i, i % 7 != 0);
+            }
+
+            long[] pendingStartTimes = store.getPendingWindowStartTimes(TASK_NAME, firstStartTime);
+            long[] expectedPendingStartTimes = pendingStartTimesFromHistory(store, firstStartTime);
+
+            System.out.printf("BITMAP %-6s 防护令牌%-5s：%d个窗口，已创建%d个，已创建未完成%d个【作业历史：%d个】%n", lockMode, fencingEnabled,
+                    JOB_COUNT, createdWindows.cardinality(), pendingStartTimes.length, expectedPendingStartTimes.length);
+            expect(expectedCreatedWindows.equals(createdWindows), lockMode + "：已创建窗口与作业历史不一致");
+            expect(Arrays.equals(expectedPendingStartTimes, pendingStartTimes), lockMode + "：已创建未完成窗口与作业历史不一致");
+        }
+    }
+
+    //长历史由FULL模式写入，切换为BITMAP模式后构建位图
+    private void checkFootprint(int windowCount) {
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        long firstStartTime = firstStartTime(windowCount);
+        try (SchedulerNode node = newNode("history-node", server, "FULL", "SCRIPT", false)) {
+            CronJobRedisActions store = node.getRedisActions();
+            List<CronJob> cronJobs = new ArrayList<>(windowCount);
+            for (int i = 0; i < windowCount; i++) {
+                cronJobs.add(job(firstStartTime, i));
+            }
+            claimInBatches(store, cronJobs);
+            for (int i = 0; i < windowCount; i += 2) {
+                store.completeJobAndReleaseLock(cronJobs.get(i));
+            }
+        }
+
+        try (SchedulerNode node = newNode("footprint-node", server, "BITMAP", "SCRIPT", false)) {
+            CronJobRedisActions store = node.getRedisActions();
+            CronJobKeyCodec keyCodec = store.getKeyCodec();
+            long hashBytes = 0L;
+            for (Map.Entry<byte[], byte[]> entry : server.hEntries(keyCodec.processListKey(TASK_NAME))) {
+                hashBytes += entry.getKey().length + entry.getValue().length;
+            }
+            long[] pendingStartTimes = store.getPendingWindowStartTimes(TASK_NAME, Long.MIN_VALUE);
+            long bitmapBytes = lengthOf(server.get(keyCodec.createdWindowsKey(TASK_NAME)))
+                    + lengthOf(server.get(keyCodec.completedWindowsKey(TASK_NAME)));
+            long origin = originOf(server, keyCodec);
+
+            System.out.printf("长历史：%d个窗口，作业状态列表%d字节，窗口位图%d字节【0号窗口距第一个作业%d个窗口，按全局起始时刻需%d字节】，已创建未完成%d个%n",
+                    windowCount, hashBytes, bitmapBytes, (firstStartTime - origin) / INTERVAL_MILLIS,
+                    2 * epochBitmapBytes(INTERVAL_MILLIS), pendingStartTimes.length);
+            expect(origin == firstStartTime, "0号窗口应为最早的作业：" + origin);
+            expect(pendingStartTimes.length == windowCount / 2, "长历史下已创建未完成窗口数有误：" + pendingStartTimes.length);
+            expect(bitmapBytes * 10 < hashBytes, "窗口位图应远小于作业状态列表");
+        }
+    }
+
+    //1秒一个作业的新任务认领最近一分钟的窗口，不回溯
+    private void checkNewTask() {
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        long intervalMillis = 1000L;
+        int windowCount = 60;
+        Map<String, Object> properties = properties("BITMAP", "SCRIPT", false);
+        properties.put("cron.general.key-codec", "COMPACT");
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, false, true, false, CronScheduleTimeUnit.SECOND,
+                1, 1, 0, 1, true, false);
+
+        try (SchedulerNode node = new SchedulerNode("new-task-node", server, properties, Collections.singletonList(new BenchmarkTask(taskConfig, cronJob -> {
+        })), false)) {
+            CronJobRedisActions store = node.getRedisActions();
+            long firstStartTime = System.currentTimeMillis() / intervalMillis * intervalMillis - (windowCount + 1) * intervalMillis;
+            List<CronJob> cronJobs = new ArrayList<>(windowCount);
+            for (int i = 0; i < windowCount; i++) {
+                long startTime = firstStartTime + i * intervalMillis;
+                cronJobs.add(new CronJob(TASK_NAME, startTime, startTime + intervalMillis));
+            }
+            claimInBatches(store, cronJobs);
+
+            CronJobKeyCodec keyCodec = store.getKeyCodec();
+            long bitmapBytes = lengthOf(server.get(keyCodec.createdWindowsKey(TASK_NAME)))
+                    + lengthOf(server.get(keyCodec.completedWindowsKey(TASK_NAME)));
+            long backtraceBytes = TimeUnit.HOURS.toMillis(1) / intervalMillis / 8 + windowCount;
+            long[] pendingStartTimes = store.getPendingWindowStartTimes(TASK_NAME, Long.MIN_VALUE);
+
+            System.out.printf("新任务【1秒一个作业】：%d个窗口，窗口位图%d字节【按全局起始时刻需%d字节】，已创建未完成%d个%n", windowCount,
+                    bitmapBytes, epochBitmapBytes(intervalMillis), pendingStartTimes.length);
+            expect(bitmapBytes <= backtraceBytes, "新任务的位图应只有回溯范围大小：" + bitmapBytes);
+            expect(pendingStartTimes.length == windowCount, "新任务已创建未完成窗口数有误：" + pendingStartTimes.length);
+        }
+    }
+
+    private void checkRebuild() {
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        long firstStartTime = firstStartTime(JOB_COUNT);
+        try (SchedulerNode node = newNode("full-node", server, "FULL", "SCRIPT", false)) {
+            CronJobRedisActions store = node.getRedisActions();
+            List<CronJob> cronJobs = new ArrayList<>(JOB_COUNT);
+            for (int i = 0; i < JOB_COUNT; i++) {
+                cronJobs.add(job(firstStartTime, i));
+            }
+            claimInBatches(store, cronJobs);
+            for (int i = 0; i < JOB_COUNT; i += 2) {
+                store.completeJobAndReleaseLock(cronJobs.get(i));
+            }
+        }
+
+        try (SchedulerNode node = newNode("bitmap-node", server, "BITMAP", "SCRIPT", false)) {
+            CronJobRedisActions store = node.getRedisActions();
+            int rebuilt = store.rebuildWindowBitmaps(TASK_NAME, 100);
+            long[] pendingStartTimes = store.getPendingWindowStartTimes(TASK_NAME, firstStartTime);
+            long[] expectedPendingStartTimes = pendingStartTimesFromHistory(store, firstStartTime);
+
+            System.out.printf("切换为BITMAP：构建%d个窗口，已创建未完成%d个【作业历史：%d个】%n", rebuilt, pendingStartTimes.length,
+                    expectedPendingStartTimes.length);
+            expect(rebuilt == JOB_COUNT, "构建的窗口数有误：" + rebuilt);
+            expect(Arrays.equals(expectedPendingStartTimes, pendingStartTimes), "构建后已创建未完成窗口与作业历史不一致");
+            expect(store.getCreatedWindows(TASK_NAME, firstStartTime, INTERVAL_MILLIS, JOB_COUNT).cardinality() == JOB_COUNT, "构建后已创建窗口数有误");
+            expect(store.rebuildWindowBitmaps(TASK_NAME, 100) == -1, "同一任务不应重复构建");
+        }
+    }
+
+    //按全局起始时刻构建过位图【存在构建完成标识而无0号窗口】的任务
+    private void checkLegacyOrigin() {
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        long firstStartTime = firstStartTime(JOB_COUNT);
+        try (SchedulerNode node = newNode("legacy-node", server, "BITMAP", "SCRIPT", false)) {
+            CronJobRedisActions store = node.getRedisActions();
+            CronJobKeyCodec keyCodec = store.getKeyCodec();
+            server.set(keyCodec.windowBitmapReadyKey(TASK_NAME), "1".getBytes(StandardCharsets.UTF_8), 0L, false, false);
+            long legacyOffset = (firstStartTime - DEFAULT_EPOCH) / INTERVAL_MILLIS;
+            server.setBit(keyCodec.createdWindowsKey(TASK_NAME), legacyOffset, true);
+
+            store.claimJobs(Collections.singletonList(job(firstStartTime, 1)));
+            BitSet createdWindows = store.getCreatedWindows(TASK_NAME, firstStartTime, INTERVAL_MILLIS, 2);
+
+            System.out.printf("沿用全局起始时刻：0号窗口%d，已创建窗口%s%n", originOf(server, keyCodec), createdWindows);
+            expect(originOf(server, keyCodec) == DEFAULT_EPOCH, "已有位图应沿用全局起始时刻");
+            expect(createdWindows.cardinality() == 2, "已有位图与新写入的窗口应均可读取：" + createdWindows);
+        }
+    }
+
+    //与FULL模式相同：读取作业历史，过滤已完成作业，并只保留时间范围已结束的作业
+    private static long[] pendingStartTimesFromHistory(CronJobRedisActions store, long fromTime) {
+        long[] startTimes = store.getJobStartTimesOfTask(TASK_NAME, fromTime);
+        BitSet completedJobs = store.getCompletedJobs(TASK_NAME, startTimes);
+        long latestStartTime = System.currentTimeMillis() / INTERVAL_MILLIS * INTERVAL_MILLIS - INTERVAL_MILLIS;
+
+        List<Long> pendingStartTimes = new ArrayList<>();
+        for (int i = completedJobs.nextClearBit(0); i < startTimes.length; i = completedJobs.nextClearBit(i + 1)) {
+            if (startTimes[i] <= latestStartTime) {
+                pendingStartTimes.add(startTimes[i]);
+            }
+        }
+        Collections.sort(pendingStartTimes);
+
+        return pendingStartTimes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static void claimInBatches(CronJobRedisActions store, List<CronJob> cronJobs) {
+        for (int from = 0; from < cronJobs.size(); from += CLAIM_BATCH_SIZE) {
+            store.claimJobs(cronJobs.subList(from, Math.min(cronJobs.size(), from + CLAIM_BATCH_SIZE)));
+        }
+    }
+
+    private static SchedulerNode newNode(String nodeId, InMemoryRedisServer server, String scanMode, String lockMode, boolean fencingEnabled) {
+        CronTaskConfig taskConfig = new CronTaskConfig(TASK_NAME, false, true, false, CronScheduleTimeUnit.MINUTE,
+                1, BACKTRACE_HOURS, 0, 1, true, false);
+
+        return new SchedulerNode(nodeId, server, properties(scanMode, lockMode, fencingEnabled), Collections.singletonList(
+                new BenchmarkTask(taskConfig, cronJob -> {
+                })), false);
+    }
+
+    private static Map<String, Object> properties(String scanMode, String lockMode, boolean fencingEnabled) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cron.general.scan-mode", scanMode);
+        properties.put("cron.general.lock-mode", lockMode);
+        properties.put("cron.general.fencing-enabled", String.valueOf(fencingEnabled));
+        properties.put("cron.general.claim-batch-size", String.valueOf(CLAIM_BATCH_SIZE));
+
+        return properties;
+    }
+
+    private static long originOf(InMemoryRedisServer server, CronJobKeyCodec keyCodec) {
+        return Long.parseLong(new String(server.get(keyCodec.windowBitmapOriginKey(TASK_NAME)), StandardCharsets.UTF_8));
+    }
+
+    //以原有的全局起始时刻写入当前窗口时单个位图的大小
+    private static long epochBitmapBytes(long intervalMillis) {
+        return (System.currentTimeMillis() - DEFAULT_EPOCH) / intervalMillis / 8 + 1;
+    }
+
+    private static CronJob job(long firstStartTime, int window) {
+        long startTime = firstStartTime + window * INTERVAL_MILLIS;
+        return new CronJob(TASK_NAME, startTime, startTime + INTERVAL_MILLIS);
+    }
+
+    private static long firstStartTime(int windowCount) {
+        return System.currentTimeMillis() / INTERVAL_MILLIS * INTERVAL_MILLIS - windowCount * INTERVAL_MILLIS;
+    }
+
+    private static long lengthOf(byte[] value) {
+        return value == null ? 0L : value.length;
+    }
+
+    private void expect(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
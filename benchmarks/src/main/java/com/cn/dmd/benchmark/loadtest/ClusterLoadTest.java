@@ -0,0 +1,195 @@
+package com.cn.dmd.benchmark.loadtest;
+
+import com.cn.dmd.CronJobBulkhead;
+import com.cn.dmd.DefaultCronJobScheduler;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.benchmark.support.BenchmarkTask;
+import com.cn.dmd.benchmark.support.SchedulerNode;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetricsSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 多节点压测：在同一个JVM中启动多个调度节点，共享redis替身，模拟集群中各应用同时触发同一批作业
+ * 1. 每个节点拥有独立的应用标识、调度器、执行器、扫描器，互相只通过redis替身协调；
+ * 2. 按固定速率触发作业，每个作业同时提交至所有节点【提交顺序随机】，由锁决定执行者；
+ * 3. 可暂停指定节点的redis访问以注入故障，如暂停超过锁超时时间时，作业会被其他节点的扫描器重新认领；
+ * 4. 结束后输出吞吐、重复执行、缺失作业、锁竞争及认领延迟
+ * <p>
+ * 运行：java -cp target/benchmarks.jar com.cn.dmd.benchmark.loadtest.ClusterLoadTest [参数]，参数见{@link LoadTestOptions}
+ * 存在缺失作业时以状态码1退出
+ */
+public class ClusterLoadTest {
+    private static final String TASK_NAME_PREFIX = "loadTask-";
+    private static final long DRAIN_POLL_MILLIS = 100;
+    //调度器日志级别，节点间竞争锁失败以告警级别输出，压测时默认只输出错误
+    private static final String SCHEDULER_LOG_LEVEL_PROPERTY = "scheduler.log.level";
+
+    private final LoadTestOptions options;
+    private final ExecutionLedger ledger;
+    private final List<SchedulerNode> nodes = new ArrayList<>();
+    private final List<String> taskNames = new ArrayList<>();
+
+    private ClusterLoadTest(LoadTestOptions options) {
+        this.options = options;
+        this.ledger = new ExecutionLedger(options.getNodes());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (System.getProperty(SCHEDULER_LOG_LEVEL_PROPERTY) == null) {
+            System.setProperty(SCHEDULER_LOG_LEVEL_PROPERTY, "ERROR");
+        }
+
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        System.out.println("压测参数：" + options);
+
+        LoadTestReport report = new ClusterLoadTest(options).run();
+        System.out.println(report);
+
+        System.exit(report.getMissedWindows() > 0 ? 1 : 0);
+    }
+
+    private LoadTestReport run() throws InterruptedException {
+        for (int i = 0; i < options.getTasks(); i++) {
+            taskNames.add(TASK_NAME_PREFIX + i);
+        }
+
+        InMemoryRedisServer server = SchedulerNode.newRedisServer();
+        ScheduledExecutorService faultInjector = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (int i = 0; i < options.getNodes(); i++) {
+                nodes.add(startNode(i, server));
+            }
+
+            long startNanos = System.nanoTime();
+            long pausesEndNanos = startNanos;
+            for (LoadTestOptions.NodePause pause : options.getPauses()) {
+                SchedulerNode node = nodes.get(pause.getNodeIndex());
+                faultInjector.schedule(() -> node.getConnectionFactory().pause(pause.getDurationMillis()),
+                        pause.getAtMillis(), TimeUnit.MILLISECONDS);
+                pausesEndNanos = Math.max(pausesEndNanos, startNanos + TimeUnit.MILLISECONDS.toNanos(pause.getAtMillis() + pause.getDurationMillis()));
+            }
+
+            fireJobs(startNanos);
+            awaitDrained(pausesEndNanos);
+
+            LoadTestReport report = ledger.summarize(startNanos);
+            collectClusterStats(report);
+            return report;
+        } finally {
+            faultInjector.shutdownNow();
+            nodes.forEach(SchedulerNode::close);
+        }
+    }
+
+    private SchedulerNode startNode(int nodeIndex, InMemoryRedisServer server) {
+        List<BenchmarkTask> tasks = new ArrayList<>();
+        for (String taskName : taskNames) {
+            tasks.add(BenchmarkTask.everyMinute(taskName, cronJob -> {
+                ledger.executed(cronJob, nodeIndex);
+                if (options.getWorkMillis() > 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(options.getWorkMillis()));
+                }
+            }));
+        }
+
+        SchedulerNode node = new SchedulerNode("node-" + nodeIndex, server, options.getProperties(), tasks, true);
+        node.getConnectionFactory().setRoundTripMicros(options.getRoundTripMicros());
+        node.start();
+
+        return node;
+    }
+
+    //按固定速率触发作业，作业时间范围取过去的整分钟，避免与扫描回看时长等配置相互影响
+    private void fireJobs(long startNanos) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(options.getRate(), 1);
+        long firstStartTime = System.currentTimeMillis() / 60000L * 60000L - options.getWindows() * 60000L;
+        List<SchedulerNode> shuffledNodes = new ArrayList<>(nodes);
+        long firedCount = 0;
+
+        for (int window = 0; window < options.getWindows(); window++) {
+            long startTime = firstStartTime + window * 60000L;
+
+            for (String taskName : taskNames) {
+                long waitNanos = startNanos + firedCount++ * intervalNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+
+                CronJob cronJob = new CronJob(taskName, startTime, startTime + 60000L);
+                ledger.fired(cronJob);
+
+                Collections.shuffle(shuffledNodes, ThreadLocalRandom.current());
+                for (SchedulerNode node : shuffledNodes) {
+                    node.getScheduler().schedule(cronJob);
+                }
+            }
+        }
+    }
+
+    //等待所有作业执行完成、故障恢复且各节点作业池空闲，超时后放弃
+    private void awaitDrained(long pausesEndNanos) throws InterruptedException {
+        long deadlineNanos = Math.max(System.nanoTime(), pausesEndNanos) + TimeUnit.SECONDS.toNanos(options.getDrainSeconds());
+        long lastExecutionCount = -1;
+
+        while (System.nanoTime() < deadlineNanos) {
+            long executionCount = ledger.getExecutionCount();
+            if (executionCount == lastExecutionCount && System.nanoTime() > pausesEndNanos && ledger.isAllExecuted() && isAllNodesIdle()) {
+                return;
+            }
+
+            lastExecutionCount = executionCount;
+            TimeUnit.MILLISECONDS.sleep(DRAIN_POLL_MILLIS);
+        }
+
+        System.out.println("等待作业完成超时");
+    }
+
+    private boolean isAllNodesIdle() {
+        for (SchedulerNode node : nodes) {
+            for (CronJobBulkhead bulkhead : node.getBean(DefaultCronJobScheduler.class).getBulkheads()) {
+                if (bulkhead.getQueueDepth() > 0 || bulkhead.getActiveThreadCount() > 0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void collectClusterStats(LoadTestReport report) {
+        long lockWon = 0;
+        long lockLost = 0;
+        long leaseLost = 0;
+        long fencingRejected = 0;
+        long deduplicated = 0;
+        long redisCommands = 0;
+        long redisRoundTrips = 0;
+
+        for (SchedulerNode node : nodes) {
+            CronJobMetricsSnapshot snapshot = node.getMetrics().snapshot();
+            for (String taskName : taskNames) {
+                lockWon += snapshot.getCounter(CronJobMetricNames.LOCK_WON, taskName);
+                lockLost += snapshot.getCounter(CronJobMetricNames.LOCK_LOST, taskName);
+                leaseLost += snapshot.getCounter(CronJobMetricNames.LEASE_LOST, taskName);
+                fencingRejected += snapshot.getCounter(CronJobMetricNames.FENCING_REJECTED, taskName);
+                deduplicated += snapshot.getCounter(CronJobMetricNames.JOB_DEDUPLICATED, taskName);
+            }
+
+            redisCommands += node.getConnectionFactory().getCommandCount();
+            redisRoundTrips += node.getConnectionFactory().getRoundTripCount();
+        }
+
+        report.setLockStats(lockWon, lockLost, leaseLost, fencingRejected, deduplicated);
+        report.setRedisStats(redisCommands, redisRoundTrips);
+    }
+}
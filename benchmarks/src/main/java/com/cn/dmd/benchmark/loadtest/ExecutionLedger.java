@@ -0,0 +1,109 @@
+package com.cn.dmd.benchmark.loadtest;
+
+import com.cn.dmd.domain.CronJob;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 压测期间每个作业的触发及执行记录，由各节点的任务逻辑共同写入
+ */
+class ExecutionLedger {
+    private final Map<CronJob, JobRecord> records = new ConcurrentHashMap<>();
+    //各节点执行的作业数
+    private final AtomicLongArray nodeExecutions;
+    private volatile long lastFirstExecutionNanos;
+
+    ExecutionLedger(int nodes) {
+        this.nodeExecutions = new AtomicLongArray(nodes);
+    }
+
+    /**
+     * 记录作业被触发，需在提交至各节点前调用
+     */
+    void fired(CronJob cronJob) {
+        records.put(cronJob, new JobRecord(System.nanoTime()));
+    }
+
+    /**
+     * 记录作业开始执行
+     */
+    void executed(CronJob cronJob, int nodeIndex) {
+        JobRecord record = records.get(cronJob);
+        if (record == null) {
+            throw new IllegalStateException("作业未经压测触发：" + cronJob);
+        }
+
+        nodeExecutions.incrementAndGet(nodeIndex);
+        if (record.executions.incrementAndGet() == 1) {
+            long now = System.nanoTime();
+            record.firstExecutionNanos = now;
+            lastFirstExecutionNanos = now;
+        }
+    }
+
+    /**
+     * @return 是否所有触发的作业都已至少执行一次
+     */
+    boolean isAllExecuted() {
+        return records.values().stream().allMatch(record -> record.executions.get() > 0);
+    }
+
+    long getExecutionCount() {
+        long executionCount = 0;
+        for (int i = 0; i < nodeExecutions.length(); i++) {
+            executionCount += nodeExecutions.get(i);
+        }
+
+        return executionCount;
+    }
+
+    /**
+     * 汇总作业记录
+     *
+     * @param startNanos 开始触发的时刻
+     */
+    LoadTestReport summarize(long startNanos) {
+        int executedWindows = 0;
+        long duplicateExecutions = 0;
+        int duplicatedWindows = 0;
+        long[] claimLatencies = new long[records.size()];
+
+        for (JobRecord record : records.values()) {
+            int executions = record.executions.get();
+            if (executions == 0) {
+                continue;
+            }
+
+            claimLatencies[executedWindows++] = record.firstExecutionNanos - record.firedNanos;
+            if (executions > 1) {
+                duplicatedWindows++;
+                duplicateExecutions += executions - 1;
+            }
+        }
+
+        long[] sortedLatencies = Arrays.copyOf(claimLatencies, executedWindows);
+        Arrays.sort(sortedLatencies);
+
+        long[] executionsPerNode = new long[nodeExecutions.length()];
+        for (int i = 0; i < executionsPerNode.length; i++) {
+            executionsPerNode[i] = nodeExecutions.get(i);
+        }
+
+        return new LoadTestReport(records.size(), executedWindows, duplicatedWindows, duplicateExecutions,
+                Math.max(lastFirstExecutionNanos - startNanos, 1L), sortedLatencies, executionsPerNode);
+    }
+
+    private static class JobRecord {
+        private final long firedNanos;
+        private final AtomicInteger executions = new AtomicInteger();
+        private volatile long firstExecutionNanos;
+
+        private JobRecord(long firedNanos) {
+            this.firedNanos = firedNanos;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.cn.dmd.benchmark.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测参数，命令行以{@code key=value}形式传入：
+ * <pre>
+ * nodes=4              节点数
+ * tasks=2              任务数，每个节点注册全部任务
+ * windows=2000         每个任务触发的作业数
+ * rate=1000            每秒触发的作业数【所有任务合计】
+ * work-millis=2        每个作业的业务耗时（毫秒）
+ * rtt-micros=50        redis网络往返耗时（微秒）
+ * drain-seconds=30     触发结束后等待作业完成的最长时间（秒）
+ * pause=1@1000:5000    故障注入：第1个节点在开始触发1000毫秒后暂停5000毫秒，可重复指定
+ * cron.general.xxx=yyy 直接覆盖调度器配置【如cron.general.lock-time=2】
+ * </pre>
+ */
+class LoadTestOptions {
+    private int nodes = 4;
+    private int tasks = 2;
+    private int windows = 2000;
+    private int rate = 1000;
+    private long workMillis = 2;
+    private long roundTripMicros = 50;
+    private long drainSeconds = 30;
+    private final List<NodePause> pauses = new ArrayList<>();
+    private final Map<String, Object> properties = new HashMap<>();
+
+    LoadTestOptions() {
+        //缩短锁时间及扫描间隔，使节点暂停等故障能在压测时间内暴露
+        properties.put("cron.general.lock-time", 2);
+        properties.put("cron.general.lock-inspiration-interval", 1);
+        properties.put("cron.general.lock-renewal-tick-millis", 100);
+        properties.put("cron.general.metrics-enabled", true);
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+
+        for (String arg : args) {
+            int separatorIndex = arg.indexOf('=');
+            if (separatorIndex <= 0) {
+                throw new IllegalArgumentException("参数格式应为key=value：" + arg);
+            }
+
+            String key = arg.substring(0, separatorIndex);
+            String value = arg.substring(separatorIndex + 1);
+            if (key.startsWith("cron.")) {
+                options.properties.put(key, value);
+                continue;
+            }
+
+            switch (key) {
+                case "nodes":
+                    options.nodes = Integer.parseInt(value);
+                    break;
+                case "tasks":
+                    options.tasks = Integer.parseInt(value);
+                    break;
+                case "windows":
+                    options.windows = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    options.rate = Integer.parseInt(value);
+                    break;
+                case "work-millis":
+                    options.workMillis = Long.parseLong(value);
+                    break;
+                case "rtt-micros":
+                    options.roundTripMicros = Long.parseLong(value);
+                    break;
+                case "drain-seconds":
+                    options.drainSeconds = Long.parseLong(value);
+                    break;
+                case "pause":
+                    options.pauses.add(NodePause.parse(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数：" + key);
+            }
+        }
+
+        for (NodePause pause : options.pauses) {
+            if (pause.getNodeIndex() < 0 || pause.getNodeIndex() >= options.nodes) {
+                throw new IllegalArgumentException("暂停的节点不存在：" + pause);
+            }
+        }
+
+        return options;
+    }
+
+    int getNodes() {
+        return nodes;
+    }
+
+    int getTasks() {
+        return tasks;
+    }
+
+    int getWindows() {
+        return windows;
+    }
+
+    int getRate() {
+        return rate;
+    }
+
+    long getWorkMillis() {
+        return workMillis;
+    }
+
+    long getRoundTripMicros() {
+        return roundTripMicros;
+    }
+
+    long getDrainSeconds() {
+        return drainSeconds;
+    }
+
+    List<NodePause> getPauses() {
+        return Collections.unmodifiableList(pauses);
+    }
+
+    Map<String, Object> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    @Override
+    public String toString() {
+        return "nodes=" + nodes + ", tasks=" + tasks + ", windows=" + windows + ", rate=" + rate + ", work-millis=" + workMillis
+                + ", rtt-micros=" + roundTripMicros + ", pauses=" + pauses + ", properties=" + properties;
+    }
+
+    /**
+     * 节点暂停：暂停期间该节点的redis命令全部阻塞，模拟长时间GC或网络隔离
+     */
+    static class NodePause {
+        private final int nodeIndex;
+        private final long atMillis;
+        private final long durationMillis;
+
+        NodePause(int nodeIndex, long atMillis, long durationMillis) {
+            this.nodeIndex = nodeIndex;
+            this.atMillis = atMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        //格式：节点序号@开始触发后的毫秒数:暂停毫秒数
+        static NodePause parse(String value) {
+            int atIndex = value.indexOf('@');
+            int colonIndex = value.indexOf(':', atIndex + 1);
+            if (atIndex <= 0 || colonIndex <= atIndex + 1) {
+                throw new IllegalArgumentException("暂停参数格式应为 节点序号@开始毫秒数:暂停毫秒数：" + value);
+            }
+
+            return new NodePause(Integer.parseInt(value.substring(0, atIndex)), Long.parseLong(value.substring(atIndex + 1, colonIndex)),
+                    Long.parseLong(value.substring(colonIndex + 1)));
+        }
+
+        int getNodeIndex() {
+            return nodeIndex;
+        }
+
+        long getAtMillis() {
+            return atMillis;
+        }
+
+        long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return nodeIndex + "@" + atMillis + ":" + durationMillis;
+        }
+    }
+}
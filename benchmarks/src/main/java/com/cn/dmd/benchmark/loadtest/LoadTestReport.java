@@ -0,0 +1,99 @@
+package com.cn.dmd.benchmark.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测结果：
+ * 1. 吞吐：首次执行的作业数 / 从开始触发到最后一个作业首次执行的时间；
+ * 2. 重复执行：同一作业被执行多次的次数，开启防护令牌时另计完成状态写入被拒绝的次数；
+ * 3. 缺失作业：等待结束时仍未执行的作业数；
+ * 4. 锁竞争：未获取到执行权的次数占认领次数的比例；
+ * 5. 认领延迟：作业从触发到首次开始执行的时间，包含排队及认领耗时
+ */
+class LoadTestReport {
+    private final int firedWindows;
+    private final int executedWindows;
+    private final int duplicatedWindows;
+    private final long duplicateExecutions;
+    private final long elapsedNanos;
+    private final long[] sortedClaimLatencies;
+    private final long[] executionsPerNode;
+
+    private long lockWon;
+    private long lockLost;
+    private long leaseLost;
+    private long fencingRejected;
+    private long deduplicated;
+    private long redisCommands;
+    private long redisRoundTrips;
+
+    LoadTestReport(int firedWindows, int executedWindows, int duplicatedWindows, long duplicateExecutions, long elapsedNanos,
+                   long[] sortedClaimLatencies, long[] executionsPerNode) {
+        this.firedWindows = firedWindows;
+        this.executedWindows = executedWindows;
+        this.duplicatedWindows = duplicatedWindows;
+        this.duplicateExecutions = duplicateExecutions;
+        this.elapsedNanos = elapsedNanos;
+        this.sortedClaimLatencies = sortedClaimLatencies;
+        this.executionsPerNode = executionsPerNode;
+    }
+
+    void setLockStats(long lockWon, long lockLost, long leaseLost, long fencingRejected, long deduplicated) {
+        this.lockWon = lockWon;
+        this.lockLost = lockLost;
+        this.leaseLost = leaseLost;
+        this.fencingRejected = fencingRejected;
+        this.deduplicated = deduplicated;
+    }
+
+    void setRedisStats(long redisCommands, long redisRoundTrips) {
+        this.redisCommands = redisCommands;
+        this.redisRoundTrips = redisRoundTrips;
+    }
+
+    int getMissedWindows() {
+        return firedWindows - executedWindows;
+    }
+
+    long getDuplicateExecutions() {
+        return duplicateExecutions;
+    }
+
+    double getThroughputPerSecond() {
+        return executedWindows * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    double getLockContention() {
+        long claims = lockWon + lockLost;
+        return claims == 0 ? 0D : lockLost / (double) claims;
+    }
+
+    long getClaimLatencyPercentileNanos(double percentile) {
+        if (sortedClaimLatencies.length == 0) {
+            return 0L;
+        }
+
+        int index = (int) Math.ceil(percentile / 100D * sortedClaimLatencies.length) - 1;
+        return sortedClaimLatencies[Math.max(0, Math.min(index, sortedClaimLatencies.length - 1))];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("触发作业数：%d，已执行：%d，缺失：%d%n", firedWindows, executedWindows, getMissedWindows()));
+        builder.append(String.format("吞吐：%.1f 作业/秒（%.2f 秒）%n", getThroughputPerSecond(), elapsedNanos / 1e9));
+        builder.append(String.format("重复执行：%d 次，涉及作业：%d，租约丢失：%d，令牌过期被拒绝：%d%n", duplicateExecutions, duplicatedWindows,
+                leaseLost, fencingRejected));
+        builder.append(String.format("锁竞争：获取成功 %d，失败 %d，失败占比 %.1f%%，本地去重 %d%n", lockWon, lockLost,
+                getLockContention() * 100D, deduplicated));
+        builder.append(String.format("认领延迟：p50 %.2f ms，p90 %.2f ms，p99 %.2f ms，max %.2f ms%n",
+                getClaimLatencyPercentileNanos(50) / 1e6, getClaimLatencyPercentileNanos(90) / 1e6,
+                getClaimLatencyPercentileNanos(99) / 1e6, getClaimLatencyPercentileNanos(100) / 1e6));
+        builder.append(String.format("redis：命令 %d，往返 %d，每个作业 %.1f 次往返%n", redisCommands, redisRoundTrips,
+                executedWindows == 0 ? 0D : redisRoundTrips / (double) executedWindows));
+        builder.append("各节点执行数：").append(Arrays.toString(executionsPerNode));
+
+        return builder.toString();
+    }
+}
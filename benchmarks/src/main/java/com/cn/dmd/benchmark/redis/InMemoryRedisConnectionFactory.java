@@ -0,0 +1,536 @@
+package com.cn.dmd.benchmark.redis;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.Subscription;
+import org.springframework.data.redis.core.ScanCursor;
+import org.springframework.data.redis.core.ScanIteration;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 连接至{@link InMemoryRedisServer}的连接工厂，每个模拟节点使用各自的工厂以便单独注入故障
+ * 1. 连接的行为与jedis保持一致：pipeline中状态类命令【如SET】不出现在结果列表中，命令出错时在关闭pipeline时统一抛出；
+ * 2. 可模拟网络往返耗时：普通命令每条一次往返，pipeline在关闭时计一次往返；
+ * 3. 可暂停节点：暂停期间该节点的所有命令阻塞，用于模拟长时间GC等导致锁超时的场景；
+ * 4. 可模拟redis集群：按槽将key路由至多个分片，多key命令及脚本的key不在同一个槽上时与redis集群一样返回CROSSSLOT错误；
+ * 5. 支持频道订阅：与jedis一致，订阅阻塞调用线程直至取消订阅；集群模式下发布及订阅均在第一个分片上进行；
+ * 6. 可模拟一次连接失败：指定次数的往返之后，下一次往返中的命令均不执行，并抛出连接异常【pipeline在关闭时抛出】；
+ * 7. 可模拟spring-data-redis的集群客户端：连接实现{@link RedisClusterConnection}，与JedisClusterConnection一样不支持pipeline及脚本；
+ *    未模拟集群客户端时，模拟的redis集群相当于按槽转发pipeline及脚本的代理
+ */
+public class InMemoryRedisConnectionFactory implements RedisConnectionFactory {
+    private final InMemoryRedisServer server;
+    //集群模式下的分片，按槽区间均分，非集群模式下为null
+    private final List<InMemoryRedisServer> shards;
+    private final AtomicLong commandCount = new AtomicLong();
+    private final AtomicLong crossSlotErrorCount = new AtomicLong();
+    private final AtomicLong roundTripCount = new AtomicLong();
+    private volatile long roundTripNanos;
+    private volatile long pausedUntilNanos;
+    //剩余多少次往返后模拟一次连接失败，小于0时不模拟
+    private final AtomicLong roundTripsBeforeFailure = new AtomicLong(-1L);
+    //是否模拟spring-data-redis的集群客户端
+    private volatile boolean clusterClient;
+
+    public InMemoryRedisConnectionFactory(InMemoryRedisServer server) {
+        this.server = server;
+        this.shards = null;
+    }
+
+    /**
+     * @param shards 集群的各个分片，槽按顺序均分至各分片
+     */
+    public InMemoryRedisConnectionFactory(List<InMemoryRedisServer> shards) {
+        this.server = shards.get(0);
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+    }
+
+    /**
+     * @return 非集群模式下的redis替身，集群模式下为第一个分片
+     */
+    public InMemoryRedisServer getServer() {
+        return server;
+    }
+
+    /**
+     * @return 集群模式下因key不在同一个槽上而失败的命令数
+     */
+    public long getCrossSlotErrorCount() {
+        return crossSlotErrorCount.get();
+    }
+
+    /**
+     * @param roundTripMicros 模拟的网络往返耗时（微秒），为0时不模拟
+     */
+    public void setRoundTripMicros(long roundTripMicros) {
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    /**
+     * 暂停该工厂创建的所有连接，暂停期间发出的命令在恢复后才执行
+     *
+     * @param millis 暂停时长（毫秒）
+     */
+    public void pause(long millis) {
+        pausedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * 在之后第roundTrips + 1次往返时模拟一次连接失败
+     *
+     * @param roundTrips 失败前正常完成的往返次数
+     */
+    public void failAfterRoundTrips(long roundTrips) {
+        roundTripsBeforeFailure.set(roundTrips);
+    }
+
+    /**
+     * 之后创建的连接模拟spring-data-redis的集群客户端：实现{@link RedisClusterConnection}，开启pipeline及执行脚本时抛出异常
+     */
+    public void useClusterClient() {
+        clusterClient = true;
+    }
+
+    /**
+     * @return 已执行的命令数【pipeline中的每条命令各计一次】
+     */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * @return 网络往返次数
+     */
+    public long getRoundTripCount() {
+        return roundTripCount.get();
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+                new Class<?>[]{clusterClient ? RedisClusterConnection.class : RedisConnection.class}, new InMemoryRedisConnection(clusterClient));
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        throw new UnsupportedOperationException("进程内redis替身不支持集群连接");
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return true;
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        throw new UnsupportedOperationException("进程内redis替身不支持哨兵连接");
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return ex instanceof DataAccessException ? (DataAccessException) ex : null;
+    }
+
+    //模拟一次网络往返：先等待节点恢复，再等待往返耗时
+    private void roundTrip() {
+        roundTripCount.incrementAndGet();
+
+        long pausedNanos;
+        while ((pausedNanos = pausedUntilNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(pausedNanos);
+        }
+
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+
+    //本次往返是否模拟连接失败
+    private boolean isFailedRoundTrip() {
+        return roundTripsBeforeFailure.get() >= 0 && roundTripsBeforeFailure.getAndDecrement() == 0;
+    }
+
+    //按命令涉及的key选择分片，集群模式下key不在同一个槽上时失败
+    private InMemoryRedisServer route(String name, Object[] args) {
+        if (shards == null) {
+            return server;
+        }
+
+        byte[][] keys;
+        switch (name) {
+            case "mGet":
+            case "del":
+                keys = (byte[][]) args[0];
+                break;
+            case "eval":
+            case "evalSha":
+                keys = Arrays.copyOfRange((byte[][]) args[3], 0, (Integer) args[2]);
+                break;
+            default:
+                keys = args != null && args.length > 0 && args[0] instanceof byte[] ? new byte[][]{(byte[]) args[0]} : new byte[0][];
+                break;
+        }
+
+        int slot = -1;
+        for (byte[] key : keys) {
+            int keySlot = RedisClusterSlots.slot(key);
+            if (slot >= 0 && keySlot != slot) {
+                crossSlotErrorCount.incrementAndGet();
+                throw new RedisSystemException("CROSSSLOT Keys in request don't hash to the same slot: " + name, null);
+            }
+            slot = keySlot;
+        }
+
+        return shards.get(Math.max(slot, 0) * shards.size() / RedisClusterSlots.SLOT_COUNT);
+    }
+
+    private final class InMemoryRedisConnection implements InvocationHandler {
+        private boolean closed;
+        //pipeline中的命令结果，未开启pipeline时为null
+        private List<Object> pipelineResults;
+        private RuntimeException pipelineError;
+        private int pipelineCommandCount;
+        //pipeline所在的往返模拟连接失败时的异常，其中的命令均不执行
+        private RuntimeException pipelineConnectionFailure;
+        //当前的订阅，由其他线程取消，未订阅时为null
+        private volatile Subscription subscription;
+        //是否模拟spring-data-redis的集群客户端
+        private final boolean clusterClient;
+
+        private InMemoryRedisConnection(boolean clusterClient) {
+            this.clusterClient = clusterClient;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getNativeConnection":
+                    return server;
+                case "isQueueing":
+                    return false;
+                case "isPipelined":
+                    return pipelineResults != null;
+                case "openPipeline":
+                    if (clusterClient) {
+                        throw new UnsupportedOperationException("Pipeline is currently not supported for JedisClusterConnection.");
+                    }
+                    if (pipelineResults == null) {
+                        pipelineResults = new ArrayList<>();
+                    }
+                    return null;
+                case "closePipeline":
+                    return closePipeline();
+                case "eval":
+                case "evalSha":
+                    if (clusterClient) {
+                        throw new InvalidDataAccessApiUsageException("Eval is not supported in cluster environment.");
+                    }
+                    return invokeCommand(method, args);
+                case "subscribe":
+                    subscribe((MessageListener) args[0], (byte[][]) args[1]);
+                    return null;
+                case "isSubscribed":
+                    return subscription != null && subscription.isAlive();
+                case "getSubscription":
+                    return subscription;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "InMemoryRedisConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+                default:
+                    return invokeCommand(method, args);
+            }
+        }
+
+        private Object invokeCommand(Method method, Object[] args) {
+            commandCount.incrementAndGet();
+
+            if (pipelineResults == null) {
+                if (isFailedRoundTrip()) {
+                    throw new RedisConnectionFailureException("模拟连接失败");
+                }
+                roundTrip();
+                return dispatch(method, args);
+            }
+
+            if (pipelineCommandCount++ == 0 && isFailedRoundTrip()) {
+                pipelineConnectionFailure = new RedisConnectionFailureException("模拟连接失败");
+            }
+            if (pipelineConnectionFailure != null) {
+                return null;
+            }
+
+            //与jedis一致：状态类命令不出现在pipeline结果中，出错的命令在关闭pipeline时抛出
+            try {
+                Object result = dispatch(method, args);
+                if (method.getReturnType() != void.class) {
+                    pipelineResults.add(result);
+                }
+            } catch (RuntimeException e) {
+                pipelineResults.add(e);
+                if (pipelineError == null) {
+                    pipelineError = e;
+                }
+            }
+
+            return null;
+        }
+
+        private List<Object> closePipeline() {
+            if (pipelineResults == null) {
+                return new ArrayList<>();
+            }
+
+            List<Object> results = pipelineResults;
+            RuntimeException error = pipelineError;
+            RuntimeException connectionFailure = pipelineConnectionFailure;
+            int commandCount = pipelineCommandCount;
+            pipelineResults = null;
+            pipelineError = null;
+            pipelineConnectionFailure = null;
+            pipelineCommandCount = 0;
+
+            if (connectionFailure != null) {
+                throw connectionFailure;
+            }
+            if (commandCount > 0) {
+                roundTrip();
+            }
+            if (error != null) {
+                throw new RedisPipelineException(error, results);
+            }
+
+            return results;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object dispatch(Method method, Object[] args) {
+            String name = method.getName();
+            Class<?>[] types = method.getParameterTypes();
+            if ("scriptLoad".equals(name)) {
+                return scriptLoad((byte[]) args[0]);
+            }
+            if ("publish".equals(name)) {
+                return InMemoryRedisConnectionFactory.this.server.publish((byte[]) args[0], (byte[]) args[1]);
+            }
+            InMemoryRedisServer server = route(name, args);
+
+            switch (name) {
+                case "get":
+                    return server.get((byte[]) args[0]);
+                case "mGet":
+                    return server.mGet((byte[][]) args[0]);
+                case "set":
+                    if (types.length == 2) {
+                        server.set((byte[]) args[0], (byte[]) args[1], 0L, false, false);
+                    } else {
+                        Expiration expiration = (Expiration) args[2];
+                        RedisStringCommands.SetOption option = (RedisStringCommands.SetOption) args[3];
+                        server.set((byte[]) args[0], (byte[]) args[1], expiration == null || expiration.isPersistent() ?
+                                        0L : expiration.getExpirationTimeInMilliseconds(),
+                                option == RedisStringCommands.SetOption.SET_IF_ABSENT, option == RedisStringCommands.SetOption.SET_IF_PRESENT);
+                    }
+                    return null;
+                case "del":
+                    return server.del((byte[][]) args[0]);
+                case "setNX":
+                    return server.set((byte[]) args[0], (byte[]) args[1], 0L, true, false);
+                case "setBit":
+                    return server.setBit((byte[]) args[0], (Long) args[1], (Boolean) args[2]);
+                case "getRange":
+                    return server.getRange((byte[]) args[0], (Long) args[1], (Long) args[2]);
+                case "incr":
+                    return server.incr((byte[]) args[0]);
+                case "exists":
+                    return server.exists((byte[]) args[0]);
+                case "expire":
+                    return server.expire((byte[]) args[0], (Long) args[1]);
+                case "pTtl":
+                    return server.pTtl((byte[]) args[0]);
+                case "hSet":
+                    return server.hSet((byte[]) args[0], (byte[]) args[1], (byte[]) args[2]);
+                case "hSetNX":
+                    return server.hSetNX((byte[]) args[0], (byte[]) args[1], (byte[]) args[2]);
+                case "hGet":
+                    return server.hGet((byte[]) args[0], (byte[]) args[1]);
+                case "hMGet":
+                    return server.hMGet((byte[]) args[0], (byte[][]) args[1]);
+                case "hKeys":
+                    return server.hKeys((byte[]) args[0]);
+                case "hDel":
+                    return server.hDel((byte[]) args[0], (byte[][]) args[1]);
+                case "hIncrBy":
+                    if (types[2] == long.class) {
+                        return server.hIncrBy((byte[]) args[0], (byte[]) args[1], (Long) args[2]);
+                    }
+                    break;
+                case "hGetAll":
+                    Map<byte[], byte[]> entries = new LinkedHashMap<>();
+                    for (Map.Entry<byte[], byte[]> entry : server.hEntries((byte[]) args[0])) {
+                        entries.put(entry.getKey(), entry.getValue());
+                    }
+                    return entries;
+                case "hScan":
+                    return hScan(server, (byte[]) args[0], (ScanOptions) args[1]);
+                case "zAdd":
+                    if (types.length == 3) {
+                        return server.zAdd((byte[]) args[0], (Double) args[1], (byte[]) args[2]);
+                    }
+                    return server.zAdd((byte[]) args[0], (Set<RedisZSetCommands.Tuple>) args[1]);
+                case "zRem":
+                    return server.zRem((byte[]) args[0], (byte[][]) args[1]);
+                case "zRange":
+                    return server.zRange((byte[]) args[0], (Long) args[1], (Long) args[2]);
+                case "zCard":
+                    return server.zCard((byte[]) args[0]);
+                case "zRangeByScore":
+                    if (types.length >= 3 && types[1] == double.class) {
+                        return server.zRangeByScore((byte[]) args[0], (Double) args[1], (Double) args[2],
+                                types.length == 5 ? (Long) args[3] : 0L, types.length == 5 ? (Long) args[4] : -1L);
+                    }
+                    break;
+                case "zRangeByScoreWithScores":
+                    if (types.length >= 3 && types[1] == double.class) {
+                        return server.zRangeByScoreWithScores((byte[]) args[0], (Double) args[1], (Double) args[2],
+                                types.length == 5 ? (Long) args[3] : 0L, types.length == 5 ? (Long) args[4] : -1L);
+                    }
+                    if (types.length == 3 && types[1] == RedisZSetCommands.Range.class) {
+                        RedisZSetCommands.Range range = (RedisZSetCommands.Range) args[1];
+                        RedisZSetCommands.Limit limit = (RedisZSetCommands.Limit) args[2];
+                        return server.zRangeByScoreWithScores((byte[]) args[0], score(range.getMin(), true), score(range.getMax(), false),
+                                limit.getOffset(), limit.getCount() > 0 ? limit.getCount() : -1L);
+                    }
+                    break;
+                case "zRemRangeByScore":
+                    if (types[1] == double.class) {
+                        return server.zRemRangeByScore((byte[]) args[0], (Double) args[1], (Double) args[2]);
+                    }
+                    break;
+                case "eval":
+                    return server.eval((byte[]) args[0], (Integer) args[2], (byte[][]) args[3]);
+                case "evalSha":
+                    return server.evalSha(args[0] instanceof String ? (String) args[0] : new String((byte[]) args[0]),
+                            (Integer) args[2], (byte[][]) args[3]);
+                default:
+                    break;
+            }
+
+            throw new UnsupportedOperationException("进程内redis替身不支持该命令：" + method);
+        }
+
+        //订阅频道并阻塞，直至订阅被取消
+        private void subscribe(MessageListener listener, byte[][] channels) {
+            roundTrip();
+            CountDownLatch unsubscribed = new CountDownLatch(1);
+            List<byte[]> subscribedChannels = new CopyOnWriteArrayList<>(channels);
+            subscription = (Subscription) Proxy.newProxyInstance(Subscription.class.getClassLoader(), new Class<?>[]{Subscription.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "subscribe":
+                                server.subscribe(listener, (byte[][]) args[0]);
+                                subscribedChannels.addAll(Arrays.asList((byte[][]) args[0]));
+                                return null;
+                            case "unsubscribe":
+                            case "pUnsubscribe":
+                                server.unsubscribe(listener);
+                                unsubscribed.countDown();
+                                return null;
+                            case "isAlive":
+                                return unsubscribed.getCount() > 0;
+                            case "getChannels":
+                                return subscribedChannels;
+                            case "getPatterns":
+                                return Collections.emptyList();
+                            case "getListener":
+                                return listener;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return "InMemoryRedisSubscription@" + Integer.toHexString(System.identityHashCode(proxy));
+                            default:
+                                throw new UnsupportedOperationException("进程内redis替身的订阅不支持该操作：" + method);
+                        }
+                    });
+            server.subscribe(listener, channels);
+
+            try {
+                unsubscribed.await();
+            } catch (InterruptedException e) {
+                server.unsubscribe(listener);
+                Thread.currentThread().interrupt();
+            } finally {
+                subscription = null;
+            }
+        }
+
+        //集群模式下脚本载入至所有分片
+        private String scriptLoad(byte[] script) {
+            String sha = null;
+            for (InMemoryRedisServer shard : shards == null ? Collections.singletonList(server) : shards) {
+                sha = shard.scriptLoad(script);
+            }
+
+            return sha;
+        }
+
+        //区间边界转为闭区间的分值，不包含边界时取相邻的浮点数，无边界时取正负无穷
+        private double score(RedisZSetCommands.Range.Boundary boundary, boolean isMin) {
+            if (boundary == null || boundary.getValue() == null) {
+                return isMin ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            }
+
+            double score = ((Number) boundary.getValue()).doubleValue();
+            if (boundary.isIncluding()) {
+                return score;
+            }
+            return isMin ? Math.nextUp(score) : Math.nextDown(score);
+        }
+
+        private ScanCursor<Map.Entry<byte[], byte[]>> hScan(InMemoryRedisServer server, byte[] key, ScanOptions options) {
+            List<Map.Entry<byte[], byte[]>> entries = server.hEntries(key);
+
+            return new ScanCursor<Map.Entry<byte[], byte[]>>(options) {
+                @Override
+                protected ScanIteration<Map.Entry<byte[], byte[]>> doScan(long cursorId, ScanOptions options) {
+                    return new ScanIteration<>(0, entries);
+                }
+            }.open();
+        }
+    }
+}
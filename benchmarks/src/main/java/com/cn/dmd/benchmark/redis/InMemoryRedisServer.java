@@ -0,0 +1,653 @@
+package com.cn.dmd.benchmark.redis;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的redis替身，实现{@code CronJobRedisActions}用到的命令，供基准测试及压测离线运行
+ * 1. 所有命令在同一把锁内执行，语义上等同于单线程的redis；
+ * 2. 过期时间在访问时惰性检查，时钟可整体拨快以模拟锁超时；
+ * 3. lua脚本不做解释，由{@link #registerScript}按脚本内容注册等价的java实现，未加载的脚本按redis返回NOSCRIPT；
+ * 4. 发布的消息在发布线程中同步交给订阅者
+ */
+public class InMemoryRedisServer {
+    private final Map<ByteBuffer, Object> data = new HashMap<>();
+    private final Map<ByteBuffer, Long> expireAtMillis = new HashMap<>();
+    //脚本sha -> 等价的java实现
+    private final Map<String, ScriptHandler> scriptHandlers = new ConcurrentHashMap<>();
+    //已通过SCRIPT LOAD或EVAL加载的脚本sha
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
+    private volatile long clockOffsetMillis;
+    //频道订阅者
+    private final List<ChannelSubscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * lua脚本的java实现，在服务端锁内执行
+     */
+    public interface ScriptHandler {
+        Object eval(InMemoryRedisServer server, byte[][] keys, byte[][] args);
+    }
+
+    private static final class ChannelSubscriber {
+        private final MessageListener listener;
+        private final Set<ByteBuffer> channels = ConcurrentHashMap.newKeySet();
+
+        private ChannelSubscriber(MessageListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * @param script  脚本内容
+     * @param handler 等价的java实现
+     */
+    public void registerScript(String script, ScriptHandler handler) {
+        scriptHandlers.put(sha1Hex(script.getBytes(StandardCharsets.UTF_8)), handler);
+    }
+
+    /**
+     * @return 当前时刻（毫秒），包含拨快的时长
+     */
+    public long currentTimeMillis() {
+        return System.currentTimeMillis() + clockOffsetMillis;
+    }
+
+    /**
+     * 拨快时钟，使剩余时间不足的key过期
+     *
+     * @param millis 拨快的时长（毫秒）
+     */
+    public void advanceClock(long millis) {
+        clockOffsetMillis += millis;
+    }
+
+    /**
+     * 清空所有数据及已加载的脚本
+     */
+    public synchronized void flushAll() {
+        data.clear();
+        expireAtMillis.clear();
+        loadedScripts.clear();
+    }
+
+    public synchronized int keyCount() {
+        purgeExpired();
+        return data.size();
+    }
+
+    /**
+     * @return 所有key、字段及值的字节数之和，不含redis自身的数据结构开销
+     */
+    public synchronized long payloadBytes() {
+        purgeExpired();
+
+        long bytes = 0;
+        for (Map.Entry<ByteBuffer, Object> entry : data.entrySet()) {
+            bytes += entry.getKey().remaining();
+
+            Object value = entry.getValue();
+            if (value instanceof byte[]) {
+                bytes += ((byte[]) value).length;
+            } else if (value instanceof HashValue) {
+                for (Map.Entry<ByteBuffer, byte[]> field : ((HashValue) value).fields.entrySet()) {
+                    bytes += field.getKey().remaining() + field.getValue().length;
+                }
+            } else if (value instanceof SortedSetValue) {
+                for (ByteBuffer member : ((SortedSetValue) value).scores.keySet()) {
+                    bytes += member.remaining() + Double.BYTES;
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    /* ------------------------------ string ------------------------------ */
+
+    public synchronized byte[] get(byte[] key) {
+        Object value = read(key);
+        return value == null ? null : (byte[]) checkType(value, byte[].class);
+    }
+
+    public synchronized List<byte[]> mGet(byte[]... keys) {
+        List<byte[]> values = new ArrayList<>(keys.length);
+        for (byte[] key : keys) {
+            Object value = read(key);
+            values.add(value instanceof byte[] ? (byte[]) value : null);
+        }
+
+        return values;
+    }
+
+    /**
+     * @param ttlMillis   超时时间（毫秒），不大于0时不过期
+     * @param onlyIfAbsent 是否仅在key不存在时设置【NX】
+     * @param onlyIfPresent 是否仅在key存在时设置【XX】
+     * @return 是否设置成功
+     */
+    public synchronized boolean set(byte[] key, byte[] value, long ttlMillis, boolean onlyIfAbsent, boolean onlyIfPresent) {
+        boolean exists = read(key) != null;
+        if ((onlyIfAbsent && exists) || (onlyIfPresent && !exists)) {
+            return false;
+        }
+
+        ByteBuffer wrappedKey = wrap(key);
+        data.put(wrappedKey, value.clone());
+        if (ttlMillis > 0) {
+            expireAtMillis.put(wrappedKey, currentTimeMillis() + ttlMillis);
+        } else {
+            expireAtMillis.remove(wrappedKey);
+        }
+
+        return true;
+    }
+
+    /**
+     * 位的顺序与Redis一致：第0位为首字节的最高位
+     *
+     * @return 原有的位值
+     */
+    public synchronized boolean setBit(byte[] key, long offset, boolean value) {
+        byte[] current = get(key);
+        int index = (int) (offset >>> 3);
+        byte[] bits = current == null || current.length <= index ? Arrays.copyOf(current == null ? new byte[0] : current, index + 1) : current;
+        int mask = 0x80 >>> (int) (offset & 7);
+        boolean old = (bits[index] & mask) != 0;
+        bits[index] = (byte) (value ? bits[index] | mask : bits[index] & ~mask);
+
+        data.put(wrap(key), bits);
+        return old;
+    }
+
+    /**
+     * @return [start, end]区间内的字节，超出部分截断，不支持负数下标
+     */
+    public synchronized byte[] getRange(byte[] key, long start, long end) {
+        byte[] current = get(key);
+        if (current == null || start >= current.length || end < start) {
+            return new byte[0];
+        }
+
+        return Arrays.copyOfRange(current, (int) start, (int) Math.min(end + 1, current.length));
+    }
+
+    public synchronized long incr(byte[] key) {
+        byte[] current = get(key);
+        long value = (current == null ? 0L : Long.parseLong(new String(current, StandardCharsets.UTF_8))) + 1L;
+
+        ByteBuffer wrappedKey = wrap(key);
+        data.put(wrappedKey, String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        return value;
+    }
+
+    /**
+     * @return 收到消息的订阅者数
+     */
+    public long publish(byte[] channel, byte[] message) {
+        long receivers = 0;
+        for (ChannelSubscriber subscriber : subscribers) {
+            if (subscriber.channels.contains(wrap(channel))) {
+                subscriber.listener.onMessage(new DefaultMessage(channel, message), null);
+                receivers++;
+            }
+        }
+
+        return receivers;
+    }
+
+    /**
+     * 订阅频道，同一监听器再次订阅时追加频道
+     */
+    public void subscribe(MessageListener listener, byte[]... channels) {
+        ChannelSubscriber subscriber = subscribers.stream().filter(candidate -> candidate.listener == listener).findFirst().orElse(null);
+        if (subscriber == null) {
+            subscriber = new ChannelSubscriber(listener);
+            subscribers.add(subscriber);
+        }
+
+        for (byte[] channel : channels) {
+            subscriber.channels.add(wrap(channel));
+        }
+    }
+
+    /**
+     * 取消监听器的所有订阅
+     */
+    public void unsubscribe(MessageListener listener) {
+        subscribers.removeIf(subscriber -> subscriber.listener == listener);
+    }
+
+    public synchronized long del(byte[]... keys) {
+        long count = 0;
+        for (byte[] key : keys) {
+            if (read(key) != null) {
+                remove(wrap(key));
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public synchronized boolean exists(byte[] key) {
+        return read(key) != null;
+    }
+
+    public synchronized boolean expire(byte[] key, long seconds) {
+        if (read(key) == null) {
+            return false;
+        }
+
+        expireAtMillis.put(wrap(key), currentTimeMillis() + seconds * 1000L);
+        return true;
+    }
+
+    /**
+     * @return 剩余存活时间（毫秒），key不存在时为-2，不过期时为-1
+     */
+    public synchronized long pTtl(byte[] key) {
+        if (read(key) == null) {
+            return -2L;
+        }
+
+        Long expireAt = expireAtMillis.get(wrap(key));
+        return expireAt == null ? -1L : Math.max(0L, expireAt - currentTimeMillis());
+    }
+
+    /* ------------------------------ hash ------------------------------ */
+
+    public synchronized boolean hSet(byte[] key, byte[] field, byte[] value) {
+        return hash(key, true).fields.put(wrap(field), value.clone()) == null;
+    }
+
+    public synchronized boolean hSetNX(byte[] key, byte[] field, byte[] value) {
+        return hash(key, true).fields.putIfAbsent(wrap(field), value.clone()) == null;
+    }
+
+    public synchronized byte[] hGet(byte[] key, byte[] field) {
+        HashValue hash = hash(key, false);
+        return hash == null ? null : hash.fields.get(wrap(field));
+    }
+
+    public synchronized List<byte[]> hMGet(byte[] key, byte[]... fields) {
+        HashValue hash = hash(key, false);
+
+        List<byte[]> values = new ArrayList<>(fields.length);
+        for (byte[] field : fields) {
+            values.add(hash == null ? null : hash.fields.get(wrap(field)));
+        }
+
+        return values;
+    }
+
+    public synchronized Set<byte[]> hKeys(byte[] key) {
+        HashValue hash = hash(key, false);
+        if (hash == null) {
+            return new LinkedHashSet<>();
+        }
+
+        Set<byte[]> fields = new LinkedHashSet<>(hash.fields.size() * 4 / 3 + 1);
+        for (ByteBuffer field : hash.fields.keySet()) {
+            fields.add(unwrap(field));
+        }
+
+        return fields;
+    }
+
+    /**
+     * @return 哈希表的全部字段及值的副本，供HSCAN一次性返回
+     */
+    public synchronized List<Map.Entry<byte[], byte[]>> hEntries(byte[] key) {
+        HashValue hash = hash(key, false);
+        if (hash == null) {
+            return new ArrayList<>();
+        }
+
+        List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>(hash.fields.size());
+        for (Map.Entry<ByteBuffer, byte[]> entry : hash.fields.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(unwrap(entry.getKey()), entry.getValue()));
+        }
+
+        return entries;
+    }
+
+    public synchronized long hDel(byte[] key, byte[]... fields) {
+        HashValue hash = hash(key, false);
+        if (hash == null) {
+            return 0L;
+        }
+
+        long count = 0;
+        for (byte[] field : fields) {
+            if (hash.fields.remove(wrap(field)) != null) {
+                count++;
+            }
+        }
+
+        if (hash.fields.isEmpty()) {
+            remove(wrap(key));
+        }
+
+        return count;
+    }
+
+    public synchronized long hIncrBy(byte[] key, byte[] field, long delta) {
+        HashValue hash = hash(key, true);
+        ByteBuffer wrappedField = wrap(field);
+
+        byte[] current = hash.fields.get(wrappedField);
+        long value = (current == null ? 0L : Long.parseLong(new String(current, StandardCharsets.UTF_8))) + delta;
+        hash.fields.put(wrappedField, String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+        return value;
+    }
+
+    /* ------------------------------ sorted set ------------------------------ */
+
+    public synchronized boolean zAdd(byte[] key, double score, byte[] member) {
+        return sortedSet(key, true).add(wrap(member), score);
+    }
+
+    public synchronized long zAdd(byte[] key, Set<RedisZSetCommands.Tuple> tuples) {
+        SortedSetValue sortedSet = sortedSet(key, true);
+
+        long count = 0;
+        for (RedisZSetCommands.Tuple tuple : tuples) {
+            if (sortedSet.add(wrap(tuple.getValue()), tuple.getScore())) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public synchronized long zRem(byte[] key, byte[]... members) {
+        SortedSetValue sortedSet = sortedSet(key, false);
+        if (sortedSet == null) {
+            return 0L;
+        }
+
+        long count = 0;
+        for (byte[] member : members) {
+            if (sortedSet.remove(wrap(member))) {
+                count++;
+            }
+        }
+
+        if (sortedSet.scores.isEmpty()) {
+            remove(wrap(key));
+        }
+
+        return count;
+    }
+
+    public synchronized Set<byte[]> zRange(byte[] key, long start, long end) {
+        SortedSetValue sortedSet = sortedSet(key, false);
+        Set<byte[]> members = new LinkedHashSet<>();
+        if (sortedSet == null) {
+            return members;
+        }
+
+        int size = sortedSet.ordered.size();
+        long from = start < 0 ? Math.max(0, size + start) : start;
+        long to = end < 0 ? size + end : Math.min(end, size - 1);
+
+        long index = 0;
+        for (Iterator<SortedSetMember> iterator = sortedSet.ordered.iterator(); iterator.hasNext() && index <= to; index++) {
+            SortedSetMember member = iterator.next();
+            if (index >= from) {
+                members.add(unwrap(member.value));
+            }
+        }
+
+        return members;
+    }
+
+    public synchronized Set<byte[]> zRangeByScore(byte[] key, double min, double max, long offset, long count) {
+        Set<byte[]> members = new LinkedHashSet<>();
+        for (SortedSetMember member : rangeByScore(key, min, max, offset, count)) {
+            members.add(unwrap(member.value));
+        }
+
+        return members;
+    }
+
+    public synchronized Set<RedisZSetCommands.Tuple> zRangeByScoreWithScores(byte[] key, double min, double max, long offset, long count) {
+        Set<RedisZSetCommands.Tuple> tuples = new LinkedHashSet<>();
+        for (SortedSetMember member : rangeByScore(key, min, max, offset, count)) {
+            tuples.add(new DefaultTuple(unwrap(member.value), member.score));
+        }
+
+        return tuples;
+    }
+
+    public synchronized long zRemRangeByScore(byte[] key, double min, double max) {
+        SortedSetValue sortedSet = sortedSet(key, false);
+        if (sortedSet == null) {
+            return 0L;
+        }
+
+        List<SortedSetMember> members = rangeByScore(key, min, max, 0, -1);
+        for (SortedSetMember member : members) {
+            sortedSet.remove(member.value);
+        }
+
+        if (sortedSet.scores.isEmpty()) {
+            remove(wrap(key));
+        }
+
+        return members.size();
+    }
+
+    public synchronized long zCard(byte[] key) {
+        SortedSetValue sortedSet = sortedSet(key, false);
+        return sortedSet == null ? 0L : sortedSet.scores.size();
+    }
+
+    /* ------------------------------ script ------------------------------ */
+
+    /**
+     * @param script 脚本内容
+     * @return 脚本sha
+     */
+    public String scriptLoad(byte[] script) {
+        String sha = sha1Hex(script);
+        if (!scriptHandlers.containsKey(sha)) {
+            throw new InvalidDataAccessApiUsageException("ERR 未注册该脚本的java实现：" + new String(script, StandardCharsets.UTF_8));
+        }
+
+        loadedScripts.add(sha);
+        return sha;
+    }
+
+    public Object eval(byte[] script, int numKeys, byte[]... keysAndArgs) {
+        return evalSha(scriptLoad(script), numKeys, keysAndArgs);
+    }
+
+    public synchronized Object evalSha(String sha, int numKeys, byte[]... keysAndArgs) {
+        if (!loadedScripts.contains(sha)) {
+            throw new InvalidDataAccessApiUsageException("NOSCRIPT No matching script. Please use EVAL.");
+        }
+
+        byte[][] keys = Arrays.copyOfRange(keysAndArgs, 0, numKeys);
+        byte[][] args = Arrays.copyOfRange(keysAndArgs, numKeys, keysAndArgs.length);
+        return scriptHandlers.get(sha).eval(this, keys, args);
+    }
+
+    /* ------------------------------ internal ------------------------------ */
+
+    private Object read(byte[] key) {
+        ByteBuffer wrappedKey = wrap(key);
+        Long expireAt = expireAtMillis.get(wrappedKey);
+        if (expireAt != null && expireAt <= currentTimeMillis()) {
+            remove(wrappedKey);
+            return null;
+        }
+
+        return data.get(wrappedKey);
+    }
+
+    private void remove(ByteBuffer key) {
+        data.remove(key);
+        expireAtMillis.remove(key);
+    }
+
+    private void purgeExpired() {
+        long now = currentTimeMillis();
+        expireAtMillis.entrySet().removeIf(entry -> {
+            if (entry.getValue() <= now) {
+                data.remove(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private HashValue hash(byte[] key, boolean createIfAbsent) {
+        Object value = read(key);
+        if (value == null && createIfAbsent) {
+            value = new HashValue();
+            data.put(wrap(key), value);
+        }
+
+        return value == null ? null : checkType(value, HashValue.class);
+    }
+
+    private SortedSetValue sortedSet(byte[] key, boolean createIfAbsent) {
+        Object value = read(key);
+        if (value == null && createIfAbsent) {
+            value = new SortedSetValue();
+            data.put(wrap(key), value);
+        }
+
+        return value == null ? null : checkType(value, SortedSetValue.class);
+    }
+
+    private List<SortedSetMember> rangeByScore(byte[] key, double min, double max, long offset, long count) {
+        SortedSetValue sortedSet = sortedSet(key, false);
+        List<SortedSetMember> members = new ArrayList<>();
+        if (sortedSet == null || min > max) {
+            return members;
+        }
+
+        NavigableSet<SortedSetMember> range = sortedSet.ordered.subSet(new SortedSetMember(min, null, -1), true,
+                new SortedSetMember(max, null, 1), true);
+        long skipped = 0;
+        for (SortedSetMember member : range) {
+            if (skipped++ < offset) {
+                continue;
+            }
+            if (count >= 0 && members.size() >= count) {
+                break;
+            }
+            members.add(member);
+        }
+
+        return members;
+    }
+
+    private static <T> T checkType(Object value, Class<T> type) {
+        if (!type.isInstance(value)) {
+            throw new InvalidDataAccessApiUsageException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+
+        return type.cast(value);
+    }
+
+    private static ByteBuffer wrap(byte[] bytes) {
+        return ByteBuffer.wrap(bytes.clone());
+    }
+
+    private static byte[] unwrap(ByteBuffer buffer) {
+        return buffer.array().clone();
+    }
+
+    static String sha1Hex(byte[] script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script);
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class HashValue {
+        private final Map<ByteBuffer, byte[]> fields = new HashMap<>();
+    }
+
+    private static final class SortedSetValue {
+        private final Map<ByteBuffer, Double> scores = new HashMap<>();
+        private final TreeSet<SortedSetMember> ordered = new TreeSet<>();
+
+        private boolean add(ByteBuffer member, double score) {
+            Double previous = scores.put(member, score);
+            if (previous != null) {
+                ordered.remove(new SortedSetMember(previous, member, 0));
+            }
+            ordered.add(new SortedSetMember(score, member, 0));
+
+            return previous == null;
+        }
+
+        private boolean remove(ByteBuffer member) {
+            Double previous = scores.remove(member);
+            if (previous == null) {
+                return false;
+            }
+
+            ordered.remove(new SortedSetMember(previous, member, 0));
+            return true;
+        }
+    }
+
+    //按分值、再按成员字节序排序；bound为-1/1时作为同分值的下界/上界哨兵，不对应任何成员
+    private static final class SortedSetMember implements Comparable<SortedSetMember> {
+        private final double score;
+        private final ByteBuffer value;
+        private final int bound;
+
+        private SortedSetMember(double score, ByteBuffer value, int bound) {
+            this.score = score;
+            this.value = value;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(SortedSetMember other) {
+            int result = Double.compare(score, other.score);
+            if (result != 0) {
+                return result;
+            }
+            if (bound != 0 || other.bound != 0) {
+                return Integer.compare(bound, other.bound);
+            }
+
+            return value.compareTo(other.value);
+        }
+    }
+}
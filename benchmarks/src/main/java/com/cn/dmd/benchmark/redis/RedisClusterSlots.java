@@ -0,0 +1,59 @@
+package com.cn.dmd.benchmark.redis;
+
+/**
+ * redis集群槽位计算：CRC16(XMODEM) mod 16384，key中包含非空的hash tag【第一个{与其后第一个}之间的内容】时只对hash tag计算
+ */
+public final class RedisClusterSlots {
+    //槽总数
+    public static final int SLOT_COUNT = 16384;
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC16_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private RedisClusterSlots() {
+    }
+
+    /**
+     * @param key redis key
+     * @return key所在的槽
+     */
+    public static int slot(byte[] key) {
+        int from = 0;
+        int to = key.length;
+
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == '{') {
+                for (int j = i + 1; j < key.length; j++) {
+                    if (key[j] == '}') {
+                        //空的hash tag【{}】不生效，仍对整个key计算
+                        if (j > i + 1) {
+                            from = i + 1;
+                            to = j;
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+
+        return crc16(key, from, to) & (SLOT_COUNT - 1);
+    }
+
+    private static int crc16(byte[] bytes, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ bytes[i]) & 0xFF]) & 0xFFFF;
+        }
+
+        return crc;
+    }
+}
@@ -0,0 +1,41 @@
+package com.cn.dmd.benchmark.support;
+
+import com.cn.dmd.CronTask;
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import com.cn.dmd.domain.CronJob;
+
+import java.util.function.Consumer;
+
+/**
+ * 基准测试及压测使用的任务，业务逻辑由调用方传入
+ */
+public class BenchmarkTask implements CronTask {
+    private final CronTaskConfig taskConfig;
+    private final Consumer<CronJob> logic;
+
+    public BenchmarkTask(CronTaskConfig taskConfig, Consumer<CronJob> logic) {
+        this.taskConfig = taskConfig;
+        this.logic = logic;
+    }
+
+    /**
+     * @param taskName 任务名称
+     * @param logic    业务逻辑
+     * @return 每分钟一个作业、开启失败作业扫描、不回溯的任务
+     */
+    public static BenchmarkTask everyMinute(String taskName, Consumer<CronJob> logic) {
+        return new BenchmarkTask(new CronTaskConfig(taskName, false, true, false, CronScheduleTimeUnit.MINUTE,
+                1, 1, 0, 1, true, false), logic);
+    }
+
+    @Override
+    public CronTaskConfig getTaskConfig() {
+        return taskConfig;
+    }
+
+    @Override
+    public void invoke(CronJob cronJob) {
+        logic.accept(cronJob);
+    }
+}
@@ -0,0 +1,200 @@
+package com.cn.dmd.benchmark.support;
+
+import com.cn.dmd.CronJobAsyncExecutorNonAtomicWithTimeBound;
+import com.cn.dmd.CronJobCatchUpController;
+import com.cn.dmd.CronJobExecutorNonAtomicWithTimeBound;
+import com.cn.dmd.CronJobExecutorNonAtomicWithTimeNotBound;
+import com.cn.dmd.CronJobLockRenewer;
+import com.cn.dmd.CronJobRedisActions;
+import com.cn.dmd.CronJobRetentionEngine;
+import com.cn.dmd.CronJobScanner;
+import com.cn.dmd.CronJobScannerElector;
+import com.cn.dmd.CronJobScheduler;
+import com.cn.dmd.CronJobStore;
+import com.cn.dmd.CronTask;
+import com.cn.dmd.CronTaskRegistry;
+import com.cn.dmd.CronTriggerEngine;
+import com.cn.dmd.DefaultCronJobScheduler;
+import com.cn.dmd.DefaultCronTaskRegistry;
+import com.cn.dmd.EmbeddedCronJobStore;
+import com.cn.dmd.InMemoryRedisScripts;
+import com.cn.dmd.benchmark.redis.InMemoryRedisConnectionFactory;
+import com.cn.dmd.benchmark.redis.InMemoryRedisServer;
+import com.cn.dmd.config.ApplicationStatus;
+import com.cn.dmd.config.CronJobMetricsConfiguration;
+import com.cn.dmd.metrics.CronJobMetrics;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程内的调度节点：一个独立的spring上下文，包含调度器、执行器、redis操作等组件，连接至共享的redis替身
+ * 配置取自{@code application-scheduling.yml}，可按节点覆盖
+ */
+public class SchedulerNode implements Closeable {
+    private final String nodeId;
+    private final InMemoryRedisConnectionFactory connectionFactory;
+    private final AnnotationConfigApplicationContext context;
+
+    /**
+     * @param nodeId         节点标识，作为锁持有者
+     * @param server         共享的redis替身
+     * @param properties     覆盖的配置项【如cron.general.scan-mode】
+     * @param tasks          节点上注册的任务
+     * @param scannerEnabled 是否启用扫描器、扫描选主及数据压缩
+     */
+    public SchedulerNode(String nodeId, InMemoryRedisServer server, Map<String, Object> properties,
+                         Collection<? extends CronTask> tasks, boolean scannerEnabled) {
+        this(nodeId, new InMemoryRedisConnectionFactory(server), properties, tasks, scannerEnabled);
+    }
+
+    /**
+     * @param nodeId            节点标识，作为锁持有者
+     * @param connectionFactory 节点独占的连接工厂，可连接至redis替身或模拟的redis集群
+     * @param properties        覆盖的配置项【如cron.general.scan-mode】
+     * @param tasks             节点上注册的任务
+     * @param scannerEnabled    是否启用扫描器、扫描选主及数据压缩
+     */
+    public SchedulerNode(String nodeId, InMemoryRedisConnectionFactory connectionFactory, Map<String, Object> properties,
+                         Collection<? extends CronTask> tasks, boolean scannerEnabled) {
+        this.nodeId = nodeId;
+        this.connectionFactory = connectionFactory;
+        this.context = new AnnotationConfigApplicationContext();
+
+        MutablePropertySources propertySources = context.getEnvironment().getPropertySources();
+        propertySources.addFirst(loadDefaultProperties());
+        propertySources.addFirst(new MapPropertySource("node-" + nodeId, new HashMap<>(properties)));
+
+        context.getBeanFactory().registerSingleton("applicationStatus", new ApplicationStatus("127.0.0.1", 0, nodeId));
+        context.getBeanFactory().registerSingleton("redisConnectionFactory", connectionFactory);
+
+        List<Class<?>> componentClasses = new ArrayList<>();
+        componentClasses.add(NodeConfiguration.class);
+        componentClasses.add(CronJobMetricsConfiguration.class);
+        componentClasses.add(DefaultCronTaskRegistry.class);
+        componentClasses.add(CronJobRedisActions.class);
+        componentClasses.add(EmbeddedCronJobStore.class);
+        componentClasses.add(CronJobLockRenewer.class);
+        componentClasses.add(CronJobExecutorNonAtomicWithTimeBound.class);
+        componentClasses.add(CronJobExecutorNonAtomicWithTimeNotBound.class);
+        componentClasses.add(CronJobAsyncExecutorNonAtomicWithTimeBound.class);
+        componentClasses.add(DefaultCronJobScheduler.class);
+        componentClasses.add(CronTriggerEngine.class);
+        if (scannerEnabled) {
+            componentClasses.add(CronJobScannerElector.class);
+            componentClasses.add(CronJobCatchUpController.class);
+            componentClasses.add(CronJobScanner.class);
+            componentClasses.add(CronJobRetentionEngine.class);
+        }
+        context.register(componentClasses.toArray(new Class<?>[0]));
+        context.refresh();
+
+        CronTaskRegistry registry = context.getBean(CronTaskRegistry.class);
+        for (CronTask task : tasks) {
+            registry.register(task.getTaskConfig().getName(), task);
+        }
+    }
+
+    /**
+     * 发布应用启动完成事件，触发扫描器等组件启动
+     */
+    public void start() {
+        context.publishEvent(new ApplicationReadyEvent(new SpringApplication(), new String[0], context));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public InMemoryRedisConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public CronJobScheduler getScheduler() {
+        return context.getBean(CronJobScheduler.class);
+    }
+
+    public CronJobStore getStore() {
+        return context.getBean(CronJobStore.class);
+    }
+
+    public CronJobRedisActions getRedisActions() {
+        return context.getBean(CronJobRedisActions.class);
+    }
+
+    public CronJobMetrics getMetrics() {
+        return context.getBean(CronJobMetrics.class);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    /**
+     * @return 注册了所有作业脚本实现的redis替身
+     */
+    public static InMemoryRedisServer newRedisServer() {
+        InMemoryRedisServer server = new InMemoryRedisServer();
+        InMemoryRedisScripts.install(server);
+
+        return server;
+    }
+
+    /**
+     * @param shardCount 分片数
+     * @return 模拟redis集群的各个分片，均注册了所有作业脚本实现
+     */
+    public static List<InMemoryRedisServer> newRedisCluster(int shardCount) {
+        List<InMemoryRedisServer> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(newRedisServer());
+        }
+
+        return shards;
+    }
+
+    private static PropertySource<?> loadDefaultProperties() {
+        try {
+            return new YamlPropertySourceLoader().load("application-scheduling", new ClassPathResource("application-scheduling.yml"), null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取默认配置失败", e);
+        }
+    }
+
+    @Configuration
+    static class NodeConfiguration {
+        @Bean
+        static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        StringRedisTemplate stringRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
+            return new StringRedisTemplate(redisConnectionFactory);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.cn.dmd;
+
+import com.cn.dmd.domain.CronJob;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 异步作业执行器，作业的协调步骤【记录、加锁、读取状态、置位、释放锁】与业务逻辑分别在不同的执行者上串联，
+ * 等待redis返回或等待执行业务逻辑的作业不占用线程
+ */
+public interface AsyncCronJobExecutor {
+    /**
+     * 异步执行定时作业
+     *
+     * @param cronJob         定时作业
+     * @param computeBulkhead 执行业务逻辑的作业池
+     * @return 是否成功处理定时作业，作业池已满时以RejectedExecutionException结束
+     */
+    CompletionStage<Boolean> executeJobAsync(CronJob cronJob, CronJobBulkhead computeBulkhead);
+
+    /**
+     * 异步执行已被当前应用认领的定时作业【作业已记录、锁已持有、状态为未完成】，见{@link CronJobStore#claimJobs}
+     *
+     * @param cronJob         已认领的定时作业
+     * @param computeBulkhead 执行业务逻辑的作业池
+     * @return 是否成功处理定时作业
+     */
+    CompletionStage<Boolean> executeClaimedJobAsync(CronJob cronJob, CronJobBulkhead computeBulkhead);
+}
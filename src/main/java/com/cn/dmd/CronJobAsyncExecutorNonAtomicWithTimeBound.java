@@ -0,0 +1,133 @@
+package com.cn.dmd;
+
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetrics;
+import com.cn.dmd.utils.LogUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link CronJobExecutorNonAtomicWithTimeBound}的异步版本：
+ * 1. 记录作业开始、获取锁、读取作业状态合并为一次认领脚本调用；置位作业状态与释放锁合并为一次pipeline；
+ * 2. redis步骤在协调线程池中执行，业务逻辑在任务的作业池中执行，二者通过CompletableFuture串联；
+ * 3. 等待执行业务逻辑的作业不占用协调线程，协调线程数只需与redis连接数相当
+ * <p>
+ * 当前使用的redis客户端【jedis】只提供同步接口，因此redis步骤仍会占用协调线程，但不再占用作业池线程
+ */
+@Component
+@Slf4j
+public class CronJobAsyncExecutorNonAtomicWithTimeBound implements AsyncCronJobExecutor {
+    @Autowired
+    private CronJobStore cronJobStore;
+    @Autowired
+    private CronTaskRegistry cronTaskRegistry;
+    @Autowired
+    private CronJobLockRenewer cronJobLockRenewer;
+    @Autowired
+    private CronJobMetrics metrics;
+    //执行redis步骤的协调线程数
+    @Value("${cron.general.async-coordination-threads:8}")
+    private int coordinationThreads;
+    private ExecutorService coordinationExecutorService;
+
+    @PostConstruct
+    private void init() {
+        coordinationExecutorService = Executors.newFixedThreadPool(coordinationThreads, new CronJobThreadFactory("coordination"));
+    }
+
+    @PreDestroy
+    private void onDestroy() {
+        coordinationExecutorService.shutdown();
+    }
+
+    @Override
+    public CompletionStage<Boolean> executeJobAsync(CronJob cronJob, CronJobBulkhead computeBulkhead) {
+        return CompletableFuture.supplyAsync(() -> !cronJobStore.claimJobs(Collections.singletonList(cronJob)).isEmpty(),
+                coordinationExecutorService)
+                .thenCompose(isClaimed -> {
+                    metrics.increment(isClaimed ? CronJobMetricNames.LOCK_WON : CronJobMetricNames.LOCK_LOST, cronJob.getTaskName());
+                    if (!isClaimed) {
+                        LogUtil.info(log, "获取作业执行权失败 或者 作业已完成，放弃处理，作业信息：{}", cronJob);
+                        return CompletableFuture.completedFuture(false);
+                    }
+
+                    return executeClaimedJobAsync(cronJob, computeBulkhead);
+                });
+    }
+
+    @Override
+    public CompletionStage<Boolean> executeClaimedJobAsync(CronJob cronJob, CronJobBulkhead computeBulkhead) {
+        log.info("获取到作业的执行权，开始执行作业：{}", cronJob);
+
+        //为持有的锁定时续上超时时间
+        CronJobLease lease = cronJobLockRenewer.register(cronJob);
+        long lockHoldStartNanos = metrics.isEnabled() ? System.nanoTime() : 0L;
+
+        CompletableFuture<Boolean> result = computeBulkhead.supplyAsync(() -> {
+            LogUtil.putCronJob(cronJob);
+            long executionStartNanos = metrics.isEnabled() ? System.nanoTime() : 0L;
+
+            try {
+                CronTask cronTask = cronTaskRegistry.getByTaskName(cronJob.getTaskName());
+                if (cronTask.getTaskConfig().isAlwaysSucceed()) {
+                    LogUtil.info(log, "该作业被标记为总是成功：{}", cronJob);
+                } else {
+                    cronTask.invoke(cronJob);
+                }
+
+                return true;
+            } finally {
+                if (metrics.isEnabled()) {
+                    metrics.recordNanos(CronJobMetricNames.EXECUTION, cronJob.getTaskName(), System.nanoTime() - executionStartNanos);
+                }
+
+                LogUtil.removeCronJob();
+            }
+        }).thenApplyAsync(invoked -> {
+            //续时失败意味着锁可能已被其他应用获取，作业存在被重复执行的可能
+            if (lease.isLost()) {
+                metrics.increment(CronJobMetricNames.LEASE_LOST, cronJob.getTaskName());
+                log.error("作业执行期间锁租约丢失，可能已被其他应用重复执行：{}", cronJob);
+            }
+
+            //防护令牌已过期时作业已被其他应用重新认领，锁也已归属对方，以对方的结果为准
+            if (!cronJobStore.completeJobAndReleaseLock(cronJob)) {
+                metrics.increment(CronJobMetricNames.FENCING_REJECTED, cronJob.getTaskName());
+                log.error("作业的防护令牌已过期，已被其他应用重新认领，放弃写入完成状态：{}，令牌：{}", cronJob, cronJob.getFencingToken());
+                return false;
+            }
+
+            log.info("成功执行作业：{}", cronJob);
+            return invoked;
+        }, coordinationExecutorService);
+
+        //执行失败或被放弃时释放锁，以便尽快被其他应用或下一次扫描认领
+        return result.whenCompleteAsync((status, e) -> {
+            cronJobLockRenewer.unregister(lease);
+
+            if (metrics.isEnabled()) {
+                metrics.recordNanos(CronJobMetricNames.LOCK_HOLD, cronJob.getTaskName(), System.nanoTime() - lockHoldStartNanos);
+            }
+
+            if (e != null) {
+                metrics.increment(CronJobMetricNames.JOB_FAILED, cronJob.getTaskName());
+                try {
+                    cronJobStore.deleteLock(cronJob);
+                } catch (Exception deleteLockException) {
+                    log.info("释放作业互斥锁时发生失败，等待锁自动超时，作业信息：" + cronJob, deleteLockException);
+                }
+            }
+        }, coordinationExecutorService);
+    }
+}
@@ -0,0 +1,297 @@
+package com.cn.dmd;
+
+import com.cn.dmd.constants.CronJobRejectionPolicy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 作业池【舱壁】，隔离不同任务的执行资源，避免慢任务占满其他任务的执行线程
+ * 1. 固定并发数，队列长度可限制；
+ * 2. 作业池已满时按策略处理，被放弃的作业回调其清理逻辑【如释放本地占位及锁】；
+ * 3. 对外暴露队列深度、活跃线程数及拒绝次数
+ * <p>
+ * CALLER_RUNS策略下，提交线程为调度线程【触发引擎、扫描器】时不在其上执行作业，以免阻塞所有任务的触发及扫描：
+ * 作业交由作业池唯一的溢出线程执行，溢出线程也在执行作业时放弃本次提交的作业，由失败作业扫描补偿
+ * <p>
+ * 虚拟线程模式下每个作业使用一个新的虚拟线程，并发数由信号量限制，等待信号量的作业视为排队中；
+ * 该模式下无法取出排队中的作业，DISCARD_OLDEST按DISCARD处理
+ */
+@Slf4j
+public class CronJobBulkhead {
+    private final String name;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final CronJobRejectionPolicy rejectionPolicy;
+    //平台线程模式下的线程池，虚拟线程模式下为null
+    private final ThreadPoolExecutor executor;
+    //虚拟线程模式下的线程工厂及并发控制
+    private final ThreadFactory virtualThreadFactory;
+    private final Semaphore permits;
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    //CALLER_RUNS策略下执行调度线程提交的作业的溢出线程，其他策略下为null
+    private final ThreadPoolExecutor callerRunsExecutor;
+    private volatile boolean shutdown;
+    //被放弃的作业数
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param name            作业池名称
+     * @param concurrency     并发数
+     * @param queueCapacity   队列长度，不大于0时不限制
+     * @param rejectionPolicy 作业池已满时的处理策略
+     */
+    CronJobBulkhead(String name, int concurrency, int queueCapacity, CronJobRejectionPolicy rejectionPolicy) {
+        this(name, concurrency, queueCapacity, rejectionPolicy, null);
+    }
+
+    /**
+     * @param name                 作业池名称
+     * @param concurrency          并发数
+     * @param queueCapacity        队列长度，不大于0时不限制
+     * @param rejectionPolicy      作业池已满时的处理策略
+     * @param virtualThreadFactory 虚拟线程工厂，为null时使用平台线程
+     */
+    CronJobBulkhead(String name, int concurrency, int queueCapacity, CronJobRejectionPolicy rejectionPolicy, ThreadFactory virtualThreadFactory) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("作业池[" + name + "]的并发数应该大于0：" + concurrency);
+        }
+
+        this.name = name;
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.rejectionPolicy = rejectionPolicy;
+        this.virtualThreadFactory = virtualThreadFactory;
+
+        if (virtualThreadFactory != null) {
+            this.executor = null;
+            this.permits = new Semaphore(concurrency);
+        } else {
+            BlockingQueue<Runnable> queue = queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new LinkedBlockingQueue<>();
+            this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS, queue,
+                    new CronJobThreadFactory(name), new BulkheadRejectedExecutionHandler());
+            this.permits = null;
+        }
+
+        this.callerRunsExecutor = rejectionPolicy == CronJobRejectionPolicy.CALLER_RUNS ? new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new CronJobThreadFactory(name + "-caller-runs")) : null;
+    }
+
+    /**
+     * 提交作业
+     *
+     * @param task       作业逻辑
+     * @param onRejected 作业被放弃时的清理逻辑
+     */
+    void submit(Runnable task, Runnable onRejected) {
+        if (executor != null) {
+            executor.execute(new BulkheadTask(task, onRejected));
+        } else {
+            submitToVirtualThread(new BulkheadTask(task, onRejected));
+        }
+    }
+
+    /**
+     * 在作业池中执行计算逻辑，作业被放弃时返回的future以RejectedExecutionException结束
+     *
+     * @param supplier 计算逻辑
+     * @return 计算结果
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        submit(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, () -> future.completeExceptionally(new RejectedExecutionException("作业池[" + name + "]已满，作业被放弃")));
+
+        return future;
+    }
+
+    void shutdown() {
+        shutdown = true;
+
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (callerRunsExecutor != null) {
+            callerRunsExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @return 是否使用虚拟线程
+     */
+    public boolean isVirtual() {
+        return executor == null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return 队列长度，0表示不限制
+     */
+    public int getQueueCapacity() {
+        return Math.max(queueCapacity, 0);
+    }
+
+    public CronJobRejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * @return 排队中的作业数
+     */
+    public int getQueueDepth() {
+        return executor != null ? executor.getQueue().size() : waitingCount.get();
+    }
+
+    /**
+     * @return 正在执行作业的线程数
+     */
+    public int getActiveThreadCount() {
+        return (executor != null ? executor.getActiveCount() : activeCount.get())
+                + (callerRunsExecutor != null ? callerRunsExecutor.getActiveCount() : 0);
+    }
+
+    /**
+     * @return 被放弃的作业数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private void submitToVirtualThread(BulkheadTask task) {
+        if (shutdown) {
+            reject(task);
+            return;
+        }
+
+        if (queueCapacity > 0 && permits.availablePermits() == 0 && waitingCount.get() >= queueCapacity) {
+            if (rejectionPolicy == CronJobRejectionPolicy.CALLER_RUNS) {
+                runOnCaller(task);
+            } else {
+                log.warn("作业池[{}]已满，放弃本次提交的作业，队列深度：{}", name, waitingCount.get());
+                reject(task);
+            }
+            return;
+        }
+
+        waitingCount.incrementAndGet();
+        virtualThreadFactory.newThread(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                waitingCount.decrementAndGet();
+                Thread.currentThread().interrupt();
+                reject(task);
+                return;
+            }
+
+            waitingCount.decrementAndGet();
+            activeCount.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                activeCount.decrementAndGet();
+                permits.release();
+            }
+        }).start();
+    }
+
+    //作业池已满时由提交线程执行作业，提交线程为调度线程时交由溢出线程执行
+    private void runOnCaller(Runnable runnable) {
+        if (!CronJobThreadFactory.isSchedulingThread()) {
+            log.warn("作业池[{}]已满，由提交线程直接执行作业", name);
+            runnable.run();
+            return;
+        }
+
+        try {
+            callerRunsExecutor.execute(runnable);
+            log.warn("作业池[{}]已满，提交线程为调度线程，由溢出线程执行作业", name);
+        } catch (RejectedExecutionException e) {
+            log.warn("作业池[{}]已满且溢出线程正在执行作业，放弃调度线程提交的作业", name);
+            reject(runnable);
+        }
+    }
+
+    private void reject(Runnable runnable) {
+        rejectedCount.incrementAndGet();
+
+        if (runnable instanceof BulkheadTask) {
+            try {
+                ((BulkheadTask) runnable).onRejected.run();
+            } catch (Exception e) {
+                log.warn("作业池[" + name + "]清理被放弃的作业时发生错误", e);
+            }
+        }
+    }
+
+    //携带清理逻辑的作业
+    private static final class BulkheadTask implements Runnable {
+        private final Runnable task;
+        private final Runnable onRejected;
+
+        private BulkheadTask(Runnable task, Runnable onRejected) {
+            this.task = task;
+            this.onRejected = onRejected;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private final class BulkheadRejectedExecutionHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                reject(runnable);
+                return;
+            }
+
+            switch (rejectionPolicy) {
+                case CALLER_RUNS:
+                    runOnCaller(runnable);
+                    break;
+                case DISCARD_OLDEST:
+                    Runnable oldest = executor.getQueue().poll();
+                    log.warn("作业池[{}]已满，放弃队列中最早的作业", name);
+                    if (oldest != null) {
+                        reject(oldest);
+                    }
+                    executor.execute(runnable);
+                    break;
+                case DISCARD:
+                default:
+                    log.warn("作业池[{}]已满，放弃本次提交的作业，队列深度：{}", name, executor.getQueue().size());
+                    reject(runnable);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.cn.dmd;
+
+import com.cn.dmd.constants.CronJobCatchUpPolicy;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetrics;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 缺失作业的追赶控制器，启动回溯扫描发现的缺失作业经此提交，避免故障恢复后一次性提交全部作业冲击作业池及下游
+ * 1. ALL：按开始时刻从早到晚提交，可按任务限制每秒提交的作业数及同时执行的作业数；不限制时与原有实现一致，一次性认领并提交；
+ * 2. COALESCE：连续的缺失作业合并为一个覆盖整段时间范围的作业执行一次，完成后逐个记录各作业完成；
+ * 3. LATEST：只执行最近的一个缺失作业，其余作业认领后直接记为完成；
+ * 4. 按任务暴露尚未结束的作业数及最早的未结束作业距今的时长
+ * 限速提交在后台线程中进行，不阻塞回溯扫描；同一任务再次追赶时，新的缺失作业并入正在进行的追赶
+ */
+@Component
+@Slf4j
+public class CronJobCatchUpController {
+    @Autowired
+    private CronJobScheduler cronJobScheduler;
+    @Autowired
+    private CronJobStore cronJobStore;
+    @Autowired
+    private CronJobMetrics metrics;
+    //默认的追赶策略
+    @Value("${cron.general.catch-up-policy:ALL}")
+    private CronJobCatchUpPolicy defaultCatchUpPolicy;
+    //ALL策略下默认每秒提交的作业数，为0时不限制
+    @Value("${cron.general.catch-up-rate-per-second:0}")
+    private double defaultCatchUpRatePerSecond;
+    //ALL策略下默认同时执行的作业数，为0时不限制
+    @Value("${cron.general.catch-up-concurrency:0}")
+    private int defaultCatchUpConcurrency;
+
+    //任务名 -> 追赶进度
+    private final ConcurrentHashMap<String, CatchUp> catchUps = new ConcurrentHashMap<>();
+    //限速提交线程，每个正在限速追赶的任务占用一个
+    private final ExecutorService catchUpExecutorService = Executors.newCachedThreadPool(new CronJobThreadFactory("catch-up"));
+
+    @PreDestroy
+    private void onPreDestroy() {
+        catchUpExecutorService.shutdownNow();
+    }
+
+    /**
+     * 按任务的追赶策略提交缺失的作业
+     *
+     * @param taskConfig 任务配置
+     * @param missedJobs 缺失的作业
+     */
+    public void catchUp(CronTaskConfig taskConfig, List<CronJob> missedJobs) {
+        if (CollectionUtils.isEmpty(missedJobs)) {
+            return;
+        }
+
+        //单实例作业不区分时间范围，无需追赶
+        if (taskConfig.isSingletonInstanceOnly()) {
+            cronJobScheduler.claimAndScheduleAll(missedJobs);
+            return;
+        }
+
+        List<CronJob> sortedJobs = new ArrayList<>(missedJobs);
+        sortedJobs.sort(Comparator.comparingLong(CronJob::getStartTime));
+
+        CatchUp catchUp = catchUps.computeIfAbsent(taskConfig.getName(), this::newCatchUp);
+        CronJobCatchUpPolicy policy = taskConfig.getCatchUpPolicy() != null ? taskConfig.getCatchUpPolicy() : defaultCatchUpPolicy;
+        switch (policy) {
+            case COALESCE:
+                log.info("任务[{}]追赶：合并执行{}个缺失作业", taskConfig.getName(), sortedJobs.size());
+                catchUp.track(sortedJobs);
+                cronJobScheduler.claimAndScheduleCoalesced(sortedJobs, catchUp::finish);
+                break;
+            case LATEST:
+                CronJob latestJob = sortedJobs.get(sortedJobs.size() - 1);
+                log.info("任务[{}]追赶：只执行最近的缺失作业{}，跳过{}个作业", taskConfig.getName(), latestJob, sortedJobs.size() - 1);
+                catchUp.track(Collections.singletonList(latestJob));
+                skip(taskConfig.getName(), sortedJobs.subList(0, sortedJobs.size() - 1));
+                cronJobScheduler.claimAndScheduleAll(Collections.singletonList(latestJob), catchUp::finish);
+                break;
+            default:
+                catchUpAll(taskConfig, catchUp, sortedJobs);
+        }
+    }
+
+    private void catchUpAll(CronTaskConfig taskConfig, CatchUp catchUp, List<CronJob> sortedJobs) {
+        double ratePerSecond = taskConfig.getCatchUpRatePerSecond() > 0 ? taskConfig.getCatchUpRatePerSecond() : defaultCatchUpRatePerSecond;
+        int concurrency = taskConfig.getCatchUpConcurrency() > 0 ? taskConfig.getCatchUpConcurrency() : defaultCatchUpConcurrency;
+
+        catchUp.track(sortedJobs);
+        if (ratePerSecond <= 0 && concurrency <= 0) {
+            cronJobScheduler.claimAndScheduleAll(sortedJobs, catchUp::finish);
+            return;
+        }
+
+        log.info("任务[{}]追赶：从早到晚执行{}个缺失作业，每秒{}个，并发数{}", taskConfig.getName(), sortedJobs.size(),
+                ratePerSecond > 0 ? ratePerSecond : "不限", concurrency > 0 ? concurrency : "不限");
+        if (catchUp.enqueue(sortedJobs, ratePerSecond, concurrency)) {
+            catchUpExecutorService.execute(catchUp::dispatch);
+        }
+    }
+
+    //认领并直接记为完成，认领失败的作业由其他应用处理
+    private void skip(String taskName, List<CronJob> skippedJobs) {
+        if (skippedJobs.isEmpty()) {
+            return;
+        }
+
+        //防护令牌已过期的作业已被其他应用重新认领，锁也已归属对方，不计入跳过的作业
+        int skippedCount = 0;
+        for (CronJob cronJob : cronJobStore.claimJobs(skippedJobs)) {
+            if (cronJobStore.completeJobAndReleaseLock(cronJob)) {
+                skippedCount++;
+            } else {
+                metrics.increment(CronJobMetricNames.FENCING_REJECTED, taskName);
+                log.warn("任务[{}]追赶：作业的防护令牌已过期，已被其他应用重新认领，放弃记为完成：{}，令牌：{}", taskName, cronJob,
+                        cronJob.getFencingToken());
+            }
+        }
+
+        metrics.increment(CronJobMetricNames.CATCH_UP_SKIPPED, taskName, skippedCount);
+        log.info("任务[{}]追赶：{}个缺失作业记为完成而未执行", taskName, skippedCount);
+    }
+
+    private CatchUp newCatchUp(String taskName) {
+        CatchUp catchUp = new CatchUp(taskName);
+        metrics.gauge(CronJobMetricNames.CATCH_UP_REMAINING, taskName, catchUp.unfinishedJobs::size);
+        metrics.gauge(CronJobMetricNames.CATCH_UP_LAG, taskName, catchUp::getLagInMillis);
+
+        return catchUp;
+    }
+
+    /**
+     * 任务的追赶进度及待提交的作业
+     */
+    private class CatchUp {
+        private final String taskName;
+        //尚未结束的作业，按开始时刻排序
+        private final ConcurrentSkipListMap<Long, CronJob> unfinishedJobs = new ConcurrentSkipListMap<>();
+        //限速追赶中尚未提交的作业，按开始时刻排序
+        private final ConcurrentSkipListMap<Long, CronJob> queuedJobs = new ConcurrentSkipListMap<>();
+        //以下字段的读写在当前对象上同步
+        private boolean dispatching;
+        private RateLimiter rateLimiter;
+        private Semaphore permits;
+
+        private CatchUp(String taskName) {
+            this.taskName = taskName;
+        }
+
+        private void track(List<CronJob> cronJobs) {
+            for (CronJob cronJob : cronJobs) {
+                unfinishedJobs.putIfAbsent(cronJob.getStartTime(), cronJob);
+            }
+        }
+
+        private void finish(CronJob cronJob) {
+            if (unfinishedJobs.remove(cronJob.getStartTime()) != null) {
+                metrics.increment(CronJobMetricNames.CATCH_UP_FINISHED, taskName);
+            }
+        }
+
+        private long getLagInMillis() {
+            Map.Entry<Long, CronJob> oldestEntry = unfinishedJobs.firstEntry();
+            return oldestEntry == null ? 0L : Math.max(0L, System.currentTimeMillis() - oldestEntry.getKey());
+        }
+
+        /**
+         * @return 是否需要启动提交线程
+         */
+        private synchronized boolean enqueue(List<CronJob> cronJobs, double ratePerSecond, int concurrency) {
+            for (CronJob cronJob : cronJobs) {
+                queuedJobs.putIfAbsent(cronJob.getStartTime(), cronJob);
+            }
+
+            if (dispatching) {
+                return false;
+            }
+
+            rateLimiter = ratePerSecond > 0 ? RateLimiter.create(ratePerSecond) : null;
+            permits = concurrency > 0 ? new Semaphore(concurrency) : null;
+            dispatching = true;
+            return true;
+        }
+
+        //逐个提交排队的作业，直至队列为空
+        private void dispatch() {
+            RateLimiter rateLimiter;
+            Semaphore permits;
+            synchronized (this) {
+                rateLimiter = this.rateLimiter;
+                permits = this.permits;
+            }
+
+            try {
+                while (true) {
+                    Map.Entry<Long, CronJob> entry;
+                    synchronized (this) {
+                        entry = queuedJobs.pollFirstEntry();
+                        if (entry == null) {
+                            dispatching = false;
+                            break;
+                        }
+                    }
+
+                    if (permits != null) {
+                        permits.acquire();
+                    }
+                    if (rateLimiter != null) {
+                        rateLimiter.acquire();
+                    }
+                    cronJobScheduler.claimAndScheduleAll(Collections.singletonList(entry.getValue()), cronJob -> {
+                        finish(cronJob);
+                        if (permits != null) {
+                            permits.release();
+                        }
+                    });
+                }
+
+                log.info("任务[{}]追赶：缺失作业已全部提交", taskName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("任务[{}]追赶被中断，{}个作业未提交，等待下一次回溯扫描补偿", taskName, abandonQueuedJobs());
+            } catch (RuntimeException e) {
+                log.error("任务[" + taskName + "]追赶时发生错误，" + abandonQueuedJobs() + "个作业未提交，等待下一次回溯扫描补偿", e);
+            }
+        }
+
+        //放弃尚未提交的作业，不再计入追赶进度
+        private synchronized int abandonQueuedJobs() {
+            int abandonedCount = queuedJobs.size();
+            queuedJobs.keySet().forEach(unfinishedJobs::remove);
+            queuedJobs.clear();
+            dispatching = false;
+
+            return abandonedCount;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.cn.dmd;
+
+import com.cn.dmd.utils.LongHashSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已完成作业的本地缓存：作业完成后状态不再变化，缓存命中的作业无需再读取redis
+ * 每个任务按写入顺序保留最近的若干个作业开始时刻，超出上限时淘汰最早写入的；开始时刻不装箱保存
+ */
+class CronJobCompletionCache {
+    private final int maxEntriesPerTask;
+    //任务名 -> 已完成作业的开始时刻
+    private final ConcurrentHashMap<String, CompletedStartTimes> completedJobs = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxEntriesPerTask 每个任务缓存的作业数上限，不大于0时不缓存
+     */
+    CronJobCompletionCache(int maxEntriesPerTask) {
+        this.maxEntriesPerTask = maxEntriesPerTask;
+    }
+
+    /**
+     * @return 是否缓存
+     */
+    boolean isEnabled() {
+        return maxEntriesPerTask > 0;
+    }
+
+    /**
+     * @param taskName  任务名
+     * @param startTime 作业开始时刻
+     * @return 作业是否已知已完成，未缓存时返回false
+     */
+    boolean isCompleted(String taskName, long startTime) {
+        CompletedStartTimes startTimes = completedJobs.get(taskName);
+        return startTimes != null && startTimes.contains(startTime);
+    }
+
+    /**
+     * 记录作业已完成
+     *
+     * @param taskName  任务名
+     * @param startTime 作业开始时刻
+     */
+    void markCompleted(String taskName, long startTime) {
+        if (isEnabled()) {
+            startTimesOf(taskName).add(startTime);
+        }
+    }
+
+    /**
+     * 批量记录同一任务的作业已完成
+     *
+     * @param taskName   任务名
+     * @param startTimes 作业开始时刻列表
+     */
+    void markCompleted(String taskName, Collection<Long> startTimes) {
+        if (isEnabled() && !startTimes.isEmpty()) {
+            CompletedStartTimes completedStartTimes = startTimesOf(taskName);
+            for (long startTime : startTimes) {
+                completedStartTimes.add(startTime);
+            }
+        }
+    }
+
+    /**
+     * @return 所有任务缓存的作业总数
+     */
+    long size() {
+        return completedJobs.values().stream().mapToLong(CompletedStartTimes::size).sum();
+    }
+
+    private CompletedStartTimes startTimesOf(String taskName) {
+        return completedJobs.computeIfAbsent(taskName, key -> new CompletedStartTimes(maxEntriesPerTask));
+    }
+
+    //单个任务缓存的作业开始时刻：集合用于查找，环形数组记录写入顺序用于淘汰
+    private static final class CompletedStartTimes {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int maxEntries;
+        private final LongHashSet startTimes = new LongHashSet();
+        //写入顺序，写满上限后从head处循环覆盖最早写入的
+        private long[] insertionOrder;
+        private int head;
+        private int count;
+
+        private CompletedStartTimes(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.insertionOrder = new long[Math.min(INITIAL_CAPACITY, maxEntries)];
+        }
+
+        private synchronized boolean contains(long startTime) {
+            return startTimes.contains(startTime);
+        }
+
+        private synchronized void add(long startTime) {
+            if (!startTimes.add(startTime)) {
+                return;
+            }
+
+            if (count == maxEntries) {
+                startTimes.remove(insertionOrder[head]);
+                insertionOrder[head] = startTime;
+                head = (head + 1) % maxEntries;
+                return;
+            }
+
+            //未写满时head始终为0，按原顺序扩容即可
+            if (count == insertionOrder.length) {
+                insertionOrder = Arrays.copyOf(insertionOrder, Math.min(insertionOrder.length * 2, maxEntries));
+            }
+            insertionOrder[count++] = startTime;
+        }
+
+        private synchronized int size() {
+            return count;
+        }
+    }
+}
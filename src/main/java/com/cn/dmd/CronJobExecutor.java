@@ -17,4 +17,14 @@ public interface CronJobExecutor {
      * @return 是否成功处理定时作业
      */
     boolean executeJob(CronJob cronJob);
+
+    /**
+     * 执行已被当前应用认领的定时作业【作业已记录、锁已持有、状态为未完成】，见{@link CronJobStore#claimJobs}
+     *
+     * @param cronJob 已认领的定时作业
+     * @return 是否成功处理定时作业
+     */
+    default boolean executeClaimedJob(CronJob cronJob) {
+        return executeJob(cronJob);
+    }
 }
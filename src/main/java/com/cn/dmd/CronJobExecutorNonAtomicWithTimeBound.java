@@ -1,14 +1,16 @@
 package com.cn.dmd;
 
+import com.cn.dmd.constants.CronJobMetricNames;
 import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetrics;
 import com.cn.dmd.utils.LogUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 使用此执行器来执行这些定时作业：
@@ -24,18 +26,19 @@ import java.util.concurrent.TimeUnit;
 public class CronJobExecutorNonAtomicWithTimeBound implements CronJobExecutor {
     private final Boolean JOB_STATUS_FINISHED = Boolean.TRUE;
     @Autowired
-    private CronJobRedisActions cronJobRedisActions;
+    private CronJobStore cronJobStore;
     @Autowired
     private CronTaskRegistry cronTaskRegistry;
-    //锁续命间隔
-    @Value("${cron.general.lock-inspiration-interval}")
-    private int INSPIRE_LOCK_INTERVAL;
+    @Autowired
+    private CronJobLockRenewer cronJobLockRenewer;
+    @Autowired
+    private CronJobMetrics metrics;
 
     @Override
     public boolean executeJob(CronJob cronJob) {
         boolean processStatus = false;
 
-        Boolean jobCreateStatus = cronJobRedisActions.createJobIfNotPresent(cronJob);
+        Boolean jobCreateStatus = cronJobStore.createJobIfNotPresent(cronJob);
         if (Boolean.TRUE.equals(jobCreateStatus)) {
             log.info("成功记录作业开始：{}", cronJob);
         } else {
@@ -46,71 +49,226 @@ public class CronJobExecutorNonAtomicWithTimeBound implements CronJobExecutor {
             log.info("尝试获取作业执行权，作业信息：{}", cronJob);
         }
 
-        boolean isLockHold = cronJobRedisActions.tryLock(cronJob);
+        boolean isLockHold = cronJobStore.tryLock(cronJob);
 
         if (!isLockHold) {
+            metrics.increment(CronJobMetricNames.LOCK_LOST, cronJob.getTaskName());
             if (log.isInfoEnabled()) {
                 log.info("获取作业执行权失败，放弃处理，作业信息：{}", cronJob);
             }
         } else {
-            ScheduledThreadPoolExecutor timer = null;
-
             try {
                 log.info("获取到作业的执行权，开始执行作业：{}", cronJob);
 
                 //检查任务状态是否已完成
-                Boolean jobStatus = cronJobRedisActions.getStatusOfJob(cronJob);
+                Boolean jobStatus = cronJobStore.getStatusOfJob(cronJob);
                 if (JOB_STATUS_FINISHED.equals(jobStatus)) {
+                    metrics.increment(CronJobMetricNames.LOCK_LOST, cronJob.getTaskName());
                     log.warn("作业已结束，放弃此次作业，作业信息：{}", cronJob);
                     return false;
                 }
+            } catch (Exception e) {
+                cronJobStore.deleteLock(cronJob);
+
+                throw e;
+            }
+
+            metrics.increment(CronJobMetricNames.LOCK_WON, cronJob.getTaskName());
+            processStatus = executeClaimedJob(cronJob);
+        }
+
+        return processStatus;
+    }
+
+    @Override
+    public boolean executeClaimedJob(CronJob cronJob) {
+        //为持有的锁定时续上超时时间
+        return executeClaimedJob(cronJobLockRenewer.register(cronJob));
+    }
+
+    /**
+     * 执行已被当前应用认领、且在认领后即注册了租约的定时作业，结束后注销租约
+     * 作业在作业池中排队期间租约已丢失时放弃执行，锁可能已被其他应用获取
+     *
+     * @param lease 已认领作业的租约
+     * @return 是否成功处理定时作业
+     */
+    public boolean executeClaimedJob(CronJobLease lease) {
+        CronJob cronJob = lease.getCronJob();
+        long lockHoldStartNanos = metrics.isEnabled() ? System.nanoTime() : 0L;
 
-                //为持有的锁定时续上超时时间
-                timer = new ScheduledThreadPoolExecutor(1);
-                timer.scheduleWithFixedDelay(() -> {
-                    try {
-                        cronJobRedisActions.inspireLock(cronJob);
-                        if (log.isInfoEnabled()) {
-                            log.info("为作业关联锁续上超时时间成功：{}", cronJob);
-                        }
-                    } catch (Exception e) {
-                        log.warn("为作业关联锁续上超时时间失败：" + cronJob, e);
-                    }
-                }, INSPIRE_LOCK_INTERVAL, INSPIRE_LOCK_INTERVAL, TimeUnit.SECONDS);
-
-                //执行业务逻辑
-                CronTask cronTask = cronTaskRegistry.getByTaskName(cronJob.getTaskName());
-                if (cronTask.getTaskConfig().isAlwaysSucceed()) {
-                    LogUtil.info(log, "该作业被标记为总是成功：{}", cronJob);
-                } else {
+        try {
+            if (lease.isLost()) {
+                metrics.increment(CronJobMetricNames.LEASE_LOST, cronJob.getTaskName());
+                log.error("作业排队期间锁租约丢失，放弃执行，等待其他应用或失败作业扫描处理：{}", cronJob);
+                return false;
+            }
+
+            //执行业务逻辑
+            CronTask cronTask = cronTaskRegistry.getByTaskName(cronJob.getTaskName());
+            if (cronTask.getTaskConfig().isAlwaysSucceed()) {
+                LogUtil.info(log, "该作业被标记为总是成功：{}", cronJob);
+            } else if (metrics.isEnabled()) {
+                long executionStartNanos = System.nanoTime();
+                try {
                     cronTask.invoke(cronJob);
+                } finally {
+                    metrics.recordNanos(CronJobMetricNames.EXECUTION, cronJob.getTaskName(), System.nanoTime() - executionStartNanos);
                 }
+            } else {
+                cronTask.invoke(cronJob);
+            }
+
+            //续时失败意味着锁可能已被其他应用获取，作业存在被重复执行的可能
+            if (lease.isLost()) {
+                metrics.increment(CronJobMetricNames.LEASE_LOST, cronJob.getTaskName());
+                log.error("作业执行期间锁租约丢失，可能已被其他应用重复执行：{}", cronJob);
+            }
+
+            //置位任务状态并添加成功日志；防护令牌已过期时作业已被其他应用重新认领，锁也已归属对方，以对方的结果为准
+            if (!cronJobStore.markJobCompleted(cronJob)) {
+                metrics.increment(CronJobMetricNames.FENCING_REJECTED, cronJob.getTaskName());
+                log.error("作业的防护令牌已过期，已被其他应用重新认领，放弃写入完成状态：{}，令牌：{}", cronJob, cronJob.getFencingToken());
+                return false;
+            }
 
-                //置位任务状态并添加成功日志
-                cronJobRedisActions.markJobCompleted(cronJob);
+            //释放锁时失败并不影响整个作业的执行状态
+            //锁是临时性的数据，会自动超时
+            try {
+                cronJobStore.deleteLock(cronJob);
+            } catch (Exception e) {
+                log.info("释放作业互斥锁时发生失败，不影响作业执行状态，作业信息：" + cronJob, e);
+            }
+
+            log.info("成功执行作业：{}", cronJob);
+            return true;
+        } catch (Exception e) {
+            metrics.increment(CronJobMetricNames.JOB_FAILED, cronJob.getTaskName());
+            cronJobStore.deleteLock(cronJob);
 
-                //释放锁时失败并不影响整个作业的执行状态
-                //锁是临时性的数据，会自动超时
+            throw e;
+        } finally {
+            cronJobLockRenewer.unregister(lease);
+
+            if (metrics.isEnabled()) {
+                metrics.recordNanos(CronJobMetricNames.LOCK_HOLD, cronJob.getTaskName(), System.nanoTime() - lockHoldStartNanos);
+            }
+        }
+    }
+
+    /**
+     * 合并执行已被当前应用认领的连续作业：以覆盖全部作业时间范围的一个作业执行一次任务逻辑，成功后逐个记录作业完成
+     *
+     * @param leases 同一任务、按开始时刻升序且首尾相接的已认领作业的租约，认领后即已注册
+     * @return 是否全部作业均已记录完成
+     */
+    public boolean executeClaimedWindows(List<CronJobLease> leases) {
+        List<CronJob> cronJobs = jobsOf(leases);
+        CronJob firstJob = cronJobs.get(0);
+        CronJob lastJob = cronJobs.get(cronJobs.size() - 1);
+
+        //合并后的作业覆盖全部时间范围，令牌取各作业中最新签发的令牌
+        CronJob coalescedJob = new CronJob(firstJob.getTaskName(), firstJob.getStartTime(), lastJob.getEndTime());
+        long fencingToken = 0L;
+        for (CronJob cronJob : cronJobs) {
+            fencingToken = Math.max(fencingToken, cronJob.getFencingToken());
+        }
+        coalescedJob.setFencingToken(fencingToken);
+
+        return executeClaimedGroup(leases, "合并", cronTask -> cronTask.invoke(coalescedJob));
+    }
+
+    /**
+     * 批量执行已被当前应用认领的连续作业：以全部作业调用一次{@link CronTask#invokeBatch}，成功后逐个记录作业完成
+     *
+     * @param leases 同一任务、按开始时刻升序且首尾相接的已认领作业的租约，认领后即已注册
+     * @return 是否全部作业均已记录完成
+     */
+    public boolean executeClaimedBatch(List<CronJobLease> leases) {
+        List<CronJob> cronJobs = jobsOf(leases);
+        return executeClaimedGroup(leases, "批量", cronTask -> cronTask.invokeBatch(cronJobs));
+    }
+
+    //执行一次任务逻辑，成功后逐个记录作业完成；失败时释放全部作业的锁，等待失败作业扫描补偿；结束后注销全部租约
+    //排队期间任一租约丢失时整组放弃执行，仍持有的锁随即释放
+    private boolean executeClaimedGroup(List<CronJobLease> leases, String mode, Consumer<CronTask> invocation) {
+        List<CronJob> cronJobs = jobsOf(leases);
+        String taskName = cronJobs.get(0).getTaskName();
+        long lockHoldStartNanos = metrics.isEnabled() ? System.nanoTime() : 0L;
+
+        try {
+            if (leases.stream().anyMatch(CronJobLease::isLost)) {
+                metrics.increment(CronJobMetricNames.LEASE_LOST, taskName);
+                log.error("{}执行的作业排队期间锁租约丢失，整组放弃执行，等待其他应用或失败作业扫描处理：{} ~ {}", mode, cronJobs.get(0),
+                        cronJobs.get(cronJobs.size() - 1));
+                for (CronJob cronJob : cronJobs) {
+                    cronJobStore.deleteLock(cronJob);
+                }
+                return false;
+            }
+
+            CronTask cronTask = cronTaskRegistry.getByTaskName(taskName);
+            if (cronTask.getTaskConfig().isAlwaysSucceed()) {
+                LogUtil.info(log, "该作业被标记为总是成功：{} ~ {}", cronJobs.get(0), cronJobs.get(cronJobs.size() - 1));
+            } else if (metrics.isEnabled()) {
+                long executionStartNanos = System.nanoTime();
                 try {
-                    cronJobRedisActions.deleteLock(cronJob);
+                    invocation.accept(cronTask);
+                } finally {
+                    metrics.recordNanos(CronJobMetricNames.EXECUTION, taskName, System.nanoTime() - executionStartNanos);
+                }
+            } else {
+                invocation.accept(cronTask);
+            }
+
+            for (CronJobLease lease : leases) {
+                if (lease.isLost()) {
+                    metrics.increment(CronJobMetricNames.LEASE_LOST, taskName);
+                    log.error("{}执行期间锁租约丢失，可能已被其他应用重复执行：{}", mode, lease.getCronJob());
+                }
+            }
+
+            //逐个记录作业完成，被拒绝的作业已由其他应用重新认领，以对方的结果为准
+            int rejectedCount = 0;
+            for (CronJob cronJob : cronJobs) {
+                if (!cronJobStore.markJobCompleted(cronJob)) {
+                    rejectedCount++;
+                    metrics.increment(CronJobMetricNames.FENCING_REJECTED, taskName);
+                    log.error("作业的防护令牌已过期，已被其他应用重新认领，放弃写入完成状态：{}，令牌：{}", cronJob, cronJob.getFencingToken());
+                    continue;
+                }
+
+                try {
+                    cronJobStore.deleteLock(cronJob);
                 } catch (Exception e) {
                     log.info("释放作业互斥锁时发生失败，不影响作业执行状态，作业信息：" + cronJob, e);
                 }
+            }
 
-                log.info("成功执行作业：{}", cronJob);
-                processStatus = true;
-            } catch (Exception e) {
-                cronJobRedisActions.deleteLock(cronJob);
+            log.info("成功{}执行{}个作业：{} ~ {}", mode, cronJobs.size(), cronJobs.get(0), cronJobs.get(cronJobs.size() - 1));
+            return rejectedCount == 0;
+        } catch (Exception e) {
+            metrics.increment(CronJobMetricNames.JOB_FAILED, taskName);
+            for (CronJob cronJob : cronJobs) {
+                cronJobStore.deleteLock(cronJob);
+            }
 
-                throw e;
-            } finally {
-                if (timer != null) {
-                    timer.shutdown();
-                    log.info("成功关闭锁续时的定时线程，相关作业为：{}", cronJob);
-                }
+            throw e;
+        } finally {
+            leases.forEach(cronJobLockRenewer::unregister);
+
+            if (metrics.isEnabled()) {
+                metrics.recordNanos(CronJobMetricNames.LOCK_HOLD, taskName, System.nanoTime() - lockHoldStartNanos);
             }
         }
+    }
 
-        return processStatus;
+    private static List<CronJob> jobsOf(List<CronJobLease> leases) {
+        List<CronJob> cronJobs = new ArrayList<>(leases.size());
+        for (CronJobLease lease : leases) {
+            cronJobs.add(lease.getCronJob());
+        }
+
+        return cronJobs;
     }
 }
@@ -4,12 +4,8 @@ import com.cn.dmd.domain.CronJob;
 import com.cn.dmd.utils.LogUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
 /**
  * 使用此执行器来执行这些定时作业：
  * 1. 对时间信息敏感【需要依赖当前时间来划分作业范围】，一般是那些查询全部条件的定时任务；
@@ -23,12 +19,11 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class CronJobExecutorNonAtomicWithTimeNotBound implements CronJobExecutor {
     @Autowired
-    private CronJobRedisActions cronJobRedisActions;
+    private CronJobStore cronJobStore;
     @Autowired
     private CronTaskRegistry cronTaskRegistry;
-    //锁续命间隔
-    @Value("${cron.general.lock-inspiration-interval}")
-    private int INSPIRE_LOCK_INTERVAL;
+    @Autowired
+    private CronJobLockRenewer cronJobLockRenewer;
 
     @Override
     public boolean executeJob(CronJob cronJob) {
@@ -41,30 +36,20 @@ public class CronJobExecutorNonAtomicWithTimeNotBound implements CronJobExecutor
             log.info("尝试获取作业执行权，作业信息：{}", convertedJob);
         }
 
-        boolean isLockHold = cronJobRedisActions.tryLock(convertedJob);
+        boolean isLockHold = cronJobStore.tryLock(convertedJob);
 
         if (!isLockHold) {
             if (log.isInfoEnabled()) {
                 log.info("获取作业执行权失败，放弃处理，作业信息：{}", convertedJob);
             }
         } else {
-            ScheduledThreadPoolExecutor timer = null;
+            CronJobLease lease = null;
 
             try {
                 log.info("获取到作业的执行权，开始执行作业：{}", convertedJob);
 
                 //为持有的锁定时续上超时时间
-                timer = new ScheduledThreadPoolExecutor(1);
-                timer.scheduleWithFixedDelay(() -> {
-                    try {
-                        cronJobRedisActions.inspireLock(convertedJob);
-                        if (log.isInfoEnabled()) {
-                            log.info("为作业关联锁续上超时时间成功：{}", cronJob);
-                        }
-                    } catch (Exception e) {
-                        log.warn("为作业关联锁续上超时时间失败：" + convertedJob, e);
-                    }
-                }, INSPIRE_LOCK_INTERVAL, INSPIRE_LOCK_INTERVAL, TimeUnit.SECONDS);
+                lease = cronJobLockRenewer.register(convertedJob);
 
                 //执行业务逻辑
                 CronTask cronTask = cronTaskRegistry.getByTaskName(convertedJob.getTaskName());
@@ -74,10 +59,15 @@ public class CronJobExecutorNonAtomicWithTimeNotBound implements CronJobExecutor
                     cronTask.invoke(cronJob);
                 }
 
+                //续时失败意味着锁可能已被其他应用获取，作业存在被重复执行的可能
+                if (lease.isLost()) {
+                    log.error("作业执行期间锁租约丢失，可能已被其他应用重复执行：{}", convertedJob);
+                }
+
                 //释放锁时失败并不影响整个作业的执行状态
                 //锁是临时性的数据，会自动超时
                 try {
-                    cronJobRedisActions.deleteLock(convertedJob);
+                    cronJobStore.deleteLock(convertedJob);
                 } catch (Exception e) {
                     log.info("释放作业互斥锁时发生失败，不影响作业执行状态，作业信息：" + convertedJob, e);
                 }
@@ -85,14 +75,11 @@ public class CronJobExecutorNonAtomicWithTimeNotBound implements CronJobExecutor
                 log.info("成功执行作业：{}", convertedJob);
                 processStatus = true;
             } catch (Exception e) {
-                cronJobRedisActions.deleteLock(convertedJob);
+                cronJobStore.deleteLock(convertedJob);
 
                 throw e;
             } finally {
-                if (timer != null) {
-                    timer.shutdown();
-                    log.info("成功关闭锁续时的定时线程，相关作业为：{}", convertedJob);
-                }
+                cronJobLockRenewer.unregister(lease);
             }
         }
 
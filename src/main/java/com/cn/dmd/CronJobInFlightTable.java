@@ -0,0 +1,50 @@
+package com.cn.dmd;
+
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.utils.LongHashSet;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地作业池中的时间敏感作业：按任务存放作业开始时刻，用于提交时去重
+ * 每个任务一个不装箱的long集合，同一任务的访问在集合上同步
+ */
+class CronJobInFlightTable {
+    //任务名 -> 作业池中作业的开始时刻
+    private final ConcurrentHashMap<String, LongHashSet> inFlightJobs = new ConcurrentHashMap<>();
+
+    /**
+     * 占住作业在本地作业池中的位置
+     *
+     * @param cronJob 作业
+     * @return 是否占位成功，作业已在作业池中时返回false
+     */
+    boolean add(CronJob cronJob) {
+        //先get再computeIfAbsent，避免任务已存在时computeIfAbsent仍对所在桶加锁
+        LongHashSet startTimes = inFlightJobs.get(cronJob.getTaskName());
+        if (startTimes == null) {
+            startTimes = inFlightJobs.computeIfAbsent(cronJob.getTaskName(), taskName -> new LongHashSet());
+        }
+        synchronized (startTimes) {
+            return startTimes.add(cronJob.getStartTime());
+        }
+    }
+
+    /**
+     * 移除作业在本地作业池中的占位
+     *
+     * @param cronJob 作业
+     * @return 作业是否在作业池中
+     */
+    boolean remove(CronJob cronJob) {
+        LongHashSet startTimes = inFlightJobs.get(cronJob.getTaskName());
+        if (startTimes == null) {
+            return false;
+        }
+
+        synchronized (startTimes) {
+            return startTimes.remove(cronJob.getStartTime());
+        }
+    }
+
+}
@@ -0,0 +1,344 @@
+package com.cn.dmd;
+
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.constants.CronJobKeyLayout;
+import com.cn.dmd.constants.CronTaskKeyConstants;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.apache.commons.lang3.time.DateParser;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 作业状态字段与作业锁名的编解码器
+ * 1. LEGACY：沿用文本格式【yyyy-MM-dd HH:mm:SS，其中SS实为毫秒，为兼容已有数据保持不变】；
+ * 2. COMPACT：版本字节 + 秒级时间戳的varint编码，当前时间下共6个字节；
+ * 3. MIGRATE：读取时兼容两种格式，写入使用紧凑格式；锁名仍使用文本格式，保证与未升级的应用互斥；
+ * 已完成状态同时写入文本格式的字段，未升级的应用已以文本格式记录的作业不再创建紧凑格式的字段
+ * <p>
+ * 任务相关的key在首次使用时构建并按任务缓存，集群布局下以任务名为hash tag，同一任务的key落在同一个槽上
+ */
+public class CronJobKeyCodec {
+    //紧凑格式的版本字节，文本格式以数字开头，二者不会冲突
+    static final byte COMPACT_VERSION = 0x02;
+    private static final String LEGACY_FORMAT_PATTERN = "yyyy-MM-dd HH:mm:SS";
+    private static final DateParser LEGACY_DATE_PARSER = FastDateFormat.getInstance(LEGACY_FORMAT_PATTERN);
+
+    private final CronJobKeyCodecMode mode;
+    private final CronJobKeyLayout layout;
+    private final ConcurrentHashMap<String, TaskKeys> taskKeysCache = new ConcurrentHashMap<>();
+
+    public CronJobKeyCodec(CronJobKeyCodecMode mode) {
+        this(mode, CronJobKeyLayout.LEGACY);
+    }
+
+    public CronJobKeyCodec(CronJobKeyCodecMode mode, CronJobKeyLayout layout) {
+        this.mode = mode;
+        this.layout = layout;
+    }
+
+    public CronJobKeyCodecMode getMode() {
+        return mode;
+    }
+
+    public CronJobKeyLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的作业状态列表key
+     */
+    public byte[] processListKey(String taskName) {
+        return taskKeys(taskName).processListKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的作业开始时刻索引key【zset，score为作业开始时刻，member为作业状态字段】
+     */
+    public byte[] startTimeIndexKey(String taskName) {
+        return taskKeys(taskName).startTimeIndexKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的作业开始时刻索引构建完成标识key
+     */
+    public byte[] startTimeIndexReadyKey(String taskName) {
+        return taskKeys(taskName).startTimeIndexReadyKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的未完成作业列表key【zset，score为作业创建时刻，member为作业状态字段】
+     */
+    public byte[] pendingListKey(String taskName) {
+        return taskKeys(taskName).pendingListKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的未完成作业列表构建完成标识key
+     */
+    public byte[] pendingListReadyKey(String taskName) {
+        return taskKeys(taskName).pendingListReadyKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的已创建作业窗口位图key【第n位对应任务的第n个窗口】
+     */
+    public byte[] createdWindowsKey(String taskName) {
+        return taskKeys(taskName).createdWindowsKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的已完成作业窗口位图key
+     */
+    public byte[] completedWindowsKey(String taskName) {
+        return taskKeys(taskName).completedWindowsKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的窗口位图构建完成标识key
+     */
+    public byte[] windowBitmapReadyKey(String taskName) {
+        return taskKeys(taskName).windowBitmapReadyKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的窗口位图0号窗口开始时刻key
+     */
+    public byte[] windowBitmapOriginKey(String taskName) {
+        return taskKeys(taskName).windowBitmapOriginKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的已压缩作业按天汇总key【hash，field为yyyyMMdd】
+     */
+    public byte[] rollupKey(String taskName) {
+        return taskKeys(taskName).rollupKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的作业状态列表维护锁名
+     */
+    public byte[] retentionLockKey(String taskName) {
+        return taskKeys(taskName).retentionLockKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的防护令牌序号key
+     */
+    public byte[] fencingSequenceKey(String taskName) {
+        return taskKeys(taskName).fencingSequenceKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的作业防护令牌列表key【hash，field为作业状态字段】
+     */
+    public byte[] fencingTokenKey(String taskName) {
+        return taskKeys(taskName).fencingTokenKey;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 任务对应的key布局迁移完成标识key
+     */
+    public byte[] keyLayoutMigratedKey(String taskName) {
+        return taskKeys(taskName).keyLayoutMigratedKey;
+    }
+
+    /**
+     * @param taskName  任务名
+     * @param startTime 作业开始时刻
+     * @return 作业对应的锁名
+     */
+    public byte[] lockKey(String taskName, long startTime) {
+        byte[] prefix = taskKeys(taskName).lockKeyPrefix;
+        byte[] suffix = mode == CronJobKeyCodecMode.COMPACT ? encodeCompact(startTime) : encodeLegacy(startTime);
+
+        byte[] lockKey = Arrays.copyOf(prefix, prefix.length + suffix.length);
+        System.arraycopy(suffix, 0, lockKey, prefix.length, suffix.length);
+
+        return lockKey;
+    }
+
+    /**
+     * @param startTime 作业开始时刻
+     * @return 写入作业状态列表时使用的字段
+     */
+    public byte[] field(long startTime) {
+        return mode == CronJobKeyCodecMode.LEGACY ? encodeLegacy(startTime) : encodeCompact(startTime);
+    }
+
+    /**
+     * @param startTime 作业开始时刻
+     * @return 迁移模式下文本格式的作业状态字段，供未升级的应用读取；其他模式下为null
+     */
+    public byte[] legacyField(long startTime) {
+        return mode == CronJobKeyCodecMode.MIGRATE ? encodeLegacy(startTime) : null;
+    }
+
+    /**
+     * @param startTime 作业开始时刻
+     * @return 读取作业状态时需要查询的字段，迁移模式下同时包含两种格式【紧凑格式在前】
+     */
+    public byte[][] readFields(long startTime) {
+        if (mode == CronJobKeyCodecMode.MIGRATE) {
+            return new byte[][]{encodeCompact(startTime), encodeLegacy(startTime)};
+        } else {
+            return new byte[][]{field(startTime)};
+        }
+    }
+
+    /**
+     * @return 每个作业读取状态时需要查询的字段数
+     */
+    public int readFieldCount() {
+        return mode == CronJobKeyCodecMode.MIGRATE ? 2 : 1;
+    }
+
+    /**
+     * @param field 作业状态列表中的字段
+     * @return 字段对应的作业开始时刻，无法解析时返回0
+     */
+    public long decodeField(byte[] field) {
+        if (field == null || field.length == 0) {
+            return 0L;
+        } else if (field[0] == COMPACT_VERSION) {
+            return decodeCompact(field);
+        } else {
+            return decodeLegacy(field);
+        }
+    }
+
+    /**
+     * @param millis 时刻（毫秒）
+     * @return 紧凑格式：版本字节 + 秒级时间戳的无符号varint
+     */
+    public static byte[] encodeCompact(long millis) {
+        long seconds = Math.floorDiv(millis, 1000L);
+        byte[] buffer = new byte[11];
+        buffer[0] = COMPACT_VERSION;
+
+        int position = 1;
+        while ((seconds & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((seconds & 0x7F) | 0x80);
+            seconds >>>= 7;
+        }
+        buffer[position++] = (byte) seconds;
+
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * @param field 紧凑格式字段
+     * @return 对应的时刻（毫秒），格式有误时返回0
+     */
+    public static long decodeCompact(byte[] field) {
+        if (field.length < 2 || field[0] != COMPACT_VERSION) {
+            return 0L;
+        }
+
+        long seconds = 0;
+        int shift = 0;
+        for (int i = 1; i < field.length; i++, shift += 7) {
+            if (shift > 63) {
+                return 0L;
+            }
+
+            seconds |= (long) (field[i] & 0x7F) << shift;
+            if ((field[i] & 0x80) == 0) {
+                return i == field.length - 1 ? seconds * 1000L : 0L;
+            }
+        }
+
+        return 0L;
+    }
+
+    /**
+     * @param millis 时刻（毫秒）
+     * @return 文本格式字段
+     */
+    public static byte[] encodeLegacy(long millis) {
+        return DateFormatUtils.format(millis, LEGACY_FORMAT_PATTERN).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param field 文本格式字段
+     * @return 对应的时刻（毫秒），格式有误时返回0
+     */
+    public static long decodeLegacy(byte[] field) {
+        try {
+            return LEGACY_DATE_PARSER.parse(new String(field, StandardCharsets.UTF_8)).getTime();
+        } catch (ParseException e) {
+            return 0L;
+        }
+    }
+
+    private TaskKeys taskKeys(String taskName) {
+        TaskKeys taskKeys = taskKeysCache.get(taskName);
+        if (taskKeys == null) {
+            taskKeys = new TaskKeys(layout == CronJobKeyLayout.CLUSTER ? "{" + taskName + "}" : taskName);
+            TaskKeys existing = taskKeysCache.putIfAbsent(taskName, taskKeys);
+            taskKeys = existing == null ? taskKeys : existing;
+        }
+
+        return taskKeys;
+    }
+
+    //任务维度的key，构建一次后复用
+    private static final class TaskKeys {
+        private final byte[] processListKey;
+        private final byte[] lockKeyPrefix;
+        private final byte[] startTimeIndexKey;
+        private final byte[] startTimeIndexReadyKey;
+        private final byte[] pendingListKey;
+        private final byte[] pendingListReadyKey;
+        private final byte[] createdWindowsKey;
+        private final byte[] completedWindowsKey;
+        private final byte[] windowBitmapReadyKey;
+        private final byte[] windowBitmapOriginKey;
+        private final byte[] rollupKey;
+        private final byte[] retentionLockKey;
+        private final byte[] fencingSequenceKey;
+        private final byte[] fencingTokenKey;
+        private final byte[] keyLayoutMigratedKey;
+
+        //taskName为key中任务名部分，集群布局下已包含hash tag
+        private TaskKeys(String taskName) {
+            processListKey = taskKey(CronTaskKeyConstants.PROCESS_STATUS_LIST_PREFIX, taskName);
+            lockKeyPrefix = (CronTaskKeyConstants.JOB_LOCK_PREFIX + CronTaskKeyConstants.SEPERATOR + taskName + CronTaskKeyConstants.SEPERATOR)
+                    .getBytes(StandardCharsets.UTF_8);
+            startTimeIndexKey = taskKey(CronTaskKeyConstants.PROCESS_START_TIME_INDEX_PREFIX, taskName);
+            startTimeIndexReadyKey = taskKey(CronTaskKeyConstants.PROCESS_START_TIME_INDEX_READY_PREFIX, taskName);
+            pendingListKey = taskKey(CronTaskKeyConstants.PENDING_LIST_PREFIX, taskName);
+            pendingListReadyKey = taskKey(CronTaskKeyConstants.PENDING_LIST_READY_PREFIX, taskName);
+            createdWindowsKey = taskKey(CronTaskKeyConstants.WINDOW_CREATED_BITMAP_PREFIX, taskName);
+            completedWindowsKey = taskKey(CronTaskKeyConstants.WINDOW_COMPLETED_BITMAP_PREFIX, taskName);
+            windowBitmapReadyKey = taskKey(CronTaskKeyConstants.WINDOW_BITMAP_READY_PREFIX, taskName);
+            windowBitmapOriginKey = taskKey(CronTaskKeyConstants.WINDOW_BITMAP_ORIGIN_PREFIX, taskName);
+            rollupKey = taskKey(CronTaskKeyConstants.PROCESS_STATUS_ROLLUP_PREFIX, taskName);
+            retentionLockKey = taskKey(CronTaskKeyConstants.RETENTION_LOCK_PREFIX, taskName);
+            fencingSequenceKey = taskKey(CronTaskKeyConstants.FENCING_SEQUENCE_PREFIX, taskName);
+            fencingTokenKey = taskKey(CronTaskKeyConstants.FENCING_TOKEN_PREFIX, taskName);
+            keyLayoutMigratedKey = taskKey(CronTaskKeyConstants.KEY_LAYOUT_MIGRATED_PREFIX, taskName);
+        }
+
+        private static byte[] taskKey(String prefix, String taskName) {
+            return (prefix + CronTaskKeyConstants.SEPERATOR + taskName).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.cn.dmd;
+
+import com.cn.dmd.domain.CronJob;
+
+/**
+ * 作业持有锁的租约，由{@link CronJobLockRenewer}统一续时
+ */
+public class CronJobLease {
+    //锁关联的作业
+    private final CronJob cronJob;
+    //注册时刻
+    private final long registerTime;
+    //最近一次续时成功的时刻【取请求的发送时刻】
+    private volatile long lastRenewTime;
+    //是否已注销
+    private volatile boolean cancelled;
+    //是否已丢失（续时失败，锁可能已被其他应用获取）
+    private volatile boolean lost;
+
+    //以下字段仅由时间轮线程访问
+    //下次续时所在的时间轮刻度
+    long targetTick;
+    //下次续时的期望时刻
+    long deadline;
+
+    CronJobLease(CronJob cronJob, long registerTime) {
+        this.cronJob = cronJob;
+        this.registerTime = registerTime;
+        this.lastRenewTime = registerTime;
+    }
+
+    public CronJob getCronJob() {
+        return cronJob;
+    }
+
+    public long getRegisterTime() {
+        return registerTime;
+    }
+
+    public long getLastRenewTime() {
+        return lastRenewTime;
+    }
+
+    /**
+     * @return 租约是否已丢失，丢失后不再续时
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    void markRenewed(long renewTime) {
+        lastRenewTime = renewTime;
+    }
+
+    void markLost() {
+        lost = true;
+    }
+}
@@ -0,0 +1,331 @@
+package com.cn.dmd;
+
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内共享的锁续时服务
+ * 1. 使用单线程驱动的时间轮，作业开始执行时注册租约，结束时注销；
+ * 2. 同一刻度到期的续时请求通过一次pipeline批量发送至redis，发送由续时线程池完成，redis变慢时不影响时间轮推进；
+ * 3. 因redis异常续时失败的租约在之后的刻度上重试，直至锁按上次续时的时刻计算已超时；
+ * 4. 锁已不属于当前应用或已超时的租约被标记为已丢失，由执行器决定后续处理
+ */
+@Component
+@Slf4j
+public class CronJobLockRenewer {
+    @Autowired
+    private CronJobStore cronJobStore;
+    @Autowired
+    private CronJobMetrics metrics;
+    //锁续命间隔
+    @Value("${cron.general.lock-inspiration-interval}")
+    private int INSPIRE_LOCK_INTERVAL;
+    //锁持有的时间
+    @Value("${cron.general.lock-time}")
+    private int cronJobLockExpirationTime;
+    //时间轮刻度（毫秒）
+    @Value("${cron.general.lock-renewal-tick-millis:1000}")
+    private long tickDurationInMillis;
+    //时间轮槽数，需为2的幂
+    @Value("${cron.general.lock-renewal-wheel-size:64}")
+    private int wheelSize;
+    //向redis发送续时请求的线程数
+    @Value("${cron.general.lock-renewal-threads:2}")
+    private int renewalThreads;
+
+    //新注册的租约，由时间轮线程放入时间轮
+    private final Queue<CronJobLease> registeredLeases = new ConcurrentLinkedQueue<>();
+    //已返回续时结果的批次，由时间轮线程重新放入时间轮
+    private final Queue<RenewalBatch> finishedBatches = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeLeaseCount = new AtomicInteger();
+    //续时成功次数
+    private final AtomicLong renewedCount = new AtomicLong();
+    //续时失败次数
+    private final AtomicLong failedRenewalCount = new AtomicLong();
+    //因续时失败而丢失的租约数
+    private final AtomicLong lostLeaseCount = new AtomicLong();
+    //最近一个刻度的最大续时延迟
+    private volatile long lastRenewalLagInMillis;
+    //历史最大续时延迟
+    private volatile long maxRenewalLagInMillis;
+
+    private ArrayDeque<CronJobLease>[] wheel;
+    private int mask;
+    private long intervalTicks;
+    private volatile Thread workerThread;
+    private ExecutorService renewalExecutorService;
+    private volatile boolean running;
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    private void start() {
+        if (wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0) {
+            throw new IllegalArgumentException("时间轮槽数需为2的幂：" + wheelSize);
+        }
+
+        wheel = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        mask = wheelSize - 1;
+        intervalTicks = Math.max(1L, TimeUnit.SECONDS.toMillis(INSPIRE_LOCK_INTERVAL) / tickDurationInMillis);
+
+        metrics.gauge(CronJobMetricNames.RENEWER_ACTIVE_LEASES, "renewer", this::getActiveLeaseCount);
+        metrics.gauge(CronJobMetricNames.RENEWER_MAX_LAG, "renewer", this::getMaxRenewalLagInMillis);
+
+        renewalExecutorService = Executors.newFixedThreadPool(renewalThreads, new CronJobThreadFactory("lock-renewal"));
+
+        running = true;
+        workerThread = new Thread(this::runWheel, "cmaster-cronjob-lock-renewer");
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    @PreDestroy
+    private void stop() {
+        running = false;
+        if (workerThread != null) {
+            workerThread.interrupt();
+        }
+        if (renewalExecutorService != null) {
+            renewalExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * 注册作业锁的租约，之后每隔{@code cron.general.lock-inspiration-interval}秒续时一次
+     *
+     * @param cronJob 已持有锁的作业
+     * @return 租约
+     */
+    public CronJobLease register(CronJob cronJob) {
+        CronJobLease lease = new CronJobLease(cronJob, System.currentTimeMillis());
+        registeredLeases.add(lease);
+        activeLeaseCount.incrementAndGet();
+
+        return lease;
+    }
+
+    /**
+     * 注销租约，不再续时
+     *
+     * @param lease 租约
+     */
+    public void unregister(CronJobLease lease) {
+        if (lease != null && !lease.isCancelled()) {
+            lease.cancel();
+            activeLeaseCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 当前处于续时中的租约数
+     */
+    public int getActiveLeaseCount() {
+        return activeLeaseCount.get();
+    }
+
+    public long getRenewedCount() {
+        return renewedCount.get();
+    }
+
+    public long getFailedRenewalCount() {
+        return failedRenewalCount.get();
+    }
+
+    public long getLostLeaseCount() {
+        return lostLeaseCount.get();
+    }
+
+    public long getLastRenewalLagInMillis() {
+        return lastRenewalLagInMillis;
+    }
+
+    public long getMaxRenewalLagInMillis() {
+        return maxRenewalLagInMillis;
+    }
+
+    private void runWheel() {
+        final long tickDurationInNanos = TimeUnit.MILLISECONDS.toNanos(tickDurationInMillis);
+        final long startNanos = System.nanoTime();
+        long tick = 0;
+
+        while (running) {
+            long sleepNanos = startNanos + (tick + 1) * tickDurationInNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+            }
+
+            try {
+                transferRegisteredLeases(tick);
+                transferFinishedBatches(tick);
+                renew(collectDueLeases(tick));
+            } catch (Throwable e) {
+                log.error("锁续时时间轮处理刻度时发生错误，刻度：" + tick, e);
+            }
+
+            tick++;
+        }
+
+        log.info("锁续时线程已退出");
+    }
+
+    private void transferRegisteredLeases(long tick) {
+        long now = System.currentTimeMillis();
+
+        for (CronJobLease lease = registeredLeases.poll(); lease != null; lease = registeredLeases.poll()) {
+            if (!lease.isCancelled()) {
+                schedule(lease, tick, now);
+            }
+        }
+    }
+
+    private List<CronJobLease> collectDueLeases(long tick) {
+        List<CronJobLease> dueLeases = new ArrayList<>();
+
+        Iterator<CronJobLease> iterator = wheel[(int) (tick & mask)].iterator();
+        while (iterator.hasNext()) {
+            CronJobLease lease = iterator.next();
+
+            if (lease.isCancelled()) {
+                iterator.remove();
+            } else if (lease.targetTick <= tick) {
+                iterator.remove();
+                dueLeases.add(lease);
+            }
+        }
+
+        return dueLeases;
+    }
+
+    //在续时线程池中发送续时请求，结果在之后的刻度上处理
+    private void renew(List<CronJobLease> dueLeases) {
+        if (dueLeases.isEmpty()) {
+            lastRenewalLagInMillis = 0;
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        List<CronJob> cronJobs = new ArrayList<>(dueLeases.size());
+        for (CronJobLease lease : dueLeases) {
+            lag = Math.max(lag, now - lease.deadline);
+            cronJobs.add(lease.getCronJob());
+        }
+        lastRenewalLagInMillis = lag;
+        if (lag > maxRenewalLagInMillis) {
+            maxRenewalLagInMillis = lag;
+        }
+
+        RenewalBatch batch = new RenewalBatch(dueLeases, now);
+        try {
+            renewalExecutorService.execute(() -> {
+                try {
+                    batch.results = cronJobStore.inspireLocks(cronJobs);
+                } catch (Exception e) {
+                    log.warn("批量为作业关联锁续上超时时间失败，数量：" + cronJobs.size(), e);
+                } finally {
+                    finishedBatches.add(batch);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("续时线程池已关闭，放弃续时，数量：{}", cronJobs.size());
+        }
+    }
+
+    private void transferFinishedBatches(long tick) {
+        for (RenewalBatch batch = finishedBatches.poll(); batch != null; batch = finishedBatches.poll()) {
+            handleResults(tick, batch);
+        }
+    }
+
+    private void handleResults(long tick, RenewalBatch batch) {
+        List<CronJobLease> leases = batch.leases;
+        List<Boolean> results = batch.results;
+        long now = System.currentTimeMillis();
+        long lockTimeInMillis = TimeUnit.SECONDS.toMillis(cronJobLockExpirationTime);
+        //下一次续时按发送时刻计算，扣除请求及等待处理的耗时
+        long renewedDelayTicks = Math.max(1L, intervalTicks - (now - batch.sendTime) / tickDurationInMillis);
+        for (int i = 0; i < leases.size(); i++) {
+            CronJobLease lease = leases.get(i);
+
+            if (results != null && Boolean.TRUE.equals(results.get(i))) {
+                renewedCount.incrementAndGet();
+                //redis在发送请求之后才重置超时时间，按发送时刻记录可保证不高估锁的剩余时间
+                lease.markRenewed(batch.sendTime);
+            } else {
+                failedRenewalCount.incrementAndGet();
+
+                //锁已不属于当前应用，或者redis长时间不可用导致锁已超时
+                if (results != null || now + tickDurationInMillis >= lease.getLastRenewTime() + lockTimeInMillis) {
+                    lease.markLost();
+                    lostLeaseCount.incrementAndGet();
+                    log.error("作业关联锁续时失败，锁可能已被其他应用获取：{}", lease.getCronJob());
+                    continue;
+                }
+
+                //redis暂时不可用，在下一个刻度重试，不等待完整的续时间隔
+                if (!lease.isCancelled()) {
+                    schedule(lease, tick, 1L, now);
+                }
+                continue;
+            }
+
+            if (!lease.isCancelled()) {
+                schedule(lease, tick, renewedDelayTicks, now);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("锁续时刻度[{}]处理续时结果完毕，数量：{}", tick, leases.size());
+        }
+    }
+
+    private void schedule(CronJobLease lease, long tick, long now) {
+        schedule(lease, tick, intervalTicks, now);
+    }
+
+    private void schedule(CronJobLease lease, long tick, long delayTicks, long now) {
+        lease.targetTick = tick + delayTicks;
+        lease.deadline = now + delayTicks * tickDurationInMillis;
+        wheel[(int) (lease.targetTick & mask)].add(lease);
+    }
+
+    //一次批量续时请求及其结果，结果为null表示请求失败
+    private static final class RenewalBatch {
+        private final List<CronJobLease> leases;
+        private final long sendTime;
+        private volatile List<Boolean> results;
+
+        private RenewalBatch(List<CronJobLease> leases, long sendTime) {
+            this.leases = leases;
+            this.sendTime = sendTime;
+        }
+    }
+}
@@ -1,78 +1,432 @@
 package com.cn.dmd;
 
 import com.cn.dmd.config.ApplicationStatus;
+import com.cn.dmd.constants.CronJobExecutorMode;
+import com.cn.dmd.constants.CronJobKeyCodecMode;
+import com.cn.dmd.constants.CronJobKeyLayout;
+import com.cn.dmd.constants.CronJobLockMode;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.constants.CronJobRetentionPolicy;
+import com.cn.dmd.constants.CronJobScanMode;
 import com.cn.dmd.constants.CronTaskKeyConstants;
 import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetrics;
+import com.cn.dmd.utils.CronJobWindowCalculator;
+import com.cn.dmd.utils.LongHashSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateFormatUtils;
-import org.apache.commons.lang3.time.DateParser;
-import org.apache.commons.lang3.time.FastDateFormat;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import java.text.ParseException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.springframework.data.redis.connection.RedisStringCommands.SetOption.SET_IF_ABSENT;
 
 /**
- * 定时作业相关redis操作
+ * 定时作业相关redis操作，{@link CronJobStore}的redis实现
+ * 已完成的作业状态不再变化，读取到或写入的已完成状态缓存在本地，开启广播时其他应用完成的作业经redis频道写入本地缓存
  *
  * @author morningking
  * @date 2017/7/12 17:03
  * @contact 243717042@qq.com
  */
 @Component
+@ConditionalOnProperty(name = "cron.general.store", havingValue = "REDIS", matchIfMissing = true)
 @Slf4j
-public class CronJobRedisActions {
+public class CronJobRedisActions implements CronJobStore {
     private static final String JOB_STATUS_UN_COMPLETED = "false";
     private static final String JOB_STATUS_COMPLETED = "true";
-    private static final String FORMAT_PATTERN = "yyyy-MM-dd HH:mm:SS";
-    private static final DateParser dateParser = FastDateFormat.getInstance(FORMAT_PATTERN);
+    private static final byte[] JOB_STATUS_UN_COMPLETED_BYTES = JOB_STATUS_UN_COMPLETED.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JOB_STATUS_COMPLETED_BYTES = JOB_STATUS_COMPLETED.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] JOB_COMPLETION_CHANNEL_BYTES = CronTaskKeyConstants.JOB_COMPLETION_CHANNEL.getBytes(StandardCharsets.UTF_8);
+    //作业认领脚本返回值：成功获取执行权且作业未完成
+    private static final long CLAIM_RESULT_WON = 1L;
+    //作业认领脚本返回值：作业已完成
+    private static final long CLAIM_RESULT_COMPLETED = 2L;
+    //没有作业时返回的开始时间列表
+    private static final long[] EMPTY_START_TIMES = new long[0];
+    //按天汇总时使用的日期格式
+    private static final String ROLLUP_DAY_PATTERN = "yyyyMMdd";
+    //一分钟（毫秒）
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    //迁移key布局时持有任务维护权的时间（秒）
+    private static final long KEY_LAYOUT_MIGRATION_LOCK_SECONDS = 300L;
     //锁持有的时间
     @Value("${cron.general.lock-time}")
     private int cronJobLockExpirationTime;
+    //锁实现方式
+    @Value("${cron.general.lock-mode:SCRIPT}")
+    private CronJobLockMode lockMode;
+    //是否为每次认领签发防护令牌，只在脚本模式下生效
+    @Value("${cron.general.fencing-enabled:false}")
+    private boolean fencingEnabled;
+    //批量认领作业时，每个pipeline包含的作业数
+    @Value("${cron.general.claim-batch-size:200}")
+    private int claimBatchSize;
+    //作业状态字段及锁名的编码方式
+    @Value("${cron.general.key-codec:LEGACY}")
+    private CronJobKeyCodecMode keyCodecMode;
+    //任务相关key的布局，集群布局下同一任务的key落在同一个槽上
+    @Value("${cron.general.key-layout:LEGACY}")
+    private CronJobKeyLayout keyLayout;
+    //集群布局下启动时是否将原有布局下的作业数据迁移至新的key
+    @Value("${cron.general.key-layout-migration-enabled:true}")
+    private boolean keyLayoutMigrationEnabled;
+    //迁移时每批扫描及写入的数量
+    @Value("${cron.general.key-layout-migration-batch-size:500}")
+    private int keyLayoutMigrationBatchSize;
+    //是否按作业开始时刻索引读取作业列表，开启后扫描器只读取所需时间范围内的作业；旧版本应用不维护索引，所有应用升级后再开启
+    @Value("${cron.general.history-index-enabled:false}")
+    private boolean historyIndexEnabled;
+    //已完成作业的保留时长（小时），大于0时按开始时刻索引压缩，未开启按索引读取时也维护索引
+    @Value("${cron.general.retention-horizon-in-hours:0}")
+    private long retentionHorizonInHours;
+    //为已有的作业构建开始时刻索引、未完成作业列表及窗口位图时每批扫描的数量
+    @Value("${cron.general.retention-batch-size:500}")
+    private int indexRebuildBatchSize;
+    //压缩已完成作业时持有任务维护权的时间（秒），与两轮维护之间的间隔一致
+    @Value("${cron.general.retention-interval-in-seconds:300}")
+    private long retentionIntervalInSeconds;
+    //失败作业的扫描方式，INDEXED时维护未完成作业列表，BITMAP时维护窗口位图
+    @Value("${cron.general.scan-mode:FULL}")
+    private CronJobScanMode scanMode;
+    //按全局起始时刻写入的位图的起始时刻（毫秒），此后的第一个窗口边界为0号窗口，只用于沿用这类位图，不可修改
+    @Value("${cron.general.window-bitmap-epoch:1514736000000}")
+    private long windowBitmapEpoch;
+    //作业执行线程的类型
+    @Value("${cron.general.executor-mode:PLATFORM}")
+    private CronJobExecutorMode executorMode;
+    //虚拟线程模式下同时访问redis的最大数量，应不大于连接池大小
+    @Value("${cron.general.redis-max-concurrency:8}")
+    private int redisMaxConcurrency;
+    //每个任务在本地缓存的已完成作业数上限，为0时不缓存
+    @Value("${cron.general.completed-job-cache-size:4096}")
+    private int completedJobCacheSize;
+    //是否经redis频道广播作业完成，开启时其他应用完成的作业也写入本地缓存
+    @Value("${cron.general.completed-job-broadcast-enabled:false}")
+    private boolean completedJobBroadcastEnabled;
     @Autowired
     private StringRedisTemplate redisTemplate;
     @Autowired
     private ApplicationStatus applicationStatus;
+    @Autowired
+    private CronJobMetrics metrics;
+    @Autowired
+    private CronTaskRegistry cronTaskRegistry;
+    private CronJobKeyCodec keyCodec;
+    //虚拟线程模式下访问redis前需获取的许可，平台线程模式下为null
+    private Semaphore redisGate;
+    //已完成作业的本地缓存
+    private CronJobCompletionCache completionCache;
+    //任务名 -> 窗口计算器，用于计算作业在窗口位图中的序号
+    private final ConcurrentHashMap<String, CronJobWindowCalculator> windowCalculators = new ConcurrentHashMap<>();
+    //当前应用已确认构建完成开始时刻索引、未完成作业列表及窗口位图的任务
+    private final Set<String> startTimeIndexReadyTasks = ConcurrentHashMap.newKeySet();
+    private final Set<String> pendingIndexReadyTasks = ConcurrentHashMap.newKeySet();
+    private final Set<String> windowBitmapReadyTasks = ConcurrentHashMap.newKeySet();
+    //各任务窗口位图0号窗口的开始时刻
+    private final ConcurrentHashMap<String, Long> windowOrigins = new ConcurrentHashMap<>();
+    //是否维护作业开始时刻索引：按索引读取或压缩已完成作业时维护
+    private boolean startTimeIndexMaintained;
+    //订阅作业完成广播的容器、订阅线程池及处理广播的线程池，未开启广播时为null
+    private RedisMessageListenerContainer completionListenerContainer;
+    private ExecutorService completionSubscriptionExecutorService;
+    private ExecutorService completionExecutorService;
+
+    @PostConstruct
+    private void init() {
+        //大量虚拟线程同时访问redis时，会在连接池上阻塞或因超时而失败；
+        //在信号量上等待的虚拟线程会让出载体线程，因此先获取许可，保证从连接池借出连接时不会等待
+        if (executorMode == CronJobExecutorMode.VIRTUAL && CronJobThreadFactory.isVirtualThreadSupported()) {
+            redisGate = new Semaphore(redisMaxConcurrency);
+            log.info("虚拟线程模式下同时访问redis的最大数量：{}", redisMaxConcurrency);
+        }
+
+        keyCodec = new CronJobKeyCodec(keyCodecMode, keyLayout);
+        startTimeIndexMaintained = historyIndexEnabled || retentionHorizonInHours > 0;
+        log.info("作业状态字段及锁名编码方式：{}，key布局：{}，失败作业扫描方式：{}", keyCodecMode, keyLayout, scanMode);
+
+        if (fencingEnabled && lockMode != CronJobLockMode.SCRIPT) {
+            fencingEnabled = false;
+            log.warn("防护令牌只在脚本模式下生效，当前锁实现方式：{}，不签发令牌", lockMode);
+        }
+
+        checkClusterConnection();
+
+        completionCache = new CronJobCompletionCache(completedJobCacheSize);
+        if (completionCache.isEnabled()) {
+            metrics.gauge(CronJobMetricNames.COMPLETION_CACHE_SIZE, "cache", completionCache::size);
+            if (completedJobBroadcastEnabled) {
+                subscribeCompletions();
+            }
+        } else {
+            completedJobBroadcastEnabled = false;
+        }
+        log.info("已完成作业本地缓存：{}，作业完成广播：{}", completionCache.isEnabled() ? "每个任务" + completedJobCacheSize + "个" : "关闭",
+                completedJobBroadcastEnabled ? "开启" : "关闭");
+
+        preloadScripts();
+    }
+
+    @PreDestroy
+    private void onPreDestroy() {
+        if (completionListenerContainer != null) {
+            try {
+                completionListenerContainer.destroy();
+            } catch (Exception e) {
+                log.warn("关闭作业完成广播订阅时发生错误", e);
+            }
+            completionSubscriptionExecutorService.shutdown();
+            completionExecutorService.shutdown();
+        }
+    }
+
+    //订阅作业完成广播，将其他应用完成的作业写入本地缓存
+    private void subscribeCompletions() {
+        //订阅独占一个线程；默认的任务执行器为每条消息新建线程，改为单线程依次处理
+        completionSubscriptionExecutorService = Executors.newSingleThreadExecutor(new CronJobThreadFactory("completion-subscription"));
+        completionExecutorService = Executors.newSingleThreadExecutor(new CronJobThreadFactory("completion"));
+        completionListenerContainer = new RedisMessageListenerContainer();
+        completionListenerContainer.setConnectionFactory(redisTemplate.getConnectionFactory());
+        completionListenerContainer.setBeanName("cmaster-cronjob-completion");
+        completionListenerContainer.setSubscriptionExecutor(completionSubscriptionExecutorService);
+        completionListenerContainer.setTaskExecutor(completionExecutorService);
+        completionListenerContainer.addMessageListener(this::onCompletionMessage, new ChannelTopic(CronTaskKeyConstants.JOB_COMPLETION_CHANNEL));
+        completionListenerContainer.afterPropertiesSet();
+        completionListenerContainer.start();
+    }
+
+    private void onCompletionMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separatorIndex = body.indexOf(CronTaskKeyConstants.SEPERATOR);
+        if (separatorIndex <= 0) {
+            log.warn("无法识别的作业完成广播：{}", body);
+            return;
+        }
+
+        //只缓存当前应用注册的任务
+        String taskName = body.substring(separatorIndex + 1);
+        if (cronTaskRegistry.getByTaskName(taskName) != null) {
+            try {
+                completionCache.markCompleted(taskName, Long.parseLong(body.substring(0, separatorIndex)));
+            } catch (NumberFormatException e) {
+                log.warn("无法识别的作业完成广播：{}", body);
+            }
+        }
+    }
+
+    /**
+     * 在扫描器等组件启动前：
+     * 1. 校验各任务的作业时间范围可由当前编码方式区分，否则启动失败；
+     * 2. 集群布局下，将各任务原有布局下的作业数据迁移至新的key
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    private void onApplicationContextStart(ApplicationReadyEvent event) {
+        checkKeyCodecPrecision();
+
+        if (keyLayout != CronJobKeyLayout.CLUSTER || !keyLayoutMigrationEnabled) {
+            return;
+        }
+
+        for (String taskName : cronTaskRegistry.getAllTaskNames()) {
+            try {
+                migrateKeyLayout(taskName, keyLayoutMigrationBatchSize);
+            } catch (Exception e) {
+                log.warn("迁移任务[" + taskName + "]原有布局下的作业数据时发生错误", e);
+            }
+        }
+    }
+
+    //文本格式的字段及锁名只精确到分钟【MIGRATE模式下锁名仍为文本格式】，同一分钟内的多个作业会共用一个字段和一把锁，
+    //只有第一个作业会被执行，其余被视为已创建或已完成而跳过，因此作业开始时刻未按分钟对齐的任务只能使用紧凑格式
+    private void checkKeyCodecPrecision() {
+        if (keyCodecMode == CronJobKeyCodecMode.COMPACT) {
+            return;
+        }
+
+        for (String taskName : cronTaskRegistry.getAllTaskNames()) {
+            CronTaskConfig taskConfig = cronTaskRegistry.getByTaskName(taskName).getTaskConfig();
+            if (taskConfig.isSingletonInstanceOnly()) {
+                continue;
+            }
+
+            CronJobWindowCalculator calculator = getWindowCalculator(taskName);
+            //cron表达式的第一个字段为秒
+            boolean isMinuteAligned = calculator.getIntervalMillis() % MINUTE_IN_MILLIS == 0
+                    && calculator.floor(System.currentTimeMillis()) % MINUTE_IN_MILLIS == 0
+                    && (StringUtils.isBlank(taskConfig.getCronExpression()) || "0".equals(StringUtils.split(taskConfig.getCronExpression())[0]));
+            if (!isMinuteAligned) {
+                throw new IllegalStateException("任务[" + taskName + "]的作业开始时刻未按分钟对齐，" + keyCodecMode
+                        + "编码的作业状态字段及锁名只精确到分钟，无法区分同一分钟内的作业，请将cron.general.key-codec设置为COMPACT");
+            }
+        }
+    }
+
+    //作业的认领、续时及完成依赖pipeline，脚本模式的锁及扫描器选主依赖EVAL，
+    //spring-data-redis的集群连接【JedisClusterConnection】两者均不支持，使用集群连接时启动失败；
+    //集群布局需通过按槽转发pipeline及脚本的代理【如按hash tag路由的代理】访问redis集群
+    private void checkClusterConnection() {
+        RedisConnection connection;
+        try {
+            connection = redisTemplate.getConnectionFactory().getConnection();
+        } catch (Exception e) {
+            log.warn("启动时获取redis连接失败，无法检查连接类型", e);
+            return;
+        }
+
+        try {
+            if (connection instanceof RedisClusterConnection) {
+                throw new IllegalStateException("redis连接为集群连接【" + connection.getClass().getName()
+                        + "】，不支持pipeline及脚本；key布局：" + keyLayout + "，请通过按槽转发pipeline及脚本的代理访问redis集群");
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void preloadScripts() {
+        if (lockMode != CronJobLockMode.SCRIPT) {
+            return;
+        }
+
+        //预加载失败不影响启动，执行时会在NOSCRIPT时回退为EVAL
+        try {
+            execute(CronJobMetricNames.REDIS_OP_LOAD_SCRIPTS, (RedisCallback<Object>) connection -> {
+                for (RedisScript<?> script : CronJobRedisScripts.all()) {
+                    connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            log.info("预加载作业锁相关lua脚本成功");
+        } catch (Exception e) {
+            log.warn("预加载作业锁相关lua脚本失败，执行时将回退为EVAL", e);
+        }
+    }
+
+    /**
+     * @return 作业状态字段及锁名的编解码器
+     */
+    public CronJobKeyCodec getKeyCodec() {
+        return keyCodec;
+    }
 
     /**
      * @param taskName 任务名
      * @return 获取指定任务名相关的作业开始时间列表
      */
     public Set<Long> getJobsOfTask(String taskName) {
-        Set<String> keys = redisTemplate.<String, String>opsForHash().keys(getProcessListKeyName(taskName));
+        Set<byte[]> keys = execute(CronJobMetricNames.REDIS_OP_GET_JOBS_OF_TASK, (RedisCallback<Set<byte[]>>) connection ->
+                connection.hKeys(keyCodec.processListKey(taskName)));
 
         Set<Long> recordTaskTimeInfos = Collections.emptySet();
         if (CollectionUtils.isNotEmpty(keys)) {
-            recordTaskTimeInfos = keys.stream().map(this::parseDate).filter(time -> time > 0).collect(Collectors.toSet());
+            recordTaskTimeInfos = new HashSet<>(keys.size() * 4 / 3 + 1);
+            for (byte[] key : keys) {
+                long time = keyCodec.decodeField(key);
+                if (time > 0) {
+                    recordTaskTimeInfos.add(time);
+                }
+            }
         }
 
         return recordTaskTimeInfos;
     }
 
+    /**
+     * @param taskName 任务名
+     * @param fromTime 最早的作业开始时刻【包含】
+     * @return 开始时刻不早于fromTime的作业开始时间，迁移期间新旧格式的字段对应同一作业时只返回一次
+     */
+    public long[] getJobStartTimesOfTask(String taskName, long fromTime) {
+        //索引构建完成前不完整，读取作业状态列表
+        if (!historyIndexEnabled || !isStartTimeIndexReady(taskName)) {
+            Set<byte[]> fields = execute(CronJobMetricNames.REDIS_OP_GET_JOB_START_TIMES_OF_TASK, (RedisCallback<Set<byte[]>>) connection ->
+                    connection.hKeys(keyCodec.processListKey(taskName)));
+            return decodeStartTimes(fields, fromTime);
+        }
+
+        Set<RedisZSetCommands.Tuple> tuples = execute(CronJobMetricNames.REDIS_OP_GET_JOB_START_TIMES_OF_TASK,
+                (RedisCallback<Set<RedisZSetCommands.Tuple>>) connection ->
+                        connection.zRangeByScoreWithScores(keyCodec.startTimeIndexKey(taskName), fromTime, Double.POSITIVE_INFINITY));
+        if (CollectionUtils.isEmpty(tuples)) {
+            return EMPTY_START_TIMES;
+        }
+
+        LongHashSet startTimes = new LongHashSet(tuples.size());
+        for (RedisZSetCommands.Tuple tuple : tuples) {
+            startTimes.add(tuple.getScore().longValue());
+        }
+
+        return startTimes.toArray();
+    }
+
     /**
      * @param cronJob 作业
      * @return 获取作业执行状态【null：不存在，1：未完成，0：已完成】
      */
+    @Override
     public Boolean getStatusOfJob(CronJob cronJob) {
-        String status = redisTemplate.<String, String>opsForHash().get(
-                getProcessListKeyName(cronJob.getTaskName()), formatDate(cronJob.getStartTime()));
+        if (completionCache.isCompleted(cronJob.getTaskName(), cronJob.getStartTime())) {
+            metrics.increment(CronJobMetricNames.COMPLETION_CACHE_HIT, cronJob.getTaskName());
+            return true;
+        }
+
+        List<byte[]> statusList = execute(CronJobMetricNames.REDIS_OP_GET_STATUS_OF_JOB, (RedisCallback<List<byte[]>>) connection ->
+                connection.hMGet(keyCodec.processListKey(cronJob.getTaskName()), keyCodec.readFields(cronJob.getStartTime())));
+
+        boolean isCompleted = isAnyJobCompleted(statusList, 0, keyCodec.readFieldCount());
+        if (isCompleted) {
+            completionCache.markCompleted(cronJob.getTaskName(), cronJob.getStartTime());
+        }
 
-        return isJobCompleted(status);
+        return isCompleted;
     }
 
     /**
@@ -82,23 +436,66 @@ public class CronJobRedisActions {
     public Map<CronJob, Boolean> getStatusOfJobs(List<CronJob> cronJobs) {
         if (CollectionUtils.isEmpty(cronJobs)) {
             return Collections.emptyMap();
-        } else {
-            String taskName = cronJobs.iterator().next().getTaskName();
-            List<Boolean> jobStatusList = redisTemplate.<String, String>opsForHash().multiGet(getProcessListKeyName(taskName),
-                    cronJobs.stream().map(cronJob -> formatDate(cronJob.getStartTime())).collect(Collectors.toList()))
-                    .stream().map(this::isJobCompleted).collect(Collectors.toList());
+        }
+
+        long[] startTimes = new long[cronJobs.size()];
+        for (int i = 0; i < startTimes.length; i++) {
+            startTimes[i] = cronJobs.get(i).getStartTime();
+        }
+        BitSet completed = getCompletedJobs(cronJobs.get(0).getTaskName(), startTimes);
+
+        Map<CronJob, Boolean> statusMap = Maps.newHashMapWithExpectedSize(cronJobs.size());
+        for (int i = 0; i < startTimes.length; i++) {
+            statusMap.put(cronJobs.get(i), completed.get(i));
+        }
+
+        return statusMap;
+    }
 
-            if (CollectionUtils.isEmpty(jobStatusList) || jobStatusList.size() != cronJobs.size()) {
-                throw new IllegalStateException("返回作业状态信息数量有误：期望" + cronJobs.size() + "，返回：" + CollectionUtils.size(jobStatusList));
+    /**
+     * @param taskName   任务名
+     * @param startTimes 同一任务的作业开始时间列表
+     * @return 已完成的作业在startTimes中的下标，本地缓存中已完成的作业不再读取
+     */
+    @Override
+    public BitSet getCompletedJobs(String taskName, long[] startTimes) {
+        BitSet completed = new BitSet(startTimes.length);
+        int[] uncachedPositions = new int[startTimes.length];
+        int uncachedCount = 0;
+        for (int i = 0; i < startTimes.length; i++) {
+            if (completionCache.isCompleted(taskName, startTimes[i])) {
+                completed.set(i);
             } else {
-                Map<CronJob, Boolean> statusMap = Maps.newHashMapWithExpectedSize(cronJobs.size());
-                Iterator<Boolean> statusIterator = jobStatusList.iterator();
+                uncachedPositions[uncachedCount++] = i;
+            }
+        }
+        if (uncachedCount < startTimes.length) {
+            metrics.increment(CronJobMetricNames.COMPLETION_CACHE_HIT, taskName, startTimes.length - uncachedCount);
+        }
+        if (uncachedCount == 0) {
+            return completed;
+        }
+
+        int fieldCount = keyCodec.readFieldCount();
+        byte[][] fields = new byte[uncachedCount * fieldCount][];
+        for (int i = 0; i < uncachedCount; i++) {
+            System.arraycopy(keyCodec.readFields(startTimes[uncachedPositions[i]]), 0, fields, i * fieldCount, fieldCount);
+        }
 
-                cronJobs.forEach(cronJob -> statusMap.put(cronJob, statusIterator.next()));
+        List<byte[]> statusList = execute(CronJobMetricNames.REDIS_OP_GET_COMPLETED_JOBS, (RedisCallback<List<byte[]>>) connection ->
+                connection.hMGet(keyCodec.processListKey(taskName), fields));
+        if (CollectionUtils.isEmpty(statusList) || statusList.size() != fields.length) {
+            throw new IllegalStateException("返回作业状态信息数量有误：期望" + fields.length + "，返回：" + CollectionUtils.size(statusList));
+        }
 
-                return statusMap;
+        for (int i = 0; i < uncachedCount; i++) {
+            if (isAnyJobCompleted(statusList, i * fieldCount, fieldCount)) {
+                completed.set(uncachedPositions[i]);
+                completionCache.markCompleted(taskName, startTimes[uncachedPositions[i]]);
             }
         }
+
+        return completed;
     }
 
     /**
@@ -106,18 +503,157 @@ public class CronJobRedisActions {
      *
      * @param cronJob 作业信息
      */
+    @Override
     public Boolean createJobIfNotPresent(CronJob cronJob) {
-        return redisTemplate.execute((RedisCallback<Boolean>) conn -> conn.hSetNX(getProcessListKeyName(cronJob.getTaskName()).getBytes(),
-                (formatDate(cronJob.getStartTime())).getBytes(), JOB_STATUS_UN_COMPLETED.getBytes()));
+        byte[] field = keyCodec.field(cronJob.getStartTime());
+        //迁移模式下未升级的应用已以旧格式记录作业时，不再创建新格式的字段
+        byte[] legacyField = keyCodec.legacyField(cronJob.getStartTime());
+        Boolean isCreated = execute(CronJobMetricNames.REDIS_OP_CREATE_JOB_IF_NOT_PRESENT, (RedisCallback<Boolean>) conn -> {
+            byte[] processListKey = keyCodec.processListKey(cronJob.getTaskName());
+            if (legacyField != null && conn.hGet(processListKey, legacyField) != null) {
+                return false;
+            }
+            return conn.hSetNX(processListKey, field, JOB_STATUS_UN_COMPLETED_BYTES);
+        });
+
+        if ((startTimeIndexMaintained || isPendingIndexEnabled() || isWindowBitmapEnabled()) && Boolean.TRUE.equals(isCreated)) {
+            long now = System.currentTimeMillis();
+            prepareWindowBitmaps(cronJob.getTaskName());
+            executePipelined(CronJobMetricNames.REDIS_OP_CREATE_JOB_IF_NOT_PRESENT, (RedisCallback<Object>) conn -> {
+                if (startTimeIndexMaintained) {
+                    conn.zAdd(keyCodec.startTimeIndexKey(cronJob.getTaskName()), cronJob.getStartTime(), field);
+                }
+                if (isPendingIndexEnabled()) {
+                    conn.zAdd(keyCodec.pendingListKey(cronJob.getTaskName()), now, field);
+                }
+                setWindowBit(conn, keyCodec.createdWindowsKey(cronJob.getTaskName()), cronJob);
+                return null;
+            });
+        }
+
+        return isCreated;
+    }
+
+    /**
+     * 设置作业已完成，作业带有防护令牌时以脚本校验令牌后写入
+     *
+     * @param cronJob 作业信息
+     * @return 是否写入，令牌已过期时返回false
+     */
+    @Override
+    public boolean markJobCompleted(CronJob cronJob) {
+        if (isFenced(cronJob)) {
+            return completeFencedJob(CronJobMetricNames.REDIS_OP_MARK_JOB_COMPLETED, cronJob, false);
+        }
+
+        if (!isPendingIndexEnabled() && !isWindowBitmapEnabled() && !completedJobBroadcastEnabled) {
+            execute(CronJobMetricNames.REDIS_OP_MARK_JOB_COMPLETED, (RedisCallback<Object>) conn -> {
+                setJobCompleted(conn, cronJob);
+                return null;
+            });
+            completionCache.markCompleted(cronJob.getTaskName(), cronJob.getStartTime());
+            return true;
+        }
+
+        //迁移模式下未完成作业列表中可能是任一格式的字段，一并移除
+        prepareWindowBitmaps(cronJob.getTaskName());
+        executePipelined(CronJobMetricNames.REDIS_OP_MARK_JOB_COMPLETED, (RedisCallback<Object>) conn -> {
+            setJobCompleted(conn, cronJob);
+            if (isPendingIndexEnabled()) {
+                conn.zRem(keyCodec.pendingListKey(cronJob.getTaskName()), keyCodec.readFields(cronJob.getStartTime()));
+            }
+            setWindowBit(conn, keyCodec.completedWindowsKey(cronJob.getTaskName()), cronJob);
+            publishCompletion(conn, cronJob);
+            return null;
+        });
+        completionCache.markCompleted(cronJob.getTaskName(), cronJob.getStartTime());
+        return true;
     }
 
     /**
-     * 设置作业已完成
+     * 设置作业已完成并释放锁，脚本模式下在一次pipeline中完成，作业带有防护令牌时在一次脚本调用中完成
      *
      * @param cronJob 作业信息
+     * @return 是否写入，令牌已过期时返回false
      */
-    public void markJobCompleted(CronJob cronJob) {
-        redisTemplate.opsForHash().put(getProcessListKeyName(cronJob.getTaskName()), formatDate(cronJob.getStartTime()), JOB_STATUS_COMPLETED);
+    @Override
+    public boolean completeJobAndReleaseLock(CronJob cronJob) {
+        if (isFenced(cronJob)) {
+            return completeFencedJob(CronJobMetricNames.REDIS_OP_COMPLETE_JOB_AND_RELEASE_LOCK, cronJob, true);
+        }
+
+        if (lockMode != CronJobLockMode.SCRIPT) {
+            markJobCompleted(cronJob);
+            deleteLock(cronJob);
+            return true;
+        }
+
+        byte[] holder = getLockHolder();
+        prepareWindowBitmaps(cronJob.getTaskName());
+        executePipelinedScripts(CronJobMetricNames.REDIS_OP_COMPLETE_JOB_AND_RELEASE_LOCK, connection -> {
+            setJobCompleted(connection, cronJob);
+            if (isPendingIndexEnabled()) {
+                connection.zRem(keyCodec.pendingListKey(cronJob.getTaskName()), keyCodec.readFields(cronJob.getStartTime()));
+            }
+            setWindowBit(connection, keyCodec.completedWindowsKey(cronJob.getTaskName()), cronJob);
+            connection.evalSha(CronJobRedisScripts.RELEASE_LOCK.getSha1(), ReturnType.INTEGER, 1, getLockKeyName(cronJob), holder);
+            publishCompletion(connection, cronJob);
+            return null;
+        });
+        completionCache.markCompleted(cronJob.getTaskName(), cronJob.getStartTime());
+        return true;
+    }
+
+    //以防护令牌完成作业，令牌仍是作业最新签发的令牌时写入已完成状态、移除未完成作业列表中的字段，并按需释放锁
+    private boolean completeFencedJob(String operation, CronJob cronJob, boolean releaseLock) {
+        String taskName = cronJob.getTaskName();
+        byte[][] pendingFields = isPendingIndexEnabled() ? keyCodec.readFields(cronJob.getStartTime()) : new byte[0][];
+        byte[] legacyField = keyCodec.legacyField(cronJob.getStartTime());
+        byte[][] args = new byte[6 + pendingFields.length][];
+        args[0] = keyCodec.field(cronJob.getStartTime());
+        args[1] = String.valueOf(cronJob.getFencingToken()).getBytes(StandardCharsets.UTF_8);
+        args[2] = JOB_STATUS_COMPLETED_BYTES;
+        args[3] = releaseLock ? getLockHolder() : new byte[0];
+        args[4] = windowOffsetArg(cronJob);
+        args[5] = legacyField != null ? legacyField : new byte[0];
+        System.arraycopy(pendingFields, 0, args, 6, pendingFields.length);
+
+        byte[][] keys = {keyCodec.processListKey(taskName), keyCodec.fencingTokenKey(taskName), keyCodec.pendingListKey(taskName),
+                getLockKeyName(cronJob), keyCodec.completedWindowsKey(taskName)};
+        Long result = execute(operation,
+                (RedisCallback<Long>) connection -> evalScript(connection, CronJobRedisScripts.COMPLETE_FENCED_JOB, keys, args));
+        if (!Long.valueOf(1L).equals(result)) {
+            return false;
+        }
+
+        if (completedJobBroadcastEnabled) {
+            execute(operation, (RedisCallback<Object>) connection -> {
+                publishCompletion(connection, cronJob);
+                return null;
+            });
+        }
+        completionCache.markCompleted(taskName, cronJob.getStartTime());
+        return true;
+    }
+
+    //写入作业已完成状态；迁移模式下同时写入旧格式的字段，未升级的应用只读取该字段，
+    //其中不存在时同样写入，否则未升级的应用回溯时会以旧格式重新记录作业并再次执行
+    private void setJobCompleted(RedisConnection connection, CronJob cronJob) {
+        for (byte[] field : keyCodec.readFields(cronJob.getStartTime())) {
+            connection.hSet(keyCodec.processListKey(cronJob.getTaskName()), field, JOB_STATUS_COMPLETED_BYTES);
+        }
+    }
+
+    //广播作业完成，未开启广播时不执行
+    private void publishCompletion(RedisConnection connection, CronJob cronJob) {
+        if (completedJobBroadcastEnabled) {
+            connection.publish(JOB_COMPLETION_CHANNEL_BYTES,
+                    (cronJob.getStartTime() + CronTaskKeyConstants.SEPERATOR + cronJob.getTaskName()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private boolean isFenced(CronJob cronJob) {
+        return fencingEnabled && cronJob.getFencingToken() > 0;
     }
 
     /**
@@ -126,20 +662,43 @@ public class CronJobRedisActions {
      * @param cronJob 非阻塞式的获取任务对应的锁
      * @return 是否获取成功
      */
+    @Override
     public boolean tryLock(CronJob cronJob) {
-        String localServletContainerSocketInfo = applicationStatus.getServletContainerSocketInfo();
-        String lockName = getLockKeyName(cronJob);
+        if (fencingEnabled) {
+            return tryFencedLock(cronJob);
+        } else if (lockMode == CronJobLockMode.SCRIPT) {
+            return evalLockScript(CronJobMetricNames.REDIS_OP_TRY_LOCK, CronJobRedisScripts.ACQUIRE_LOCK, cronJob, true);
+        }
+
+        byte[] holder = getLockHolder();
+        byte[] lockName = getLockKeyName(cronJob);
         Expiration expiration = Expiration.seconds(cronJobLockExpirationTime);
 
-        redisTemplate.execute((RedisCallback<String>) connection -> {
-            connection.set(lockName.getBytes(), localServletContainerSocketInfo.getBytes(), expiration, SET_IF_ABSENT);
+        execute(CronJobMetricNames.REDIS_OP_TRY_LOCK, (RedisCallback<String>) connection -> {
+            connection.set(lockName, holder, expiration, SET_IF_ABSENT);
             return null;
         });
 
-        Object value = redisTemplate.opsForValue().get(lockName);
-        String lockHolderAppSocketInfo = value == null ? "" : value.toString();
+        byte[] lockHolder = execute(CronJobMetricNames.REDIS_OP_TRY_LOCK, (RedisCallback<byte[]>) connection -> connection.get(lockName));
 
-        return localServletContainerSocketInfo.equals(lockHolderAppSocketInfo);
+        return Arrays.equals(holder, lockHolder);
+    }
+
+    //获取锁并将签发的防护令牌写入作业
+    private boolean tryFencedLock(CronJob cronJob) {
+        String taskName = cronJob.getTaskName();
+        byte[][] keys = {getLockKeyName(cronJob), keyCodec.fencingSequenceKey(taskName), keyCodec.fencingTokenKey(taskName)};
+        byte[][] args = {getLockHolder(), String.valueOf(cronJobLockExpirationTime).getBytes(StandardCharsets.UTF_8),
+                keyCodec.field(cronJob.getStartTime())};
+
+        Long token = execute(CronJobMetricNames.REDIS_OP_TRY_LOCK,
+                (RedisCallback<Long>) connection -> evalScript(connection, CronJobRedisScripts.ACQUIRE_FENCED_LOCK, keys, args));
+        if (token == null || token <= 0) {
+            return false;
+        }
+
+        cronJob.setFencingToken(token);
+        return true;
     }
 
     /**
@@ -147,15 +706,24 @@ public class CronJobRedisActions {
      *
      * @param cronJob 非阻塞式的获取任务对应的锁
      */
+    @Override
     public void deleteLock(CronJob cronJob) {
-        String localServletContainerSocketInfo = applicationStatus.getServletContainerSocketInfo();
-        String lockName = getLockKeyName(cronJob);
-        String lockContent = redisTemplate.opsForValue().get(lockName);
+        if (lockMode == CronJobLockMode.SCRIPT) {
+            if (!evalLockScript(CronJobMetricNames.REDIS_OP_DELETE_LOCK, CronJobRedisScripts.RELEASE_LOCK, cronJob, false)) {
+                log.warn("尝试删除job关联的锁时不符合条件，锁不存在或不是当前应用创建的锁：{}", cronJob);
+            }
+            return;
+        }
+
+        byte[] holder = getLockHolder();
+        byte[] lockName = getLockKeyName(cronJob);
+        byte[] lockContent = execute(CronJobMetricNames.REDIS_OP_DELETE_LOCK, (RedisCallback<byte[]>) connection -> connection.get(lockName));
 
-        if (localServletContainerSocketInfo.equals(lockContent)) {
-            redisTemplate.delete(lockName);
+        if (Arrays.equals(holder, lockContent)) {
+            execute(CronJobMetricNames.REDIS_OP_DELETE_LOCK, (RedisCallback<Long>) connection -> connection.del(lockName));
         } else {
-            log.warn("尝试删除job关联的锁时不符合条件，不是当前应用创建的锁：期望值为{}，实际值为{}", localServletContainerSocketInfo, lockContent);
+            log.warn("尝试删除job关联的锁时不符合条件，不是当前应用创建的锁：期望值为{}，实际值为{}", applicationStatus.getServletContainerSocketInfo(),
+                    lockContent == null ? null : new String(lockContent, StandardCharsets.UTF_8));
         }
     }
 
@@ -163,60 +731,1296 @@ public class CronJobRedisActions {
      * 为锁续上超时时间
      *
      * @param cronJob 作业
+     * @return 是否续时成功
      */
-    public void inspireLock(CronJob cronJob) {
-        String lockKey = getLockKeyName(cronJob);
+    @Override
+    public boolean inspireLock(CronJob cronJob) {
+        Boolean result;
+        if (lockMode == CronJobLockMode.SCRIPT) {
+            result = evalLockScript(CronJobMetricNames.REDIS_OP_INSPIRE_LOCK, CronJobRedisScripts.RENEW_LOCK, cronJob, true);
+        } else {
+            byte[] lockKey = getLockKeyName(cronJob);
+            result = execute(CronJobMetricNames.REDIS_OP_INSPIRE_LOCK,
+                    (RedisCallback<Boolean>) connection -> connection.expire(lockKey, cronJobLockExpirationTime));
+        }
+        log.info("设置锁时间结果：{}->{}", cronJob, result);
 
-        Boolean result = redisTemplate.expire(lockKey, cronJobLockExpirationTime, TimeUnit.SECONDS);
-        log.info("设置锁时间结果：{}->{}", lockKey, result);
+        return Boolean.TRUE.equals(result);
     }
 
     /**
+     * 批量为锁续上超时时间，所有命令在一次pipeline中发送
+     *
      * @param cronJobs 作业列表
-     * @return 获取作业列表分别是否与锁关联
+     * @return 与作业列表一一对应的续时结果
      */
-    public Map<CronJob, Boolean> getStatusOfJobLockHoldInfo(List<CronJob> cronJobs) {
+    @Override
+    public List<Boolean> inspireLocks(List<CronJob> cronJobs) {
         if (CollectionUtils.isEmpty(cronJobs)) {
-            return Collections.emptyMap();
+            return Collections.emptyList();
         }
 
-        List<String> cronJobLockHoldInfoList = redisTemplate.opsForValue().multiGet(cronJobs.stream().map(this::getLockKeyName)
-                .collect(Collectors.toList()));
+        List<Object> results = executePipelinedScripts(CronJobMetricNames.REDIS_OP_INSPIRE_LOCKS, pipelineInspireLocks(cronJobs));
 
-        if (CollectionUtils.isEmpty(cronJobLockHoldInfoList) || cronJobLockHoldInfoList.size() != cronJobs.size()) {
-            throw new IllegalStateException("返回作业锁关联信息数量有误：期望" + cronJobs.size() + "，返回：" + CollectionUtils.size(cronJobLockHoldInfoList));
+        if (CollectionUtils.size(results) != cronJobs.size()) {
+            throw new IllegalStateException("返回锁续时结果数量有误：期望" + cronJobs.size() + "，返回：" + CollectionUtils.size(results));
         }
 
-        Map<CronJob, Boolean> statusOfJobLockHoldInfoMap = Maps.newHashMapWithExpectedSize(cronJobLockHoldInfoList.size());
-        Iterator<String> cronJobLockIterator = cronJobLockHoldInfoList.iterator();
-        cronJobs.forEach(cronJob -> statusOfJobLockHoldInfoMap.put(cronJob, cronJobLockIterator.next() != null));
+        return results.stream().map(result -> Boolean.TRUE.equals(result) || Long.valueOf(1L).equals(result))
+                .collect(Collectors.toList());
+    }
 
-        return statusOfJobLockHoldInfoMap;
+    private RedisCallback<Object> pipelineInspireLocks(List<CronJob> cronJobs) {
+        byte[] holder = getLockHolder();
+        byte[] expiration = String.valueOf(cronJobLockExpirationTime).getBytes(StandardCharsets.UTF_8);
+
+        return connection -> {
+            for (CronJob cronJob : cronJobs) {
+                byte[] lockKey = getLockKeyName(cronJob);
+
+                if (lockMode == CronJobLockMode.SCRIPT) {
+                    connection.evalSha(CronJobRedisScripts.RENEW_LOCK.getSha1(), ReturnType.INTEGER, 1, lockKey, holder, expiration);
+                } else {
+                    connection.expire(lockKey, cronJobLockExpirationTime);
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * 批量认领作业：在一次pipeline中为每个作业执行【记录作业开始、获取锁、读取作业状态】
+     * @param cronJobs 作业列表
+     * @return 当前应用成功获取执行权且尚未完成的作业列表，保持作业列表中的顺序
+     */
+    @Override
+    public List<CronJob> claimJobs(List<CronJob> cronJobs) {
+        if (CollectionUtils.isEmpty(cronJobs)) {
+            return Collections.emptyList();
+        }
+
+        //本地缓存中已完成的作业无需认领
+        List<CronJob> uncachedJobs = new ArrayList<>(cronJobs.size());
+        for (CronJob cronJob : cronJobs) {
+            if (completionCache.isCompleted(cronJob.getTaskName(), cronJob.getStartTime())) {
+                metrics.increment(CronJobMetricNames.COMPLETION_CACHE_HIT, cronJob.getTaskName());
+            } else {
+                uncachedJobs.add(cronJob);
+            }
+        }
+
+        uncachedJobs.stream().map(CronJob::getTaskName).distinct().forEach(this::prepareWindowBitmaps);
+        List<CronJob> claimedJobs = new ArrayList<>(uncachedJobs.size());
+        try {
+            for (List<CronJob> partition : Lists.partition(uncachedJobs, claimBatchSize)) {
+                if (lockMode == CronJobLockMode.SCRIPT) {
+                    List<Object> results = executePipelinedScripts(CronJobMetricNames.REDIS_OP_CLAIM_JOBS, pipelineClaimJobs(partition));
+                    if (CollectionUtils.size(results) != partition.size()) {
+                        throw new IllegalStateException("返回作业认领结果数量有误：期望" + partition.size() + "，返回：" + CollectionUtils.size(results));
+                    }
+
+                    for (int i = 0; i < partition.size(); i++) {
+                        List<?> result = results.get(i) instanceof List ? (List<?>) results.get(i) : Collections.emptyList();
+                        if (result.size() == 2 && Long.valueOf(CLAIM_RESULT_WON).equals(result.get(0))) {
+                            partition.get(i).setFencingToken(((Number) result.get(1)).longValue());
+                            claimedJobs.add(partition.get(i));
+                        } else if (result.size() == 2 && Long.valueOf(CLAIM_RESULT_COMPLETED).equals(result.get(0))) {
+                            completionCache.markCompleted(partition.get(i).getTaskName(), partition.get(i).getStartTime());
+                        }
+                    }
+                } else {
+                    claimedJobs.addAll(claimJobsUsingPlainCommands(partition));
+                }
+            }
+        } catch (RuntimeException e) {
+            //之前批次已获取的锁不会被调度执行，释放后其他应用无需等到锁超时即可认领
+            releaseClaimedLocks(claimedJobs);
+            throw e;
+        }
+
+        return claimedJobs;
+    }
+
+    //释放认领成功的作业持有的锁，单个作业释放失败不影响其余作业
+    private void releaseClaimedLocks(List<CronJob> claimedJobs) {
+        for (CronJob cronJob : claimedJobs) {
+            try {
+                deleteLock(cronJob);
+            } catch (Exception e) {
+                log.warn("批量认领失败后释放作业锁失败，锁将在超时后失效：" + cronJob, e);
+            }
+        }
+    }
+
+    private RedisCallback<Object> pipelineClaimJobs(List<CronJob> cronJobs) {
+        byte[] holder = getLockHolder();
+        byte[] expiration = String.valueOf(cronJobLockExpirationTime).getBytes(StandardCharsets.UTF_8);
+        byte[] createTime = isPendingIndexEnabled() ? String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] fencing = fencingEnabled ? new byte[]{'1'} : new byte[0];
+
+        return connection -> {
+            for (CronJob cronJob : cronJobs) {
+                //迁移模式下额外传入文本格式的字段，用于判断作业是否已完成
+                byte[][] readFields = keyCodec.readFields(cronJob.getStartTime());
+                byte[][] keysAndArgs = new byte[16 + readFields.length - 1][];
+                keysAndArgs[0] = keyCodec.processListKey(cronJob.getTaskName());
+                keysAndArgs[1] = getLockKeyName(cronJob);
+                keysAndArgs[2] = keyCodec.startTimeIndexKey(cronJob.getTaskName());
+                keysAndArgs[3] = keyCodec.pendingListKey(cronJob.getTaskName());
+                keysAndArgs[4] = keyCodec.fencingSequenceKey(cronJob.getTaskName());
+                keysAndArgs[5] = keyCodec.fencingTokenKey(cronJob.getTaskName());
+                keysAndArgs[6] = keyCodec.createdWindowsKey(cronJob.getTaskName());
+                keysAndArgs[7] = keyCodec.completedWindowsKey(cronJob.getTaskName());
+                keysAndArgs[8] = keyCodec.field(cronJob.getStartTime());
+                keysAndArgs[9] = JOB_STATUS_UN_COMPLETED_BYTES;
+                keysAndArgs[10] = holder;
+                keysAndArgs[11] = expiration;
+                keysAndArgs[12] = startTimeIndexMaintained ? String.valueOf(cronJob.getStartTime()).getBytes(StandardCharsets.UTF_8) : new byte[0];
+                keysAndArgs[13] = createTime;
+                keysAndArgs[14] = fencing;
+                keysAndArgs[15] = windowOffsetArg(cronJob);
+                System.arraycopy(readFields, 1, keysAndArgs, 16, readFields.length - 1);
+
+                connection.evalSha(CronJobRedisScripts.CLAIM_JOB.getSha1(), ReturnType.MULTI, 8, keysAndArgs);
+            }
+            return null;
+        };
+    }
+
+    //原有实现下的批量认领：第一个pipeline记录作业开始并尝试加锁，第二个pipeline读取锁持有者与作业状态
+    //无法按HSETNX的结果有条件地写入未完成作业列表，因此一律写入，已完成的作业随后移除
+    private List<CronJob> claimJobsUsingPlainCommands(List<CronJob> cronJobs) {
+        byte[] holder = getLockHolder();
+        Expiration expiration = Expiration.seconds(cronJobLockExpirationTime);
+        int fieldCount = keyCodec.readFieldCount();
+        long now = System.currentTimeMillis();
+
+        //迁移模式下未升级的应用已以旧格式记录的作业，不再创建新格式的字段
+        BitSet legacyCreated = new BitSet(cronJobs.size());
+        if (keyCodec.getMode() == CronJobKeyCodecMode.MIGRATE) {
+            List<Object> legacyStatusList = executePipelined(CronJobMetricNames.REDIS_OP_CLAIM_JOBS, (RedisCallback<Object>) connection -> {
+                for (CronJob cronJob : cronJobs) {
+                    connection.hGet(keyCodec.processListKey(cronJob.getTaskName()), keyCodec.legacyField(cronJob.getStartTime()));
+                }
+                return null;
+            });
+            for (int i = 0; i < cronJobs.size(); i++) {
+                legacyCreated.set(i, i < CollectionUtils.size(legacyStatusList) && legacyStatusList.get(i) != null);
+            }
+        }
+
+        executePipelined(CronJobMetricNames.REDIS_OP_CLAIM_JOBS, (RedisCallback<Object>) connection -> {
+            for (int i = 0; i < cronJobs.size(); i++) {
+                CronJob cronJob = cronJobs.get(i);
+                if (!legacyCreated.get(i)) {
+                    connection.hSetNX(keyCodec.processListKey(cronJob.getTaskName()), keyCodec.field(cronJob.getStartTime()),
+                            JOB_STATUS_UN_COMPLETED_BYTES);
+                }
+                if (startTimeIndexMaintained) {
+                    connection.zAdd(keyCodec.startTimeIndexKey(cronJob.getTaskName()), cronJob.getStartTime(), keyCodec.field(cronJob.getStartTime()));
+                }
+                if (isPendingIndexEnabled()) {
+                    connection.zAdd(keyCodec.pendingListKey(cronJob.getTaskName()), now, keyCodec.field(cronJob.getStartTime()));
+                }
+                setWindowBit(connection, keyCodec.createdWindowsKey(cronJob.getTaskName()), cronJob);
+                connection.set(getLockKeyName(cronJob), holder, expiration, SET_IF_ABSENT);
+            }
+            return null;
+        });
+
+        List<Object> results = executePipelined(CronJobMetricNames.REDIS_OP_CLAIM_JOBS, (RedisCallback<Object>) connection -> {
+            for (CronJob cronJob : cronJobs) {
+                connection.get(getLockKeyName(cronJob));
+                for (byte[] field : keyCodec.readFields(cronJob.getStartTime())) {
+                    connection.hGet(keyCodec.processListKey(cronJob.getTaskName()), field);
+                }
+            }
+            return null;
+        });
+
+        int stride = fieldCount + 1;
+        if (CollectionUtils.size(results) != cronJobs.size() * stride) {
+            throw new IllegalStateException("返回作业认领结果数量有误：期望" + cronJobs.size() * stride + "，返回：" + CollectionUtils.size(results));
+        }
+
+        String holderText = applicationStatus.getServletContainerSocketInfo();
+        List<CronJob> claimedJobs = new ArrayList<>(cronJobs.size());
+        //同一批次可能包含多个任务的作业，已完成的作业按任务归类
+        Map<String, List<Long>> completedStartTimes = new LinkedHashMap<>();
+        for (int i = 0; i < cronJobs.size(); i++) {
+            boolean isCompleted = false;
+            for (int j = 1; j <= fieldCount; j++) {
+                isCompleted |= JOB_STATUS_COMPLETED.equals(results.get(i * stride + j));
+            }
+
+            if (isCompleted) {
+                completedStartTimes.computeIfAbsent(cronJobs.get(i).getTaskName(), taskName -> new ArrayList<>())
+                        .add(cronJobs.get(i).getStartTime());
+            } else if (holderText.equals(results.get(i * stride))) {
+                claimedJobs.add(cronJobs.get(i));
+            }
+        }
+
+        completedStartTimes.forEach((taskName, startTimes) -> {
+            completionCache.markCompleted(taskName, startTimes);
+            if (isPendingIndexEnabled() || isWindowBitmapEnabled()) {
+                removePendingJobs(taskName, startTimes);
+            }
+        });
+
+        return claimedJobs;
+    }
+
+    /**
+     * @param operation 操作名，取值见{@link CronJobMetricNames}中的REDIS_OP_*，作为耗时及失败次数的标签
+     */
+    private <T> T execute(String operation, RedisCallback<T> callback) {
+        if (!metrics.isEnabled()) {
+            return doExecute(callback);
+        }
+
+        return recordCommand(operation, () -> doExecute(callback));
     }
 
-    private String getLockKeyName(CronJob cronJob) {
-        return CronTaskKeyConstants.JOB_LOCK_PREFIX + CronTaskKeyConstants.SEPERATOR +
-                cronJob.getTaskName() + CronTaskKeyConstants.SEPERATOR +
-                formatDate(cronJob.getStartTime());
+    private List<Object> executePipelined(String operation, RedisCallback<?> callback) {
+        if (!metrics.isEnabled()) {
+            return doExecutePipelined(callback);
+        }
+
+        return recordCommand(operation, () -> doExecutePipelined(callback));
     }
 
-    private String getProcessListKeyName(String taskName) {
-        return CronTaskKeyConstants.PROCESS_STATUS_LIST_PREFIX + CronTaskKeyConstants.SEPERATOR + taskName;
+    //记录redis操作的耗时及失败次数
+    private <T> T recordCommand(String operation, Supplier<T> command) {
+        long startNanos = System.nanoTime();
+
+        try {
+            return command.get();
+        } catch (RuntimeException e) {
+            metrics.increment(CronJobMetricNames.REDIS_COMMAND_FAILED, operation);
+            throw e;
+        } finally {
+            metrics.recordNanos(CronJobMetricNames.REDIS_COMMAND, operation, System.nanoTime() - startNanos);
+        }
     }
 
-    private boolean isJobCompleted(String statusText) {
-        return JOB_STATUS_COMPLETED.equals(statusText);
+    private <T> T doExecute(RedisCallback<T> callback) {
+        if (redisGate == null) {
+            return redisTemplate.execute(callback);
+        }
+
+        redisGate.acquireUninterruptibly();
+        try {
+            return redisTemplate.execute(callback);
+        } finally {
+            redisGate.release();
+        }
     }
 
-    private String formatDate(long millis) {
-        return DateFormatUtils.format(millis, FORMAT_PATTERN);
+    private List<Object> doExecutePipelined(RedisCallback<?> callback) {
+        if (redisGate == null) {
+            return redisTemplate.executePipelined(callback);
+        }
+
+        redisGate.acquireUninterruptibly();
+        try {
+            return redisTemplate.executePipelined(callback);
+        } finally {
+            redisGate.release();
+        }
     }
 
-    private long parseDate(String date) {
+    //执行包含脚本命令的pipeline，pipeline中无法在NOSCRIPT时回退为EVAL，因此重新载入脚本后重试一次
+    private List<Object> executePipelinedScripts(String operation, RedisCallback<Object> callback) {
         try {
-            return dateParser.parse(date).getTime();
-        } catch (ParseException e) {
-            return 0L;
+            return executePipelined(operation, callback);
+        } catch (RuntimeException e) {
+            if (lockMode != CronJobLockMode.SCRIPT || !isNoScriptError(e)) {
+                throw e;
+            }
+
+            log.info("redis中不存在脚本缓存，重新载入后重试");
+            preloadScripts();
+            return executePipelined(operation, callback);
+        }
+    }
+
+    /**
+     * @return 是否维护作业开始时刻索引
+     */
+    public boolean isHistoryIndexEnabled() {
+        return historyIndexEnabled;
+    }
+
+    /**
+     * @return 是否维护未完成作业列表
+     */
+    public boolean isPendingIndexEnabled() {
+        return scanMode == CronJobScanMode.INDEXED;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @param fromTime 最早的作业开始时刻【包含】
+     * @return 未完成作业列表中创建时间早于锁超时时间、开始时刻不早于fromTime的作业开始时间，即可能已失败的作业
+     */
+    public long[] getStalePendingJobStartTimes(String taskName, long fromTime) {
+        long createdBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(cronJobLockExpirationTime);
+        Set<byte[]> fields = execute(CronJobMetricNames.REDIS_OP_GET_STALE_PENDING_JOB_START_TIMES, (RedisCallback<Set<byte[]>>) connection ->
+                connection.zRangeByScore(keyCodec.pendingListKey(taskName), Double.NEGATIVE_INFINITY, createdBefore));
+
+        return decodeStartTimes(fields, fromTime);
+    }
+
+    //解析字段中的作业开始时刻，去重并忽略无法解析的字段
+    private long[] decodeStartTimes(Collection<byte[]> fields, long fromTime) {
+        if (CollectionUtils.isEmpty(fields)) {
+            return EMPTY_START_TIMES;
+        }
+
+        LongHashSet startTimes = new LongHashSet(fields.size());
+        for (byte[] field : fields) {
+            long time = keyCodec.decodeField(field);
+            if (time > 0 && time >= fromTime) {
+                startTimes.add(time);
+            }
         }
+
+        return startTimes.toArray();
+    }
+
+    /**
+     * 从未完成作业列表中移除作业，用于清理已完成但仍残留在列表中的作业；维护窗口位图时同时将其记为已完成
+     *
+     * @param taskName   任务名
+     * @param startTimes 作业开始时间列表
+     */
+    public void removePendingJobs(String taskName, Collection<Long> startTimes) {
+        if (CollectionUtils.isEmpty(startTimes)) {
+            return;
+        }
+
+        if (isPendingIndexEnabled()) {
+            int fieldCount = keyCodec.readFieldCount();
+            byte[][] fields = new byte[startTimes.size() * fieldCount][];
+            int position = 0;
+            for (Long startTime : startTimes) {
+                System.arraycopy(keyCodec.readFields(startTime), 0, fields, position, fieldCount);
+                position += fieldCount;
+            }
+
+            execute(CronJobMetricNames.REDIS_OP_REMOVE_PENDING_JOBS,
+                    (RedisCallback<Long>) connection -> connection.zRem(keyCodec.pendingListKey(taskName), fields));
+        }
+
+        if (isWindowBitmapEnabled()) {
+            byte[] completedWindowsKey = keyCodec.completedWindowsKey(taskName);
+            prepareWindowBitmaps(taskName);
+            executePipelined(CronJobMetricNames.REDIS_OP_REMOVE_PENDING_JOBS, (RedisCallback<Object>) connection -> {
+                for (Long startTime : startTimes) {
+                    long offset = windowOffset(taskName, startTime);
+                    if (offset >= 0) {
+                        connection.setBit(completedWindowsKey, offset, true);
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 以HSCAN增量地为已有的作业状态列表构建未完成作业列表，每个任务只构建一次
+     * 已有作业的创建时间未知，以0作为创建时间，使其在下一次扫描时即被检查
+     *
+     * @param taskName  任务名
+     * @param batchSize 每批扫描及写入的数量
+     * @return 写入列表的作业数，列表已构建时返回-1
+     */
+    public int rebuildPendingIndex(String taskName, int batchSize) {
+        byte[] readyKey = keyCodec.pendingListReadyKey(taskName);
+        if (Boolean.TRUE.equals(execute(CronJobMetricNames.REDIS_OP_REBUILD_PENDING_INDEX,
+                (RedisCallback<Boolean>) connection -> connection.exists(readyKey)))) {
+            return -1;
+        }
+
+        byte[] processListKey = keyCodec.processListKey(taskName);
+        byte[] pendingListKey = keyCodec.pendingListKey(taskName);
+
+        int pendingCount = execute(CronJobMetricNames.REDIS_OP_REBUILD_PENDING_INDEX, (RedisCallback<Integer>) connection -> {
+            int count = 0;
+            Set<RedisZSetCommands.Tuple> tuples = new HashSet<>();
+
+            try (Cursor<Map.Entry<byte[], byte[]>> cursor = connection.hScan(processListKey, ScanOptions.scanOptions().count(batchSize).build())) {
+                while (cursor.hasNext()) {
+                    Map.Entry<byte[], byte[]> entry = cursor.next();
+
+                    if (!Arrays.equals(JOB_STATUS_COMPLETED_BYTES, entry.getValue()) && keyCodec.decodeField(entry.getKey()) > 0) {
+                        tuples.add(new DefaultTuple(entry.getKey(), 0D));
+                    }
+
+                    if (tuples.size() >= batchSize) {
+                        count += tuples.size();
+                        connection.zAdd(pendingListKey, tuples);
+                        tuples.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("关闭作业状态列表扫描游标失败：" + taskName, e);
+            }
+
+            if (!tuples.isEmpty()) {
+                count += tuples.size();
+                connection.zAdd(pendingListKey, tuples);
+            }
+
+            connection.set(readyKey, JOB_STATUS_COMPLETED_BYTES);
+            return count;
+        });
+
+        log.info("任务[{}]未完成作业列表构建完成，数量：{}", taskName, pendingCount);
+        return pendingCount;
+    }
+
+    /**
+     * @return 是否维护窗口位图
+     */
+    public boolean isWindowBitmapEnabled() {
+        return scanMode == CronJobScanMode.BITMAP;
+    }
+
+    //以一次GETRANGE读取已创建位图中的连续窗口，早于0号窗口的窗口视为未创建；第i位表示第i个窗口已创建
+    private BitSet getCreatedWindowsFromBitmap(String taskName, long firstStartTime, int windowCount) {
+        CronJobWindowCalculator calculator = getWindowCalculator(taskName);
+        if (calculator == null || windowCount <= 0) {
+            return new BitSet();
+        }
+
+        long interval = calculator.getIntervalMillis();
+        long firstOffset = Math.floorDiv(firstStartTime - windowOrigin(taskName, calculator), interval);
+        //跳过早于0号窗口的窗口
+        int skipped = (int) Math.min(windowCount, Math.max(0L, -firstOffset));
+        if (skipped == windowCount) {
+            return new BitSet();
+        }
+
+        long fromOffset = firstOffset + skipped;
+        long toOffset = firstOffset + windowCount - 1;
+        byte[] bits = execute(CronJobMetricNames.REDIS_OP_GET_CREATED_WINDOWS, (RedisCallback<byte[]>) connection ->
+                connection.getRange(keyCodec.createdWindowsKey(taskName), fromOffset / 8, toOffset / 8));
+
+        BitSet windows = toWindows(bits, (int) (fromOffset % 8), (int) (toOffset - fromOffset + 1));
+        if (skipped == 0) {
+            return windows;
+        }
+
+        BitSet shifted = new BitSet(windowCount);
+        for (int i = windows.nextSetBit(0); i >= 0; i = windows.nextSetBit(i + 1)) {
+            shifted.set(i + skipped);
+        }
+        return shifted;
+    }
+
+    /**
+     * 在同一连接上依次读取两个位图中的区间后在本地求差，不使用流水线：流水线的结果按字符串反序列化，会破坏位图内容
+     * 读取范围不早于任务的0号窗口，位图大小只与任务自身的历史长度有关
+     *
+     * @param taskName 任务名
+     * @param fromTime 最早的作业开始时刻【包含】
+     * @return 已创建但未完成、且时间范围已结束的作业开始时刻，升序
+     */
+    public long[] getPendingWindowStartTimes(String taskName, long fromTime) {
+        CronJobWindowCalculator calculator = getWindowCalculator(taskName);
+        if (calculator == null) {
+            return EMPTY_START_TIMES;
+        }
+
+        long interval = calculator.getIntervalMillis();
+        long originStartTime = windowOrigin(taskName, calculator);
+        long firstStartTime = calculator.ceil(Math.max(fromTime, originStartTime));
+        long lastStartTime = calculator.floor(System.currentTimeMillis()) - interval;
+        if (lastStartTime < firstStartTime) {
+            return EMPTY_START_TIMES;
+        }
+
+        long fromOffset = (firstStartTime - originStartTime) / interval;
+        long toOffset = (lastStartTime - originStartTime) / interval;
+        byte[][] bits = execute(CronJobMetricNames.REDIS_OP_GET_PENDING_WINDOW_START_TIMES, (RedisCallback<byte[][]>) connection -> new byte[][]{
+                connection.getRange(keyCodec.createdWindowsKey(taskName), fromOffset / 8, toOffset / 8),
+                connection.getRange(keyCodec.completedWindowsKey(taskName), fromOffset / 8, toOffset / 8)});
+
+        int firstBit = (int) (fromOffset % 8);
+        int windowCount = (int) (toOffset - fromOffset + 1);
+        BitSet pendingWindows = toWindows(bits[0], firstBit, windowCount);
+        pendingWindows.andNot(toWindows(bits[1], firstBit, windowCount));
+
+        long[] startTimes = new long[pendingWindows.cardinality()];
+        int position = 0;
+        for (int i = pendingWindows.nextSetBit(0); i >= 0; i = pendingWindows.nextSetBit(i + 1)) {
+            startTimes[position++] = firstStartTime + i * interval;
+        }
+
+        return startTimes;
+    }
+
+    /**
+     * 以HSCAN增量地为已有的作业状态列表构建窗口位图，每个任务只构建一次
+     * 构建时确定任务的0号窗口：取已有作业中最早的一个与回溯范围内的第一个窗口中较早者，此后不变；之后写入的更早的作业不记入位图，按未创建处理
+     * 位图只会被置位，构建期间新创建、完成的作业不会被覆盖
+     *
+     * @param taskName  任务名
+     * @param batchSize 每批扫描及写入的数量
+     * @return 写入位图的作业数，位图已构建或未开启时返回-1
+     */
+    public int rebuildWindowBitmaps(String taskName, int batchSize) {
+        byte[] readyKey = keyCodec.windowBitmapReadyKey(taskName);
+        CronJobWindowCalculator calculator = getWindowCalculator(taskName);
+        if (calculator == null
+                || Boolean.TRUE.equals(execute(CronJobMetricNames.REDIS_OP_REBUILD_WINDOW_BITMAPS,
+                        (RedisCallback<Boolean>) connection -> connection.exists(readyKey)))) {
+            return -1;
+        }
+
+        LongHashSet createdStartTimes = new LongHashSet();
+        LongHashSet completedStartTimes = new LongHashSet();
+        byte[] processListKey = keyCodec.processListKey(taskName);
+        execute(CronJobMetricNames.REDIS_OP_REBUILD_WINDOW_BITMAPS, (RedisCallback<Object>) connection -> {
+            try (Cursor<Map.Entry<byte[], byte[]>> cursor = connection.hScan(processListKey, ScanOptions.scanOptions().count(batchSize).build())) {
+                while (cursor.hasNext()) {
+                    Map.Entry<byte[], byte[]> entry = cursor.next();
+
+                    long time = keyCodec.decodeField(entry.getKey());
+                    if (time > 0) {
+                        createdStartTimes.add(time);
+                        if (Arrays.equals(JOB_STATUS_COMPLETED_BYTES, entry.getValue())) {
+                            completedStartTimes.add(time);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("关闭作业状态列表扫描游标失败：" + taskName, e);
+            }
+
+            return null;
+        });
+
+        long[] startTimes = createdStartTimes.toArray();
+        CronTaskConfig taskConfig = cronTaskRegistry.getByTaskName(taskName).getTaskConfig();
+        long backtraceStartTime = calculator.floor(System.currentTimeMillis()
+                - TimeUnit.HOURS.toMillis(taskConfig.getLoadScanBacktraceTimeDuration())) - calculator.getIntervalMillis();
+        long originStartTime = resolveWindowOrigin(taskName,
+                calculator.floor(Math.min(backtraceStartTime, Arrays.stream(startTimes).min().orElse(Long.MAX_VALUE))));
+
+        long[] createdOffsets = windowOffsets(calculator, originStartTime, startTimes);
+        setWindowBits(keyCodec.createdWindowsKey(taskName), createdOffsets, batchSize);
+        setWindowBits(keyCodec.completedWindowsKey(taskName), windowOffsets(calculator, originStartTime, completedStartTimes.toArray()), batchSize);
+        execute(CronJobMetricNames.REDIS_OP_REBUILD_WINDOW_BITMAPS, (RedisCallback<Object>) connection -> {
+            connection.set(readyKey, JOB_STATUS_COMPLETED_BYTES);
+            return null;
+        });
+
+        log.info("任务[{}]窗口位图构建完成，0号窗口：{}，数量：{}", taskName, originStartTime, createdOffsets.length);
+        return createdOffsets.length;
+    }
+
+    //按批以流水线置位
+    private void setWindowBits(byte[] key, long[] offsets, int batchSize) {
+        for (int from = 0; from < offsets.length; from += batchSize) {
+            int to = Math.min(offsets.length, from + batchSize);
+            int batchFrom = from;
+            executePipelined(CronJobMetricNames.REDIS_OP_REBUILD_WINDOW_BITMAPS, (RedisCallback<Object>) connection -> {
+                for (int i = batchFrom; i < to; i++) {
+                    connection.setBit(key, offsets[i], true);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 获取或续期扫描租约
+     *
+     * @param leaseSeconds 租约时长（秒）
+     * @return 当前应用是否持有租约
+     */
+    @Override
+    public boolean acquireOrRenewScannerLease(long leaseSeconds) {
+        byte[] leaderKey = CronTaskKeyConstants.SCANNER_LEADER_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] holder = getLockHolder();
+
+        Long result = execute(CronJobMetricNames.REDIS_OP_ACQUIRE_OR_RENEW_SCANNER_LEASE, (RedisCallback<Long>) connection -> evalScript(connection,
+                CronJobRedisScripts.ACQUIRE_OR_RENEW_LEASE, leaderKey, holder, String.valueOf(leaseSeconds).getBytes(StandardCharsets.UTF_8)));
+
+        return Long.valueOf(1L).equals(result);
+    }
+
+    /**
+     * 上报扫描器心跳，并移除超过租约时长未上报心跳的应用
+     *
+     * @param leaseMillis 租约时长（毫秒）
+     * @return 存活的应用列表
+     */
+    @Override
+    public List<String> heartbeatScannerNode(long leaseMillis) {
+        byte[] nodesKey = CronTaskKeyConstants.SCANNER_NODES_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] holder = getLockHolder();
+        long now = System.currentTimeMillis();
+
+        List<Object> results = executePipelined(CronJobMetricNames.REDIS_OP_HEARTBEAT_SCANNER_NODE, (RedisCallback<Object>) connection -> {
+            connection.zAdd(nodesKey, now, holder);
+            connection.zRemRangeByScore(nodesKey, Double.NEGATIVE_INFINITY, now - leaseMillis);
+            connection.zRange(nodesKey, 0, -1);
+            return null;
+        });
+
+        Object nodes = CollectionUtils.isEmpty(results) ? null : results.get(results.size() - 1);
+        if (!(nodes instanceof Collection)) {
+            throw new IllegalStateException("返回扫描器存活应用列表有误：" + nodes);
+        }
+
+        return ((Collection<?>) nodes).stream().map(node -> node instanceof byte[] ?
+                new String((byte[]) node, StandardCharsets.UTF_8) : String.valueOf(node)).collect(Collectors.toList());
+    }
+
+    /**
+     * 应用关闭时放弃扫描租约并从存活应用列表中移除，以便其他应用尽快接管
+     */
+    @Override
+    public void releaseScannerLeadership() {
+        byte[] leaderKey = CronTaskKeyConstants.SCANNER_LEADER_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] nodesKey = CronTaskKeyConstants.SCANNER_NODES_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] holder = getLockHolder();
+
+        execute(CronJobMetricNames.REDIS_OP_RELEASE_SCANNER_LEADERSHIP, (RedisCallback<Object>) connection -> {
+            evalScript(connection, CronJobRedisScripts.RELEASE_LOCK, leaderKey, holder);
+            return connection.zRem(nodesKey, holder);
+        });
+    }
+
+    /**
+     * 尝试获取任务的作业状态列表维护权，保证同一时刻集群中只有一个应用维护某个任务
+     *
+     * @param taskName          任务名
+     * @param expirationSeconds 维护权持有时间（秒）
+     * @return 是否获取成功
+     */
+    public boolean tryLockMaintenance(String taskName, long expirationSeconds) {
+        byte[] lockKey = keyCodec.retentionLockKey(taskName);
+        byte[] holder = getLockHolder();
+
+        byte[] lockHolder = execute(CronJobMetricNames.REDIS_OP_TRY_LOCK_MAINTENANCE, (RedisCallback<byte[]>) connection -> {
+            connection.set(lockKey, holder, Expiration.seconds(expirationSeconds), SET_IF_ABSENT);
+            return connection.get(lockKey);
+        });
+
+        return Arrays.equals(holder, lockHolder);
+    }
+
+    /**
+     * 以HSCAN增量地为已有的作业状态列表构建开始时刻索引，每个任务只构建一次
+     *
+     * @param taskName  任务名
+     * @param batchSize 每批扫描及写入的数量
+     * @return 写入索引的作业数，索引已构建时返回-1
+     */
+    public int rebuildStartTimeIndex(String taskName, int batchSize) {
+        byte[] readyKey = keyCodec.startTimeIndexReadyKey(taskName);
+        if (Boolean.TRUE.equals(execute(CronJobMetricNames.REDIS_OP_REBUILD_START_TIME_INDEX,
+                (RedisCallback<Boolean>) connection -> connection.exists(readyKey)))) {
+            return -1;
+        }
+
+        byte[] processListKey = keyCodec.processListKey(taskName);
+        byte[] indexKey = keyCodec.startTimeIndexKey(taskName);
+
+        int indexedCount = execute(CronJobMetricNames.REDIS_OP_REBUILD_START_TIME_INDEX, (RedisCallback<Integer>) connection -> {
+            int count = 0;
+            Set<RedisZSetCommands.Tuple> tuples = new HashSet<>();
+
+            try (Cursor<Map.Entry<byte[], byte[]>> cursor = connection.hScan(processListKey, ScanOptions.scanOptions().count(batchSize).build())) {
+                while (cursor.hasNext()) {
+                    byte[] field = cursor.next().getKey();
+                    long startTime = keyCodec.decodeField(field);
+
+                    if (startTime > 0) {
+                        tuples.add(new DefaultTuple(field, (double) startTime));
+                    }
+
+                    if (tuples.size() >= batchSize) {
+                        count += tuples.size();
+                        connection.zAdd(indexKey, tuples);
+                        tuples.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("关闭作业状态列表扫描游标失败：" + taskName, e);
+            }
+
+            if (!tuples.isEmpty()) {
+                count += tuples.size();
+                connection.zAdd(indexKey, tuples);
+            }
+
+            connection.set(readyKey, JOB_STATUS_COMPLETED_BYTES);
+            return count;
+        });
+
+        log.info("任务[{}]作业开始时刻索引构建完成，数量：{}", taskName, indexedCount);
+        return indexedCount;
+    }
+
+    /**
+     * 压缩开始时刻早于指定时刻的已完成作业：从作业状态列表及索引中移除，并按策略按天汇总完成数
+     * 未完成的作业保持不变，以便扫描器继续发现；获得任务的维护权后才压缩，维护权持有至下一轮维护
+     *
+     * @param taskName   任务名
+     * @param beforeTime 作业开始时刻上限【不包含】
+     * @param batchSize  每批处理的数量
+     * @param maxBatches 本次最多处理的批数
+     * @param policy     处理策略
+     * @return 本次移除的作业数
+     */
+    @Override
+    public int compactCompletedJobs(String taskName, long beforeTime, int batchSize, int maxBatches, CronJobRetentionPolicy policy) {
+        if (!tryLockMaintenance(taskName, retentionIntervalInSeconds)) {
+            if (log.isDebugEnabled()) {
+                log.debug("任务[{}]的作业状态列表正由其他应用维护", taskName);
+            }
+            return 0;
+        }
+
+        //已完成作业按开始时刻索引分批读取
+        if (!isStartTimeIndexReady(taskName)) {
+            return 0;
+        }
+        byte[] processListKey = keyCodec.processListKey(taskName);
+        byte[] indexKey = keyCodec.startTimeIndexKey(taskName);
+        byte[] rollupKey = keyCodec.rollupKey(taskName);
+
+        int compactedCount = 0;
+        //以开始时刻为游标分批向后推进，同一开始时刻可能对应多个字段【迁移模式】，记录已访问过的以免重复
+        RedisZSetCommands.Range range = RedisZSetCommands.Range.range().lt(beforeTime);
+        Set<ByteBuffer> visitedAtBound = new HashSet<>();
+
+        for (int batch = 0; batch < maxBatches; batch++) {
+            RedisZSetCommands.Range currentRange = range;
+            RedisZSetCommands.Limit limit = RedisZSetCommands.Limit.limit().count(batchSize + visitedAtBound.size());
+            Set<RedisZSetCommands.Tuple> tuples = execute(CronJobMetricNames.REDIS_OP_COMPACT_COMPLETED_JOBS,
+                    (RedisCallback<Set<RedisZSetCommands.Tuple>>) connection ->
+                            connection.zRangeByScoreWithScores(indexKey, currentRange, limit));
+
+            List<RedisZSetCommands.Tuple> candidates = new ArrayList<>(CollectionUtils.size(tuples));
+            if (tuples != null) {
+                for (RedisZSetCommands.Tuple tuple : tuples) {
+                    if (!visitedAtBound.contains(ByteBuffer.wrap(tuple.getValue()))) {
+                        candidates.add(tuple);
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+
+            //同一开始时刻的字段属于同一个作业【迁移模式下两种格式的字段未必都在索引中】，任一字段已完成即视为作业已完成，一并移除
+            Map<Long, List<byte[]>> fieldsOfJobs = new LinkedHashMap<>();
+            for (RedisZSetCommands.Tuple tuple : candidates) {
+                List<byte[]> fieldsOfJob = fieldsOfJobs.computeIfAbsent(tuple.getScore().longValue(),
+                        startTime -> new ArrayList<>(Arrays.asList(keyCodec.readFields(startTime))));
+                if (fieldsOfJob.stream().noneMatch(field -> Arrays.equals(field, tuple.getValue()))) {
+                    fieldsOfJob.add(tuple.getValue());
+                }
+            }
+
+            byte[][] fields = fieldsOfJobs.values().stream().flatMap(List::stream).toArray(byte[][]::new);
+            List<byte[]> statusList = execute(CronJobMetricNames.REDIS_OP_COMPACT_COMPLETED_JOBS,
+                    (RedisCallback<List<byte[]>>) connection -> connection.hMGet(processListKey, fields));
+
+            Map<Long, List<byte[]>> completedJobs = new LinkedHashMap<>();
+            int position = 0;
+            for (Map.Entry<Long, List<byte[]>> entry : fieldsOfJobs.entrySet()) {
+                if (isAnyJobCompleted(statusList, position, entry.getValue().size())) {
+                    completedJobs.put(entry.getKey(), entry.getValue());
+                }
+                position += entry.getValue().size();
+            }
+
+            if (!completedJobs.isEmpty()) {
+                executePipelined(CronJobMetricNames.REDIS_OP_COMPACT_COMPLETED_JOBS, (RedisCallback<Object>) connection -> {
+                    completedJobs.forEach((startTime, fieldsOfJob) -> {
+                        connection.hDel(processListKey, fieldsOfJob.toArray(new byte[0][]));
+                        connection.zRemRangeByScore(indexKey, startTime, startTime);
+
+                        if (policy == CronJobRetentionPolicy.ROLLUP) {
+                            connection.hIncrBy(rollupKey, DateFormatUtils.format(startTime, ROLLUP_DAY_PATTERN)
+                                    .getBytes(StandardCharsets.UTF_8), 1L);
+                        }
+                    });
+                    return null;
+                });
+                compactedCount += completedJobs.size();
+            }
+
+            double lastScore = candidates.get(candidates.size() - 1).getScore();
+            //首批的区间没有下界
+            RedisZSetCommands.Range.Boundary min = range.getMin();
+            if (min == null || !min.isIncluding() || !Double.valueOf(lastScore).equals(min.getValue())) {
+                visitedAtBound.clear();
+            }
+            for (RedisZSetCommands.Tuple tuple : candidates) {
+                if (tuple.getScore() == lastScore) {
+                    visitedAtBound.add(ByteBuffer.wrap(tuple.getValue()));
+                }
+            }
+            range = RedisZSetCommands.Range.range().gte(lastScore).lt(beforeTime);
+
+            if (candidates.size() < batchSize) {
+                break;
+            }
+        }
+
+        return compactedCount;
+    }
+
+    /**
+     * 将任务在原有布局下的作业数据迁移至集群布局下的key，每个任务只迁移一次，原有的key保留，确认无误后可手动删除
+     * 1. 作业状态列表：已完成的状态直接覆盖，未完成的状态只在不存在时写入；
+     * 2. 按天汇总的完成数：累加至新的key；
+     * 3. 开始时刻索引、未完成作业列表及窗口位图：按迁移后的作业状态列表重新构建；
+     * 4. 作业锁：持有时间很短，不迁移，切换布局时所有应用需同时切换，避免新旧布局下的应用同时执行同一个作业
+     *
+     * @param taskName  任务名
+     * @param batchSize 每批扫描及写入的数量
+     * @return 迁移的作业数，已迁移、无需迁移或正由其他应用迁移时返回-1
+     */
+    public int migrateKeyLayout(String taskName, int batchSize) {
+        byte[] migratedKey = keyCodec.keyLayoutMigratedKey(taskName);
+        if (keyLayout != CronJobKeyLayout.CLUSTER
+                || Boolean.TRUE.equals(execute(CronJobMetricNames.REDIS_OP_MIGRATE_KEY_LAYOUT,
+                        (RedisCallback<Boolean>) connection -> connection.exists(migratedKey)))) {
+            return -1;
+        }
+
+        if (!tryLockMaintenance(taskName, KEY_LAYOUT_MIGRATION_LOCK_SECONDS)) {
+            log.info("任务[{}]原有布局下的作业数据正由其他应用迁移", taskName);
+            return -1;
+        }
+
+        CronJobKeyCodec legacyKeyCodec = new CronJobKeyCodec(keyCodecMode, CronJobKeyLayout.LEGACY);
+        byte[] legacyProcessListKey = legacyKeyCodec.processListKey(taskName);
+        byte[] processListKey = keyCodec.processListKey(taskName);
+
+        int migratedCount = execute(CronJobMetricNames.REDIS_OP_MIGRATE_KEY_LAYOUT, (RedisCallback<Integer>) connection -> {
+            int count = 0;
+            Map<byte[], byte[]> entries = new LinkedHashMap<>();
+
+            try (Cursor<Map.Entry<byte[], byte[]>> cursor = connection.hScan(legacyProcessListKey,
+                    ScanOptions.scanOptions().count(batchSize).build())) {
+                while (cursor.hasNext()) {
+                    Map.Entry<byte[], byte[]> entry = cursor.next();
+                    entries.put(entry.getKey(), entry.getValue());
+
+                    if (entries.size() >= batchSize) {
+                        count += entries.size();
+                        copyJobStatus(connection, processListKey, entries);
+                        entries.clear();
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("关闭作业状态列表扫描游标失败：" + taskName, e);
+            }
+
+            if (!entries.isEmpty()) {
+                count += entries.size();
+                copyJobStatus(connection, processListKey, entries);
+            }
+
+            return count;
+        });
+
+        //新的key上此前不存在数据，构建完成标识也不存在，按迁移后的作业状态列表重新构建
+        if (startTimeIndexMaintained) {
+            rebuildStartTimeIndex(taskName, batchSize);
+        }
+        if (isPendingIndexEnabled()) {
+            rebuildPendingIndex(taskName, batchSize);
+        }
+        if (isWindowBitmapEnabled()) {
+            rebuildWindowBitmaps(taskName, batchSize);
+        }
+
+        byte[] legacyRollupKey = legacyKeyCodec.rollupKey(taskName);
+        byte[] rollupKey = keyCodec.rollupKey(taskName);
+        Map<byte[], byte[]> rollups = execute(CronJobMetricNames.REDIS_OP_MIGRATE_KEY_LAYOUT,
+                (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hGetAll(legacyRollupKey));
+
+        //汇总数为累加写入，与完成标识在同一个pipeline中写入，减少重复累加的可能
+        executePipelined(CronJobMetricNames.REDIS_OP_MIGRATE_KEY_LAYOUT, (RedisCallback<Object>) connection -> {
+            if (rollups != null) {
+                for (Map.Entry<byte[], byte[]> rollup : rollups.entrySet()) {
+                    connection.hIncrBy(rollupKey, rollup.getKey(), Long.parseLong(new String(rollup.getValue(), StandardCharsets.UTF_8)));
+                }
+            }
+            connection.set(migratedKey, JOB_STATUS_COMPLETED_BYTES);
+            return null;
+        });
+
+        log.info("任务[{}]原有布局下的作业数据迁移完成，作业数：{}，按天汇总数：{}", taskName, migratedCount, rollups == null ? 0 : rollups.size());
+        return migratedCount;
+    }
+
+    //写入一批作业状态：已完成的状态直接覆盖，未完成的状态只在不存在时写入，不覆盖新布局下已完成的状态
+    private void copyJobStatus(RedisConnection connection, byte[] processListKey, Map<byte[], byte[]> entries) {
+        connection.openPipeline();
+        try {
+            for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+                if (Arrays.equals(JOB_STATUS_COMPLETED_BYTES, entry.getValue())) {
+                    connection.hSet(processListKey, entry.getKey(), entry.getValue());
+                } else {
+                    connection.hSetNX(processListKey, entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            connection.closePipeline();
+        }
+    }
+
+    /**
+     * @param cronJobs 作业列表
+     * @return 获取作业列表分别是否与锁关联
+     */
+    public Map<CronJob, Boolean> getStatusOfJobLockHoldInfo(List<CronJob> cronJobs) {
+        if (CollectionUtils.isEmpty(cronJobs)) {
+            return Collections.emptyMap();
+        }
+
+        List<byte[]> cronJobLockHoldInfoList;
+        if (keyLayout == CronJobKeyLayout.CLUSTER) {
+            //集群布局下不同任务的锁落在不同的槽上，按任务逐个执行MGET
+            byte[][] lockHoldInfo = new byte[cronJobs.size()][];
+            Map<String, List<Integer>> positionsByTask = new LinkedHashMap<>();
+            for (int i = 0; i < cronJobs.size(); i++) {
+                positionsByTask.computeIfAbsent(cronJobs.get(i).getTaskName(), taskName -> new ArrayList<>()).add(i);
+            }
+            for (List<Integer> positions : positionsByTask.values()) {
+                byte[][] lockKeys = positions.stream().map(position -> getLockKeyName(cronJobs.get(position))).toArray(byte[][]::new);
+                List<byte[]> taskLockHoldInfoList = execute(CronJobMetricNames.REDIS_OP_GET_STATUS_OF_JOB_LOCK_HOLD_INFO,
+                        (RedisCallback<List<byte[]>>) connection -> connection.mGet(lockKeys));
+                if (CollectionUtils.size(taskLockHoldInfoList) != positions.size()) {
+                    throw new IllegalStateException("返回作业锁关联信息数量有误：期望" + positions.size() + "，返回：" + CollectionUtils.size(taskLockHoldInfoList));
+                }
+                for (int i = 0; i < positions.size(); i++) {
+                    lockHoldInfo[positions.get(i)] = taskLockHoldInfoList.get(i);
+                }
+            }
+            cronJobLockHoldInfoList = Arrays.asList(lockHoldInfo);
+        } else {
+            byte[][] lockKeys = new byte[cronJobs.size()][];
+            for (int i = 0; i < cronJobs.size(); i++) {
+                lockKeys[i] = getLockKeyName(cronJobs.get(i));
+            }
+            cronJobLockHoldInfoList = execute(CronJobMetricNames.REDIS_OP_GET_STATUS_OF_JOB_LOCK_HOLD_INFO,
+                    (RedisCallback<List<byte[]>>) connection -> connection.mGet(lockKeys));
+        }
+
+        if (CollectionUtils.isEmpty(cronJobLockHoldInfoList) || cronJobLockHoldInfoList.size() != cronJobs.size()) {
+            throw new IllegalStateException("返回作业锁关联信息数量有误：期望" + cronJobs.size() + "，返回：" + CollectionUtils.size(cronJobLockHoldInfoList));
+        }
+
+        Map<CronJob, Boolean> statusOfJobLockHoldInfoMap = Maps.newHashMapWithExpectedSize(cronJobLockHoldInfoList.size());
+        for (int i = 0; i < cronJobs.size(); i++) {
+            statusOfJobLockHoldInfoMap.put(cronJobs.get(i), cronJobLockHoldInfoList.get(i) != null);
+        }
+
+        return statusOfJobLockHoldInfoMap;
+    }
+
+    /**
+     * @param taskName   任务名
+     * @param startTimes 同一任务的作业开始时间列表
+     * @return 与锁关联的作业在startTimes中的下标
+     */
+    @Override
+    public BitSet getLockHeldJobs(String taskName, long[] startTimes) {
+        BitSet lockHeld = new BitSet(startTimes.length);
+        if (startTimes.length == 0) {
+            return lockHeld;
+        }
+
+        byte[][] lockKeys = new byte[startTimes.length][];
+        for (int i = 0; i < startTimes.length; i++) {
+            lockKeys[i] = keyCodec.lockKey(taskName, startTimes[i]);
+        }
+        //同一任务的锁在集群布局下也落在同一个槽上，一次MGET即可
+        List<byte[]> lockHoldInfoList = execute(CronJobMetricNames.REDIS_OP_GET_LOCK_HELD_JOBS,
+                (RedisCallback<List<byte[]>>) connection -> connection.mGet(lockKeys));
+        if (CollectionUtils.size(lockHoldInfoList) != startTimes.length) {
+            throw new IllegalStateException("返回作业锁关联信息数量有误：期望" + startTimes.length + "，返回：" + CollectionUtils.size(lockHoldInfoList));
+        }
+
+        for (int i = 0; i < startTimes.length; i++) {
+            if (lockHoldInfoList.get(i) != null) {
+                lockHeld.set(i);
+            }
+        }
+
+        return lockHeld;
+    }
+
+    /**
+     * 维护窗口位图时读取已创建位图，否则读取作业开始时刻后按窗口标记
+     *
+     * @param taskName       任务名
+     * @param firstStartTime 第一个窗口的开始时刻，需在窗口边界上
+     * @param intervalMillis 窗口间隔（毫秒）
+     * @param windowCount    窗口数
+     * @return 已创建的作业对应的窗口下标
+     */
+    @Override
+    public BitSet getCreatedWindows(String taskName, long firstStartTime, long intervalMillis, int windowCount) {
+        if (isWindowBitmapEnabled()) {
+            ensureBuilt(windowBitmapReadyTasks, taskName, name -> rebuildWindowBitmaps(name, indexRebuildBatchSize));
+            return getCreatedWindowsFromBitmap(taskName, firstStartTime, windowCount);
+        }
+
+        BitSet createdWindows = new BitSet(windowCount);
+        for (long startTime : getJobStartTimesOfTask(taskName, firstStartTime)) {
+            long offset = startTime - firstStartTime;
+            if (offset % intervalMillis == 0 && offset / intervalMillis < windowCount) {
+                createdWindows.set((int) (offset / intervalMillis));
+            }
+        }
+
+        return createdWindows;
+    }
+
+    /**
+     * FULL模式下读取任务的作业历史，INDEXED模式下只读取未完成作业列表中超出锁超时时间的作业，BITMAP模式下读取窗口位图中已创建未完成的窗口
+     * 后两种模式下，已完成却仍残留在未完成作业列表中、或未在窗口位图中记为完成的作业【如构建期间完成】予以修正，不再返回
+     *
+     * @param taskName 任务名
+     * @param fromTime 最早的作业开始时刻【包含】
+     * @return 可能已失败的作业开始时间
+     */
+    @Override
+    public long[] getFailedJobCandidates(String taskName, long fromTime) {
+        long[] startTimes;
+        if (isPendingIndexEnabled()) {
+            ensureBuilt(pendingIndexReadyTasks, taskName, name -> rebuildPendingIndex(name, indexRebuildBatchSize));
+            startTimes = getStalePendingJobStartTimes(taskName, fromTime);
+        } else if (isWindowBitmapEnabled()) {
+            ensureBuilt(windowBitmapReadyTasks, taskName, name -> rebuildWindowBitmaps(name, indexRebuildBatchSize));
+            startTimes = getPendingWindowStartTimes(taskName, fromTime);
+        } else {
+            return getJobStartTimesOfTask(taskName, fromTime);
+        }
+
+        BitSet completedJobs = startTimes.length > 0 ? getCompletedJobs(taskName, startTimes) : new BitSet();
+        if (completedJobs.isEmpty()) {
+            return startTimes;
+        }
+
+        List<Long> completedStartTimes = new ArrayList<>(completedJobs.cardinality());
+        long[] remainingStartTimes = new long[startTimes.length - completedJobs.cardinality()];
+        int position = 0;
+        for (int i = 0; i < startTimes.length; i++) {
+            if (completedJobs.get(i)) {
+                completedStartTimes.add(startTimes[i]);
+            } else {
+                remainingStartTimes[position++] = startTimes[i];
+            }
+        }
+        removePendingJobs(taskName, completedStartTimes);
+
+        return remainingStartTimes;
+    }
+
+    //开始时刻索引是否已构建完成：未确认时为已有的作业构建索引，构建完成标识已存在时直接返回；构建失败时本次视为未完成
+    private boolean isStartTimeIndexReady(String taskName) {
+        if (startTimeIndexReadyTasks.contains(taskName)) {
+            return true;
+        }
+
+        try {
+            rebuildStartTimeIndex(taskName, indexRebuildBatchSize);
+        } catch (RuntimeException e) {
+            log.warn("任务[" + taskName + "]的作业开始时刻索引构建失败，本次读取作业状态列表", e);
+            return false;
+        }
+        startTimeIndexReadyTasks.add(taskName);
+        return true;
+    }
+
+    //每个任务只构建一次，readyTasks中已有的任务不再检查
+    private void ensureBuilt(Set<String> readyTasks, String taskName, Consumer<String> builder) {
+        if (!readyTasks.contains(taskName)) {
+            builder.accept(taskName);
+            readyTasks.add(taskName);
+        }
+    }
+
+    //以当前应用为持有者执行锁相关脚本，脚本返回1视为成功
+    private boolean evalLockScript(String operation, RedisScript<Long> script, CronJob cronJob, boolean withExpiration) {
+        byte[] lockKey = getLockKeyName(cronJob);
+        byte[] holder = getLockHolder();
+
+        Long result = execute(operation, (RedisCallback<Long>) connection -> withExpiration ?
+                evalScript(connection, script, lockKey, holder, String.valueOf(cronJobLockExpirationTime).getBytes(StandardCharsets.UTF_8)) :
+                evalScript(connection, script, lockKey, holder));
+
+        return Long.valueOf(1L).equals(result);
+    }
+
+    private Long evalScript(RedisConnection connection, RedisScript<Long> script, byte[] key, byte[]... args) {
+        return evalScript(connection, script, new byte[][]{key}, args);
+    }
+
+    //优先使用EVALSHA，脚本缓存丢失（如redis重启）时回退为EVAL，后者会同时将脚本重新载入缓存
+    private Long evalScript(RedisConnection connection, RedisScript<Long> script, byte[][] keys, byte[]... args) {
+        byte[][] keysAndArgs = new byte[keys.length + args.length][];
+        System.arraycopy(keys, 0, keysAndArgs, 0, keys.length);
+        System.arraycopy(args, 0, keysAndArgs, keys.length, args.length);
+
+        try {
+            return connection.evalSha(script.getSha1(), ReturnType.INTEGER, keys.length, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScriptError(e)) {
+                throw e;
+            }
+
+            log.info("redis中不存在脚本缓存，回退为EVAL：{}", script.getSha1());
+            return connection.eval(script.getScriptAsString().getBytes(StandardCharsets.UTF_8), ReturnType.INTEGER, keys.length, keysAndArgs);
+        }
+    }
+
+    private boolean isNoScriptError(Throwable e) {
+        for (Throwable current = e; current != null; current = current.getCause()) {
+            if (current.getMessage() != null && current.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private CronJobWindowCalculator getWindowCalculator(String taskName) {
+        CronJobWindowCalculator calculator = windowCalculators.get(taskName);
+        if (calculator == null) {
+            CronTask cronTask = cronTaskRegistry.getByTaskName(taskName);
+            if (cronTask == null) {
+                return null;
+            }
+            calculator = windowCalculators.computeIfAbsent(taskName, name -> CronJobWindowCalculator.of(cronTask.getTaskConfig()));
+        }
+
+        return calculator;
+    }
+
+    //作业在窗口位图中的序号，任务未注册、早于0号窗口或不在窗口边界上时返回-1
+    private long windowOffset(String taskName, long startTime) {
+        CronJobWindowCalculator calculator = getWindowCalculator(taskName);
+        if (calculator == null) {
+            return -1L;
+        }
+
+        return windowOffset(calculator, windowOrigin(taskName, calculator), startTime);
+    }
+
+    private static long windowOffset(CronJobWindowCalculator calculator, long originStartTime, long startTime) {
+        long offset = startTime - originStartTime;
+        if (offset < 0 || offset % calculator.getIntervalMillis() != 0) {
+            return -1L;
+        }
+
+        return offset / calculator.getIntervalMillis();
+    }
+
+    //可计算序号的作业的窗口序号
+    private static long[] windowOffsets(CronJobWindowCalculator calculator, long originStartTime, long[] startTimes) {
+        return Arrays.stream(startTimes).map(startTime -> windowOffset(calculator, originStartTime, startTime))
+                .filter(offset -> offset >= 0).toArray();
+    }
+
+    //任务0号窗口的开始时刻：位图尚未构建时先构建，由构建时已有的作业确定；按全局起始时刻写入过的位图沿用window-bitmap-epoch
+    private long windowOrigin(String taskName, CronJobWindowCalculator calculator) {
+        Long originStartTime = windowOrigins.get(taskName);
+        if (originStartTime != null) {
+            return originStartTime;
+        }
+
+        ensureBuilt(windowBitmapReadyTasks, taskName, name -> rebuildWindowBitmaps(name, indexRebuildBatchSize));
+        originStartTime = windowOrigins.get(taskName);
+        return originStartTime != null ? originStartTime : resolveWindowOrigin(taskName, calculator.ceil(windowBitmapEpoch));
+    }
+
+    //读取任务0号窗口的开始时刻，尚未确定时以SETNX写入candidate，各应用以先写入者为准
+    private long resolveWindowOrigin(String taskName, long candidate) {
+        byte[] originKey = keyCodec.windowBitmapOriginKey(taskName);
+        byte[] origin = execute(CronJobMetricNames.REDIS_OP_GET_WINDOW_BITMAP_ORIGIN, (RedisCallback<byte[]>) connection -> {
+            connection.setNX(originKey, String.valueOf(candidate).getBytes(StandardCharsets.UTF_8));
+            return connection.get(originKey);
+        });
+
+        long originStartTime = Long.parseLong(new String(origin, StandardCharsets.UTF_8));
+        windowOrigins.put(taskName, originStartTime);
+        return originStartTime;
+    }
+
+    //在流水线外确定任务的0号窗口，流水线中计算窗口序号时不再访问redis
+    private void prepareWindowBitmaps(String taskName) {
+        CronJobWindowCalculator calculator = isWindowBitmapEnabled() ? getWindowCalculator(taskName) : null;
+        if (calculator != null) {
+            windowOrigin(taskName, calculator);
+        }
+    }
+
+    //脚本参数中的窗口序号，不维护窗口位图或无法计算序号时为空
+    private byte[] windowOffsetArg(CronJob cronJob) {
+        long offset = isWindowBitmapEnabled() ? windowOffset(cronJob.getTaskName(), cronJob.getStartTime()) : -1L;
+        return offset >= 0 ? String.valueOf(offset).getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private void setWindowBit(RedisConnection connection, byte[] key, CronJob cronJob) {
+        if (isWindowBitmapEnabled()) {
+            long offset = windowOffset(cronJob.getTaskName(), cronJob.getStartTime());
+            if (offset >= 0) {
+                connection.setBit(key, offset, true);
+            }
+        }
+    }
+
+    //将GETRANGE读到的位图【每字节高位在前】转换为从firstBit起count个窗口的BitSet
+    private static BitSet toWindows(byte[] bits, int firstBit, int count) {
+        if (bits == null || bits.length == 0) {
+            return new BitSet();
+        }
+
+        byte[] reversed = new byte[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            reversed[i] = (byte) (Integer.reverse(bits[i] & 0xFF) >>> 24);
+        }
+
+        return BitSet.valueOf(reversed).get(firstBit, firstBit + count);
+    }
+
+    private byte[] getLockKeyName(CronJob cronJob) {
+        return keyCodec.lockKey(cronJob.getTaskName(), cronJob.getStartTime());
+    }
+
+    private byte[] getLockHolder() {
+        return applicationStatus.getServletContainerSocketInfo().getBytes(StandardCharsets.UTF_8);
+    }
+
+    //判断状态列表中[from, from + count)区间内是否存在已完成的状态
+    private boolean isAnyJobCompleted(List<byte[]> statusList, int from, int count) {
+        if (statusList == null) {
+            return false;
+        }
+
+        for (int i = from; i < from + count && i < statusList.size(); i++) {
+            if (Arrays.equals(JOB_STATUS_COMPLETED_BYTES, statusList.get(i))) {
+                return true;
+            }
+        }
+
+        return false;
     }
 }
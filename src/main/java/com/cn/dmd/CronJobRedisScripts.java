@@ -0,0 +1,119 @@
+package com.cn.dmd;
+
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 定时作业相关的lua脚本，每个脚本在redis端一次往返内完成【读取-比较-写入】
+ */
+final class CronJobRedisScripts {
+    /**
+     * 获取锁：KEYS[1]=锁名，ARGV[1]=持有者，ARGV[2]=超时时间（秒）
+     * 锁不存在时设置之；锁已被当前持有者持有时同样视为获取成功
+     */
+    static final RedisScript<Long> ACQUIRE_LOCK = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then return 1 end " +
+                    "if redis.call('get', KEYS[1]) == ARGV[1] then return 1 end " +
+                    "return 0", Long.class);
+
+    /**
+     * 获取锁并签发防护令牌：KEYS[1]=锁名，KEYS[2]=令牌序号，KEYS[3]=作业令牌列表，ARGV[1]=持有者，ARGV[2]=超时时间（秒），ARGV[3]=作业状态字段
+     * 新获取锁时以INCR签发新的令牌；锁已被当前持有者持有时沿用已签发的令牌
+     * 返回值：0-锁被其他应用持有，其他-作业当前的防护令牌
+     */
+    static final RedisScript<Long> ACQUIRE_FENCED_LOCK = new DefaultRedisScript<>(
+            "local locked = redis.call('set', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) " +
+                    "if not locked and redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end " +
+                    "local token = redis.call('hget', KEYS[3], ARGV[3]) " +
+                    "if locked or not token then token = redis.call('incr', KEYS[2]) redis.call('hset', KEYS[3], ARGV[3], token) end " +
+                    "return tonumber(token)", Long.class);
+
+    /**
+     * 释放锁：KEYS[1]=锁名，ARGV[1]=持有者
+     * 仅当锁由当前持有者持有时才删除
+     */
+    static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end " +
+                    "return 0", Long.class);
+
+    /**
+     * 锁续时：KEYS[1]=锁名，ARGV[1]=持有者，ARGV[2]=超时时间（秒）
+     * 仅当锁由当前持有者持有时才续上超时时间
+     */
+    static final RedisScript<Long> RENEW_LOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('expire', KEYS[1], ARGV[2]) end " +
+                    "return 0", Long.class);
+
+    /**
+     * 获取或续期租约：KEYS[1]=租约名，ARGV[1]=持有者，ARGV[2]=超时时间（秒）
+     * 租约不存在时获取之；已由当前持有者持有时续上超时时间
+     */
+    static final RedisScript<Long> ACQUIRE_OR_RENEW_LEASE = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then return 1 end " +
+                    "if redis.call('get', KEYS[1]) == ARGV[1] then redis.call('expire', KEYS[1], ARGV[2]) return 1 end " +
+                    "return 0", Long.class);
+
+    /**
+     * 认领作业：KEYS[1]=作业状态列表，KEYS[2]=锁名，KEYS[3]=作业开始时刻索引，KEYS[4]=未完成作业列表，
+     * KEYS[5]=令牌序号，KEYS[6]=作业令牌列表，KEYS[7]=已创建作业窗口位图，KEYS[8]=已完成作业窗口位图，
+     * ARGV[1]=作业状态字段，ARGV[2]=未完成状态值，ARGV[3]=持有者，ARGV[4]=超时时间（秒），
+     * ARGV[5]=作业开始时刻（为空时不维护开始时刻索引），ARGV[6]=当前时刻（为空时不维护未完成作业列表），
+     * ARGV[7]=是否签发防护令牌（为空时不签发），ARGV[8]=作业的窗口序号（为空时不维护窗口位图），
+     * ARGV[9]=可选，迁移模式下旧格式的作业状态字段，已存在时不再创建新格式的字段
+     * 返回值：【结果，防护令牌】，结果为0-锁被其他应用持有，1-获取到执行权且作业未完成，2-作业已完成（新获取的锁随即释放）；
+     * 获取到执行权时，新获取锁则签发新的令牌，否则沿用已签发的令牌，不签发时为0
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLAIM_JOB = new DefaultRedisScript<>(
+            "if not (ARGV[9] and redis.call('hexists', KEYS[1], ARGV[9]) == 1) and redis.call('hsetnx', KEYS[1], ARGV[1], ARGV[2]) == 1 then " +
+                    "if ARGV[5] ~= '' then redis.call('zadd', KEYS[3], ARGV[5], ARGV[1]) end " +
+                    "if ARGV[6] ~= '' then redis.call('zadd', KEYS[4], ARGV[6], ARGV[1]) end " +
+                    "end " +
+                    "if ARGV[8] ~= '' then redis.call('setbit', KEYS[7], ARGV[8], 1) end " +
+                    "local locked = redis.call('set', KEYS[2], ARGV[3], 'NX', 'EX', ARGV[4]) " +
+                    "if not locked and redis.call('get', KEYS[2]) ~= ARGV[3] then return {0, 0} end " +
+                    "if redis.call('hget', KEYS[1], ARGV[1]) == 'true' or (ARGV[9] and redis.call('hget', KEYS[1], ARGV[9]) == 'true') then " +
+                    "if locked then redis.call('del', KEYS[2]) end " +
+                    "if ARGV[6] ~= '' then redis.call('zrem', KEYS[4], ARGV[1]) end " +
+                    "if ARGV[8] ~= '' then redis.call('setbit', KEYS[8], ARGV[8], 1) end " +
+                    "return {2, 0} end " +
+                    "local token = 0 " +
+                    "if ARGV[7] ~= '' then " +
+                    "token = redis.call('hget', KEYS[6], ARGV[1]) " +
+                    "if locked or not token then token = redis.call('incr', KEYS[5]) redis.call('hset', KEYS[6], ARGV[1], token) end " +
+                    "end " +
+                    "return {1, tonumber(token)}", List.class);
+
+    /**
+     * 以防护令牌完成作业：KEYS[1]=作业状态列表，KEYS[2]=作业令牌列表，KEYS[3]=未完成作业列表，KEYS[4]=锁名，KEYS[5]=已完成作业窗口位图，
+     * ARGV[1]=作业状态字段，ARGV[2]=防护令牌，ARGV[3]=已完成状态值，ARGV[4]=持有者（为空时不释放锁），
+     * ARGV[5]=作业的窗口序号（为空时不维护窗口位图），ARGV[6]=迁移模式下旧格式的作业状态字段（为空时不写入），
+     * ARGV[7...]=需从未完成作业列表移除的字段
+     * 仅当令牌仍是作业最新签发的令牌时写入已完成状态并移除令牌，作业被其他应用重新认领后，持有过期令牌的写入被拒绝
+     * 返回值：0-令牌已过期，1-写入成功
+     */
+    static final RedisScript<Long> COMPLETE_FENCED_JOB = new DefaultRedisScript<>(
+            "if redis.call('hget', KEYS[2], ARGV[1]) ~= ARGV[2] then return 0 end " +
+                    "redis.call('hset', KEYS[1], ARGV[1], ARGV[3]) " +
+                    "if ARGV[6] ~= '' then redis.call('hset', KEYS[1], ARGV[6], ARGV[3]) end " +
+                    "redis.call('hdel', KEYS[2], ARGV[1]) " +
+                    "if ARGV[5] ~= '' then redis.call('setbit', KEYS[5], ARGV[5], 1) end " +
+                    "for i = 7, #ARGV do redis.call('zrem', KEYS[3], ARGV[i]) end " +
+                    "if ARGV[4] ~= '' and redis.call('get', KEYS[4]) == ARGV[4] then redis.call('del', KEYS[4]) end " +
+                    "return 1", Long.class);
+
+    /**
+     * @return 所有需要在启动时预加载的脚本
+     */
+    static List<RedisScript<?>> all() {
+        return Collections.unmodifiableList(Arrays.asList(ACQUIRE_LOCK, ACQUIRE_FENCED_LOCK, RELEASE_LOCK, RENEW_LOCK,
+                ACQUIRE_OR_RENEW_LEASE, CLAIM_JOB, COMPLETE_FENCED_JOB));
+    }
+
+    private CronJobRedisScripts() {
+    }
+}
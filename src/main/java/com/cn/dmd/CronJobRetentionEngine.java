@@ -0,0 +1,92 @@
+package com.cn.dmd;
+
+import com.cn.dmd.constants.CronJobRetentionPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作业状态列表的保留与压缩
+ * 1. 将开始时刻早于保留时长的已完成作业移出作业状态列表，按策略按天汇总或直接丢弃；
+ * 2. 每轮每个任务最多处理有限批次，且同一任务同一时刻只由集群中一个应用处理，见{@link CronJobStore#compactCompletedJobs}
+ */
+@Component
+@Slf4j
+public class CronJobRetentionEngine {
+    @Autowired
+    private CronJobStore cronJobStore;
+    @Autowired
+    private CronTaskRegistry cronTaskRegistry;
+    //已完成作业的保留时长（小时），为0时不压缩
+    @Value("${cron.general.retention-horizon-in-hours:0}")
+    private long retentionHorizonInHours;
+    //超出保留时长的已完成作业的处理策略
+    @Value("${cron.general.retention-policy:ROLLUP}")
+    private CronJobRetentionPolicy retentionPolicy;
+    //每批处理的作业数
+    @Value("${cron.general.retention-batch-size:500}")
+    private int retentionBatchSize;
+    //每轮每个任务最多处理的批数
+    @Value("${cron.general.retention-max-batches-per-round:20}")
+    private int retentionMaxBatchesPerRound;
+    //两轮维护之间的间隔（秒）
+    @Value("${cron.general.retention-interval-in-seconds:300}")
+    private long retentionIntervalInSeconds;
+    private volatile ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+    /**
+     * 监听启动事件
+     */
+    @EventListener
+    private void onApplicationContextStart(ApplicationReadyEvent event) {
+        if (retentionHorizonInHours <= 0) {
+            return;
+        }
+
+        log.info("开始启动作业状态列表定时维护，保留时长：{}小时，策略：{}", retentionHorizonInHours, retentionPolicy);
+        scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1, new CronJobThreadFactory());
+        scheduledThreadPoolExecutor.scheduleWithFixedDelay(this::maintainAll, 0, retentionIntervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void onPreDestroy() {
+        if (scheduledThreadPoolExecutor != null) {
+            scheduledThreadPoolExecutor.shutdown();
+        }
+    }
+
+    private void maintainAll() {
+        for (String taskName : cronTaskRegistry.getAllTaskNames()) {
+            try {
+                maintain(taskName);
+            } catch (Exception e) {
+                log.warn("维护任务[" + taskName + "]的作业状态列表时发生错误", e);
+            }
+        }
+    }
+
+    private void maintain(String taskName) {
+        //启动回溯范围内的作业需保留，否则会被当作缺失作业重新执行
+        CronTaskConfig taskConfig = cronTaskRegistry.getByTaskName(taskName).getTaskConfig();
+        if (retentionHorizonInHours <= taskConfig.getLoadScanBacktraceTimeDuration()) {
+            log.warn("任务[{}]的回溯时长（{}小时）不小于保留时长（{}小时），跳过压缩", taskName,
+                    taskConfig.getLoadScanBacktraceTimeDuration(), retentionHorizonInHours);
+            return;
+        }
+
+        long beforeTime = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHorizonInHours);
+        int compactedCount = cronJobStore.compactCompletedJobs(taskName, beforeTime, retentionBatchSize,
+                retentionMaxBatchesPerRound, retentionPolicy);
+
+        if (compactedCount > 0) {
+            log.info("任务[{}]压缩已完成作业数量：{}", taskName, compactedCount);
+        }
+    }
+}
@@ -1,33 +1,40 @@
 package com.cn.dmd;
 
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.constants.CronJobScannerLeadership;
 import com.cn.dmd.domain.CronJob;
-import com.google.common.collect.Sets;
+import com.cn.dmd.metrics.CronJobMetrics;
+import com.cn.dmd.utils.CronJobWindowCalculator;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.MapUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
 import javax.annotation.PreDestroy;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * 作业扫描器
  * 1. 启动时，计算缺失的作业；
- * 2. 定时扫描集群中失败的作业
+ * 2. 定时扫描集群中失败的作业：候选作业由存储按其扫描方式给出，见{@link CronJobStore#getFailedJobCandidates}，过滤掉已完成及与锁关联的作业；
+ * 3. 开启扫描器选主时，只扫描当前应用拥有扫描权的任务，新获得扫描权时补做启动回溯扫描；
+ * 4. 启动回溯扫描按任务并行执行，并发数有上限，可选择在应用就绪后于后台执行；
+ * 5. 回溯扫描发现的缺失作业按任务的追赶策略提交，见{@link CronJobCatchUpController}
  *
  * @author morningking
  * @date 2017/7/12 14:26
@@ -36,21 +43,50 @@ import java.util.stream.Collectors;
 @Component
 @Slf4j
 public class CronJobScanner {
+    private static final long[] EMPTY_START_TIMES = new long[0];
+
     @Autowired
-    private CronJobRedisActions cronJobRedisActions;
+    private CronJobStore cronJobStore;
     @Autowired
     private CronJobScheduler cronJobScheduler;
     @Autowired
     private CronTaskRegistry cronTaskRegistry;
+    @Autowired
+    private CronJobScannerElector cronJobScannerElector;
+    @Autowired
+    private CronJobMetrics metrics;
+    @Autowired
+    private CronJobCatchUpController cronJobCatchUpController;
+    //扫描失败作业时回看的时长（小时），为0时扫描全部历史
+    @Value("${cron.general.failed-job-scan-horizon-in-hours:0}")
+    private long failedJobScanHorizonInHours;
+    //启动回溯扫描同时扫描的任务数，为1且不在后台扫描时在启动线程中逐个扫描
+    @Value("${cron.general.backtrace-scan-parallelism:4}")
+    private int backtraceScanParallelism;
+    //是否在应用就绪后于后台执行启动回溯扫描，开启时不阻塞启动
+    @Value("${cron.general.backtrace-scan-in-background:false}")
+    private boolean backtraceScanInBackground;
     private volatile ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+    //启动回溯扫描线程池，扫描结束后关闭
+    private volatile ExecutorService backtraceExecutorService;
+    //启动回溯扫描中尚未扫描完的任务数
+    private final AtomicInteger backtraceRemaining = new AtomicInteger();
 
     /**
      * 监听启动事件
      */
     @EventListener
     private void onApplicationContextStart(ApplicationReadyEvent event) {
-        log.info("开始扫描缺失执行的作业");
-        scanForMissingJobs();
+        scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(cronTaskRegistry.getAllTaskNames().size(),
+                new CronJobThreadFactory("scanner", true));
+
+        if (cronJobScannerElector.getLeadership() == CronJobScannerLeadership.NONE) {
+            log.info("开始扫描缺失执行的作业");
+            scanForMissingJobs();
+        } else {
+            //回溯扫描交由扫描线程池执行，避免阻塞心跳
+            cronJobScannerElector.start(taskName -> scheduledThreadPoolExecutor.execute(() -> scanForMissingJobsOnOwnershipGained(taskName)));
+        }
 
         log.info("开始启动定时扫描失败的作业");
         scanForUnCompletedJobs();
@@ -61,125 +97,166 @@ public class CronJobScanner {
         if (scheduledThreadPoolExecutor != null) {
             scheduledThreadPoolExecutor.shutdown();
         }
+        if (backtraceExecutorService != null) {
+            backtraceExecutorService.shutdownNow();
+        }
     }
 
     /**
      * 启动时，扫描对比那些缺失执行的任务
+     * 各任务的扫描相互独立，交由有界线程池并行执行；前台扫描时等待全部任务扫描结束，任一任务失败则在全部结束后抛出
      */
     private void scanForMissingJobs() {
-        for (String taskName : cronTaskRegistry.getAllTaskNames()) {
-            if (log.isDebugEnabled()) {
-                log.debug("开始扫描任务[{}]缺失的作业", taskName);
-            }
+        List<String> taskNames = cronTaskRegistry.getAllTaskNames().stream()
+                .filter(taskName -> cronTaskRegistry.getByTaskName(taskName).getTaskConfig().isNeedScanBacktrace())
+                .collect(Collectors.toList());
+        if (taskNames.isEmpty()) {
+            return;
+        }
 
-            CronTask cronTask = cronTaskRegistry.getByTaskName(taskName);
-            CronTaskConfig taskConfig = cronTask.getTaskConfig();
-            if (taskConfig.isNeedScanBacktrace()) {
-                scanForMissingJobs(taskName);
+        long startNanos = System.nanoTime();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        backtraceRemaining.set(taskNames.size());
+        metrics.gauge(CronJobMetricNames.BACKTRACE_REMAINING, "scanner", backtraceRemaining::get);
+
+        if (backtraceScanParallelism <= 1 && !backtraceScanInBackground) {
+            for (String taskName : taskNames) {
+                scanForMissingJobsOfTask(taskName, taskNames.size(), completed, failed, startNanos);
             }
+            onBacktraceScanFinished(taskNames.size(), failed.get(), startNanos);
+            return;
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("任务[{}]缺失的作业扫描结束", taskName);
+        int parallelism = Math.max(1, Math.min(backtraceScanParallelism, taskNames.size()));
+        backtraceExecutorService = Executors.newFixedThreadPool(parallelism, new CronJobThreadFactory("backtrace", true));
+        log.info("启动回溯扫描：{}个任务，并发数{}，{}", taskNames.size(), parallelism, backtraceScanInBackground ? "后台执行" : "前台执行");
+
+        CompletableFuture<?>[] futures = taskNames.stream().map(taskName -> CompletableFuture.runAsync(
+                () -> scanForMissingJobsOfTask(taskName, taskNames.size(), completed, failed, startNanos), backtraceExecutorService))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture<Void> allScanned = CompletableFuture.allOf(futures).whenComplete((result, e) -> {
+            backtraceExecutorService.shutdown();
+            onBacktraceScanFinished(taskNames.size(), failed.get(), startNanos);
+        });
+
+        if (!backtraceScanInBackground) {
+            try {
+                allScanned.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
             }
         }
     }
 
-    private void scanForMissingJobs(String taskName) {
-        CronTask cronTask = cronTaskRegistry.getByTaskName(taskName);
-        CronTaskConfig taskConfig = cronTask.getTaskConfig();
-
-        Set<Long> watchedTimes = Collections.emptySet();
-        switch (taskConfig.getCronScheduleTimeUnit()) {
-            case MINUTE:
-                watchedTimes = getAllTimesInMinute(taskName, taskConfig);
-                break;
-            case HOUR:
-                watchedTimes = getAllTimesInHour(taskName, taskConfig);
-                break;
+    private void scanForMissingJobsOfTask(String taskName, int total, AtomicInteger completed, AtomicInteger failed, long startNanos) {
+        if (log.isDebugEnabled()) {
+            log.debug("开始扫描任务[{}]缺失的作业", taskName);
         }
 
-        if (CollectionUtils.isNotEmpty(watchedTimes)) {
-            Set<CronJob> candicateCronJobs = getCandicateCronJobs(watchedTimes, taskConfig);
-            if (CollectionUtils.isNotEmpty(candicateCronJobs)) {
-                if (log.isInfoEnabled()) {
-                    log.info("发现任务[{}]缺失作业：{}", taskName, candicateCronJobs);
-                }
-
-                cronJobScheduler.scheduleAll(candicateCronJobs);
+        try {
+            scanForMissingJobs(taskName);
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            log.warn("扫描任务[" + taskName + "]缺失的作业时发生错误", e);
+            //前台扫描时由调用方在全部任务结束后抛出
+            if (!backtraceScanInBackground) {
+                throw e;
+            }
+        } finally {
+            backtraceRemaining.decrementAndGet();
+            int done = completed.incrementAndGet();
+            //约每完成十分之一的任务报告一次进度
+            if (done % Math.max(1, total / 10) == 0 && done < total) {
+                log.info("启动回溯扫描进度：{}/{}，已耗时{}ms", done, total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
             }
         }
-    }
 
-    private Set<Long> getAllTimesInMinute(String taskName, CronTaskConfig taskConfig) {
-        Assert.isTrue(taskConfig.getTaskStartRule() >= 0 && taskConfig.getTaskStartRule() <= 60, "当使用分钟为单元时，开始时间应该在0-60之间");
-        Assert.isTrue(taskConfig.getTaskControlTimeDuration() > 0, "定时任务间隔时间应该大于0");
-        Assert.isTrue(taskConfig.getLoadScanBacktraceTimeDuration() > 0, "回溯小时数应该大于0");
+        if (log.isDebugEnabled()) {
+            log.debug("任务[{}]缺失的作业扫描结束", taskName);
+        }
+    }
 
-        Set<Long> watchedTimes = Sets.newTreeSet();
+    private void onBacktraceScanFinished(int total, int failed, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        metrics.recordNanos(CronJobMetricNames.BACKTRACE_TOTAL_DURATION, "scanner", elapsedNanos);
+        log.info("启动回溯扫描结束：共{}个任务，失败{}个，总耗时{}ms", total, failed, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    }
 
-        LocalDateTime now = LocalDateTime.now();
-        now = now.truncatedTo(ChronoUnit.MINUTES);
+    private void scanForMissingJobsOnOwnershipGained(String taskName) {
+        CronTaskConfig taskConfig = cronTaskRegistry.getByTaskName(taskName).getTaskConfig();
+        if (!taskConfig.isNeedScanBacktrace()) {
+            return;
+        }
 
-        //这里判定业务定时任务肯定是在一个小时内固定分钟数开启的
-        int minuteInHour = now.getMinute();
-        int fromMinute = taskConfig.getTaskStartRule();
-        while (fromMinute <= minuteInHour) {
-            fromMinute += taskConfig.getTaskControlTimeDuration();
+        log.info("获得任务[{}]的扫描权，开始扫描缺失执行的作业", taskName);
+        try {
+            scanForMissingJobs(taskName);
+        } catch (Exception e) {
+            log.warn("扫描任务[" + taskName + "]缺失的作业时发生错误", e);
         }
-        now = now.minus(taskConfig.getTaskControlTimeDuration() - fromMinute + minuteInHour, ChronoUnit.MINUTES);
+    }
 
-        LocalDateTime fromTime = now.minus(taskConfig.getLoadScanBacktraceTimeDuration(), ChronoUnit.HOURS);
+    private void scanForMissingJobs(String taskName) {
+        if (!metrics.isEnabled()) {
+            doScanForMissingJobs(taskName);
+            return;
+        }
 
-        while (!now.isEqual(fromTime)) {
-            watchedTimes.add(Timestamp.valueOf(fromTime).getTime() - taskConfig.getDurationInMilliSeconds());
-            fromTime = fromTime.plus(taskConfig.getTaskControlTimeDuration(), ChronoUnit.MINUTES);
+        long startNanos = System.nanoTime();
+        try {
+            doScanForMissingJobs(taskName);
+        } finally {
+            metrics.recordNanos(CronJobMetricNames.BACKTRACE_DURATION, taskName, System.nanoTime() - startNanos);
         }
-        watchedTimes.add(Timestamp.valueOf(now).getTime() - taskConfig.getDurationInMilliSeconds());
+    }
 
-        Set<Long> recordStartTimeSet = cronJobRedisActions.getJobsOfTask(taskName);
-        watchedTimes.removeAll(recordStartTimeSet);
+    private void doScanForMissingJobs(String taskName) {
+        CronTask cronTask = cronTaskRegistry.getByTaskName(taskName);
+        CronTaskConfig taskConfig = cronTask.getTaskConfig();
 
-        return watchedTimes;
+        long[] missingStartTimes = getMissingJobStartTimes(taskName, taskConfig);
+        if (missingStartTimes.length > 0) {
+            List<CronJob> candicateCronJobs = getCandicateCronJobs(missingStartTimes, taskConfig);
+            if (CollectionUtils.isNotEmpty(candicateCronJobs)) {
+                if (log.isInfoEnabled()) {
+                    log.info("发现任务[{}]缺失作业：{}", taskName, candicateCronJobs);
+                }
+
+                cronJobCatchUpController.catchUp(taskConfig, candicateCronJobs);
+            }
+        }
     }
 
-    private Set<Long> getAllTimesInHour(String taskName, CronTaskConfig taskConfig) {
-        Assert.isTrue(taskConfig.getTaskStartRule() >= 0 && taskConfig.getTaskStartRule() <= 23, "当使用小时为单元时，开始时间应该在0-23之间");
+    //回溯范围内结束于各边界的作业中，尚未记录的作业开始时间列表
+    private long[] getMissingJobStartTimes(String taskName, CronTaskConfig taskConfig) {
         Assert.isTrue(taskConfig.getLoadScanBacktraceTimeDuration() > 0, "回溯小时数应该大于0");
 
-        Set<Long> watchedTimes = Sets.newTreeSet();
-
-        LocalDateTime now = LocalDateTime.now();
-        now = now.truncatedTo(ChronoUnit.HOURS);
-
-        int nowHour = now.getHour();
-        int fromHour = taskConfig.getTaskStartRule();
-        if (nowHour > fromHour) {
-            now = now.withHour(fromHour);
-        } else if (nowHour < fromHour) {
-            now = now.withHour(fromHour).minusDays(1);
+        CronJobWindowCalculator calculator = CronJobWindowCalculator.of(taskConfig);
+        long intervalMillis = calculator.getIntervalMillis();
+        long latestEndTime = calculator.floor(System.currentTimeMillis());
+        long[] endTimes = calculator.boundaries(latestEndTime - TimeUnit.HOURS.toMillis(taskConfig.getLoadScanBacktraceTimeDuration()), latestEndTime);
+        if (endTimes.length == 0) {
+            return EMPTY_START_TIMES;
         }
 
-        LocalDateTime fromTime = now.minus(taskConfig.getLoadScanBacktraceTimeDuration(), ChronoUnit.HOURS);
+        //边界等距，已记录的作业按窗口下标标记：下标i对应结束于endTimes[i]的作业
+        long firstStartTime = endTimes[0] - intervalMillis;
+        BitSet recordedWindows = cronJobStore.getCreatedWindows(taskName, firstStartTime, intervalMillis, endTimes.length);
 
-        while (!now.isEqual(fromTime)) {
-            watchedTimes.add(Timestamp.valueOf(fromTime).getTime() - taskConfig.getDurationInMilliSeconds());
-            fromTime = fromTime.plus(taskConfig.getTaskControlTimeDuration(), ChronoUnit.HOURS);
+        long[] missingStartTimes = new long[endTimes.length - recordedWindows.cardinality()];
+        int position = 0;
+        for (int i = recordedWindows.nextClearBit(0); i < endTimes.length; i = recordedWindows.nextClearBit(i + 1)) {
+            missingStartTimes[position++] = endTimes[i] - intervalMillis;
         }
-        watchedTimes.add(Timestamp.valueOf(fromTime).getTime() - taskConfig.getDurationInMilliSeconds());
 
-        Set<Long> recordStartTimeSet = cronJobRedisActions.getJobsOfTask(taskName);
-        watchedTimes.removeAll(recordStartTimeSet);
-
-        return watchedTimes;
+        return missingStartTimes;
     }
 
     /**
      * 定时扫描未完成的任务列表
      */
     private void scanForUnCompletedJobs() {
-        Set<String> taskNames = cronTaskRegistry.getAllTaskNames();
-        scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(taskNames.size());
-
         for (String taskName : cronTaskRegistry.getAllTaskNames()) {
             CronTask cronTask = cronTaskRegistry.getByTaskName(taskName);
             CronTaskConfig taskConfig = cronTask.getTaskConfig();
@@ -193,48 +270,79 @@ public class CronJobScanner {
     private void scanForUnCompletedJobs(String taskName) {
         CronTask cronTask = cronTaskRegistry.getByTaskName(taskName);
         CronTaskConfig taskConfig = cronTask.getTaskConfig();
+        //最近一次扫描发现的待执行作业数
+        AtomicInteger scanBacklog = new AtomicInteger();
+        metrics.gauge(CronJobMetricNames.SCAN_BACKLOG, taskName, scanBacklog::get);
 
         scheduledThreadPoolExecutor.scheduleWithFixedDelay(() -> {
+            if (!cronJobScannerElector.isOwner(taskName)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("当前应用不拥有任务[{}]的扫描权，跳过扫描", taskName);
+                }
+                return;
+            }
+
             if (log.isInfoEnabled()) {
                 log.info("开始扫描任务[{}]相关的作业", taskName);
             }
 
-            Set<Long> jobStartTimeSet = cronJobRedisActions.getJobsOfTask(taskName);
-            if (CollectionUtils.isNotEmpty(jobStartTimeSet)) {
-                Set<CronJob> candicateCronJobs = getCandicateCronJobs(jobStartTimeSet, taskConfig);
-                if (CollectionUtils.isNotEmpty(candicateCronJobs)) {
-                    if (log.isInfoEnabled()) {
-                        log.info("扫描到失败的作业并提交至任务池：{}", candicateCronJobs);
-                    }
+            long startNanos = metrics.isEnabled() ? System.nanoTime() : 0L;
+            long[] jobStartTimes = failedJobScanHorizonInHours > 0 ?
+                    cronJobStore.getFailedJobCandidates(taskName, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(failedJobScanHorizonInHours)) :
+                    cronJobStore.getFailedJobCandidates(taskName, Long.MIN_VALUE);
+
+            List<CronJob> candicateCronJobs = jobStartTimes.length > 0 ?
+                    getCandicateCronJobs(jobStartTimes, taskConfig) : Collections.emptyList();
+            scanBacklog.set(candicateCronJobs.size());
 
-                    cronJobScheduler.scheduleAll(candicateCronJobs);
+            if (metrics.isEnabled()) {
+                metrics.recordNanos(CronJobMetricNames.SCAN_DURATION, taskName, System.nanoTime() - startNanos);
+            }
+
+            if (CollectionUtils.isNotEmpty(candicateCronJobs)) {
+                if (log.isInfoEnabled()) {
+                    log.info("扫描到失败的作业并提交至任务池：{}", candicateCronJobs);
                 }
+
+                cronJobScheduler.claimAndScheduleAll(candicateCronJobs);
             }
         }, taskConfig.getScanFailedJobsIntervalInSeconds(), taskConfig.getScanFailedJobsIntervalInSeconds(), TimeUnit.SECONDS);
     }
 
     //获取那些符合条件，可以被安排执行的作业【条件：作业状态为未完成且未与锁关联】
-    private Set<CronJob> getCandicateCronJobs(Collection<Long> cronJobStartTimes, CronTaskConfig taskConfig) {
-        List<CronJob> cronJobs = cronJobStartTimes.stream().map(
-                startTime -> new CronJob(taskConfig.getName(), startTime, startTime + taskConfig.getDurationInMilliSeconds()))
-                .collect(Collectors.toList());
-        Map<CronJob, Boolean> cronJobStatusMap = cronJobRedisActions.getStatusOfJobs(cronJobs);
-
-        if (MapUtils.isNotEmpty(cronJobStatusMap)) {
-            //第一步：过滤出那些未完成的作业列表
-            List<CronJob> unCompletedJobs = cronJobStatusMap.entrySet().stream()
-                    .filter(entry -> !Boolean.TRUE.equals(entry.getValue())).map(Map.Entry::getKey).collect(Collectors.toList());
-
-            if (CollectionUtils.isNotEmpty(unCompletedJobs)) {
-                Map<CronJob, Boolean> cronJobLockHoldStatusMap = cronJobRedisActions.getStatusOfJobLockHoldInfo(unCompletedJobs);
-                if (MapUtils.isNotEmpty(cronJobLockHoldStatusMap)) {
-                    //第二步：过滤出那些未与锁关联的作业列表
-                    return cronJobLockHoldStatusMap.entrySet().stream().filter(entry -> !Boolean.TRUE.equals(entry.getValue()))
-                            .map(Map.Entry::getKey).collect(Collectors.toSet());
-                }
-            }
+    //过滤过程只处理开始时间数组及对应下标的位图，只为最终的候选作业构建作业对象
+    private List<CronJob> getCandicateCronJobs(long[] cronJobStartTimes, CronTaskConfig taskConfig) {
+        String taskName = taskConfig.getName();
+
+        //第一步：过滤出那些未完成的作业列表
+        BitSet completedJobs = cronJobStore.getCompletedJobs(taskName, cronJobStartTimes);
+        long[] unCompletedStartTimes = exclude(cronJobStartTimes, completedJobs);
+        if (unCompletedStartTimes.length == 0) {
+            return Collections.emptyList();
+        }
+
+        //第二步：过滤出那些未与锁关联的作业列表
+        long[] candicateStartTimes = exclude(unCompletedStartTimes, cronJobStore.getLockHeldJobs(taskName, unCompletedStartTimes));
+        List<CronJob> candicateCronJobs = new ArrayList<>(candicateStartTimes.length);
+        for (long startTime : candicateStartTimes) {
+            candicateCronJobs.add(new CronJob(taskName, startTime, startTime + taskConfig.getDurationInMilliSeconds()));
+        }
+
+        return candicateCronJobs;
+    }
+
+    //startTimes中下标不在excluded中的元素
+    private static long[] exclude(long[] startTimes, BitSet excluded) {
+        if (excluded.isEmpty()) {
+            return startTimes;
+        }
+
+        long[] remaining = new long[startTimes.length - excluded.cardinality()];
+        int position = 0;
+        for (int i = excluded.nextClearBit(0); i < startTimes.length; i = excluded.nextClearBit(i + 1)) {
+            remaining[position++] = startTimes[i];
         }
 
-        return Collections.emptySet();
+        return remaining;
     }
 }
@@ -0,0 +1,175 @@
+package com.cn.dmd;
+
+import com.cn.dmd.config.ApplicationStatus;
+import com.cn.dmd.constants.CronJobScannerLeadership;
+import com.cn.dmd.constants.CronTaskKeyConstants;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 扫描器选主，只使用redis原语，不依赖额外的协调者
+ * 1. LEASE：应用定时获取或续期同一个租约，持有者扫描全部任务，租约过期后由其他应用接管；
+ * 2. PARTITION：应用定时上报心跳，按存活应用列表以最高随机权重哈希为每个任务选出一个扫描者，
+ * 应用增减时只有少量任务迁移；
+ * 3. 心跳连续失败超过租约时长时，视为不再拥有任何任务
+ * <p>
+ * 应用新获得某个任务的扫描权时通知监听者，用于补做启动回溯扫描
+ */
+@Component
+@Slf4j
+public class CronJobScannerElector {
+    @Autowired
+    private CronJobStore cronJobStore;
+    @Autowired
+    private CronTaskRegistry cronTaskRegistry;
+    @Autowired
+    private ApplicationStatus applicationStatus;
+    //扫描器的分工方式
+    @Value("${cron.general.scanner-leadership:NONE}")
+    private CronJobScannerLeadership leadership;
+    //扫描租约时长（秒），超过该时长未续期的应用被其他应用接管
+    @Value("${cron.general.scanner-lease-seconds:30}")
+    private long leaseSeconds;
+    //心跳间隔（秒），应小于租约时长的一半
+    @Value("${cron.general.scanner-heartbeat-seconds:10}")
+    private long heartbeatSeconds;
+
+    //当前应用拥有扫描权的任务
+    private volatile Set<String> ownedTasks = Collections.emptySet();
+    //最近一次心跳成功的时刻
+    private volatile long lastHeartbeatTime;
+    private volatile Consumer<String> ownershipGainedListener;
+    private volatile ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+    /**
+     * 开始选主：同步完成首次心跳后，定时心跳
+     *
+     * @param listener 新获得某个任务的扫描权时的回调，在心跳线程中执行，不应阻塞
+     */
+    public void start(Consumer<String> listener) {
+        if (leadership == CronJobScannerLeadership.NONE) {
+            return;
+        }
+
+        if (heartbeatSeconds * 2 > leaseSeconds) {
+            log.warn("扫描器心跳间隔（{}秒）大于租约时长（{}秒）的一半，网络抖动时可能频繁切换扫描者", heartbeatSeconds, leaseSeconds);
+        }
+
+        log.info("开始扫描器选主，方式：{}，租约时长：{}秒", leadership, leaseSeconds);
+        ownershipGainedListener = listener;
+        heartbeat();
+
+        scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1, new CronJobThreadFactory());
+        scheduledThreadPoolExecutor.scheduleWithFixedDelay(this::heartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void onPreDestroy() {
+        if (scheduledThreadPoolExecutor == null) {
+            return;
+        }
+
+        scheduledThreadPoolExecutor.shutdown();
+        try {
+            cronJobStore.releaseScannerLeadership();
+        } catch (Exception e) {
+            log.info("放弃扫描权时发生错误，将等待租约自动过期", e);
+        }
+    }
+
+    /**
+     * @return 扫描器的分工方式
+     */
+    public CronJobScannerLeadership getLeadership() {
+        return leadership;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 当前应用是否应扫描该任务
+     */
+    public boolean isOwner(String taskName) {
+        if (leadership == CronJobScannerLeadership.NONE) {
+            return true;
+        }
+
+        //心跳失败超过租约时长，其他应用可能已接管
+        if (System.currentTimeMillis() - lastHeartbeatTime > TimeUnit.SECONDS.toMillis(leaseSeconds)) {
+            return false;
+        }
+
+        return ownedTasks.contains(taskName);
+    }
+
+    private void heartbeat() {
+        Set<String> currentOwnedTasks;
+        try {
+            if (leadership == CronJobScannerLeadership.LEASE) {
+                currentOwnedTasks = cronJobStore.acquireOrRenewScannerLease(leaseSeconds) ?
+                        cronTaskRegistry.getAllTaskNames() : Collections.emptySet();
+            } else {
+                currentOwnedTasks = partition(cronJobStore.heartbeatScannerNode(TimeUnit.SECONDS.toMillis(leaseSeconds)));
+            }
+            lastHeartbeatTime = System.currentTimeMillis();
+        } catch (Exception e) {
+            log.warn("扫描器心跳失败", e);
+            return;
+        }
+
+        Set<String> previousOwnedTasks = ownedTasks;
+        ownedTasks = currentOwnedTasks;
+
+        if (!previousOwnedTasks.equals(currentOwnedTasks)) {
+            log.info("当前应用拥有扫描权的任务变更为：{}", currentOwnedTasks);
+        }
+
+        Consumer<String> listener = ownershipGainedListener;
+        for (String taskName : currentOwnedTasks) {
+            if (!previousOwnedTasks.contains(taskName) && listener != null) {
+                try {
+                    listener.accept(taskName);
+                } catch (Exception e) {
+                    log.warn("通知任务[" + taskName + "]的扫描权变更时发生错误", e);
+                }
+            }
+        }
+    }
+
+    //最高随机权重哈希：每个任务分配给与之哈希值最大的应用
+    private Set<String> partition(List<String> liveNodes) {
+        String self = applicationStatus.getServletContainerSocketInfo();
+        Set<String> currentOwnedTasks = new HashSet<>();
+
+        for (String taskName : cronTaskRegistry.getAllTaskNames()) {
+            String owner = null;
+            int maxWeight = Integer.MIN_VALUE;
+
+            for (String node : liveNodes) {
+                int weight = Hashing.murmur3_32().hashString(node + CronTaskKeyConstants.SEPERATOR + taskName, StandardCharsets.UTF_8).asInt();
+                if (owner == null || weight > maxWeight || (weight == maxWeight && node.compareTo(owner) < 0)) {
+                    owner = node;
+                    maxWeight = weight;
+                }
+            }
+
+            if (self.equals(owner)) {
+                currentOwnedTasks.add(taskName);
+            }
+        }
+
+        return currentOwnedTasks;
+    }
+}
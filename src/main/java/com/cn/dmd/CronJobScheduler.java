@@ -3,6 +3,8 @@ package com.cn.dmd;
 import com.cn.dmd.domain.CronJob;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 定时作业调度器
@@ -25,4 +27,28 @@ public interface CronJobScheduler {
      * @param cronJobs 定时任务集合
      */
     void scheduleAll(Collection<CronJob> cronJobs);
+
+    /**
+     * 批量认领并提交定时任务，仅当前应用认领成功的任务会被放入作业池
+     *
+     * @param cronJobs 定时任务集合
+     */
+    void claimAndScheduleAll(Collection<CronJob> cronJobs);
+
+    /**
+     * 批量认领并提交定时任务，每个作业结束时回调【执行结束、认领失败、被去重或被作业池放弃】
+     * 配置了批量大小的任务，认领成功且首尾相接的作业成组调用一次{@link CronTask#invokeBatch}
+     *
+     * @param cronJobs   定时任务集合
+     * @param onFinished 作业结束时的回调
+     */
+    void claimAndScheduleAll(Collection<CronJob> cronJobs, Consumer<CronJob> onFinished);
+
+    /**
+     * 批量认领同一任务的作业，认领成功且首尾相接的作业合并为一个覆盖整段时间范围的作业执行一次，每个作业结束时回调
+     *
+     * @param cronJobs   同一任务、按开始时刻升序的定时任务
+     * @param onFinished 作业结束时的回调
+     */
+    void claimAndScheduleCoalesced(List<CronJob> cronJobs, Consumer<CronJob> onFinished);
 }
@@ -0,0 +1,150 @@
+package com.cn.dmd;
+
+import com.cn.dmd.constants.CronJobRetentionPolicy;
+import com.cn.dmd.domain.CronJob;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 作业协调存储：作业状态、作业锁及续时、缺失及失败作业查询、扫描器选主及已完成作业压缩
+ * 由{@code cron.general.store}选择实现：{@link CronJobRedisActions}用于集群部署，{@link EmbeddedCronJobStore}用于单实例部署；
+ * 索引、位图等查询加速结构由实现自行构建及维护
+ */
+public interface CronJobStore {
+    /**
+     * @param cronJob 作业
+     * @return 作业是否已完成
+     */
+    Boolean getStatusOfJob(CronJob cronJob);
+
+    /**
+     * @param taskName   任务名
+     * @param startTimes 同一任务的作业开始时间列表
+     * @return 已完成的作业在startTimes中的下标
+     */
+    BitSet getCompletedJobs(String taskName, long[] startTimes);
+
+    /**
+     * 如果作业不存在，以未完成状态创建之
+     *
+     * @param cronJob 作业信息
+     * @return 是否由本次调用创建
+     */
+    Boolean createJobIfNotPresent(CronJob cronJob);
+
+    /**
+     * 设置作业已完成；作业带有防护令牌时，只有令牌仍是作业最新签发的令牌才写入
+     *
+     * @param cronJob 作业信息
+     * @return 是否写入，令牌已过期【作业已被其他应用重新认领】时返回false
+     */
+    boolean markJobCompleted(CronJob cronJob);
+
+    /**
+     * 设置作业已完成并释放当前应用持有的锁；作业带有防护令牌且令牌已过期时两者均不执行
+     *
+     * @param cronJob 作业信息
+     * @return 是否写入，令牌已过期时返回false
+     */
+    boolean completeJobAndReleaseLock(CronJob cronJob);
+
+    /**
+     * 以当前应用为持有者非阻塞地获取作业锁，已由当前应用持有时视为成功；开启防护令牌时将令牌写入作业
+     *
+     * @param cronJob 作业
+     * @return 是否获取成功
+     */
+    boolean tryLock(CronJob cronJob);
+
+    /**
+     * 释放当前应用持有的作业锁
+     *
+     * @param cronJob 作业
+     */
+    void deleteLock(CronJob cronJob);
+
+    /**
+     * 为当前应用持有的锁续上超时时间
+     *
+     * @param cronJob 作业
+     * @return 是否续时成功
+     */
+    boolean inspireLock(CronJob cronJob);
+
+    /**
+     * 批量为当前应用持有的锁续上超时时间
+     *
+     * @param cronJobs 作业列表
+     * @return 与作业列表一一对应的续时结果
+     */
+    List<Boolean> inspireLocks(List<CronJob> cronJobs);
+
+    /**
+     * 批量认领作业：为每个作业记录作业开始、获取锁、读取作业状态；开启防护令牌时将令牌写入认领成功的作业
+     * 认领过程中抛出异常时，实现需释放本次已获取的锁，调用方不持有任何作业的执行权
+     *
+     * @param cronJobs 作业列表
+     * @return 当前应用成功获取执行权且尚未完成的作业列表，保持作业列表中的顺序
+     */
+    List<CronJob> claimJobs(List<CronJob> cronJobs);
+
+    /**
+     * @param taskName   任务名
+     * @param startTimes 同一任务的作业开始时间列表
+     * @return 与锁关联的作业在startTimes中的下标
+     */
+    BitSet getLockHeldJobs(String taskName, long[] startTimes);
+
+    /**
+     * @param taskName       任务名
+     * @param firstStartTime 第一个窗口的开始时刻，需在窗口边界上
+     * @param intervalMillis 窗口间隔（毫秒）
+     * @param windowCount    窗口数
+     * @return 已创建的作业对应的窗口下标，下标i对应开始于firstStartTime + i * intervalMillis的作业
+     */
+    BitSet getCreatedWindows(String taskName, long firstStartTime, long intervalMillis, int windowCount);
+
+    /**
+     * 可能已失败的作业，其中可能有已完成或仍与锁关联【正在执行】的作业，由调用方过滤
+     *
+     * @param taskName 任务名
+     * @param fromTime 最早的作业开始时刻【包含】，为Long.MIN_VALUE时读取全部历史
+     * @return 作业开始时间，不重复，顺序不确定
+     */
+    long[] getFailedJobCandidates(String taskName, long fromTime);
+
+    /**
+     * 获取或续期扫描租约
+     *
+     * @param leaseSeconds 租约时长（秒）
+     * @return 当前应用是否持有租约
+     */
+    boolean acquireOrRenewScannerLease(long leaseSeconds);
+
+    /**
+     * 上报扫描器心跳，并移除超过租约时长未上报心跳的应用
+     *
+     * @param leaseMillis 租约时长（毫秒）
+     * @return 存活的应用列表
+     */
+    List<String> heartbeatScannerNode(long leaseMillis);
+
+    /**
+     * 放弃扫描租约并从存活应用列表中移除
+     */
+    void releaseScannerLeadership();
+
+    /**
+     * 压缩开始时刻早于指定时刻的已完成作业，并按策略按天汇总完成数；未完成的作业保持不变
+     * 集群部署时同一任务同一时刻只由一个应用压缩，未获得维护权时直接返回0
+     *
+     * @param taskName   任务名
+     * @param beforeTime 作业开始时刻上限【不包含】
+     * @param batchSize  每批处理的数量
+     * @param maxBatches 本次最多处理的批数
+     * @param policy     处理策略
+     * @return 本次移除的作业数
+     */
+    int compactCompletedJobs(String taskName, long beforeTime, int batchSize, int maxBatches, CronJobRetentionPolicy policy);
+}
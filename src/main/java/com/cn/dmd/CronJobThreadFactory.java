@@ -1,5 +1,6 @@
 package com.cn.dmd;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -14,16 +15,75 @@ public class CronJobThreadFactory implements ThreadFactory {
     private static final AtomicInteger poolNumber = new AtomicInteger(1);
     private final ThreadGroup group;
     private final AtomicInteger threadNumber = new AtomicInteger(1);
+    //当前线程是否为调度线程【触发引擎、扫描器】，作业池已满时不能在其上执行作业
+    private static final ThreadLocal<Boolean> SCHEDULING_THREAD = new ThreadLocal<>();
     private final String namePrefix;
+    //创建的线程是否为调度线程
+    private final boolean schedulingThread;
 
     CronJobThreadFactory() {
+        this("pool");
+    }
+
+    CronJobThreadFactory(String poolName) {
+        this(poolName, false);
+    }
+
+    CronJobThreadFactory(String poolName, boolean schedulingThread) {
         SecurityManager s = System.getSecurityManager();
         group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-        namePrefix = "cmaster-cronjob-pool-" + poolNumber.getAndIncrement() + "-thread-";
+        namePrefix = "cmaster-cronjob-" + poolName + "-" + poolNumber.getAndIncrement() + "-thread-";
+        this.schedulingThread = schedulingThread;
+    }
+
+    /**
+     * 将线程逻辑包装为在调度线程中运行
+     *
+     * @param runnable 线程逻辑
+     * @return 先将当前线程标记为调度线程再执行线程逻辑
+     */
+    static Runnable asSchedulingThread(Runnable runnable) {
+        return () -> {
+            SCHEDULING_THREAD.set(Boolean.TRUE);
+            runnable.run();
+        };
+    }
+
+    /**
+     * @return 当前线程是否为调度线程
+     */
+    static boolean isSchedulingThread() {
+        return Boolean.TRUE.equals(SCHEDULING_THREAD.get());
+    }
+
+    /**
+     * 通过反射创建虚拟线程工厂，以便在低版本JDK上编译及运行
+     *
+     * @param poolName 作业池名称
+     * @return 虚拟线程工厂，当前运行时不支持虚拟线程时返回null
+     */
+    static ThreadFactory newVirtualThreadFactory(String poolName) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, "cmaster-cronjob-" + poolName + "-virtual-", 0L);
+
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 当前运行时是否支持虚拟线程
+     */
+    static boolean isVirtualThreadSupported() {
+        return newVirtualThreadFactory("probe") != null;
     }
 
     public Thread newThread(Runnable r) {
-        Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
+        Thread t = new Thread(group, schedulingThread ? asSchedulingThread(r) : r, namePrefix + threadNumber.getAndIncrement(), 0);
 
         if (t.isDaemon()) {
             t.setDaemon(false);
@@ -2,6 +2,8 @@ package com.cn.dmd;
 
 import com.cn.dmd.domain.CronJob;
 
+import java.util.List;
+
 /**
  * 定时任务，包含任务的静态层面【任务配置信息、任务逻辑】
  *
@@ -16,7 +18,20 @@ public interface CronTask {
     CronTaskConfig getTaskConfig();
 
     /**
-     * 具体业务逻辑
+     * 具体业务逻辑，开启防护令牌时可通过{@link CronJob#getFencingToken()}获取本次执行的令牌
      */
     void invoke(CronJob cron);
+
+    /**
+     * 批量执行同一任务首尾相接的多个作业，任务配置了{@link CronTaskConfig#getBatchSize() 批量大小}时由执行器调用，
+     * 便于多个作业共用连接、缓存等准备工作；各作业的完成状态仍逐个记录，抛出异常时整批作业均视为失败
+     * 默认逐个调用{@link #invoke}
+     *
+     * @param cronJobs 按开始时刻升序且首尾相接的作业，各自带有认领时签发的防护令牌
+     */
+    default void invokeBatch(List<CronJob> cronJobs) {
+        for (CronJob cronJob : cronJobs) {
+            invoke(cronJob);
+        }
+    }
 }
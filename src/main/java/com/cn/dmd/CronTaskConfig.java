@@ -1,5 +1,7 @@
 package com.cn.dmd;
 
+import com.cn.dmd.constants.CronJobCatchUpPolicy;
+import com.cn.dmd.constants.CronJobRejectionPolicy;
 import com.cn.dmd.constants.CronScheduleTimeUnit;
 import lombok.Data;
 
@@ -34,6 +36,24 @@ public class CronTaskConfig {
     private final boolean isTurnOn;
     //是否永远成功
     private final boolean isAlwaysSucceed;
+    //可选，cron表达式，开启内置触发引擎时按此表达式触发作业，作业时间范围为[触发时刻 - 时间跨度, 触发时刻)
+    private String cronExpression;
+    //可选，时区ID【如Asia/Shanghai】，用于对齐作业时间范围及解析cron表达式，为空时使用系统默认时区
+    private String timeZone;
+    //可选，任务独占作业池的并发数，为0时使用共享的默认作业池
+    private int bulkheadConcurrency;
+    //可选，任务独占作业池的队列长度，为0时不限制
+    private int bulkheadQueueCapacity;
+    //可选，任务独占作业池已满时的处理策略
+    private CronJobRejectionPolicy bulkheadRejectionPolicy = CronJobRejectionPolicy.DISCARD;
+    //可选，启动回溯扫描发现缺失作业后的追赶策略，为空时使用全局配置
+    private CronJobCatchUpPolicy catchUpPolicy;
+    //可选，ALL策略下每秒提交的作业数，为0时使用全局配置
+    private double catchUpRatePerSecond;
+    //可选，ALL策略下同时执行的作业数，为0时使用全局配置
+    private int catchUpConcurrency;
+    //可选，认领后批量执行的最大作业数，大于1时同一任务首尾相接的作业以一次invokeBatch调用执行，为0时逐个执行
+    private int batchSize;
 
     public CronTaskConfig(String name, boolean isNeedScanBacktrace, boolean isNeedErrorDetect, boolean isSingletonInstanceOnly,
                           CronScheduleTimeUnit cronScheduleTimeUnit, long taskControlTimeDuration, long loadScanBacktraceTimeDuration,
@@ -52,19 +72,6 @@ public class CronTaskConfig {
     }
 
     long getDurationInMilliSeconds() {
-        long duration = -1L;
-
-        switch (cronScheduleTimeUnit) {
-            case MINUTE:
-                duration = taskControlTimeDuration * 60 * 1000;
-                break;
-            case HOUR:
-                duration = taskControlTimeDuration * 3600 * 1000;
-                break;
-            default:
-                break;
-        }
-
-        return duration;
+        return cronScheduleTimeUnit.toMillis(taskControlTimeDuration);
     }
 }
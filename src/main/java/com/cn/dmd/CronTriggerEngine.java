@@ -0,0 +1,156 @@
+package com.cn.dmd;
+
+import com.cn.dmd.domain.CronJob;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内置的cron表达式触发引擎
+ * 1. 启动时将各任务的cron表达式解析一次，此后只根据解析结果推算下一次触发时刻；
+ * 2. 所有任务的下一次触发放入同一个延迟队列，由单个线程按触发时刻依次处理；
+ * 3. 作业时间范围由触发时刻计算【[触发时刻 - 时间跨度, 触发时刻)】，与线程实际被唤醒的时间无关，
+ * 下一次触发时刻也由本次触发时刻推算，因此延迟触发不会造成时间范围偏移或累积漂移
+ */
+@Component
+@Slf4j
+public class CronTriggerEngine {
+    @Autowired
+    private CronTaskRegistry cronTaskRegistry;
+    @Autowired
+    private CronJobScheduler cronJobScheduler;
+    //是否开启内置触发引擎
+    @Value("${cron.general.trigger-engine-enabled:false}")
+    private boolean triggerEngineEnabled;
+
+    private final DelayQueue<CronTrigger> triggerQueue = new DelayQueue<>();
+    private volatile Thread triggerThread;
+    private volatile boolean running;
+
+    /**
+     * 监听启动事件
+     */
+    @EventListener
+    private void onApplicationContextStart(ApplicationReadyEvent event) {
+        if (!triggerEngineEnabled) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (String taskName : cronTaskRegistry.getAllTaskNames()) {
+            CronTaskConfig taskConfig = cronTaskRegistry.getByTaskName(taskName).getTaskConfig();
+            if (StringUtils.isBlank(taskConfig.getCronExpression())) {
+                continue;
+            }
+
+            CronSequenceGenerator sequenceGenerator;
+            try {
+                sequenceGenerator = new CronSequenceGenerator(taskConfig.getCronExpression(), StringUtils.isBlank(taskConfig.getTimeZone()) ?
+                        TimeZone.getDefault() : TimeZone.getTimeZone(taskConfig.getTimeZone()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("任务[" + taskName + "]的cron表达式有误：" + taskConfig.getCronExpression(), e);
+            }
+
+            CronTrigger trigger = new CronTrigger(taskConfig, sequenceGenerator, sequenceGenerator.next(new Date(now)).getTime());
+            triggerQueue.add(trigger);
+            log.info("任务[{}]加入触发引擎，cron表达式：{}，首次触发时刻：{}", taskName, taskConfig.getCronExpression(), new Date(trigger.fireTime));
+        }
+
+        if (triggerQueue.isEmpty()) {
+            log.info("没有配置cron表达式的任务，不启动触发引擎");
+            return;
+        }
+
+        running = true;
+        triggerThread = new Thread(CronJobThreadFactory.asSchedulingThread(this::run), "cmaster-cronjob-trigger");
+        triggerThread.setDaemon(true);
+        triggerThread.start();
+    }
+
+    @PreDestroy
+    private void onPreDestroy() {
+        running = false;
+
+        if (triggerThread != null) {
+            triggerThread.interrupt();
+        }
+    }
+
+    /**
+     * @return 触发引擎中的任务数
+     */
+    public int getTriggerCount() {
+        return triggerQueue.size();
+    }
+
+    private void run() {
+        while (running) {
+            CronTrigger trigger;
+            try {
+                trigger = triggerQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            fire(trigger);
+
+            //由本次触发时刻推算下一次，延迟触发时错过的时刻依次补上
+            trigger.fireTime = trigger.sequenceGenerator.next(new Date(trigger.fireTime)).getTime();
+            triggerQueue.add(trigger);
+        }
+
+        log.info("触发引擎已停止");
+    }
+
+    private void fire(CronTrigger trigger) {
+        CronTaskConfig taskConfig = trigger.taskConfig;
+        CronJob cronJob = new CronJob(taskConfig.getName(), trigger.fireTime - taskConfig.getDurationInMilliSeconds(), trigger.fireTime);
+
+        long lagInMillis = System.currentTimeMillis() - trigger.fireTime;
+        if (log.isInfoEnabled()) {
+            log.info("触发作业：{}，触发延迟：{}ms", cronJob, lagInMillis);
+        }
+
+        try {
+            cronJobScheduler.schedule(cronJob);
+        } catch (Exception e) {
+            log.error("触发作业时发生错误，等待失败作业扫描补偿：" + cronJob, e);
+        }
+    }
+
+    //单个任务的触发信息，只由触发线程修改
+    private static final class CronTrigger implements Delayed {
+        private final CronTaskConfig taskConfig;
+        private final CronSequenceGenerator sequenceGenerator;
+        private volatile long fireTime;
+
+        private CronTrigger(CronTaskConfig taskConfig, CronSequenceGenerator sequenceGenerator, long fireTime) {
+            this.taskConfig = taskConfig;
+            this.sequenceGenerator = sequenceGenerator;
+            this.fireTime = fireTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(fireTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(fireTime, ((CronTrigger) other).fireTime);
+        }
+    }
+}
@@ -1,23 +1,40 @@
 package com.cn.dmd;
 
 import com.cn.dmd.config.ApplicationStatus;
+import com.cn.dmd.constants.CronJobExecutorMode;
+import com.cn.dmd.constants.CronJobMetricNames;
+import com.cn.dmd.constants.CronJobRejectionPolicy;
 import com.cn.dmd.domain.CronJob;
+import com.cn.dmd.metrics.CronJobMetrics;
 import com.cn.dmd.utils.LogUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.CompletableFuture;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
+ * 默认的作业调度器
+ * 作业按任务放入作业池执行：配置了独占作业池的任务使用各自的作业池，
+ * 其余任务共享默认作业池【时间敏感作业与单实例作业各一个】
+ * 认领后提交时，配置了批量大小的任务，首尾相接的作业成组执行一次
+ *
  * @author morningking
  * @date 2017/7/18 19:44
  * @contact 243717042@qq.com
@@ -26,27 +43,93 @@ import java.util.function.Function;
 @Slf4j
 @SuppressWarnings({"unused", "unchecked"})
 public class DefaultCronJobScheduler implements CronJobScheduler {
-    private final ExecutorService timeAwareJobExecutorService = Executors.newFixedThreadPool(10, new CronJobThreadFactory());
-    private final ExecutorService timeNotAwareJobExecutorService = Executors.newCachedThreadPool(new CronJobThreadFactory());
+    private static final String DEFAULT_BULKHEAD_NAME = "default";
+    private static final String SINGLETON_BULKHEAD_NAME = "singleton";
 
-    private final ConcurrentHashMap<CronJob, Boolean> timeAwareJobExecuteStatusMap = new ConcurrentHashMap<>();
+    //作业池中的时间敏感作业，按任务存放作业开始时刻
+    private final CronJobInFlightTable timeAwareJobInFlightTable = new CronJobInFlightTable();
     private final ConcurrentHashMap<String, CronJob> timeNotAwareJobExecuteMap = new ConcurrentHashMap<>();
 
     @Autowired
     private ApplicationStatus applicationStatus;
+    //认领后的合并、批量执行只有此执行器提供
     @Autowired
-    @Qualifier("cronJobExecutorNonAtomicWithTimeBound")
-    private CronJobExecutor timeAwareJobExecutor;
+    private CronJobExecutorNonAtomicWithTimeBound timeAwareJobExecutor;
     @Autowired
     @Qualifier("cronJobExecutorNonAtomicWithTimeNotBound")
     private CronJobExecutor notTimeAwareJobExecutor;
     @Autowired
+    private AsyncCronJobExecutor asyncTimeAwareJobExecutor;
+    @Autowired
     private CronTaskRegistry taskRegistry;
+    @Autowired
+    private CronJobStore cronJobStore;
+    @Autowired
+    private CronJobLockRenewer cronJobLockRenewer;
+    @Autowired
+    private CronJobMetrics metrics;
+    //默认作业池的并发数
+    @Value("${cron.general.default-bulkhead-concurrency:10}")
+    private int defaultBulkheadConcurrency;
+    //默认作业池的队列长度，为0时不限制
+    @Value("${cron.general.default-bulkhead-queue-capacity:0}")
+    private int defaultBulkheadQueueCapacity;
+    //默认作业池已满时的处理策略
+    @Value("${cron.general.default-bulkhead-rejection-policy:DISCARD}")
+    private CronJobRejectionPolicy defaultBulkheadRejectionPolicy;
+    //单实例作业默认作业池的并发数
+    @Value("${cron.general.singleton-bulkhead-concurrency:32}")
+    private int singletonBulkheadConcurrency;
+    //作业执行线程的类型
+    @Value("${cron.general.executor-mode:PLATFORM}")
+    private CronJobExecutorMode executorMode;
+    //虚拟线程模式下默认作业池及单实例作业池的并发数
+    @Value("${cron.general.virtual-bulkhead-concurrency:1000}")
+    private int virtualBulkheadConcurrency;
+    //时间敏感作业是否使用异步执行器
+    @Value("${cron.general.async-pipeline-enabled:false}")
+    private boolean asyncPipelineEnabled;
+    //是否使用虚拟线程，运行时不支持时为false
+    private boolean useVirtualThread;
+
+    private CronJobBulkhead defaultBulkhead;
+    private CronJobBulkhead singletonBulkhead;
+    //任务独占的作业池
+    private final ConcurrentHashMap<String, CronJobBulkhead> taskBulkheads = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        if (executorMode == CronJobExecutorMode.VIRTUAL) {
+            useVirtualThread = CronJobThreadFactory.isVirtualThreadSupported();
+            if (useVirtualThread) {
+                log.info("作业使用虚拟线程执行，默认作业池并发数：{}", virtualBulkheadConcurrency);
+            } else {
+                log.warn("当前运行时不支持虚拟线程，回退为平台线程：{}", System.getProperty("java.version"));
+            }
+        }
+
+        defaultBulkhead = newBulkhead(DEFAULT_BULKHEAD_NAME, useVirtualThread ? virtualBulkheadConcurrency : defaultBulkheadConcurrency,
+                defaultBulkheadQueueCapacity, defaultBulkheadRejectionPolicy);
+        singletonBulkhead = newBulkhead(SINGLETON_BULKHEAD_NAME, useVirtualThread ? virtualBulkheadConcurrency : singletonBulkheadConcurrency,
+                0, CronJobRejectionPolicy.DISCARD);
+    }
+
+    private CronJobBulkhead newBulkhead(String name, int concurrency, int queueCapacity, CronJobRejectionPolicy rejectionPolicy) {
+        CronJobBulkhead bulkhead = new CronJobBulkhead(name, concurrency, queueCapacity, rejectionPolicy,
+                useVirtualThread ? CronJobThreadFactory.newVirtualThreadFactory(name) : null);
+
+        metrics.gauge(CronJobMetricNames.BULKHEAD_QUEUE_DEPTH, name, bulkhead::getQueueDepth);
+        metrics.gauge(CronJobMetricNames.BULKHEAD_ACTIVE_THREADS, name, bulkhead::getActiveThreadCount);
+        metrics.gauge(CronJobMetricNames.BULKHEAD_REJECTED, name, bulkhead::getRejectedCount);
+
+        return bulkhead;
+    }
 
     @Override
     public void schedule(CronJob cronJob) {
         CronTask task = taskRegistry.getByTaskName(cronJob.getTaskName());
         CronTaskConfig taskConfig = task.getTaskConfig();
+        metrics.increment(CronJobMetricNames.JOB_SUBMITTED, cronJob.getTaskName());
 
         if (!taskConfig.isTurnOn()) {
             log.info("放弃执行作业：{}，配置项配置为不执行", cronJob);
@@ -69,21 +152,233 @@ public class DefaultCronJobScheduler implements CronJobScheduler {
         }
     }
 
+    @Override
+    public void claimAndScheduleAll(Collection<CronJob> cronJobs) {
+        claimAndScheduleAll(cronJobs, null);
+    }
+
+    @Override
+    public void claimAndScheduleAll(Collection<CronJob> cronJobs, Consumer<CronJob> onFinished) {
+        if (CollectionUtils.isEmpty(cronJobs)) {
+            return;
+        }
+
+        List<CronJobLease> claimedLeases = claimCandidateJobs(cronJobs, onFinished);
+        for (List<CronJobLease> batch : splitIntoBatches(claimedLeases)) {
+            CronJobLease lease = batch.get(0);
+            CronJob cronJob = lease.getCronJob();
+            CronTaskConfig taskConfig = taskRegistry.getByTaskName(cronJob.getTaskName()).getTaskConfig();
+
+            if (batch.size() > 1) {
+                submitWindows(batch, taskConfig, timeAwareJobExecutor::executeClaimedBatch, "批量", onFinished);
+                continue;
+            }
+
+            if (asyncPipelineEnabled) {
+                //异步执行器在放入作业池之前自行注册租约
+                cronJobLockRenewer.unregister(lease);
+                wrapJobExecuteAsync(cronJob, () -> asyncTimeAwareJobExecutor.executeClaimedJobAsync(cronJob, getBulkhead(taskConfig, false)),
+                        () -> releaseJob(cronJob, onFinished));
+                continue;
+            }
+
+            //被放弃的作业已持有锁，释放之以便尽快被其他应用或下一次扫描认领
+            getBulkhead(taskConfig, false).submit(recordQueueWait(cronJob, () -> wrapJobExecute(cronJob, job -> timeAwareJobExecutor.executeClaimedJob(lease),
+                    null, job -> releaseJob(cronJob, onFinished))), () -> {
+                cronJobLockRenewer.unregister(lease);
+                releaseJob(cronJob, onFinished);
+                cronJobStore.deleteLock(cronJob);
+            });
+        }
+    }
+
+    @Override
+    public void claimAndScheduleCoalesced(List<CronJob> cronJobs, Consumer<CronJob> onFinished) {
+        if (CollectionUtils.isEmpty(cronJobs)) {
+            return;
+        }
+
+        List<CronJobLease> claimedLeases = claimCandidateJobs(cronJobs, onFinished);
+        if (claimedLeases.isEmpty()) {
+            return;
+        }
+
+        //按首尾相接切分为若干段，中间被其他应用认领或已完成的作业将其隔开
+        CronTaskConfig taskConfig = taskRegistry.getByTaskName(claimedLeases.get(0).getCronJob().getTaskName()).getTaskConfig();
+        for (List<CronJobLease> windows : splitContiguous(claimedLeases, Integer.MAX_VALUE)) {
+            submitWindows(windows, taskConfig, timeAwareJobExecutor::executeClaimedWindows, "合并", onFinished);
+        }
+    }
+
+    //按任务切分为批量执行的作业组：配置了批量大小的任务，首尾相接的作业按批量大小成组，其余作业各自一组
+    private List<List<CronJobLease>> splitIntoBatches(List<CronJobLease> claimedLeases) {
+        List<List<CronJobLease>> batches = new ArrayList<>(claimedLeases.size());
+        Map<String, List<CronJobLease>> batchedLeasesOfTask = new LinkedHashMap<>();
+        for (CronJobLease lease : claimedLeases) {
+            String taskName = lease.getCronJob().getTaskName();
+            if (taskRegistry.getByTaskName(taskName).getTaskConfig().getBatchSize() > 1) {
+                batchedLeasesOfTask.computeIfAbsent(taskName, name -> new ArrayList<>()).add(lease);
+            } else {
+                batches.add(Collections.singletonList(lease));
+            }
+        }
+
+        for (List<CronJobLease> leases : batchedLeasesOfTask.values()) {
+            leases.sort(Comparator.comparingLong(lease -> lease.getCronJob().getStartTime()));
+            int batchSize = taskRegistry.getByTaskName(leases.get(0).getCronJob().getTaskName()).getTaskConfig().getBatchSize();
+            batches.addAll(splitContiguous(leases, batchSize));
+        }
+
+        return batches;
+    }
+
+    //将按开始时刻升序的作业切分为首尾相接、且不超过指定个数的若干段
+    private static List<List<CronJobLease>> splitContiguous(List<CronJobLease> sortedLeases, int maxSize) {
+        List<List<CronJobLease>> segments = new ArrayList<>();
+        int from = 0;
+        for (int i = 1; i <= sortedLeases.size(); i++) {
+            if (i == sortedLeases.size() || i - from >= maxSize
+                    || sortedLeases.get(i).getCronJob().getStartTime() != sortedLeases.get(i - 1).getCronJob().getEndTime()) {
+                segments.add(new ArrayList<>(sortedLeases.subList(from, i)));
+                from = i;
+            }
+        }
+
+        return segments;
+    }
+
+    //将一组首尾相接的已认领作业作为一个整体放入作业池，被放弃时逐个注销租约并释放
+    private void submitWindows(List<CronJobLease> windows, CronTaskConfig taskConfig, Function<List<CronJobLease>, Boolean> execution, String mode,
+                               Consumer<CronJob> onFinished) {
+        getBulkhead(taskConfig, false).submit(recordQueueWait(windows.get(0).getCronJob(), () -> wrapWindowsExecute(windows, execution, mode, onFinished)), () -> {
+            for (CronJobLease lease : windows) {
+                cronJobLockRenewer.unregister(lease);
+                releaseJob(lease.getCronJob(), onFinished);
+                cronJobStore.deleteLock(lease.getCronJob());
+            }
+        });
+    }
+
+    //先占住本地作业池位置再批量认领，认领成功的作业随即注册租约，避免在作业池中排队期间锁超时；未进入认领的作业随即回调结束
+    private List<CronJobLease> claimCandidateJobs(Collection<CronJob> cronJobs, Consumer<CronJob> onFinished) {
+        //先占住本地作业池位置，避免同一作业在本地被重复认领
+        List<CronJob> candidateJobs = new ArrayList<>(cronJobs.size());
+        for (CronJob cronJob : cronJobs) {
+            CronTaskConfig taskConfig = taskRegistry.getByTaskName(cronJob.getTaskName()).getTaskConfig();
+            metrics.increment(CronJobMetricNames.JOB_SUBMITTED, cronJob.getTaskName());
+
+            if (!taskConfig.isTurnOn()) {
+                log.info("放弃执行作业：{}，配置项配置为不执行", cronJob);
+                notifyFinished(cronJob, onFinished);
+            } else if (taskConfig.isSingletonInstanceOnly()) {
+                //单实例作业不区分时间范围，提交后即视为结束
+                handleTimeNotAwareJob(cronJob, taskConfig);
+                notifyFinished(cronJob, onFinished);
+            } else if (!timeAwareJobInFlightTable.add(cronJob)) {
+                metrics.increment(CronJobMetricNames.JOB_DEDUPLICATED, cronJob.getTaskName());
+                log.info("作业已在作业池中，放弃本次提交，作业信息：{}", cronJob);
+                notifyFinished(cronJob, onFinished);
+            } else {
+                candidateJobs.add(cronJob);
+            }
+        }
+
+        if (candidateJobs.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<CronJob> claimedJobs = Collections.emptyList();
+        try {
+            claimedJobs = cronJobStore.claimJobs(candidateJobs);
+        } catch (Exception e) {
+            log.error("批量认领作业失败，作业数量：" + candidateJobs.size(), e);
+        }
+
+        //认领结果按提交顺序返回，与候选作业逐个对齐即可区分认领成败
+        List<CronJobLease> claimedLeases = new ArrayList<>(claimedJobs.size());
+        int claimedIndex = 0;
+        for (CronJob cronJob : candidateJobs) {
+            if (claimedIndex < claimedJobs.size() && claimedJobs.get(claimedIndex).equals(cronJob)) {
+                claimedLeases.add(cronJobLockRenewer.register(claimedJobs.get(claimedIndex)));
+                claimedIndex++;
+                metrics.increment(CronJobMetricNames.LOCK_WON, cronJob.getTaskName());
+            } else {
+                metrics.increment(CronJobMetricNames.LOCK_LOST, cronJob.getTaskName());
+                releaseJob(cronJob, onFinished);
+            }
+        }
+        LogUtil.info(log, "批量认领作业完成，提交数量：{}，认领成功数量：{}", candidateJobs.size(), claimedJobs.size());
+
+        return claimedLeases;
+    }
+
+    //移除作业的本地占位并回调结束
+    private Object releaseJob(CronJob cronJob, Consumer<CronJob> onFinished) {
+        boolean removed = timeAwareJobInFlightTable.remove(cronJob);
+        notifyFinished(cronJob, onFinished);
+
+        return removed;
+    }
+
+    private void notifyFinished(CronJob cronJob, Consumer<CronJob> onFinished) {
+        if (onFinished == null) {
+            return;
+        }
+
+        try {
+            onFinished.accept(cronJob);
+        } catch (Exception e) {
+            log.warn("作业结束回调发生错误，作业信息：" + cronJob, e);
+        }
+    }
+
+    /**
+     * @return 所有作业池
+     */
+    public Collection<CronJobBulkhead> getBulkheads() {
+        List<CronJobBulkhead> bulkheads = new ArrayList<>(taskBulkheads.size() + 2);
+        bulkheads.add(defaultBulkhead);
+        bulkheads.add(singletonBulkhead);
+        bulkheads.addAll(taskBulkheads.values());
+
+        return bulkheads;
+    }
+
     @PreDestroy
     private void onDestroy() {
-        timeAwareJobExecutorService.shutdown();
+        getBulkheads().forEach(CronJobBulkhead::shutdown);
+    }
+
+    //任务配置了并发数时使用独占的作业池，否则使用默认作业池
+    private CronJobBulkhead getBulkhead(CronTaskConfig taskConfig, boolean isSingleton) {
+        if (taskConfig.getBulkheadConcurrency() <= 0) {
+            return isSingleton ? singletonBulkhead : defaultBulkhead;
+        }
+
+        return taskBulkheads.computeIfAbsent(taskConfig.getName(), taskName -> newBulkhead(taskName,
+                taskConfig.getBulkheadConcurrency(), taskConfig.getBulkheadQueueCapacity(), taskConfig.getBulkheadRejectionPolicy()));
     }
 
     //对于那些需要保证同一时刻只有一个作业的定时任务
     private void handleTimeAwareJob(CronJob cronJob, CronTaskConfig taskConfig) {
-        if (timeAwareJobExecuteStatusMap.containsKey(cronJob)) {
+        //提交前即占住本地作业池位置，避免同一作业在排队期间被重复提交
+        if (!timeAwareJobInFlightTable.add(cronJob)) {
+            metrics.increment(CronJobMetricNames.JOB_DEDUPLICATED, cronJob.getTaskName());
             log.info("作业已在作业池中，放弃本次提交，作业信息：{}", cronJob);
             return;
         }
 
-        timeAwareJobExecutorService.submit(() -> wrapJobExecute(cronJob, timeAwareJobExecutor,
-                job -> timeAwareJobExecuteStatusMap.put(cronJob, false),
-                job -> timeAwareJobExecuteStatusMap.remove(cronJob)));
+        if (asyncPipelineEnabled) {
+            wrapJobExecuteAsync(cronJob, () -> asyncTimeAwareJobExecutor.executeJobAsync(cronJob, getBulkhead(taskConfig, false)),
+                    () -> timeAwareJobInFlightTable.remove(cronJob));
+            return;
+        }
+
+        getBulkhead(taskConfig, false).submit(recordQueueWait(cronJob, () -> wrapJobExecute(cronJob, timeAwareJobExecutor,
+                null, job -> timeAwareJobInFlightTable.remove(cronJob))), () -> {
+            timeAwareJobInFlightTable.remove(cronJob);
+            log.warn("作业池已满，放弃作业，等待失败作业扫描补偿：{}", cronJob);
+        });
     }
 
     //对于那些不保证同一时刻只有一个作业的定时任务
@@ -92,15 +387,83 @@ public class DefaultCronJobScheduler implements CronJobScheduler {
         CronJob lastJob = timeNotAwareJobExecuteMap.putIfAbsent(taskName, cronJob);
 
         if (lastJob != null) {
+            metrics.increment(CronJobMetricNames.JOB_DEDUPLICATED, taskName);
             log.info("作业已在作业池中，放弃本次提交，本次作业信息：{}，池中作业信息：{}", cronJob, lastJob);
         } else {
-            CompletableFuture.runAsync(() -> wrapJobExecute(cronJob, notTimeAwareJobExecutor,
-                    null, job -> timeNotAwareJobExecuteMap.remove(job.getTaskName())), timeNotAwareJobExecutorService);
+            getBulkhead(taskConfig, true).submit(recordQueueWait(cronJob, () -> wrapJobExecute(cronJob, notTimeAwareJobExecutor,
+                    null, job -> timeNotAwareJobExecuteMap.remove(job.getTaskName()))), () -> timeNotAwareJobExecuteMap.remove(taskName));
             log.info("作业成功放入作业池中，本次作业信息：{}", cronJob);
         }
     }
 
+    //记录作业从提交到开始执行的排队时间，未开启指标时原样返回
+    private Runnable recordQueueWait(CronJob cronJob, Runnable task) {
+        if (!metrics.isEnabled()) {
+            return task;
+        }
+
+        long submitNanos = System.nanoTime();
+        return () -> {
+            metrics.recordNanos(CronJobMetricNames.QUEUE_WAIT, cronJob.getTaskName(), System.nanoTime() - submitNanos);
+            task.run();
+        };
+    }
+
+    //异步执行时间敏感作业，结束后移除本地占位
+    private void wrapJobExecuteAsync(CronJob cronJob, Supplier<CompletionStage<Boolean>> execution, Runnable release) {
+        CompletionStage<Boolean> stage;
+        try {
+            stage = execution.get();
+        } catch (Exception e) {
+            log.error("执行任务逻辑发生错误，任务具体信息：" + cronJob, e);
+            release.run();
+            return;
+        }
+
+        stage.whenComplete((processStatus, e) -> {
+            try {
+                if (e != null) {
+                    log.error("执行任务逻辑发生错误，任务具体信息：" + cronJob, e);
+                } else if (Boolean.TRUE.equals(processStatus)) {
+                    LogUtil.debug(log, "任务执行成功：{}", cronJob);
+                } else {
+                    LogUtil.warn(log, "在处理任务过程中，竞争资源失败 或者 任务已被其他应用处理：{}", cronJob);
+                }
+            } finally {
+                release.run();
+            }
+        });
+    }
+
+    //合并或批量执行首尾相接的已认领作业，结束后逐个移除本地占位
+    private void wrapWindowsExecute(List<CronJobLease> leases, Function<List<CronJobLease>, Boolean> execution, String mode,
+                                    Consumer<CronJob> onFinished) {
+        List<CronJob> cronJobs = new ArrayList<>(leases.size());
+        leases.forEach(lease -> cronJobs.add(lease.getCronJob()));
+        LogUtil.putCronJob(cronJobs.get(0));
+
+        try {
+            boolean processStatus = execution.apply(leases);
+
+            if (processStatus) {
+                LogUtil.debug(log, "{}执行作业成功：{}", mode, cronJobs);
+            } else {
+                LogUtil.warn(log, "{}执行的部分作业已被其他应用处理：{}", mode, cronJobs);
+            }
+        } catch (Exception e) {
+            log.error(mode + "执行任务逻辑发生错误，任务具体信息：" + cronJobs, e);
+        } finally {
+            for (CronJob cronJob : cronJobs) {
+                releaseJob(cronJob, onFinished);
+            }
+
+            LogUtil.removeCronJob();
+        }
+    }
+
     private void wrapJobExecute(CronJob cronJob, CronJobExecutor executor, Function<CronJob, Object> beforeFn, Function<CronJob, Object> afterFn) {
+        LogUtil.putCronJob(cronJob);
+
         try {
             if (beforeFn != null) {
                 beforeFn.apply(cronJob);
@@ -119,6 +482,8 @@ public class DefaultCronJobScheduler implements CronJobScheduler {
             if (afterFn != null) {
                 afterFn.apply(cronJob);
             }
+
+            LogUtil.removeCronJob();
         }
     }
 }
@@ -0,0 +1,229 @@
+package com.cn.dmd;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * {@link EmbeddedCronJobStore}的追加日志，以内存映射的方式按段写入，进程崩溃时已写入的记录不丢失
+ * 记录格式：【类型(1) | 任务名长度(2) | 任务名 | 作业开始时刻(8) | 值(8) | CRC32(4)】
+ * 段尾未写入的部分为0，回放时遇到类型为0、长度不合法或校验失败的记录即视为日志结束
+ */
+@Slf4j
+class EmbeddedCronJobLog implements Closeable {
+    //作业创建，值为创建时刻
+    static final byte JOB_CREATED = 1;
+    //作业完成
+    static final byte JOB_COMPLETED = 2;
+    //作业被压缩移除，值为1时计入按天汇总的完成数
+    static final byte JOB_REMOVED = 3;
+    //按天汇总的完成数，作业开始时刻字段为日期【yyyyMMdd】，值为完成数，只出现在重写后的日志中
+    static final byte ROLLUP = 4;
+
+    private static final int MAX_TASK_NAME_LENGTH = 4096;
+    private static final int FIXED_RECORD_LENGTH = 1 + 2 + 8 + 8 + 4;
+
+    private final Path file;
+    private final int segmentSize;
+    private final boolean forceOnWrite;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(FIXED_RECORD_LENGTH + MAX_TASK_NAME_LENGTH);
+    private final CRC32 crc32 = new CRC32();
+    private FileChannel channel;
+    //当前写入的段及其在文件中的起始位置
+    private MappedByteBuffer segment;
+    private long segmentStart;
+
+    interface RecordHandler {
+        void handle(byte type, String taskName, long startTime, long value);
+    }
+
+    /**
+     * @param file         日志文件
+     * @param segmentSize  每次映射的段大小（字节）
+     * @param forceOnWrite 是否每次写入后刷盘，关闭时依赖操作系统回写，只能保证进程崩溃时不丢失
+     */
+    EmbeddedCronJobLog(Path file, int segmentSize, boolean forceOnWrite) {
+        this.file = file;
+        this.segmentSize = segmentSize;
+        this.forceOnWrite = forceOnWrite;
+    }
+
+    /**
+     * 打开日志并回放其中的记录，之后的写入从最后一条有效记录之后开始
+     *
+     * @param handler 记录处理器
+     * @return 回放的记录数
+     */
+    long open(RecordHandler handler) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long recordCount = 0;
+        long validEnd = 0;
+        long fileSize = channel.size();
+        if (fileSize > 0) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int position;
+            while ((position = readRecord(buffer, handler)) > 0) {
+                validEnd = position;
+                recordCount++;
+            }
+
+            if (validEnd < fileSize && hasNonZeroByte(buffer, (int) validEnd)) {
+                log.warn("作业日志[{}]在位置{}之后存在无法识别的内容，已忽略", file, validEnd);
+            }
+        }
+
+        mapSegment(validEnd);
+        return recordCount;
+    }
+
+    /**
+     * 追加一条记录
+     */
+    void append(byte type, String taskName, long startTime, long value) {
+        ByteBuffer record = encode(type, taskName, startTime, value);
+        if (segment.remaining() < record.remaining()) {
+            mapSegment(segmentStart + segment.position());
+        }
+
+        segment.put(record);
+        if (forceOnWrite) {
+            segment.force();
+        }
+    }
+
+    /**
+     * 以快照重写日志：快照写入临时文件后替换原日志，之后的写入追加在快照之后；失败时原日志保持可用
+     *
+     * @param snapshotWriter 以追加记录的方式写出当前全部状态
+     */
+    void rewrite(Consumer<RecordHandler> snapshotWriter) throws IOException {
+        Path rewriteFile = file.resolveSibling(file.getFileName() + ".rewrite");
+
+        try (FileChannel rewriteChannel = FileChannel.open(rewriteFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+            snapshotWriter.accept((type, taskName, startTime, value) -> {
+                ByteBuffer record = encode(type, taskName, startTime, value);
+                if (writeBuffer.remaining() < record.remaining()) {
+                    writeFully(rewriteChannel, writeBuffer);
+                }
+                writeBuffer.put(record);
+            });
+            writeFully(rewriteChannel, writeBuffer);
+            rewriteChannel.force(true);
+        }
+
+        //替换失败时继续使用原日志
+        close();
+        try {
+            Files.move(rewriteFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            open((type, taskName, startTime, value) -> {
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void mapSegment(long position) {
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentSize);
+            segmentStart = position;
+        } catch (IOException e) {
+            throw new IllegalStateException("映射作业日志失败：" + file + "@" + position, e);
+        }
+    }
+
+    private ByteBuffer encode(byte type, String taskName, long startTime, long value) {
+        byte[] taskNameBytes = taskName.getBytes(StandardCharsets.UTF_8);
+        if (taskNameBytes.length > MAX_TASK_NAME_LENGTH) {
+            throw new IllegalArgumentException("任务名过长：" + taskName);
+        }
+
+        recordBuffer.clear();
+        recordBuffer.put(type).putShort((short) taskNameBytes.length).put(taskNameBytes).putLong(startTime).putLong(value);
+
+        crc32.reset();
+        crc32.update(recordBuffer.array(), 0, recordBuffer.position());
+        recordBuffer.putInt((int) crc32.getValue());
+        recordBuffer.flip();
+
+        return recordBuffer;
+    }
+
+    //读取一条记录并交给处理器，返回记录结束的位置，无有效记录时返回-1
+    private int readRecord(ByteBuffer buffer, RecordHandler handler) {
+        int start = buffer.position();
+        if (buffer.remaining() < FIXED_RECORD_LENGTH) {
+            return -1;
+        }
+
+        byte type = buffer.get(start);
+        int taskNameLength = buffer.getShort(start + 1) & 0xFFFF;
+        if (type < JOB_CREATED || type > ROLLUP || taskNameLength > MAX_TASK_NAME_LENGTH
+                || buffer.remaining() < FIXED_RECORD_LENGTH + taskNameLength) {
+            return -1;
+        }
+
+        byte[] body = new byte[FIXED_RECORD_LENGTH - 4 + taskNameLength];
+        buffer.get(body);
+        crc32.reset();
+        crc32.update(body, 0, body.length);
+        if ((int) crc32.getValue() != buffer.getInt()) {
+            return -1;
+        }
+
+        ByteBuffer bodyBuffer = ByteBuffer.wrap(body, 3 + taskNameLength, 16);
+        handler.handle(type, new String(body, 3, taskNameLength, StandardCharsets.UTF_8), bodyBuffer.getLong(), bodyBuffer.getLong());
+
+        return buffer.position();
+    }
+
+    private static boolean hasNonZeroByte(ByteBuffer buffer, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("写入作业日志快照失败", e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,500 @@
+package com.cn.dmd;
+
+import com.cn.dmd.config.ApplicationStatus;
+import com.cn.dmd.constants.CronJobRetentionPolicy;
+import com.cn.dmd.domain.CronJob;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 进程内的作业协调存储，用于开发、测试及单实例部署，省去每次加锁的网络往返
+ * 1. 作业状态、未完成作业列表、按天汇总的完成数保存在内存中，变更写入内存映射的追加日志，启动时回放；
+ * 2. 锁、扫描租约及扫描器心跳只保存在内存中，进程重启后自然失效，与redis中的锁超时效果一致；
+ * 3. 回放后日志记录数远多于存活数据时，以快照重写日志
+ * <p>
+ * 只在单个进程内协调，多个应用共享同一日志文件时无法互斥，集群部署应使用{@link CronJobRedisActions}
+ */
+@Component
+@ConditionalOnProperty(name = "cron.general.store", havingValue = "EMBEDDED")
+@Slf4j
+public class EmbeddedCronJobStore implements CronJobStore {
+    //按天汇总时使用的日期格式
+    private static final String ROLLUP_DAY_PATTERN = "yyyyMMdd";
+    private static final String SCANNER_LEADER_LOCK = "scanner-leader";
+    //日志记录数超过存活记录数的倍数时重写日志
+    private static final int REWRITE_RATIO = 2;
+    //日志记录数低于该值时不重写
+    private static final int REWRITE_MIN_RECORDS = 1024;
+
+    //锁持有的时间
+    @Value("${cron.general.lock-time}")
+    private int cronJobLockExpirationTime;
+    //日志文件路径
+    @Value("${cron.general.embedded-store-file:cronjob-store/cronjob.log}")
+    private String storeFile;
+    //日志每次映射的段大小（MB）
+    @Value("${cron.general.embedded-store-segment-size-in-mb:16}")
+    private int segmentSizeInMb;
+    //是否每次写入后刷盘
+    @Value("${cron.general.embedded-store-force-on-write:false}")
+    private boolean forceOnWrite;
+    //是否为每次认领签发防护令牌
+    @Value("${cron.general.fencing-enabled:false}")
+    private boolean fencingEnabled;
+    @Autowired
+    private ApplicationStatus applicationStatus;
+
+    //任务名 -> 作业开始时刻 -> 作业状态
+    private final Map<String, TreeMap<Long, JobState>> jobs = new HashMap<>();
+    //任务名 -> 未完成作业的开始时刻 -> 创建时刻
+    private final Map<String, Map<Long, Long>> pendingJobs = new HashMap<>();
+    //任务名 -> 日期 -> 完成数
+    private final Map<String, TreeMap<String, Long>> rollups = new HashMap<>();
+    //任务名 -> 作业开始时刻 -> 锁
+    private final Map<String, Map<Long, Lease>> jobLocks = new HashMap<>();
+    //扫描租约、维护权等具名锁
+    private final Map<String, Lease> namedLocks = new HashMap<>();
+    //扫描器应用 -> 最近一次心跳时刻
+    private final Map<String, Long> scannerNodes = new HashMap<>();
+    //防护令牌序号，不持久化；启动时以当前时刻（微秒）为起点，保证重启后签发的令牌大于重启前签发的令牌
+    private long fencingSequence = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private EmbeddedCronJobLog appendLog;
+
+    @PostConstruct
+    private void init() throws IOException {
+        appendLog = new EmbeddedCronJobLog(Paths.get(storeFile), segmentSizeInMb * 1024 * 1024, forceOnWrite);
+
+        long recordCount = appendLog.open(this::replay);
+        long liveRecordCount = countLiveRecords();
+        log.info("进程内作业存储启动完成，日志：{}，回放记录数：{}，存活记录数：{}", storeFile, recordCount, liveRecordCount);
+
+        if (recordCount > REWRITE_MIN_RECORDS && recordCount > liveRecordCount * REWRITE_RATIO) {
+            try {
+                appendLog.rewrite(this::writeSnapshot);
+                log.info("作业日志重写完成：{}", storeFile);
+            } catch (IOException e) {
+                log.warn("作业日志重写失败，继续使用原日志：" + storeFile, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    private synchronized void onDestroy() throws IOException {
+        appendLog.close();
+    }
+
+    @Override
+    public synchronized Boolean getStatusOfJob(CronJob cronJob) {
+        return isCompleted(cronJob);
+    }
+
+    @Override
+    public synchronized Boolean createJobIfNotPresent(CronJob cronJob) {
+        return createJob(cronJob);
+    }
+
+    @Override
+    public synchronized boolean markJobCompleted(CronJob cronJob) {
+        //令牌与作业锁一同保存，锁被其他应用重新获取后令牌随之更新
+        if (fencingEnabled && cronJob.getFencingToken() > 0) {
+            Lease lease = getJobLocks(cronJob.getTaskName()).get(cronJob.getStartTime());
+            if (lease == null || lease.fencingToken != cronJob.getFencingToken()) {
+                return false;
+            }
+        }
+
+        createJob(cronJob);
+
+        JobState jobState = getJobs(cronJob.getTaskName()).get(cronJob.getStartTime());
+        if (!jobState.completed) {
+            jobState.completed = true;
+            getPendingJobs(cronJob.getTaskName()).remove(cronJob.getStartTime());
+            appendLog.append(EmbeddedCronJobLog.JOB_COMPLETED, cronJob.getTaskName(), cronJob.getStartTime(), 0L);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean completeJobAndReleaseLock(CronJob cronJob) {
+        if (!markJobCompleted(cronJob)) {
+            return false;
+        }
+
+        releaseJobLock(cronJob);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean tryLock(CronJob cronJob) {
+        Map<Long, Lease> locks = getJobLocks(cronJob.getTaskName());
+        if (!acquire(locks, cronJob.getStartTime(), TimeUnit.SECONDS.toMillis(cronJobLockExpirationTime))) {
+            return false;
+        }
+
+        issueFencingToken(cronJob, locks.get(cronJob.getStartTime()));
+        return true;
+    }
+
+    @Override
+    public synchronized void deleteLock(CronJob cronJob) {
+        if (!releaseJobLock(cronJob)) {
+            log.warn("尝试删除job关联的锁时不符合条件，锁不存在或不是当前应用创建的锁：{}", cronJob);
+        }
+    }
+
+    @Override
+    public synchronized boolean inspireLock(CronJob cronJob) {
+        boolean result = renew(getJobLocks(cronJob.getTaskName()).get(cronJob.getStartTime()), TimeUnit.SECONDS.toMillis(cronJobLockExpirationTime));
+        log.info("设置锁时间结果：{}->{}", cronJob, result);
+
+        return result;
+    }
+
+    @Override
+    public synchronized List<Boolean> inspireLocks(List<CronJob> cronJobs) {
+        if (CollectionUtils.isEmpty(cronJobs)) {
+            return Collections.emptyList();
+        }
+
+        long expirationMillis = TimeUnit.SECONDS.toMillis(cronJobLockExpirationTime);
+        List<Boolean> results = new ArrayList<>(cronJobs.size());
+        for (CronJob cronJob : cronJobs) {
+            results.add(renew(getJobLocks(cronJob.getTaskName()).get(cronJob.getStartTime()), expirationMillis));
+        }
+
+        return results;
+    }
+
+    @Override
+    public synchronized List<CronJob> claimJobs(List<CronJob> cronJobs) {
+        if (CollectionUtils.isEmpty(cronJobs)) {
+            return Collections.emptyList();
+        }
+
+        long expirationMillis = TimeUnit.SECONDS.toMillis(cronJobLockExpirationTime);
+        List<CronJob> claimedJobs = new ArrayList<>(cronJobs.size());
+        for (CronJob cronJob : cronJobs) {
+            createJob(cronJob);
+
+            Map<Long, Lease> locks = getJobLocks(cronJob.getTaskName());
+            boolean isNewlyLocked = !isLive(locks.get(cronJob.getStartTime()));
+            if (!acquire(locks, cronJob.getStartTime(), expirationMillis)) {
+                continue;
+            }
+
+            if (isCompleted(cronJob)) {
+                if (isNewlyLocked) {
+                    locks.remove(cronJob.getStartTime());
+                }
+                continue;
+            }
+
+            issueFencingToken(cronJob, locks.get(cronJob.getStartTime()));
+            claimedJobs.add(cronJob);
+        }
+
+        return claimedJobs;
+    }
+
+    @Override
+    public synchronized BitSet getCompletedJobs(String taskName, long[] startTimes) {
+        TreeMap<Long, JobState> taskJobs = getJobs(taskName);
+        BitSet completed = new BitSet(startTimes.length);
+        for (int i = 0; i < startTimes.length; i++) {
+            JobState jobState = taskJobs.get(startTimes[i]);
+            if (jobState != null && jobState.completed) {
+                completed.set(i);
+            }
+        }
+
+        return completed;
+    }
+
+    @Override
+    public synchronized BitSet getLockHeldJobs(String taskName, long[] startTimes) {
+        Map<Long, Lease> taskLocks = getJobLocks(taskName);
+        BitSet lockHeld = new BitSet(startTimes.length);
+        for (int i = 0; i < startTimes.length; i++) {
+            if (isLive(taskLocks.get(startTimes[i]))) {
+                lockHeld.set(i);
+            }
+        }
+
+        return lockHeld;
+    }
+
+    /**
+     * 作业按开始时刻有序保存，只读取所需区间
+     */
+    @Override
+    public synchronized BitSet getCreatedWindows(String taskName, long firstStartTime, long intervalMillis, int windowCount) {
+        BitSet createdWindows = new BitSet(windowCount);
+        for (long startTime : getJobs(taskName).subMap(firstStartTime, true, firstStartTime + windowCount * intervalMillis, false).keySet()) {
+            if ((startTime - firstStartTime) % intervalMillis == 0) {
+                createdWindows.set((int) ((startTime - firstStartTime) / intervalMillis));
+            }
+        }
+
+        return createdWindows;
+    }
+
+    /**
+     * 未完成作业列表随作业状态一同维护，只读取其中创建时间早于锁超时时间的作业
+     */
+    @Override
+    public synchronized long[] getFailedJobCandidates(String taskName, long fromTime) {
+        long createdBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(cronJobLockExpirationTime);
+
+        return getPendingJobs(taskName).entrySet().stream().filter(entry -> entry.getKey() >= fromTime && entry.getValue() <= createdBefore)
+                .mapToLong(Map.Entry::getKey).toArray();
+    }
+
+    @Override
+    public synchronized boolean acquireOrRenewScannerLease(long leaseSeconds) {
+        long leaseMillis = TimeUnit.SECONDS.toMillis(leaseSeconds);
+        Lease lease = namedLocks.get(SCANNER_LEADER_LOCK);
+
+        return renew(lease, leaseMillis) || acquire(namedLocks, SCANNER_LEADER_LOCK, leaseMillis);
+    }
+
+    @Override
+    public synchronized List<String> heartbeatScannerNode(long leaseMillis) {
+        long now = System.currentTimeMillis();
+        scannerNodes.put(getLockHolder(), now);
+        scannerNodes.values().removeIf(heartbeatTime -> heartbeatTime <= now - leaseMillis);
+
+        //与redis中按心跳时刻排序的结果保持一致
+        return scannerNodes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void releaseScannerLeadership() {
+        release(namedLocks, SCANNER_LEADER_LOCK);
+        scannerNodes.remove(getLockHolder());
+    }
+
+    @Override
+    public synchronized int compactCompletedJobs(String taskName, long beforeTime, int batchSize, int maxBatches, CronJobRetentionPolicy policy) {
+        long maxCount = (long) batchSize * maxBatches;
+        boolean isRollUp = policy == CronJobRetentionPolicy.ROLLUP;
+        int compactedCount = 0;
+
+        Iterator<Map.Entry<Long, JobState>> iterator = getJobs(taskName).headMap(beforeTime, false).entrySet().iterator();
+        while (iterator.hasNext() && compactedCount < maxCount) {
+            Map.Entry<Long, JobState> entry = iterator.next();
+            if (!entry.getValue().completed) {
+                continue;
+            }
+
+            iterator.remove();
+            if (isRollUp) {
+                rollUp(taskName, DateFormatUtils.format(entry.getKey(), ROLLUP_DAY_PATTERN), 1L);
+            }
+            appendLog.append(EmbeddedCronJobLog.JOB_REMOVED, taskName, entry.getKey(), isRollUp ? 1L : 0L);
+            compactedCount++;
+        }
+
+        return compactedCount;
+    }
+
+    /**
+     * @param taskName 任务名
+     * @return 被压缩的已完成作业按天汇总的完成数【日期 -> 完成数】
+     */
+    public synchronized Map<String, Long> getCompletedJobRollup(String taskName) {
+        TreeMap<String, Long> rollup = rollups.get(taskName);
+        return rollup == null ? Collections.emptyMap() : new TreeMap<>(rollup);
+    }
+
+    private boolean createJob(CronJob cronJob) {
+        TreeMap<Long, JobState> taskJobs = getJobs(cronJob.getTaskName());
+        if (taskJobs.containsKey(cronJob.getStartTime())) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        taskJobs.put(cronJob.getStartTime(), new JobState(now));
+        getPendingJobs(cronJob.getTaskName()).put(cronJob.getStartTime(), now);
+        appendLog.append(EmbeddedCronJobLog.JOB_CREATED, cronJob.getTaskName(), cronJob.getStartTime(), now);
+
+        return true;
+    }
+
+    private boolean isCompleted(CronJob cronJob) {
+        TreeMap<Long, JobState> taskJobs = jobs.get(cronJob.getTaskName());
+        JobState jobState = taskJobs == null ? null : taskJobs.get(cronJob.getStartTime());
+
+        return jobState != null && jobState.completed;
+    }
+
+    //新获取的锁签发新的令牌，已持有的锁沿用已签发的令牌
+    private void issueFencingToken(CronJob cronJob, Lease lease) {
+        if (!fencingEnabled) {
+            return;
+        }
+
+        if (lease.fencingToken == 0) {
+            lease.fencingToken = ++fencingSequence;
+        }
+        cronJob.setFencingToken(lease.fencingToken);
+    }
+
+    private boolean releaseJobLock(CronJob cronJob) {
+        return release(getJobLocks(cronJob.getTaskName()), cronJob.getStartTime());
+    }
+
+    //锁不存在、已超时或已由当前应用持有时获取成功，已持有时不延长超时时间
+    private <K> boolean acquire(Map<K, Lease> locks, K key, long expirationMillis) {
+        long now = System.currentTimeMillis();
+        Lease lease = locks.get(key);
+        if (lease != null && lease.expireAt > now) {
+            return lease.holder.equals(getLockHolder());
+        }
+
+        locks.put(key, new Lease(getLockHolder(), now + expirationMillis));
+        return true;
+    }
+
+    private boolean renew(Lease lease, long expirationMillis) {
+        long now = System.currentTimeMillis();
+        if (lease == null || lease.expireAt <= now || !lease.holder.equals(getLockHolder())) {
+            return false;
+        }
+
+        lease.expireAt = now + expirationMillis;
+        return true;
+    }
+
+    private <K> boolean release(Map<K, Lease> locks, K key) {
+        Lease lease = locks.get(key);
+        if (!isLive(lease)) {
+            locks.remove(key);
+            return false;
+        }
+        if (!lease.holder.equals(getLockHolder())) {
+            return false;
+        }
+
+        locks.remove(key);
+        return true;
+    }
+
+    private static boolean isLive(Lease lease) {
+        return lease != null && lease.expireAt > System.currentTimeMillis();
+    }
+
+    private TreeMap<Long, JobState> getJobs(String taskName) {
+        return jobs.computeIfAbsent(taskName, name -> new TreeMap<>());
+    }
+
+    private Map<Long, Long> getPendingJobs(String taskName) {
+        return pendingJobs.computeIfAbsent(taskName, name -> new HashMap<>());
+    }
+
+    private Map<Long, Lease> getJobLocks(String taskName) {
+        return jobLocks.computeIfAbsent(taskName, name -> new HashMap<>());
+    }
+
+    private void rollUp(String taskName, String day, long count) {
+        rollups.computeIfAbsent(taskName, name -> new TreeMap<>()).merge(day, count, Long::sum);
+    }
+
+    private String getLockHolder() {
+        return applicationStatus.getServletContainerSocketInfo();
+    }
+
+    //回放日志记录
+    private void replay(byte type, String taskName, long startTime, long value) {
+        switch (type) {
+            case EmbeddedCronJobLog.JOB_CREATED:
+                getJobs(taskName).put(startTime, new JobState(value));
+                getPendingJobs(taskName).put(startTime, value);
+                break;
+            case EmbeddedCronJobLog.JOB_COMPLETED:
+                getJobs(taskName).computeIfAbsent(startTime, time -> new JobState(0L)).completed = true;
+                getPendingJobs(taskName).remove(startTime);
+                break;
+            case EmbeddedCronJobLog.JOB_REMOVED:
+                getJobs(taskName).remove(startTime);
+                getPendingJobs(taskName).remove(startTime);
+                if (value == 1L) {
+                    rollUp(taskName, DateFormatUtils.format(startTime, ROLLUP_DAY_PATTERN), 1L);
+                }
+                break;
+            case EmbeddedCronJobLog.ROLLUP:
+                rollUp(taskName, String.valueOf(startTime), value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    //重写日志时写出的记录数：每个作业一条创建记录，已完成的作业另加一条完成记录，每天的汇总一条记录
+    private long countLiveRecords() {
+        long count = 0;
+        for (TreeMap<Long, JobState> taskJobs : jobs.values()) {
+            for (JobState jobState : taskJobs.values()) {
+                count += jobState.completed ? 2 : 1;
+            }
+        }
+        for (TreeMap<String, Long> rollup : rollups.values()) {
+            count += rollup.size();
+        }
+
+        return count;
+    }
+
+    private void writeSnapshot(EmbeddedCronJobLog.RecordHandler writer) {
+        jobs.forEach((taskName, taskJobs) -> taskJobs.forEach((startTime, jobState) -> {
+            writer.handle(EmbeddedCronJobLog.JOB_CREATED, taskName, startTime, jobState.createTime);
+            if (jobState.completed) {
+                writer.handle(EmbeddedCronJobLog.JOB_COMPLETED, taskName, startTime, 0L);
+            }
+        }));
+        rollups.forEach((taskName, rollup) -> rollup.forEach((day, count) ->
+                writer.handle(EmbeddedCronJobLog.ROLLUP, taskName, Long.parseLong(day), count)));
+    }
+
+    private static class JobState {
+        private final long createTime;
+        private boolean completed;
+
+        private JobState(long createTime) {
+            this.createTime = createTime;
+        }
+    }
+
+    private static class Lease {
+        private final String holder;
+        private long expireAt;
+        //作业锁的防护令牌，0表示尚未签发
+        private long fencingToken;
+
+        private Lease(String holder, long expireAt) {
+            this.holder = holder;
+            this.expireAt = expireAt;
+        }
+    }
+}
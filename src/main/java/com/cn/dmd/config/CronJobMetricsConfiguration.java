@@ -0,0 +1,24 @@
+package com.cn.dmd.config;
+
+import com.cn.dmd.metrics.CronJobMetrics;
+import com.cn.dmd.metrics.InMemoryCronJobMetrics;
+import com.cn.dmd.metrics.NoopCronJobMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 定时作业指标注册表，应用提供了{@link CronJobMetrics}时使用应用的实现
+ */
+@Configuration
+@Slf4j
+public class CronJobMetricsConfiguration {
+    @Bean
+    @ConditionalOnMissingBean(CronJobMetrics.class)
+    public CronJobMetrics cronJobMetrics(@Value("${cron.general.metrics-enabled:false}") boolean metricsEnabled) {
+        log.info("定时作业指标：{}", metricsEnabled ? "开启" : "关闭");
+        return metricsEnabled ? new InMemoryCronJobMetrics() : new NoopCronJobMetrics();
+    }
+}
@@ -0,0 +1,13 @@
+package com.cn.dmd.constants;
+
+/**
+ * 启动回溯扫描发现缺失作业后的追赶策略
+ */
+public enum CronJobCatchUpPolicy {
+    //按开始时刻从早到晚执行全部缺失的作业，可限制速率及并发数
+    ALL,
+    //将连续的缺失作业合并为一个覆盖整段时间范围的作业执行一次，完成后逐个记录各作业完成
+    COALESCE,
+    //只执行最近的一个缺失作业，其余作业记为完成而不执行
+    LATEST,;
+}
@@ -0,0 +1,11 @@
+package com.cn.dmd.constants;
+
+/**
+ * 作业执行线程的类型
+ */
+public enum CronJobExecutorMode {
+    //平台线程，作业池的并发数即线程数
+    PLATFORM,
+    //虚拟线程，每个作业一个虚拟线程，作业池的并发数由信号量限制；运行时不支持时回退为平台线程
+    VIRTUAL,;
+}
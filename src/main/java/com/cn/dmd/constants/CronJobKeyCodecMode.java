@@ -0,0 +1,13 @@
+package com.cn.dmd.constants;
+
+/**
+ * 作业状态字段及作业锁名的编码方式
+ */
+public enum CronJobKeyCodecMode {
+    //原有文本格式：yyyy-MM-dd HH:mm:SS
+    LEGACY,
+    //迁移模式：读取兼容两种格式，写入紧凑格式
+    MIGRATE,
+    //紧凑的二进制格式
+    COMPACT,;
+}
@@ -0,0 +1,11 @@
+package com.cn.dmd.constants;
+
+/**
+ * 任务相关key的布局
+ */
+public enum CronJobKeyLayout {
+    //原有布局：前缀_任务名，同一任务的key分散在redis集群的不同槽上
+    LEGACY,
+    //集群布局：前缀_{任务名}，以任务名为hash tag，同一任务的key落在同一个槽上，可用于多key命令及脚本
+    CLUSTER,;
+}
@@ -0,0 +1,11 @@
+package com.cn.dmd.constants;
+
+/**
+ * 作业锁的实现方式
+ */
+public enum CronJobLockMode {
+    //lua脚本实现，获取、释放、续时均为一次往返且原子
+    SCRIPT,
+    //原有实现：SET NX 后再 GET 判断持有者，释放时先 GET 再 DEL
+    LEGACY,;
+}
@@ -0,0 +1,182 @@
+package com.cn.dmd.constants;
+
+/**
+ * 定时作业指标名称，计数器及计时器的标签为任务名，除非另有说明
+ */
+public interface CronJobMetricNames {
+    //提交至调度器的作业数
+    String JOB_SUBMITTED = "cronjob.submitted";
+
+    //因已在本地作业池中而被去重的作业数
+    String JOB_DEDUPLICATED = "cronjob.deduplicated";
+
+    //获取到执行权的作业数
+    String LOCK_WON = "cronjob.lock.won";
+
+    //未获取到执行权的作业数【锁被其他应用持有或作业已完成】
+    String LOCK_LOST = "cronjob.lock.lost";
+
+    //执行期间锁租约丢失的作业数
+    String LEASE_LOST = "cronjob.lease.lost";
+
+    //防护令牌已过期、完成状态写入被拒绝的作业数
+    String FENCING_REJECTED = "cronjob.fencing.rejected";
+
+    //由本地缓存得知已完成、无需读取redis的作业数
+    String COMPLETION_CACHE_HIT = "cronjob.completion.cache.hit";
+
+    //本地缓存的已完成作业数，标签为cache
+    String COMPLETION_CACHE_SIZE = "cronjob.completion.cache.size";
+
+    //作业执行失败数
+    String JOB_FAILED = "cronjob.failed";
+
+    //作业在作业池中的排队时间
+    String QUEUE_WAIT = "cronjob.queue.wait";
+
+    //作业执行时间【从获取执行权到释放锁】
+    String EXECUTION = "cronjob.execution";
+
+    //持有锁的时间
+    String LOCK_HOLD = "cronjob.lock.hold";
+
+    //redis操作耗时，标签为操作名
+    String REDIS_COMMAND = "cronjob.redis.command";
+
+    //redis操作失败数，标签为操作名
+    String REDIS_COMMAND_FAILED = "cronjob.redis.command.failed";
+
+    //失败作业扫描耗时
+    String SCAN_DURATION = "cronjob.scan.duration";
+
+    //启动回溯扫描耗时
+    String BACKTRACE_DURATION = "cronjob.backtrace.duration";
+
+    //启动回溯扫描全部任务的总耗时，标签为scanner
+    String BACKTRACE_TOTAL_DURATION = "cronjob.backtrace.total.duration";
+
+    //启动回溯扫描中尚未扫描完的任务数，标签为scanner
+    String BACKTRACE_REMAINING = "cronjob.backtrace.remaining";
+
+    //最近一次扫描发现的待执行作业数
+    String SCAN_BACKLOG = "cronjob.scan.backlog";
+
+    //追赶中尚未结束的缺失作业数
+    String CATCH_UP_REMAINING = "cronjob.catchup.remaining";
+
+    //追赶中最早的未结束作业距今的时长（毫秒），追赶结束时为0
+    String CATCH_UP_LAG = "cronjob.catchup.lag";
+
+    //追赶中已结束的缺失作业数【执行结束、被其他应用认领或合并执行】
+    String CATCH_UP_FINISHED = "cronjob.catchup.finished";
+
+    //追赶时记为完成而未执行的缺失作业数
+    String CATCH_UP_SKIPPED = "cronjob.catchup.skipped";
+
+    //作业池排队中的作业数，标签为作业池名称
+    String BULKHEAD_QUEUE_DEPTH = "cronjob.bulkhead.queue.depth";
+
+    //作业池中正在执行作业的线程数，标签为作业池名称
+    String BULKHEAD_ACTIVE_THREADS = "cronjob.bulkhead.active.threads";
+
+    //作业池放弃的作业数，标签为作业池名称
+    String BULKHEAD_REJECTED = "cronjob.bulkhead.rejected";
+
+    //锁续时服务中的租约数，标签为renewer
+    String RENEWER_ACTIVE_LEASES = "cronjob.renewer.active.leases";
+
+    //锁续时的最大延迟（毫秒），标签为renewer
+    String RENEWER_MAX_LAG = "cronjob.renewer.max.lag";
+
+    //以下为redis操作名，作为REDIS_COMMAND及REDIS_COMMAND_FAILED的标签
+
+    //载入lua脚本
+    String REDIS_OP_LOAD_SCRIPTS = "loadScripts";
+
+    //读取任务的作业记录
+    String REDIS_OP_GET_JOBS_OF_TASK = "getJobsOfTask";
+
+    //读取任务的作业开始时刻
+    String REDIS_OP_GET_JOB_START_TIMES_OF_TASK = "getJobStartTimesOfTask";
+
+    //读取单个作业状态
+    String REDIS_OP_GET_STATUS_OF_JOB = "getStatusOfJob";
+
+    //批量读取作业状态
+    String REDIS_OP_GET_COMPLETED_JOBS = "getCompletedJobs";
+
+    //记录作业开始
+    String REDIS_OP_CREATE_JOB_IF_NOT_PRESENT = "createJobIfNotPresent";
+
+    //设置作业已完成
+    String REDIS_OP_MARK_JOB_COMPLETED = "markJobCompleted";
+
+    //设置作业已完成并释放锁
+    String REDIS_OP_COMPLETE_JOB_AND_RELEASE_LOCK = "completeJobAndReleaseLock";
+
+    //获取作业锁
+    String REDIS_OP_TRY_LOCK = "tryLock";
+
+    //释放作业锁
+    String REDIS_OP_DELETE_LOCK = "deleteLock";
+
+    //为作业锁续时
+    String REDIS_OP_INSPIRE_LOCK = "inspireLock";
+
+    //批量为作业锁续时
+    String REDIS_OP_INSPIRE_LOCKS = "inspireLocks";
+
+    //批量认领作业
+    String REDIS_OP_CLAIM_JOBS = "claimJobs";
+
+    //读取超时的未完成作业
+    String REDIS_OP_GET_STALE_PENDING_JOBS_OF_TASK = "getStalePendingJobsOfTask";
+
+    //读取超时的未完成作业开始时刻
+    String REDIS_OP_GET_STALE_PENDING_JOB_START_TIMES = "getStalePendingJobStartTimes";
+
+    //移除未完成作业
+    String REDIS_OP_REMOVE_PENDING_JOBS = "removePendingJobs";
+
+    //重建未完成作业列表
+    String REDIS_OP_REBUILD_PENDING_INDEX = "rebuildPendingIndex";
+
+    //读取已创建的窗口
+    String REDIS_OP_GET_CREATED_WINDOWS = "getCreatedWindows";
+
+    //读取未完成的窗口
+    String REDIS_OP_GET_PENDING_WINDOW_START_TIMES = "getPendingWindowStartTimes";
+
+    //重建窗口位图
+    String REDIS_OP_REBUILD_WINDOW_BITMAPS = "rebuildWindowBitmaps";
+
+    //读取或确定窗口位图的0号窗口
+    String REDIS_OP_GET_WINDOW_BITMAP_ORIGIN = "getWindowBitmapOrigin";
+
+    //获取或续期扫描租约
+    String REDIS_OP_ACQUIRE_OR_RENEW_SCANNER_LEASE = "acquireOrRenewScannerLease";
+
+    //扫描节点心跳
+    String REDIS_OP_HEARTBEAT_SCANNER_NODE = "heartbeatScannerNode";
+
+    //释放扫描租约
+    String REDIS_OP_RELEASE_SCANNER_LEADERSHIP = "releaseScannerLeadership";
+
+    //获取任务维护权
+    String REDIS_OP_TRY_LOCK_MAINTENANCE = "tryLockMaintenance";
+
+    //重建作业开始时刻索引
+    String REDIS_OP_REBUILD_START_TIME_INDEX = "rebuildStartTimeIndex";
+
+    //压缩已完成作业
+    String REDIS_OP_COMPACT_COMPLETED_JOBS = "compactCompletedJobs";
+
+    //迁移key布局
+    String REDIS_OP_MIGRATE_KEY_LAYOUT = "migrateKeyLayout";
+
+    //读取作业锁持有信息
+    String REDIS_OP_GET_STATUS_OF_JOB_LOCK_HOLD_INFO = "getStatusOfJobLockHoldInfo";
+
+    //读取锁被持有的作业
+    String REDIS_OP_GET_LOCK_HELD_JOBS = "getLockHeldJobs";
+}
@@ -0,0 +1,13 @@
+package com.cn.dmd.constants;
+
+/**
+ * 作业池已满时的处理策略
+ */
+public enum CronJobRejectionPolicy {
+    //放弃本次提交的作业，由失败作业扫描补偿
+    DISCARD,
+    //放弃队列中最早的作业，放入本次提交的作业
+    DISCARD_OLDEST,
+    //由提交作业的线程直接执行，对提交方形成反压；提交线程为触发引擎或扫描器的线程时交由作业池的溢出线程执行，溢出线程忙时放弃
+    CALLER_RUNS,;
+}
@@ -0,0 +1,11 @@
+package com.cn.dmd.constants;
+
+/**
+ * 超出保留时长的已完成作业的处理策略
+ */
+public enum CronJobRetentionPolicy {
+    //移出作业状态列表，按天汇总完成数
+    ROLLUP,
+    //直接移出作业状态列表
+    DROP,;
+}
@@ -0,0 +1,13 @@
+package com.cn.dmd.constants;
+
+/**
+ * 失败作业的扫描方式
+ */
+public enum CronJobScanMode {
+    //读取任务的全部作业，逐一检查状态及锁
+    FULL,
+    //只读取未完成作业列表中创建时间早于锁超时时间的作业
+    INDEXED,
+    //按窗口位图扫描：读取已创建、已完成位图中回看范围内的窗口，在本地求差
+    BITMAP,;
+}
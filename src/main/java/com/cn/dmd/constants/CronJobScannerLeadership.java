@@ -0,0 +1,13 @@
+package com.cn.dmd.constants;
+
+/**
+ * 扫描器的分工方式
+ */
+public enum CronJobScannerLeadership {
+    //每个应用扫描全部任务
+    NONE,
+    //持有扫描租约的应用扫描全部任务，租约过期后由其他应用接管
+    LEASE,
+    //按存活应用列表将任务分区，每个任务只由一个应用扫描
+    PARTITION,;
+}
@@ -0,0 +1,11 @@
+package com.cn.dmd.constants;
+
+/**
+ * 作业协调存储的实现方式
+ */
+public enum CronJobStoreType {
+    //redis，集群部署时使用
+    REDIS,
+    //进程内存储，以内存映射的追加日志持久化作业状态，用于开发、测试及单实例部署
+    EMBEDDED,;
+}
@@ -1,5 +1,7 @@
 package com.cn.dmd.constants;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * 定时任务 时间粒度
  *
@@ -8,13 +10,48 @@ package com.cn.dmd.constants;
  * @contact 243717042@qq.com
  */
 public enum CronScheduleTimeUnit {
-    MINUTE(0),
-    HOUR(1),;
+    //开始规则为分钟内第几秒；作业开始时刻未按分钟对齐，需使用COMPACT编码【cron.general.key-codec】
+    SECOND(2, TimeUnit.SECONDS, TimeUnit.SECONDS, 59),
+    //开始规则为小时内第几分钟
+    MINUTE(0, TimeUnit.MINUTES, TimeUnit.MINUTES, 60),
+    //开始规则为24小时内第几小时
+    HOUR(1, TimeUnit.HOURS, TimeUnit.HOURS, 23),
+    //开始规则为24小时内第几小时
+    DAY(3, TimeUnit.DAYS, TimeUnit.HOURS, 23),;
 
     private int unit;
+    //时间跨度的单位
+    private final TimeUnit durationUnit;
+    //开始规则的单位
+    private final TimeUnit startRuleUnit;
+    //开始规则的最大值
+    private final int maxStartRule;
 
-    CronScheduleTimeUnit(int unit) {
+    CronScheduleTimeUnit(int unit, TimeUnit durationUnit, TimeUnit startRuleUnit, int maxStartRule) {
         this.unit = unit;
+        this.durationUnit = durationUnit;
+        this.startRuleUnit = startRuleUnit;
+        this.maxStartRule = maxStartRule;
+    }
+
+    /**
+     * @param duration 以当前粒度计的时间跨度
+     * @return 时间跨度（毫秒）
+     */
+    public long toMillis(long duration) {
+        return durationUnit.toMillis(duration);
+    }
+
+    /**
+     * @param startRule 开始规则
+     * @return 开始规则对应的偏移（毫秒）
+     */
+    public long startRuleToMillis(int startRule) {
+        return startRuleUnit.toMillis(startRule);
+    }
+
+    public int getMaxStartRule() {
+        return maxStartRule;
     }
 
     public static CronScheduleTimeUnit parse(int type) {
@@ -14,6 +14,54 @@ public interface CronTaskKeyConstants {
     //作业状态列表信息前缀
     String PROCESS_STATUS_LIST_PREFIX = "JobProcessStatusList";
 
+    //作业开始时刻索引前缀
+    String PROCESS_START_TIME_INDEX_PREFIX = "JobProcessStartTimeIndex";
+
+    //作业开始时刻索引构建完成标识前缀
+    String PROCESS_START_TIME_INDEX_READY_PREFIX = "JobProcessStartTimeIndexReady";
+
+    //未完成作业列表前缀
+    String PENDING_LIST_PREFIX = "JobPendingList";
+
+    //未完成作业列表构建完成标识前缀
+    String PENDING_LIST_READY_PREFIX = "JobPendingListReady";
+
+    //已创建作业的窗口位图前缀【第n位对应任务的第n个窗口】
+    String WINDOW_CREATED_BITMAP_PREFIX = "JobWindowCreated";
+
+    //已完成作业的窗口位图前缀
+    String WINDOW_COMPLETED_BITMAP_PREFIX = "JobWindowCompleted";
+
+    //窗口位图构建完成标识前缀
+    String WINDOW_BITMAP_READY_PREFIX = "JobWindowBitmapReady";
+
+    //窗口位图0号窗口开始时刻前缀【每个任务一个，首次读写位图时确定，此后不变】
+    String WINDOW_BITMAP_ORIGIN_PREFIX = "JobWindowBitmapOrigin";
+
+    //已压缩作业按天汇总信息前缀
+    String PROCESS_STATUS_ROLLUP_PREFIX = "JobProcessStatusRollup";
+
+    //作业状态列表维护锁前缀
+    String RETENTION_LOCK_PREFIX = "JobRetentionLock";
+
+    //防护令牌序号前缀【每个任务一个计数器，认领作业时INCR】
+    String FENCING_SEQUENCE_PREFIX = "JobFencingSequence";
+
+    //作业防护令牌列表前缀【hash，field为作业状态字段，value为作业当前的令牌】
+    String FENCING_TOKEN_PREFIX = "JobFencingToken";
+
+    //key布局迁移完成标识前缀
+    String KEY_LAYOUT_MIGRATED_PREFIX = "JobKeyLayoutMigrated";
+
+    //扫描租约
+    String SCANNER_LEADER_KEY = "JobScannerLeader";
+
+    //扫描器存活应用列表【zset，score为最近一次心跳时刻】
+    String SCANNER_NODES_KEY = "JobScannerNodes";
+
+    //作业完成广播频道【消息为：作业开始时刻_任务名】
+    String JOB_COMPLETION_CHANNEL = "JobCompletionChannel";
+
     //分隔符
     String SEPERATOR = "_";
 }
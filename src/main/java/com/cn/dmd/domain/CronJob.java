@@ -2,13 +2,10 @@ package com.cn.dmd.domain;
 
 import com.cn.dmd.CronTask;
 import com.cn.dmd.utils.DateUtils;
-import com.cn.dmd.utils.JsonUtil;
-import com.google.common.collect.Maps;
 import lombok.EqualsAndHashCode;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.Map;
 
 /**
  * 定时作业，包含任务{@link CronTask}的动态层面【时间信息】
@@ -25,6 +22,11 @@ public class CronJob {
     private final long endTime;
     //任务名称标识
     private final String taskName;
+    //缓存的作业标识及json格式，作业不可变，并发构建时结果一致
+    private transient String identity;
+    private transient String json;
+    //认领作业时签发的防护令牌，同一任务内单调递增，未开启防护令牌或未认领时为0；不参与作业标识
+    private transient volatile long fencingToken;
 
     public CronJob(String taskName, long startTime, long endTime) {
         this.taskName = taskName;
@@ -52,13 +54,66 @@ public class CronJob {
         return new Timestamp(endTime).toLocalDateTime();
     }
 
+    /**
+     * 业务逻辑可将令牌随写入一并提交给下游存储，由下游拒绝令牌小于已见令牌的写入，
+     * 从而在锁超时后被其他应用重复执行时，只有最新认领者的结果生效
+     *
+     * @return 当前应用认领作业时获得的防护令牌，未开启防护令牌时为0
+     */
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    public void setFencingToken(long fencingToken) {
+        this.fencingToken = fencingToken;
+    }
+
+    /**
+     * @return 作业标识【任务名[开始时刻, 结束时刻)】，首次调用时构建并缓存，用于日志等热点路径
+     */
+    public String getIdentity() {
+        String identity = this.identity;
+        if (identity == null) {
+            identity = taskName + '[' + DateUtils.formatEpochMillis(startTime) + ", " + DateUtils.formatEpochMillis(endTime) + ')';
+            this.identity = identity;
+        }
+
+        return identity;
+    }
+
+    /**
+     * @return 单行json格式的作业信息，首次调用时构建并缓存
+     */
     @Override
     public String toString() {
-        Map<String, Object> paramsMap = Maps.newHashMapWithExpectedSize(3);
-        paramsMap.put("taskName", taskName);
-        paramsMap.put("startTime", DateUtils.formateDateStr(getStartTimeUsingLocalDateTime()));
-        paramsMap.put("endTime", DateUtils.formateDateStr(getEndTimeUsingLocalDateTime()));
+        String json = this.json;
+        if (json == null) {
+            StringBuilder builder = new StringBuilder(96);
+            builder.append("{\"taskName\":\"");
+            appendEscaped(builder, taskName);
+            builder.append("\",\"startTime\":\"").append(DateUtils.formatEpochMillis(startTime))
+                    .append("\",\"endTime\":\"").append(DateUtils.formatEpochMillis(endTime)).append("\"}");
+            json = builder.toString();
+            this.json = json;
+        }
+
+        return json;
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        if (value == null) {
+            return;
+        }
 
-        return JsonUtil.toJsonString(paramsMap);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
     }
 }
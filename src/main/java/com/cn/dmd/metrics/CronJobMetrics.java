@@ -0,0 +1,56 @@
+package com.cn.dmd.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 定时作业指标注册表，可由应用提供自己的实现【如桥接至监控系统】
+ * 未开启时使用{@link NoopCronJobMetrics}，埋点处应先判断{@link #isEnabled()}再计时，以免产生额外开销
+ */
+public interface CronJobMetrics {
+    /**
+     * @return 是否记录指标
+     */
+    boolean isEnabled();
+
+    /**
+     * 计数器加一
+     *
+     * @param name 指标名称
+     * @param tag  标签
+     */
+    default void increment(String name, String tag) {
+        increment(name, tag, 1L);
+    }
+
+    /**
+     * 计数器增加指定值
+     *
+     * @param name   指标名称
+     * @param tag    标签
+     * @param amount 增加值
+     */
+    void increment(String name, String tag, long amount);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param name  指标名称
+     * @param tag   标签
+     * @param nanos 耗时（纳秒）
+     */
+    void recordNanos(String name, String tag, long nanos);
+
+    /**
+     * 注册瞬时值，读取时调用supplier
+     *
+     * @param name     指标名称
+     * @param tag      标签
+     * @param supplier 取值逻辑
+     */
+    void gauge(String name, String tag, LongSupplier supplier);
+
+    /**
+     * @return 当前所有指标的快照
+     */
+    CronJobMetricsSnapshot snapshot();
+}
@@ -0,0 +1,122 @@
+package com.cn.dmd.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 指标快照，key为【指标名称{标签}】，供测试及诊断接口在进程内读取
+ */
+public class CronJobMetricsSnapshot {
+    private final Map<String, Long> counters;
+    private final Map<String, TimerSnapshot> timers;
+    private final Map<String, Long> gauges;
+
+    public CronJobMetricsSnapshot(Map<String, Long> counters, Map<String, TimerSnapshot> timers, Map<String, Long> gauges) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.timers = Collections.unmodifiableMap(timers);
+        this.gauges = Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * @param name 指标名称
+     * @param tag  标签
+     * @return 快照中使用的key
+     */
+    public static String key(String name, String tag) {
+        return name + '{' + tag + '}';
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, TimerSnapshot> getTimers() {
+        return timers;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    /**
+     * @return 计数器的值，不存在时返回0
+     */
+    public long getCounter(String name, String tag) {
+        Long value = counters.get(key(name, tag));
+        return value == null ? 0L : value;
+    }
+
+    /**
+     * @return 计时器快照，不存在时返回null
+     */
+    public TimerSnapshot getTimer(String name, String tag) {
+        return timers.get(key(name, tag));
+    }
+
+    /**
+     * @return 瞬时值，不存在时返回null
+     */
+    public Long getGauge(String name, String tag) {
+        return gauges.get(key(name, tag));
+    }
+
+    @Override
+    public String toString() {
+        return "counters=" + counters + ", timers=" + timers + ", gauges=" + gauges;
+    }
+
+    /**
+     * 计时器快照，分位数为按2的幂分桶后的估计值【桶上界】
+     */
+    public static class TimerSnapshot {
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+
+        public TimerSnapshot(long count, long totalNanos, long maxNanos, long p50Nanos, long p90Nanos, long p99Nanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0L : totalNanos / count;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + getMeanNanos() + "ns, p50=" + p50Nanos + "ns, p90=" + p90Nanos
+                    + "ns, p99=" + p99Nanos + "ns, max=" + maxNanos + "ns}";
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.cn.dmd.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 进程内的指标注册表
+ * 1. 计数器使用LongAdder，记录时不加锁；
+ * 2. 计时器按耗时的2的幂分桶，记录时只做一次桶定位及若干次累加；
+ * 3. 按【指标名称 -> 标签】两级查找，记录时不拼接字符串
+ */
+public class InMemoryCronJobMetrics implements CronJobMetrics {
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Timer>> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongSupplier>> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void increment(String name, String tag, long amount) {
+        lookup(counters, name, tag, LongAdder::new).add(amount);
+    }
+
+    @Override
+    public void recordNanos(String name, String tag, long nanos) {
+        lookup(timers, name, tag, Timer::new).record(nanos);
+    }
+
+    @Override
+    public void gauge(String name, String tag, LongSupplier supplier) {
+        gauges.computeIfAbsent(name, key -> new ConcurrentHashMap<>()).put(tag, supplier);
+    }
+
+    @Override
+    public CronJobMetricsSnapshot snapshot() {
+        Map<String, Long> counterSnapshot = new HashMap<>();
+        counters.forEach((name, tagged) -> tagged.forEach((tag, adder) ->
+                counterSnapshot.put(CronJobMetricsSnapshot.key(name, tag), adder.sum())));
+
+        Map<String, CronJobMetricsSnapshot.TimerSnapshot> timerSnapshot = new HashMap<>();
+        timers.forEach((name, tagged) -> tagged.forEach((tag, timer) ->
+                timerSnapshot.put(CronJobMetricsSnapshot.key(name, tag), timer.snapshot())));
+
+        Map<String, Long> gaugeSnapshot = new HashMap<>();
+        gauges.forEach((name, tagged) -> tagged.forEach((tag, supplier) ->
+                gaugeSnapshot.put(CronJobMetricsSnapshot.key(name, tag), supplier.getAsLong())));
+
+        return new CronJobMetricsSnapshot(counterSnapshot, timerSnapshot, gaugeSnapshot);
+    }
+
+    private static <T> T lookup(ConcurrentHashMap<String, ConcurrentHashMap<String, T>> metrics, String name, String tag,
+                                Supplier<T> factory) {
+        ConcurrentHashMap<String, T> tagged = metrics.get(name);
+        if (tagged == null) {
+            tagged = metrics.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+        }
+
+        T metric = tagged.get(tag);
+        if (metric == null) {
+            metric = tagged.computeIfAbsent(tag, key -> factory.get());
+        }
+
+        return metric;
+    }
+
+    //按耗时的2的幂分桶的计时器，第i个桶记录[2^i, 2^(i+1))纳秒的耗时
+    private static final class Timer {
+        private static final int BUCKET_COUNT = 64;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+        private Timer() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            long value = Math.max(nanos, 0L);
+
+            count.increment();
+            totalNanos.add(value);
+            buckets[63 - Long.numberOfLeadingZeros(value | 1L)].increment();
+
+            long max = maxNanos.get();
+            while (value > max && !maxNanos.compareAndSet(max, value)) {
+                max = maxNanos.get();
+            }
+        }
+
+        private CronJobMetricsSnapshot.TimerSnapshot snapshot() {
+            long[] bucketCounts = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                bucketCounts[i] = buckets[i].sum();
+                total += bucketCounts[i];
+            }
+
+            long max = maxNanos.get();
+            return new CronJobMetricsSnapshot.TimerSnapshot(count.sum(), totalNanos.sum(), max,
+                    percentile(bucketCounts, total, 0.5, max), percentile(bucketCounts, total, 0.9, max),
+                    percentile(bucketCounts, total, 0.99, max));
+        }
+
+        private static long percentile(long[] bucketCounts, long total, double quantile, long max) {
+            if (total == 0) {
+                return 0L;
+            }
+
+            long threshold = (long) Math.ceil(total * quantile);
+            long accumulated = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                accumulated += bucketCounts[i];
+                if (accumulated >= threshold) {
+                    long upperBound = i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                    return Math.min(upperBound, max);
+                }
+            }
+
+            return max;
+        }
+    }
+}
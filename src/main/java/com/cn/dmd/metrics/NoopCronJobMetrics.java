@@ -0,0 +1,34 @@
+package com.cn.dmd.metrics;
+
+import java.util.Collections;
+import java.util.function.LongSupplier;
+
+/**
+ * 不记录任何指标的注册表
+ */
+public class NoopCronJobMetrics implements CronJobMetrics {
+    private static final CronJobMetricsSnapshot EMPTY_SNAPSHOT = new CronJobMetricsSnapshot(Collections.emptyMap(),
+            Collections.emptyMap(), Collections.emptyMap());
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void increment(String name, String tag, long amount) {
+    }
+
+    @Override
+    public void recordNanos(String name, String tag, long nanos) {
+    }
+
+    @Override
+    public void gauge(String name, String tag, LongSupplier supplier) {
+    }
+
+    @Override
+    public CronJobMetricsSnapshot snapshot() {
+        return EMPTY_SNAPSHOT;
+    }
+}
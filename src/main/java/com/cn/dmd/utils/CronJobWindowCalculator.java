@@ -0,0 +1,98 @@
+package com.cn.dmd.utils;
+
+import com.cn.dmd.CronTaskConfig;
+import com.cn.dmd.constants.CronScheduleTimeUnit;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.Assert;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * 作业时间范围计算器，完全基于epoch毫秒的整数运算
+ * 1. 作业时间范围的边界为 锚点 + k * 时间跨度，锚点由开始规则及时区偏移决定；
+ * 2. 时间跨度能整除上一级周期时【如5分钟之于1小时、6小时之于1天】，边界与按小时/天对齐的结果一致；
+ * 3. 枚举时间范围时不创建任何日期对象
+ * <p>
+ * 时区按固定偏移处理，存在夏令时的时区在切换前后按构建时的偏移对齐
+ */
+public final class CronJobWindowCalculator {
+    //时间跨度（毫秒）
+    private final long intervalMillis;
+    //任一边界对时间跨度取模的结果，范围[0, intervalMillis)
+    private final long anchorMillis;
+
+    /**
+     * @param intervalMillis    时间跨度（毫秒）
+     * @param startOffsetMillis 边界相对于当地零点的偏移（毫秒）
+     * @param zoneOffset        时区偏移
+     */
+    public CronJobWindowCalculator(long intervalMillis, long startOffsetMillis, ZoneOffset zoneOffset) {
+        Assert.isTrue(intervalMillis > 0, "定时任务间隔时间应该大于0");
+
+        this.intervalMillis = intervalMillis;
+        this.anchorMillis = Math.floorMod(startOffsetMillis - zoneOffset.getTotalSeconds() * 1000L, intervalMillis);
+    }
+
+    /**
+     * @param taskConfig 任务配置
+     * @return 任务对应的计算器，时区偏移取当前时刻的偏移
+     */
+    public static CronJobWindowCalculator of(CronTaskConfig taskConfig) {
+        CronScheduleTimeUnit unit = taskConfig.getCronScheduleTimeUnit();
+        Assert.isTrue(taskConfig.getTaskStartRule() >= 0 && taskConfig.getTaskStartRule() <= unit.getMaxStartRule(),
+                "当使用" + unit + "为单元时，开始时间应该在0-" + unit.getMaxStartRule() + "之间");
+        Assert.isTrue(taskConfig.getTaskControlTimeDuration() > 0, "定时任务间隔时间应该大于0");
+
+        ZoneId zoneId = StringUtils.isBlank(taskConfig.getTimeZone()) ? ZoneId.systemDefault() : ZoneId.of(taskConfig.getTimeZone());
+        ZoneOffset zoneOffset = zoneId.getRules().getOffset(Instant.now());
+
+        return new CronJobWindowCalculator(unit.toMillis(taskConfig.getTaskControlTimeDuration()),
+                unit.startRuleToMillis(taskConfig.getTaskStartRule()), zoneOffset);
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @param time 时刻（毫秒）
+     * @return 不晚于time的最近一个边界
+     */
+    public long floor(long time) {
+        return time - Math.floorMod(time - anchorMillis, intervalMillis);
+    }
+
+    /**
+     * @param time 时刻（毫秒）
+     * @return 不早于time的最近一个边界
+     */
+    public long ceil(long time) {
+        long floor = floor(time);
+        return floor == time ? floor : floor + intervalMillis;
+    }
+
+    /**
+     * @param fromTime 起始时刻【包含】
+     * @param toTime   结束时刻【包含】
+     * @return [fromTime, toTime]之间的所有边界，升序
+     */
+    public long[] boundaries(long fromTime, long toTime) {
+        long first = ceil(fromTime);
+        long last = floor(toTime);
+        if (last < first) {
+            return new long[0];
+        }
+
+        long count = (last - first) / intervalMillis + 1;
+        Assert.isTrue(count <= Integer.MAX_VALUE, "时间范围内的边界数过多：" + count);
+
+        long[] boundaries = new long[(int) count];
+        for (int i = 0; i < boundaries.length; i++) {
+            boundaries[i] = first + i * intervalMillis;
+        }
+
+        return boundaries;
+    }
+}
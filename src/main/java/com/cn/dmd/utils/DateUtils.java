@@ -2,7 +2,9 @@ package com.cn.dmd.utils;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 
@@ -15,6 +17,11 @@ import java.time.format.DateTimeFormatter;
  */
 @Slf4j
 public class DateUtils {
+    //DateTimeFormatter线程安全，构建一次后复用
+    private static final DateTimeFormatter CHINESE_DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm:ss");
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
     /**
      * @param date yyyy-MM-dd HH24:mm:ss
      * @return Date yyyy年MM月dd日 HH24:mm:ss
@@ -23,8 +30,15 @@ public class DateUtils {
         if (date == null) {
             return "";
         } else {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy年MM月dd日 HH:mm:ss");
-            return date.format(formatter);
+            return date.format(CHINESE_DATE_TIME_FORMATTER);
         }
     }
+
+    /**
+     * @param epochMillis 时刻（毫秒）
+     * @return yyyy-MM-dd HH24:mm:ss，使用系统默认时区
+     */
+    public static String formatEpochMillis(long epochMillis) {
+        return DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(epochMillis));
+    }
 }
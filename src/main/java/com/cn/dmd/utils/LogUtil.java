@@ -1,7 +1,9 @@
 package com.cn.dmd.utils;
 
+import com.cn.dmd.domain.CronJob;
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
+import org.slf4j.MDC;
 
 import java.util.function.Supplier;
 
@@ -12,6 +14,28 @@ import java.util.function.Supplier;
  * @since 2018/4/13 17:46
  */
 public class LogUtil {
+    //日志上下文中当前作业的key，可在日志格式中以%X{cronJob}、%X{cronTask}输出
+    public static final String MDC_CRON_JOB_KEY = "cronJob";
+    public static final String MDC_CRON_TASK_KEY = "cronTask";
+
+    /**
+     * 将作业放入当前线程的日志上下文，作业标识已缓存，不产生额外分配
+     *
+     * @param cronJob 作业
+     */
+    public static void putCronJob(CronJob cronJob) {
+        MDC.put(MDC_CRON_TASK_KEY, cronJob.getTaskName());
+        MDC.put(MDC_CRON_JOB_KEY, cronJob.getIdentity());
+    }
+
+    /**
+     * 从当前线程的日志上下文中移除作业
+     */
+    public static void removeCronJob() {
+        MDC.remove(MDC_CRON_TASK_KEY);
+        MDC.remove(MDC_CRON_JOB_KEY);
+    }
+
     public static void trace(Logger logger, String msg) {
         if (logger.isTraceEnabled()) {
             logger.trace(msg);
@@ -0,0 +1,190 @@
+package com.cn.dmd.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * long的开放寻址哈希集合，元素不装箱，用于按任务存放作业开始时刻等热点路径
+ * 1. 线性探测，删除时回移后续元素，不留墓碑；
+ * 2. 以0作为空槽标记，元素0单独记录；
+ * 3. 非线程安全，并发访问由调用方同步
+ */
+public final class LongHashSet {
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] table;
+    private int mask;
+    //除0以外的元素数
+    private int size;
+    private boolean containsZero;
+    private int resizeThreshold;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计的元素数
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * @return 是否新加入
+     */
+    public boolean add(long value) {
+        if (value == 0L) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+
+        int index = indexOf(value);
+        while (table[index] != 0L) {
+            if (table[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        table[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == 0L) {
+            return containsZero;
+        }
+
+        int index = indexOf(value);
+        while (table[index] != 0L) {
+            if (table[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return 是否存在并已移除
+     */
+    public boolean remove(long value) {
+        if (value == 0L) {
+            boolean removed = containsZero;
+            containsZero = false;
+            return removed;
+        }
+
+        int index = indexOf(value);
+        while (table[index] != value) {
+            if (table[index] == 0L) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        //将探测链上后续的元素回移，保证查找不会在空槽处提前结束
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (table[next] != 0L) {
+            int home = indexOf(table[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = 0L;
+        size--;
+
+        return true;
+    }
+
+    public int size() {
+        return containsZero ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+        containsZero = false;
+    }
+
+    /**
+     * 遍历所有元素，顺序不确定
+     */
+    public void forEach(LongConsumer action) {
+        if (containsZero) {
+            action.accept(0L);
+        }
+        for (long value : table) {
+            if (value != 0L) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * @return 所有元素，顺序不确定
+     */
+    public long[] toArray() {
+        long[] values = new long[size()];
+        int position = 0;
+        if (containsZero) {
+            values[position++] = 0L;
+        }
+        for (long value : table) {
+            if (value != 0L) {
+                values[position++] = value;
+            }
+        }
+
+        return values;
+    }
+
+    private int indexOf(long value) {
+        //混合高低位，作业开始时刻的低位多为0
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldTable = table;
+        allocate(capacity);
+        for (long value : oldTable) {
+            if (value != 0L) {
+                int index = indexOf(value);
+                while (table[index] != 0L) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+}